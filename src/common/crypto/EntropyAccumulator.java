@@ -19,7 +19,6 @@ package common.crypto;
 
 
 import java.awt.AWTEvent;
-import java.awt.Point;
 
 import java.awt.event.AWTEventListener;
 import java.awt.event.KeyEvent;
@@ -27,6 +26,14 @@ import java.awt.event.KeyListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionListener;
 
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import java.security.SecureRandom;
+
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumMap;
@@ -34,6 +41,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import java.util.zip.CRC32;
+
+import common.misc.DaemonThread;
 import common.misc.IStringKeyed;
 import common.misc.StringUtils;
 
@@ -46,7 +56,7 @@ import common.misc.StringUtils;
 /**
  * This class implements an entropy accumulator for a pseudo-random number generator.
  * <p>
- * The accumulator supports three entropy sources:
+ * The accumulator supports three entropy sources that depend on user input or on the timer of the accumulator:
  * </p>
  * <ul>
  *   <li>
@@ -60,18 +70,44 @@ import common.misc.StringUtils;
  *   </li>
  * </ul>
  * <p>
- * Individual bits can be extracted from samples from the three sources: each source has a configurable bit mask that
- * will be applied to the 16 low-order bits of the sample.  The mouse and timer sources also have a configurable
- * interval: for the mouse, it's the minimum interval between samples; for the timer, it's the interval between samples.
+ * It also supports four <i>headless</i> entropy sources, which do not depend on a graphical user interface and are
+ * suitable for servers and containers:
+ * </p>
+ * <ul>
+ *   <li>
+ *     jitter : the time taken to perform a small fixed computation, which varies with the state of the CPU caches,
+ *     branch predictors and pipelines.
+ *   </li>
+ *   <li>
+ *     secure random : seed bytes from the default {@link SecureRandom} provider of the Java platform.
+ *   </li>
+ *   <li>
+ *     counters : a checksum of system counters that are read from the {@code /proc} file system, combined with the
+ *     time taken to read them.  If there is no {@code /proc} file system, this source provides no samples.
+ *   </li>
+ *   <li>
+ *     scheduler : the time taken for the current thread to yield to the thread scheduler.
+ *   </li>
+ * </ul>
+ * <p>
+ * Individual bits can be extracted from samples from all sources: each source has a configurable bit mask that will
+ * be applied to the 16 low-order bits of the sample.  The mouse, timer and headless sources also have a configurable
+ * interval: for the mouse, it's the minimum interval between samples; for the timer, it's the interval between samples;
+ * for a headless source, it's the interval between batches of samples.  Each headless source is sampled on its own
+ * thread.  Until each consumer of the accumulator's entropy (see below) has received enough entropy to fill the first
+ * entropy pool of a {@link Fortuna} PRNG to its reseed threshold, the headless sources are sampled at the minimum
+ * interval, so that the PRNG can be reseeded soon after the accumulator is created even if the configured interval is
+ * long.
  * </p>
  * <p>
  * Two of the sources (keyboard and timer) depend on the high-resolution time source of the Java virtual machine, which
- * has nanosecond precision but not necessarily nanosecond resolution.  The time value that is used by the two sources
- * is the value of the high-resolution timer divided by a divisor that is a property of an entropy accumulator.  The
- * divisor can be adjusted so that the resolution and precision of the time value are equal in order to maximise the
- * entropy of its low-order bits.  For example, if the JVM's high-resolution time source is based on a 10 MHz hardware
- * timer (ie, a resolution of 100 nanoseconds), a divisor of 100 will reduce the precision of the time value to the
- * resolution.
+ * has nanosecond precision but not necessarily nanosecond resolution.  (The jitter, counters and scheduler sources also
+ * use the high-resolution time source, but they are not affected by the divisor that is described below.)  The time
+ * value that is used by the two sources is the value of the high-resolution timer divided by a divisor that is a
+ * property of an entropy accumulator.  The divisor can be adjusted so that the resolution and precision of the time
+ * value are equal in order to maximise the entropy of its low-order bits.  For example, if the JVM's high-resolution
+ * time source is based on a 10 MHz hardware timer (ie, a resolution of 100 nanoseconds), a divisor of 100 will reduce
+ * the precision of the time value to the resolution.
  * </p>
  * <p>
  * An entropy accumulator gathers entropy from the keyboard and mouse by acting as a listener for keyboard and mouse
@@ -110,6 +146,34 @@ public class EntropyAccumulator
 	public static final		int	MAX_TIMER_DIVISOR	= 1000000;
 
 	private static final	String	TIMER_THREAD_NAME	= "EntropyAccumulator.Timer";
+	private static final	String	SOURCE_THREAD_NAME_PREFIX	= "EntropyAccumulator.";
+
+	private static final	int	MAX_NUM_SAMPLES_PER_BATCH	= 128;
+
+	// The number of bytes of entropy per consumer that are collected before headless sources are sampled at their
+	// configured interval: the bytes are distributed over the entropy pools of a Fortuna PRNG, so this is the number
+	// that fills the first pool to its reseed threshold
+	private static final	int	INITIAL_ENTROPY_LENGTH	=
+			Fortuna.NUM_ENTROPY_POOLS * Fortuna.RESEED_ENTROPY_THRESHOLD;
+
+	private static final	int	NUM_JITTER_SAMPLES			= 128;
+	private static final	int	NUM_SECURE_RANDOM_SAMPLES	= 128;
+	private static final	int	NUM_SCHEDULER_SAMPLES		= 32;
+
+	private static final	int	JITTER_WORKSPACE_SIZE		= 64;
+	private static final	int	JITTER_NUM_ITERATIONS		= 16;
+
+	private static final	String[]	COUNTER_PATHNAMES	=
+	{
+		"/proc/stat",
+		"/proc/interrupts",
+		"/proc/softirqs",
+		"/proc/vmstat",
+		"/proc/diskstats",
+		"/proc/net/dev",
+		"/proc/self/stat",
+		"/proc/self/schedstat"
+	};
 
 ////////////////////////////////////////////////////////////////////////
 //  Enumerated types
@@ -120,7 +184,8 @@ public class EntropyAccumulator
 
 
 	/**
-	 * This is an enumeration of the kinds of entropy source: keyboard, mouse and timer.
+	 * This is an enumeration of the kinds of entropy source: keyboard, mouse and timer, and the headless sources
+	 * jitter, secure random, counters and scheduler.
 	 */
 
 	public enum SourceKind
@@ -134,18 +199,49 @@ public class EntropyAccumulator
 		KEYBOARD
 		(
 			"keyboard",
+			false,
 			false
 		),
 
 		MOUSE
 		(
 			"mouse",
-			true
+			true,
+			false
 		),
 
 		TIMER
 		(
 			"timer",
+			true,
+			false
+		),
+
+		JITTER
+		(
+			"jitter",
+			true,
+			true
+		),
+
+		SECURE_RANDOM
+		(
+			"secureRandom",
+			true,
+			true
+		),
+
+		COUNTERS
+		(
+			"counters",
+			true,
+			true
+		),
+
+		SCHEDULER
+		(
+			"scheduler",
+			true,
 			true
 		);
 
@@ -154,10 +250,12 @@ public class EntropyAccumulator
 	////////////////////////////////////////////////////////////////////
 
 		private SourceKind(String  key,
-						   boolean hasInterval)
+						   boolean hasInterval,
+						   boolean headless)
 		{
 			this.key = key;
 			this.hasInterval = hasInterval;
+			this.headless = headless;
 		}
 
 		//--------------------------------------------------------------
@@ -214,12 +312,63 @@ public class EntropyAccumulator
 
 		//--------------------------------------------------------------
 
+		/**
+		 * Returns {@code true} if the kind of source is a headless source, which is sampled on its own thread and
+		 * does not depend on a graphical user interface.
+		 *
+		 * @return {@code true} if the kind of source is a headless source, {@code false} otherwise.
+		 */
+
+		public boolean isHeadless()
+		{
+			return headless;
+		}
+
+		//--------------------------------------------------------------
+
 	////////////////////////////////////////////////////////////////////
 	//  Instance fields
 	////////////////////////////////////////////////////////////////////
 
 		private	String	key;
 		private	boolean	hasInterval;
+		private	boolean	headless;
+
+	}
+
+	//==================================================================
+
+////////////////////////////////////////////////////////////////////////
+//  Member interfaces
+////////////////////////////////////////////////////////////////////////
+
+
+	// SAMPLER INTERFACE
+
+
+	/**
+	 * This interface defines the method that is called periodically on the thread of a headless entropy source to
+	 * obtain a batch of samples from the source.
+	 */
+
+	private interface ISampler
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Methods
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Obtains a batch of samples from the entropy source and stores them in the specified buffer.
+		 *
+		 * @param  samples  the buffer in which the samples will be stored.  Its length is the maximum number of
+		 *                  samples in a batch.
+		 * @return the number of samples that were stored in {@code samples}.
+		 */
+
+		int getSamples(int[] samples);
+
+		//--------------------------------------------------------------
 
 	}
 
@@ -486,6 +635,241 @@ public class EntropyAccumulator
 
 	//==================================================================
 
+
+	// JITTER SAMPLER CLASS
+
+
+	/**
+	 * This class implements a sampler for the jitter entropy source.  Each sample is the time (in nanoseconds) that
+	 * is taken to perform a fixed number of data-dependent reads and writes of a small array.
+	 */
+
+	private static class JitterSampler
+		implements ISampler
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private JitterSampler()
+		{
+			workspace = new int[JITTER_WORKSPACE_SIZE];
+			state = (int)System.nanoTime();
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : ISampler interface
+	////////////////////////////////////////////////////////////////////
+
+		public int getSamples(int[] samples)
+		{
+			for (int i = 0; i < NUM_JITTER_SAMPLES; i++)
+			{
+				long startTime = System.nanoTime();
+				int x = state;
+				for (int j = 0; j < JITTER_NUM_ITERATIONS; j++)
+				{
+					x ^= x << 13;
+					x ^= x >>> 17;
+					x ^= x << 5;
+					int index = x & (JITTER_WORKSPACE_SIZE - 1);
+					workspace[index] += x;
+					x += workspace[(index + j) & (JITTER_WORKSPACE_SIZE - 1)];
+				}
+				state = x;
+				samples[i] = (int)(System.nanoTime() - startTime);
+			}
+			return NUM_JITTER_SAMPLES;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance fields
+	////////////////////////////////////////////////////////////////////
+
+		private	int[]	workspace;
+		private	int		state;
+
+	}
+
+	//==================================================================
+
+
+	// SECURE RANDOM SAMPLER CLASS
+
+
+	/**
+	 * This class implements a sampler for the secure random entropy source.  Each sample comprises two random bytes
+	 * from the default {@link SecureRandom} provider, which seeds itself once when it is first used.
+	 */
+
+	private static class SecureRandomSampler
+		implements ISampler
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private SecureRandomSampler()
+		{
+			secureRandom = new SecureRandom();
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : ISampler interface
+	////////////////////////////////////////////////////////////////////
+
+		public int getSamples(int[] samples)
+		{
+			byte[] data = new byte[2 * NUM_SECURE_RANDOM_SAMPLES];
+			secureRandom.nextBytes(data);
+			for (int i = 0; i < NUM_SECURE_RANDOM_SAMPLES; i++)
+				samples[i] = (data[2 * i] & 0xFF) << 8 | data[2 * i + 1] & 0xFF;
+			Arrays.fill(data, (byte)0);
+			return NUM_SECURE_RANDOM_SAMPLES;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance fields
+	////////////////////////////////////////////////////////////////////
+
+		private	SecureRandom	secureRandom;
+
+	}
+
+	//==================================================================
+
+
+	// COUNTER SAMPLER CLASS
+
+
+	/**
+	 * This class implements a sampler for the counters entropy source.  There is a sample for each readable file of
+	 * system counters in the {@code /proc} file system: it is the CRC-32 of the content of the file combined with the
+	 * time (in nanoseconds) that was taken to read the file.
+	 */
+
+	private static class CounterSampler
+		implements ISampler
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private CounterSampler()
+		{
+			locations = new ArrayList<>();
+			for (String pathname : COUNTER_PATHNAMES)
+			{
+				try
+				{
+					Path location = Paths.get(pathname);
+					if (Files.isReadable(location))
+						locations.add(location);
+				}
+				catch (SecurityException e)
+				{
+					// ignore
+				}
+			}
+			checksum = new CRC32();
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : ISampler interface
+	////////////////////////////////////////////////////////////////////
+
+		public int getSamples(int[] samples)
+		{
+			int numSamples = 0;
+			for (Path location : locations)
+			{
+				try
+				{
+					long startTime = System.nanoTime();
+					byte[] data = Files.readAllBytes(location);
+					long time = System.nanoTime() - startTime;
+					checksum.reset();
+					checksum.update(data);
+					samples[numSamples++] = (int)checksum.getValue() ^ (int)time;
+				}
+				catch (IOException | SecurityException e)
+				{
+					// ignore
+				}
+			}
+			return numSamples;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance fields
+	////////////////////////////////////////////////////////////////////
+
+		private	List<Path>	locations;
+		private	CRC32		checksum;
+
+	}
+
+	//==================================================================
+
+
+	// SCHEDULER SAMPLER CLASS
+
+
+	/**
+	 * This class implements a sampler for the scheduler entropy source.  Each sample is the time (in nanoseconds) that
+	 * is taken for the current thread to yield to the thread scheduler.
+	 */
+
+	private static class SchedulerSampler
+		implements ISampler
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private SchedulerSampler()
+		{
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : ISampler interface
+	////////////////////////////////////////////////////////////////////
+
+		public int getSamples(int[] samples)
+		{
+			for (int i = 0; i < NUM_SCHEDULER_SAMPLES; i++)
+			{
+				long startTime = System.nanoTime();
+				Thread.yield();
+				samples[i] = (int)(System.nanoTime() - startTime);
+			}
+			return NUM_SCHEDULER_SAMPLES;
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
 ////////////////////////////////////////////////////////////////////////
 //  Constructors
 ////////////////////////////////////////////////////////////////////////
@@ -624,6 +1008,90 @@ public class EntropyAccumulator
 
 	//------------------------------------------------------------------
 
+	/**
+	 * Creates and returns a map of parameters for the four headless entropy sources, with a default bit mask for each
+	 * source and the specified interval between batches of samples.
+	 *
+	 * @param  interval  the interval (in milliseconds) between successive batches of samples of each source.
+	 * @return a map of parameters for the four headless entropy sources, with a default bit mask for each source.
+	 * @throws IllegalArgumentException
+	 *           if {@code interval} is less than 2 or greater than 1000.
+	 */
+
+	public static Map<SourceKind, SourceParams> getHeadlessSourceParams(int interval)
+	{
+		if ((interval < SourceParams.MIN_INTERVAL) || (interval > SourceParams.MAX_INTERVAL))
+			throw new IllegalArgumentException();
+
+		Map<SourceKind, SourceParams> sourceParams = new EnumMap<>(SourceKind.class);
+		for (SourceKind sourceKind : SourceKind.values())
+		{
+			if (sourceKind.headless)
+				sourceParams.put(sourceKind, new SourceParams(SourceParams.DEFAULT_BIT_MASK, interval));
+		}
+		return sourceParams;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Creates and returns a sampler for the specified kind of headless entropy source.
+	 *
+	 * @param  sourceKind  the kind of headless entropy source.
+	 * @return a sampler for {@code sourceKind}.
+	 */
+
+	private static ISampler createSampler(SourceKind sourceKind)
+	{
+		switch (sourceKind)
+		{
+			case JITTER:
+				return new JitterSampler();
+
+			case SECURE_RANDOM:
+				return new SecureRandomSampler();
+
+			case COUNTERS:
+				return new CounterSampler();
+
+			case SCHEDULER:
+				return new SchedulerSampler();
+
+			default:
+				throw new IllegalArgumentException();
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Interrupts a specified thread and waits for it to terminate.  If the current thread is interrupted while it is
+	 * waiting, it continues to wait, and its interrupt status is restored when the specified thread has terminated.
+	 *
+	 * @param thread  the thread that will be stopped.
+	 */
+
+	private static void stopThread(Thread thread)
+	{
+		thread.interrupt();
+		boolean interrupted = false;
+		while (thread.isAlive())
+		{
+			try
+			{
+				thread.join();
+			}
+			catch (InterruptedException e)
+			{
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	//------------------------------------------------------------------
+
 ////////////////////////////////////////////////////////////////////////
 //  Instance methods : AWTEventListener interface
 ////////////////////////////////////////////////////////////////////////
@@ -961,8 +1429,8 @@ public class EntropyAccumulator
 		// Set timer divisor
 		if (this.timerDivisor != timerDivisor)
 		{
-			// Stop an existing timer thread and wait for it to finish
-			stopTimer();
+			// Stop existing source threads and wait for them to finish
+			stopSourceThreads();
 
 			// Disable metrics
 			boolean metricsEnabled = (metrics != null);
@@ -1010,8 +1478,8 @@ public class EntropyAccumulator
 
 		if (changed)
 		{
-			// Stop an existing timer thread and wait for it to finish
-			stopTimer();
+			// Stop existing source threads and wait for them to finish
+			stopSourceThreads();
 
 			// Initialise object
 			init(sourceParams);
@@ -1058,9 +1526,7 @@ public class EntropyAccumulator
 
 		// Initialise instance fields
 		this.sourceParams = new EnumMap<>(sourceParams);
-		lastEventTime = new EnumMap<>(SourceKind.class);
-		for (SourceKind sourceKind : sourceParams.keySet())
-			lastEventTime.put(sourceKind, 0L);
+		lastEventTime = new long[SourceKind.values().length];
 
 		// Start timer thread
 		if (sourceParams.containsKey(SourceKind.TIMER))
@@ -1096,6 +1562,42 @@ public class EntropyAccumulator
 			timerThread.start();
 		}
 
+		// Start threads of headless sources
+		sourceThreadsRunning = true;
+		sourceThreads = new ArrayList<>();
+		for (SourceKind sourceKind : sourceParams.keySet())
+		{
+			if (sourceKind.headless)
+			{
+				SourceParams params = sourceParams.get(sourceKind);
+				ISampler sampler = createSampler(sourceKind);
+				Thread thread = DaemonThread.create(() ->
+				{
+					int[] samples = new int[MAX_NUM_SAMPLES_PER_BATCH];
+					while (sourceThreadsRunning)
+					{
+						// Put thread to sleep; sample at the minimum interval until the initial entropy has been
+						// collected
+						try
+						{
+							Thread.sleep(initialEntropyCollected ? params.interval : SourceParams.MIN_INTERVAL);
+						}
+						catch (InterruptedException e)
+						{
+							// ignore
+						}
+
+						// Add bits from batch of samples to buffer
+						int numSamples = sampler.getSamples(samples);
+						for (int i = 0; i < numSamples; i++)
+							addBits(sourceKind, samples[i], params.bitMask);
+					}
+				}, SOURCE_THREAD_NAME_PREFIX + sourceKind);
+				thread.start();
+				sourceThreads.add(thread);
+			}
+		}
+
 		// Enable metrics
 		if (metricsEnabled)
 			setMetricsEnabled(true);
@@ -1104,18 +1606,26 @@ public class EntropyAccumulator
 	//------------------------------------------------------------------
 
 	/**
-	 * Stops the timer thread.
+	 * Stops the timer thread and the threads of the headless sources, and waits for them to terminate.  Each thread
+	 * is interrupted so that it does not finish its current interval between samples.
 	 */
 
-	private void stopTimer()
+	private void stopSourceThreads()
 	{
 		if (timerThread != null)
 		{
 			timerRunning = false;
-			while (timerThread.isAlive())
-				Thread.yield();
+			stopThread(timerThread);
 			timerThread = null;
 		}
+
+		if (sourceThreads != null)
+		{
+			sourceThreadsRunning = false;
+			for (Thread thread : sourceThreads)
+				stopThread(thread);
+			sourceThreads = null;
+		}
 	}
 
 	//------------------------------------------------------------------
@@ -1132,10 +1642,10 @@ public class EntropyAccumulator
 		if (params != null)
 		{
 			long time = getHighResolutionTime();
-			long prevTime = lastEventTime.get(SOURCE_KIND);
+			long prevTime = lastEventTime[SOURCE_KIND.ordinal()];
 			if (prevTime != 0)
 				addBits(SOURCE_KIND, (int)(time - prevTime), params.bitMask);
-			lastEventTime.put(SOURCE_KIND, time);
+			lastEventTime[SOURCE_KIND.ordinal()] = time;
 		}
 	}
 
@@ -1155,11 +1665,10 @@ public class EntropyAccumulator
 		if (params != null)
 		{
 			long time = System.currentTimeMillis();
-			if (time - lastEventTime.get(SOURCE_KIND) >= params.interval)
+			if (time - lastEventTime[SOURCE_KIND.ordinal()] >= params.interval)
 			{
-				Point position = event.getLocationOnScreen();
-				addBits(SOURCE_KIND, position.x ^ position.y, params.bitMask);
-				lastEventTime.put(SOURCE_KIND, time);
+				addBits(SOURCE_KIND, event.getXOnScreen() ^ event.getYOnScreen(), params.bitMask);
+				lastEventTime[SOURCE_KIND.ordinal()] = time;
 			}
 		}
 	}
@@ -1205,6 +1714,9 @@ public class EntropyAccumulator
 								entropyConsumerIndex = 0;
 							entropyConsumers.get(entropyConsumerIndex++)
 																	.addRandomByte((byte)(bitBuffer >>> bitDataLength));
+							if (!initialEntropyCollected
+								&& (++initialEntropyLength >= INITIAL_ENTROPY_LENGTH * entropyConsumers.size()))
+								initialEntropyCollected = true;
 						}
 					}
 				}
@@ -1224,18 +1736,22 @@ public class EntropyAccumulator
 ////////////////////////////////////////////////////////////////////////
 
 	private	Map<SourceKind, SourceParams>	sourceParams;
-	private	Map<SourceKind, Long>			lastEventTime;
+	private	long[]							lastEventTime;
 	private	long							timerDivisor;
 	private	int								bitBuffer;
 	private	int								bitDataLength;
 	private	Object							lock;
 	private	boolean							timerRunning;
 	private	Thread							timerThread;
+	private	List<Thread>					sourceThreads;
 	private	List<IEntropyConsumer>			entropyConsumers;
 	private	int								entropyConsumerIndex;
 	private	Map<SourceKind, SourceMetrics>	metrics;
+	private	long							initialEntropyLength;
 
 	private volatile	boolean				timerSuspended;
+	private volatile	boolean				sourceThreadsRunning;
+	private volatile	boolean				initialEntropyCollected;
 
 }
 
@@ -20,6 +20,7 @@ package common.crypto;
 
 import java.awt.image.BufferedImage;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -28,6 +29,8 @@ import java.io.InputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 
+import java.util.zip.Deflater;
+
 import javax.imageio.ImageIO;
 
 import common.exception.AppException;
@@ -38,6 +41,7 @@ import common.exception.TempFileException;
 import common.gui.IProgressView;
 
 import common.misc.IProgressListener;
+import common.misc.PngStreamWriter;
 import common.misc.Task;
 
 //----------------------------------------------------------------------
@@ -49,7 +53,10 @@ import common.misc.Task;
 /**
  * This class adapts {@link StreamConcealer} for use with input and output streams that are opened on files.
  * <p>
- * The concealment operation of this class writes its output to PNG-format image files.
+ * The concealment operation of this class writes its output to PNG-format image files.  The rows of the output
+ * image are compressed and written as they are produced by the concealer, so the output image is not held in
+ * memory.  The output is written to a temporary file, which replaces the specified output file when the operation
+ * is complete.
  * </p>
  */
 
@@ -60,7 +67,10 @@ public class FileConcealer
 //  Constants
 ////////////////////////////////////////////////////////////////////////
 
-	private static final	String	OUTPUT_FORMAT_NAME	= "png";
+	/**
+	 * The default level of compression of the output PNG file.
+	 */
+	public static final		int	DEFAULT_PNG_COMPRESSION_LEVEL	= 4;
 
 	private static final	String	TEMP_FILE_PREFIX	= "_$_";
 
@@ -118,10 +128,7 @@ public class FileConcealer
 
 		INPUT_FORMAT_NOT_SUPPORTED
 		("The input file may not be an image file or it may be an image file whose format is not\n" +
-			"supported by this implementation of Java."),
-
-		PNG_OUTPUT_NOT_SUPPORTED
-		("This implementation of Java does not support the writing of PNG files.");
+			"supported by this implementation of Java.");
 
 	////////////////////////////////////////////////////////////////////
 	//  Constructors
@@ -204,6 +211,7 @@ public class FileConcealer
 
 	public FileConcealer()
 	{
+		pngCompressionLevel = DEFAULT_PNG_COMPRESSION_LEVEL;
 	}
 
 	//------------------------------------------------------------------
@@ -212,6 +220,40 @@ public class FileConcealer
 //  Instance methods
 ////////////////////////////////////////////////////////////////////////
 
+	/**
+	 * Returns the level of compression of the PNG files that are written by the concealment operation.
+	 *
+	 * @return the level of compression of the output PNG files.
+	 * @see    #setPngCompressionLevel(int)
+	 */
+
+	public int getPngCompressionLevel()
+	{
+		return pngCompressionLevel;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Sets the level of compression of the PNG files that are written by the concealment operation.  A lower
+	 * level reduces the time taken to write a file at the expense of its size.
+	 *
+	 * @param  level  the level of compression, from {@link Deflater#NO_COMPRESSION} (0) to {@link
+	 *                Deflater#BEST_COMPRESSION} (9).
+	 * @throws IllegalArgumentException
+	 *           if {@code level} is out of bounds.
+	 * @see    #getPngCompressionLevel()
+	 */
+
+	public void setPngCompressionLevel(int level)
+	{
+		if ((level < Deflater.NO_COMPRESSION) || (level > Deflater.BEST_COMPRESSION))
+			throw new IllegalArgumentException();
+		pngCompressionLevel = level;
+	}
+
+	//------------------------------------------------------------------
+
 	/**
 	 * Conceals the contents of a specified file (the <i>payload</i>) in an image (the <i>carrier</i>), and
 	 * writes the resulting image in PNG format to a specified file.
@@ -426,49 +468,161 @@ public class FileConcealer
 			}
 		}
 
-		// Update progress view
-		if (progressView != null)
-		{
-			progressView.setInfo(CONCEALING_STR);
-			progressView.setProgress(0, 0.0);
-		}
-
-		// Conceal data from input stream in image
-		BufferedImage outImage = null;
+		File tempFile = null;
+		OutputStream outStream = null;
+		PngStreamWriter pngWriter = null;
+		boolean oldFileDeleted = false;
 		try
 		{
-			StreamConcealer concealer = new StreamConcealer();
-			if (progressView instanceof IProgressListener)
-				concealer.addProgressListener((IProgressListener)progressView);
-			outImage = concealer.conceal(inStream, image, length, lengthEncoder, maxReplacementDepth,
-										 randomSource);
-		}
-		catch (StreamConcealer.InputException e)
-		{
-			e.setDataDescription(FILE_STR);
-			throw new FileException(e, carrierFile);
-		}
+			// Create temporary file
+			try
+			{
+				tempFile = File.createTempFile(TEMP_FILE_PREFIX, null,
+											   outFile.getAbsoluteFile().getParentFile());
+			}
+			catch (Exception e)
+			{
+				throw new AppException(ErrorId.FAILED_TO_CREATE_TEMPORARY_FILE, e);
+			}
 
-		// Update progress view
-		if (progressView != null)
-		{
-			progressView.setInfo(WRITING_STR, outFile);
-			progressView.setProgress(0, -1.0);
-		}
+			// Open output stream on temporary file
+			FileOutputStream fileOutStream = null;
+			try
+			{
+				fileOutStream = new FileOutputStream(tempFile);
+				outStream = fileOutStream;
+			}
+			catch (FileNotFoundException e)
+			{
+				throw new FileException(ErrorId.FAILED_TO_OPEN_FILE, tempFile, e);
+			}
+			catch (SecurityException e)
+			{
+				throw new FileException(ErrorId.FILE_ACCESS_NOT_PERMITTED, tempFile, e);
+			}
 
-		// Write output file
-		try
-		{
-			if (!ImageIO.write(outImage, OUTPUT_FORMAT_NAME, outFile))
-				throw new FileException(ErrorId.PNG_OUTPUT_NOT_SUPPORTED, outFile);
-		}
-		catch (SecurityException e)
-		{
-			throw new FileException(ErrorId.FILE_ACCESS_NOT_PERMITTED, outFile);
+			// Lock output file
+			try
+			{
+				if (fileOutStream.getChannel().tryLock() == null)
+					throw new FileException(ErrorId.FAILED_TO_LOCK_FILE, tempFile);
+			}
+			catch (Exception e)
+			{
+				throw new FileException(ErrorId.FAILED_TO_LOCK_FILE, tempFile, e);
+			}
+			outStream = new BufferedOutputStream(fileOutStream);
+
+			// Update progress view
+			if (progressView != null)
+			{
+				progressView.setInfo(CONCEALING_STR);
+				progressView.setProgress(0, 0.0);
+			}
+
+			// Conceal data from input stream in image, writing rows of image to PNG file
+			pngWriter = new PngStreamWriter(outStream, image.getWidth(), image.getHeight(), pngCompressionLevel);
+			try
+			{
+				StreamConcealer concealer = new StreamConcealer();
+				if (progressView instanceof IProgressListener)
+					concealer.addProgressListener((IProgressListener)progressView);
+				concealer.conceal(inStream::read, image, length, lengthEncoder, maxReplacementDepth,
+								  randomSource, pngWriter::writeRows);
+			}
+			catch (StreamConcealer.InputException e)
+			{
+				e.setDataDescription(FILE_STR);
+				throw new FileException(e, carrierFile);
+			}
+			catch (StreamConcealer.OutputException e)
+			{
+				e.setDataDescription(FILE_STR);
+				throw new FileException(e, tempFile);
+			}
+			image = null;
+
+			// Update progress view
+			if (progressView != null)
+			{
+				progressView.setInfo(WRITING_STR, outFile);
+				progressView.setProgress(0, -1.0);
+			}
+
+			// Write remaining compressed data to PNG file
+			try
+			{
+				pngWriter.finish();
+			}
+			catch (IOException e)
+			{
+				throw new FileException(ErrorId.ERROR_WRITING_FILE, tempFile, e);
+			}
+
+			// Close output file
+			try
+			{
+				outStream.close();
+				outStream = null;
+			}
+			catch (IOException e)
+			{
+				throw new FileException(ErrorId.FAILED_TO_CLOSE_FILE, tempFile, e);
+			}
+
+			// Delete any existing file
+			try
+			{
+				if (outFile.exists() && !outFile.delete())
+					throw new FileException(ErrorId.FAILED_TO_DELETE_FILE, outFile);
+				oldFileDeleted = true;
+			}
+			catch (SecurityException e)
+			{
+				throw new FileException(ErrorId.FAILED_TO_DELETE_FILE, outFile, e);
+			}
+
+			// Rename temporary file
+			try
+			{
+				if (!tempFile.renameTo(outFile))
+					throw new TempFileException(ErrorId.FAILED_TO_RENAME_FILE, outFile, tempFile);
+			}
+			catch (SecurityException e)
+			{
+				throw new TempFileException(ErrorId.FAILED_TO_RENAME_FILE, outFile, e, tempFile);
+			}
 		}
-		catch (IOException e)
+		catch (AppException e)
 		{
-			throw new FileException(ErrorId.ERROR_WRITING_FILE, outFile);
+			// Stop compression of blocks of PNG file
+			if (pngWriter != null)
+				pngWriter.abort();
+
+			// Close output file
+			try
+			{
+				if (outStream != null)
+					outStream.close();
+			}
+			catch (Exception e1)
+			{
+				// ignore
+			}
+
+			// Delete temporary file
+			try
+			{
+				if (!oldFileDeleted && (tempFile != null) && tempFile.exists())
+					tempFile.delete();
+			}
+			catch (Exception e1)
+			{
+				// ignore
+			}
+
+			// Rethrow exception
+			throw e;
 		}
 	}
 
@@ -692,6 +846,12 @@ public class FileConcealer
 
 	//------------------------------------------------------------------
 
+////////////////////////////////////////////////////////////////////////
+//  Instance fields
+////////////////////////////////////////////////////////////////////////
+
+	private	int	pngCompressionLevel;
+
 }
 
 //----------------------------------------------------------------------
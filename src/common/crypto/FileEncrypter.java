@@ -22,8 +22,32 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.InterruptedIOException;
 import java.io.IOException;
 
+import java.nio.ByteBuffer;
+
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import common.exception.AppException;
 import common.exception.FileException;
 import common.exception.TaskCancelledException;
@@ -31,8 +55,9 @@ import common.exception.TempFileException;
 
 import common.gui.IProgressView;
 
+import common.misc.DaemonThread;
 import common.misc.IProgressListener;
-import common.misc.NullOutputStream;
+import common.misc.PathnameFilter;
 import common.misc.Task;
 
 //----------------------------------------------------------------------
@@ -44,7 +69,19 @@ import common.misc.Task;
 /**
  * This class adapts {@link StreamEncrypter} for use with input and output streams that are opened on files.
  * <p>
- * Instances of this class have methods for encrypting, decrypting and validating files.
+ * Instances of this class have methods for encrypting, decrypting and validating files, and for opening a
+ * channel that decrypts a file in the {@linkplain StreamEncrypter.StreamFormat#INDEXED indexed format} on demand.
+ * </p>
+ * <p>
+ * When a large file is encrypted, decrypted or validated, the input file is read by a separate thread and
+ * the output file is written by another, so that I/O overlaps the compression and encryption that are
+ * performed by the calling thread.  The threads are linked to the calling thread by rings of large buffers,
+ * which are taken from a shared pool.  Small files are read and written directly by the calling thread.
+ * </p>
+ * <p>
+ * The files of a directory tree can be encrypted, decrypted or validated as a batch with {@link
+ * #processFiles(BatchOperation, File, File, PathnameFilter, byte[], byte[], int, IProgressListener)}, which
+ * processes several files concurrently.
  * </p>
  */
 
@@ -57,6 +94,15 @@ public class FileEncrypter
 
 	private static final	String	TEMP_FILE_PREFIX	= "_$_";
 
+	private static final	int		PIPELINE_BUFFER_SIZE		= 1 << 20;
+	private static final	int		NUM_PIPELINE_BUFFERS		= 4;
+	private static final	long	PIPELINE_THRESHOLD			= NUM_PIPELINE_BUFFERS * PIPELINE_BUFFER_SIZE;
+	private static final	int		MAX_NUM_POOLED_BUFFERS		= 4 * NUM_PIPELINE_BUFFERS;
+
+	private static final	String	READER_THREAD_NAME	= "FileEncrypter-reader";
+	private static final	String	WRITER_THREAD_NAME	= "FileEncrypter-writer";
+	private static final	String	BATCH_THREAD_NAME	= "FileEncrypter-batch";
+
 	private static final	String	FILE_STR		= "file";
 	private static final	String	ENCRYPTING_STR	= "Encrypting";
 	private static final	String	DECRYPTING_STR	= "Decrypting";
@@ -67,6 +113,42 @@ public class FileEncrypter
 ////////////////////////////////////////////////////////////////////////
 
 
+	// BATCH OPERATION
+
+
+	/**
+	 * This is an enumeration of the operations that can be applied to a batch of files with {@link
+	 * FileEncrypter#processFiles(BatchOperation, File, File, PathnameFilter, byte[], byte[], int,
+	 * IProgressListener)}.
+	 */
+
+	public enum BatchOperation
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constants
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Each file is encrypted.
+		 */
+		ENCRYPT,
+
+		/**
+		 * Each file is decrypted.
+		 */
+		DECRYPT,
+
+		/**
+		 * Each file is validated, and no output is written.
+		 */
+		VALIDATE
+
+	}
+
+	//==================================================================
+
+
 	// ERROR IDENTIFIERS
 
 
@@ -84,6 +166,9 @@ public class FileEncrypter
 		FAILED_TO_CLOSE_FILE
 		("Failed to close the file."),
 
+		FAILED_TO_WRITE_FILE
+		("Failed to write the file."),
+
 		FAILED_TO_LOCK_FILE
 		("Failed to lock the file."),
 
@@ -106,7 +191,19 @@ public class FileEncrypter
 		("Failed to set the timestamp of the file."),
 
 		FILE_IS_TOO_SHORT
-		("The file is too short to have been created by this program.");
+		("The file is too short to have been created by this program."),
+
+		NOT_A_DIRECTORY
+		("The pathname does not denote a directory."),
+
+		FAILED_TO_LIST_DIRECTORY
+		("Failed to get a list of the entries in the directory."),
+
+		FAILED_TO_CREATE_DIRECTORY
+		("Failed to create the directory."),
+
+		UNEXPECTED_ERROR_PROCESSING_FILE
+		("An unexpected error occurred when processing the file.");
 
 	////////////////////////////////////////////////////////////////////
 	//  Constructors
@@ -141,148 +238,1499 @@ public class FileEncrypter
 	//==================================================================
 
 ////////////////////////////////////////////////////////////////////////
-//  Constructors
+//  Member classes : non-inner classes
 ////////////////////////////////////////////////////////////////////////
 
+
+	// BATCH RESULT CLASS
+
+
 	/**
-	 * Creates an instance of {@link FileEncrypter} with the specified kind of cipher but no KDF parameters
-	 * or header.
-	 * <p>
-	 * The absence of KDF parameters means that the {@link #encrypt(File, File, byte[], byte[])}, {@link
-	 * #decrypt(File, File, byte[])} and {@link #validate(File, byte[])} methods will not derive a
-	 * content-encryption key (CEK) from their {@code key} argument but will use the {@code key} argument
-	 * directly as the CEK.
-	 * </p>
-	 *
-	 * @param cipher  the kind of cipher that will be used by the pseudo-random number generator to generate
-	 *                a stream cipher for encryption.  {@code cipher} may be {@code null} if the encrypter
-	 *                will not be used for encryption.
+	 * This class encapsulates the outcome of applying a {@linkplain BatchOperation batch operation} to a single
+	 * file.
 	 */
 
-	public FileEncrypter(FortunaCipher cipher)
+	public static class BatchResult
 	{
-		this(cipher, null, null);
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private BatchResult(File inFile,
+							File outFile)
+		{
+			// Initialise instance fields
+			this.inFile = inFile;
+			this.outFile = outFile;
+			length = inFile.length();
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Returns the file to which the operation was applied.
+		 *
+		 * @return the file to which the operation was applied.
+		 */
+
+		public File getInFile()
+		{
+			return inFile;
+		}
+
+		//--------------------------------------------------------------
+
+		/**
+		 * Returns the file to which the output of the operation was written.
+		 *
+		 * @return the file to which the output of the operation was written, or {@code null} if the operation
+		 *         was {@linkplain BatchOperation#VALIDATE validation}.
+		 */
+
+		public File getOutFile()
+		{
+			return outFile;
+		}
+
+		//--------------------------------------------------------------
+
+		/**
+		 * Returns {@code true} if the operation was applied to the file without error.
+		 *
+		 * @return {@code true} if the operation was applied to the file without error.
+		 */
+
+		public boolean isSuccessful()
+		{
+			return (exception == null);
+		}
+
+		//--------------------------------------------------------------
+
+		/**
+		 * Returns the exception that was thrown when the operation was applied to the file.
+		 *
+		 * @return the exception that was thrown when the operation was applied to the file, or {@code null} if
+		 *         the operation was successful.
+		 */
+
+		public AppException getException()
+		{
+			return exception;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance fields
+	////////////////////////////////////////////////////////////////////
+
+		private	File			inFile;
+		private	File			outFile;
+		private	long			length;
+		private	AppException	exception;
+
 	}
 
-	//------------------------------------------------------------------
+	//==================================================================
+
+
+	// BATCH PROGRESS CLASS
+
 
 	/**
-	 * Creates an instance of {@link FileEncrypter} with the specified kind of cipher and KDF parameters but
-	 * no header.
-	 *
-	 * @param cipher     the kind of cipher that will be used by the pseudo-random number generator to
-	 *                   generate a stream cipher for encryption.  {@code cipher} may be {@code null} if the
-	 *                   encrypter will not be used for encryption.
-	 * @param kdfParams  the parameters that will be used by the key derivation function to derive the
-	 *                   content-encryption key when encrypting and decrypting a file.  If {@code kdfParams}
-	 *                   is {@code null}, the {@link #encrypt(File, File, byte[], byte[])}, {@link
-	 *                   #decrypt(File, File, byte[])} and {@link #validate(File, byte[])} methods will not
-	 *                   derive a content-encryption key (CEK) from their {@code key} argument but will use
-	 *                   the {@code key} argument directly as the CEK.
+	 * This class combines the progress of the files of a batch into the progress of the whole batch, which is
+	 * reported to a listener.  The contribution of each file is weighted by its length.  The listener is also
+	 * polled to determine whether the batch has been cancelled.
 	 */
 
-	public FileEncrypter(FortunaCipher             cipher,
-						 StreamEncrypter.KdfParams kdfParams)
+	private static class BatchProgress
 	{
-		this(cipher, kdfParams, null);
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private BatchProgress(List<BatchResult> results,
+							  IProgressListener listener)
+		{
+			// Initialise instance fields
+			this.listener = listener;
+
+			// Calculate total weight of files; add one to the length of a file so that an empty file has weight
+			for (BatchResult result : results)
+				totalWeight += (double)(result.length + 1);
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Returns {@code true} if the batch has been cancelled.  Once the listener has reported that the task
+		 * has been cancelled, it is not polled again.
+		 *
+		 * @return {@code true} if the batch has been cancelled.
+		 */
+
+		private boolean isTaskCancelled()
+		{
+			if (!cancelled && (listener != null) && listener.isTaskCancelled())
+				cancelled = true;
+			return cancelled;
+		}
+
+		//--------------------------------------------------------------
+
+		/**
+		 * Creates and returns a listener for the progress of a specified file of the batch.
+		 *
+		 * @param  result  the result of the file.
+		 * @return a listener for the progress of the file of {@code result}.
+		 */
+
+		private IProgressListener createFileListener(BatchResult result)
+		{
+			double weight = (double)(result.length + 1);
+			return new IProgressListener()
+			{
+				public void setProgress(double fractionDone)
+				{
+					update(weight * (fractionDone - this.fractionDone));
+					this.fractionDone = fractionDone;
+				}
+
+				public boolean isTaskCancelled()
+				{
+					return BatchProgress.this.isTaskCancelled();
+				}
+
+				private	double	fractionDone;
+			};
+		}
+
+		//--------------------------------------------------------------
+
+		/**
+		 * Adds a specified weight to the weight of the completed part of the batch, and reports the progress of
+		 * the batch to the listener.
+		 *
+		 * @param weight  the weight that will be added to the completed part of the batch.
+		 */
+
+		private synchronized void update(double weight)
+		{
+			doneWeight += weight;
+			if (listener != null)
+				listener.setProgress(Math.min(doneWeight / totalWeight, 1.0));
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance fields
+	////////////////////////////////////////////////////////////////////
+
+		private				IProgressListener	listener;
+		private				double				totalWeight;
+		private				double				doneWeight;
+		private	volatile	boolean				cancelled;
+
 	}
 
-	//------------------------------------------------------------------
+	//==================================================================
+
+
+	// CHANNEL READER CLASS
+
 
 	/**
-	 * Creates an instance of {@link FileEncrypter} with the specified kind of cipher and header but no KDF
-	 * parameters.
+	 * This class implements an input for a stream encrypter that reads a file channel.
 	 * <p>
-	 * The absence of KDF parameters means that the {@link #encrypt(File, File, byte[], byte[])}, {@link
-	 * #decrypt(File, File, byte[])} and {@link #validate(File, byte[])} methods will not derive a
-	 * content-encryption key (CEK) from their {@code key} argument but will use the {@code key} argument
-	 * directly as the CEK.
+	 * If the length of the data is at least {@code PIPELINE_THRESHOLD}, the channel is read in a separate
+	 * thread.  The reader thread fills buffers from a pool with large blocks of data from the channel, and passes
+	 * them to the thread that reads from this input, which returns them to the pool when it has consumed them.
+	 * Shorter data is read from the channel directly by the thread that reads from this input.
+	 * </p>
+	 */
+
+	private static class ChannelReader
+		implements StreamEncrypter.IInput
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constants
+	////////////////////////////////////////////////////////////////////
+
+		private static final	ByteBuffer	END_OF_DATA	= ByteBuffer.allocate(0);
+		private static final	ByteBuffer	STOP		= ByteBuffer.allocate(0);
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private ChannelReader(FileChannel channel,
+							  long        length)
+		{
+			// Initialise instance fields
+			this.channel = channel;
+
+			// Start reader thread if the data is long enough to benefit from it
+			if (length >= PIPELINE_THRESHOLD)
+			{
+				freeBuffers = new ArrayBlockingQueue<>(NUM_PIPELINE_BUFFERS + 1);
+				filledBuffers = new ArrayBlockingQueue<>(NUM_PIPELINE_BUFFERS + 1);
+				for (int i = 0; i < NUM_PIPELINE_BUFFERS; i++)
+					freeBuffers.add(allocateBuffer());
+
+				thread = DaemonThread.create(this::readChannel, READER_THREAD_NAME);
+				thread.start();
+			}
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : StreamEncrypter.IInput interface
+	////////////////////////////////////////////////////////////////////
+
+		public int read(byte[] buffer,
+						int    offset,
+						int    length)
+			throws IOException
+		{
+			// Read directly from channel if there is no reader thread
+			if (thread == null)
+				return channel.read(ByteBuffer.wrap(buffer, offset, length));
+
+			// Get next buffer from reader thread
+			if ((currentBuffer == null) || !currentBuffer.hasRemaining())
+			{
+				if (currentBuffer == END_OF_DATA)
+					return -1;
+				if (currentBuffer != null)
+					freeBuffers.add(currentBuffer);
+				try
+				{
+					currentBuffer = filledBuffers.take();
+				}
+				catch (InterruptedException e)
+				{
+					throw new InterruptedIOException();
+				}
+				if (currentBuffer == END_OF_DATA)
+				{
+					if (exception != null)
+						throw exception;
+					return -1;
+				}
+			}
+
+			// Copy data from buffer
+			int readLength = Math.min(length, currentBuffer.remaining());
+			currentBuffer.get(buffer, offset, readLength);
+			return readLength;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Stops the reader thread, if there is one, waits for it to terminate and returns its buffers to the
+		 * pool.  The thread is not interrupted, because interrupting a thread that is blocked in an I/O operation
+		 * on the channel would close the channel.
+		 */
+
+		private void close()
+		{
+			if ((thread != null) && !stopped)
+			{
+				// Stop reader thread
+				stopped = true;
+				freeBuffers.add(STOP);
+				awaitTermination(thread);
+
+				// Return buffers to pool
+				releaseBuffer(currentBuffer);
+				currentBuffer = null;
+				for (ByteBuffer buffer : freeBuffers)
+					releaseBuffer(buffer);
+				freeBuffers.clear();
+				for (ByteBuffer buffer : filledBuffers)
+					releaseBuffer(buffer);
+				filledBuffers.clear();
+			}
+		}
+
+		//--------------------------------------------------------------
+
+		/**
+		 * Reads the channel into buffers until the end of the channel is reached, an error occurs or the
+		 * reader is closed.  A buffer that this thread holds when it stops is put back in the queue of free
+		 * buffers, from which {@link #close()} returns it to the pool.  This method is executed by the reader
+		 * thread.
+		 */
+
+		private void readChannel()
+		{
+			ByteBuffer buffer = null;
+			try
+			{
+				while (true)
+				{
+					// Get free buffer; stop if reader has been closed
+					buffer = freeBuffers.take();
+					if (stopped)
+						return;
+
+					// Fill buffer
+					buffer.clear();
+					boolean endOfData = false;
+					while (buffer.hasRemaining())
+					{
+						if (channel.read(buffer) < 0)
+						{
+							endOfData = true;
+							break;
+						}
+					}
+
+					// Pass buffer to consumer
+					buffer.flip();
+					if (buffer.hasRemaining())
+						filledBuffers.put(buffer);
+					else
+						freeBuffers.put(buffer);
+					buffer = null;
+					if (endOfData)
+						break;
+				}
+			}
+			catch (InterruptedException e)
+			{
+				return;
+			}
+			catch (IOException e)
+			{
+				exception = e;
+			}
+			finally
+			{
+				// Put back any buffer that was not passed on
+				if (buffer != null)
+					freeBuffers.add(buffer);
+			}
+
+			// Signal end of data
+			filledBuffers.add(END_OF_DATA);
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance fields
+	////////////////////////////////////////////////////////////////////
+
+		private				FileChannel					channel;
+		private				BlockingQueue<ByteBuffer>	freeBuffers;
+		private				BlockingQueue<ByteBuffer>	filledBuffers;
+		private				ByteBuffer					currentBuffer;
+		private				Thread						thread;
+		private	volatile	boolean						stopped;
+		private	volatile	IOException					exception;
+
+	}
+
+	//==================================================================
+
+
+	// CHANNEL WRITER CLASS
+
+
+	/**
+	 * This class implements an output for a stream encrypter that writes to a file channel.
+	 * <p>
+	 * If the expected length of the data is at least {@code PIPELINE_THRESHOLD}, the channel is written in a
+	 * separate thread.  Data that is written to this output is accumulated in a buffer from a pool; when the
+	 * buffer is full, it is passed to the writer thread, which writes it to the channel and returns it to the
+	 * pool.  Shorter data is written to the channel directly by the thread that writes to this output.
 	 * </p>
-	 *
-	 * @param cipher  the kind of cipher that will be used by the pseudo-random number generator to generate
-	 *                a stream cipher for encryption.  {@code cipher} may be {@code null} if the encrypter
-	 *                will not be used for encryption.
-	 * @param header  the header that will be included in the output file, in the case of encryption, or
-	 *                that will be used to check the identifier and version number against, in the case of
-	 *                decryption.
 	 */
 
-	public FileEncrypter(FortunaCipher          cipher,
-						 StreamEncrypter.Header header)
-	{
-		this(cipher, null, header);
+	private static class ChannelWriter
+		implements StreamEncrypter.IOutput
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constants
+	////////////////////////////////////////////////////////////////////
+
+		private static final	ByteBuffer	END_OF_DATA	= ByteBuffer.allocate(0);
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private ChannelWriter(FileChannel channel,
+							  long        length)
+		{
+			// Initialise instance fields
+			this.channel = channel;
+
+			// Start writer thread if the data is long enough to benefit from it
+			if (length >= PIPELINE_THRESHOLD)
+			{
+				freeBuffers = new ArrayBlockingQueue<>(NUM_PIPELINE_BUFFERS);
+				filledBuffers = new ArrayBlockingQueue<>(NUM_PIPELINE_BUFFERS + 1);
+				for (int i = 0; i < NUM_PIPELINE_BUFFERS; i++)
+					freeBuffers.add(allocateBuffer());
+
+				thread = DaemonThread.create(this::writeChannel, WRITER_THREAD_NAME);
+				thread.start();
+			}
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : StreamEncrypter.IOutput interface
+	////////////////////////////////////////////////////////////////////
+
+		public void write(byte[] data,
+						  int    offset,
+						  int    length)
+			throws IOException
+		{
+			// Write directly to channel if there is no writer thread
+			if (thread == null)
+			{
+				ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+				while (buffer.hasRemaining())
+					channel.write(buffer);
+				return;
+			}
+
+			// Pass data to writer thread
+			try
+			{
+				while (length > 0)
+				{
+					// Test for error in writer thread
+					if (exception != null)
+						throw exception;
+
+					// Get free buffer
+					if (currentBuffer == null)
+						currentBuffer = freeBuffers.take();
+
+					// Copy data to buffer
+					int writeLength = Math.min(length, currentBuffer.remaining());
+					currentBuffer.put(data, offset, writeLength);
+					offset += writeLength;
+					length -= writeLength;
+
+					// Pass full buffer to writer thread
+					if (!currentBuffer.hasRemaining())
+					{
+						currentBuffer.flip();
+						filledBuffers.put(currentBuffer);
+						currentBuffer = null;
+					}
+				}
+			}
+			catch (InterruptedException e)
+			{
+				throw new InterruptedIOException();
+			}
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Passes any buffered data to the writer thread, if there is one, waits for the thread to write it and
+		 * terminate, and returns the buffers of the thread to the pool.  The wait is not interruptible, so that
+		 * no buffered data is lost.
+		 *
+		 * @throws IOException
+		 *           if an error occurred when writing to the channel.
+		 */
+
+		private void close()
+			throws IOException
+		{
+			if ((thread != null) && !closed)
+			{
+				// Pass remaining data and end of data to writer thread; the queue can hold every buffer
+				closed = true;
+				if (currentBuffer != null)
+				{
+					currentBuffer.flip();
+					filledBuffers.add(currentBuffer);
+					currentBuffer = null;
+				}
+				filledBuffers.add(END_OF_DATA);
+
+				// Wait for writer thread to terminate
+				awaitTermination(thread);
+				releaseBuffers();
+
+				// Report any error
+				if (exception != null)
+					throw exception;
+			}
+		}
+
+		//--------------------------------------------------------------
+
+		/**
+		 * Stops the writer thread, if there is one, without writing any buffered data, waits for it to terminate
+		 * and returns its buffers to the pool.  This method has no effect if the writer has already been closed.
+		 * The thread is not interrupted, because interrupting a thread that is blocked in an I/O operation on the
+		 * channel would close the channel.
+		 */
+
+		private void abort()
+		{
+			if ((thread != null) && !closed)
+			{
+				closed = true;
+				aborted = true;
+				filledBuffers.add(END_OF_DATA);
+				awaitTermination(thread);
+				releaseBuffers();
+			}
+		}
+
+		//--------------------------------------------------------------
+
+		/**
+		 * Returns the buffers of the writer thread to the pool.  This method must be called only after the writer
+		 * thread has terminated.
+		 */
+
+		private void releaseBuffers()
+		{
+			releaseBuffer(currentBuffer);
+			currentBuffer = null;
+			for (ByteBuffer buffer : freeBuffers)
+				releaseBuffer(buffer);
+			freeBuffers.clear();
+			for (ByteBuffer buffer : filledBuffers)
+				releaseBuffer(buffer);
+			filledBuffers.clear();
+		}
+
+		//--------------------------------------------------------------
+
+		/**
+		 * Writes buffers to the channel until the end of the data is signalled.  After an error or after the
+		 * writer has been aborted, buffers are returned to the pool without being written.  This method is
+		 * executed by the writer thread.
+		 */
+
+		private void writeChannel()
+		{
+			try
+			{
+				while (true)
+				{
+					// Get filled buffer
+					ByteBuffer buffer = filledBuffers.take();
+					if (buffer == END_OF_DATA)
+						break;
+
+					// Write buffer to channel
+					if ((exception == null) && !aborted)
+					{
+						try
+						{
+							while (buffer.hasRemaining())
+								channel.write(buffer);
+						}
+						catch (IOException e)
+						{
+							exception = e;
+						}
+					}
+
+					// Return buffer to pool
+					buffer.clear();
+					freeBuffers.put(buffer);
+				}
+			}
+			catch (InterruptedException e)
+			{
+				// ignore
+			}
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance fields
+	////////////////////////////////////////////////////////////////////
+
+		private				FileChannel					channel;
+		private				BlockingQueue<ByteBuffer>	freeBuffers;
+		private				BlockingQueue<ByteBuffer>	filledBuffers;
+		private				ByteBuffer					currentBuffer;
+		private				Thread						thread;
+		private				boolean						closed;
+		private	volatile	boolean						aborted;
+		private	volatile	IOException					exception;
+
+	}
+
+	//==================================================================
+
+
+	// DECRYPTING CHANNEL CLASS
+
+
+	/**
+	 * This class implements a read-only {@link SeekableByteChannel} on the plaintext of an encrypted file.  The
+	 * data is decrypted by a {@link StreamEncrypter.RandomAccessDecrypter}.
+	 */
+
+	private static class DecryptingChannel
+		implements SeekableByteChannel
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private DecryptingChannel(FileInputStream                       inStream,
+								  StreamEncrypter.RandomAccessDecrypter decrypter)
+		{
+			this.inStream = inStream;
+			this.decrypter = decrypter;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : SeekableByteChannel interface
+	////////////////////////////////////////////////////////////////////
+
+		public synchronized boolean isOpen()
+		{
+			return (inStream != null);
+		}
+
+		//--------------------------------------------------------------
+
+		public synchronized void close()
+			throws IOException
+		{
+			if (inStream != null)
+			{
+				inStream.close();
+				inStream = null;
+			}
+		}
+
+		//--------------------------------------------------------------
+
+		public synchronized int read(ByteBuffer buffer)
+			throws IOException
+		{
+			// Test whether channel is open
+			testOpen();
+
+			// Read data from decrypter
+			int length = 0;
+			try
+			{
+				if (buffer.hasArray())
+				{
+					length = decrypter.read(position, buffer.array(), buffer.arrayOffset() + buffer.position(),
+											buffer.remaining());
+					if (length > 0)
+						buffer.position(buffer.position() + length);
+				}
+				else
+				{
+					byte[] data = new byte[Math.min(buffer.remaining(), decrypter.getSegmentSize())];
+					length = decrypter.read(position, data, 0, data.length);
+					if (length > 0)
+						buffer.put(data, 0, length);
+				}
+			}
+			catch (StreamEncrypter.InputException e)
+			{
+				e.setDataDescription(FILE_STR);
+				throw new IOException(e.toString(), e);
+			}
+
+			// Increment position
+			if (length > 0)
+				position += length;
+
+			return length;
+		}
+
+		//--------------------------------------------------------------
+
+		public int write(ByteBuffer buffer)
+		{
+			throw new NonWritableChannelException();
+		}
+
+		//--------------------------------------------------------------
+
+		public synchronized long position()
+			throws IOException
+		{
+			testOpen();
+			return position;
+		}
+
+		//--------------------------------------------------------------
+
+		public synchronized SeekableByteChannel position(long position)
+			throws IOException
+		{
+			testOpen();
+			if (position < 0)
+				throw new IllegalArgumentException();
+			this.position = position;
+			return this;
+		}
+
+		//--------------------------------------------------------------
+
+		public synchronized long size()
+			throws IOException
+		{
+			testOpen();
+			return decrypter.getLength();
+		}
+
+		//--------------------------------------------------------------
+
+		public SeekableByteChannel truncate(long size)
+		{
+			throw new NonWritableChannelException();
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		private void testOpen()
+			throws ClosedChannelException
+		{
+			if (inStream == null)
+				throw new ClosedChannelException();
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance fields
+	////////////////////////////////////////////////////////////////////
+
+		private	FileInputStream							inStream;
+		private	StreamEncrypter.RandomAccessDecrypter	decrypter;
+		private	long									position;
+
+	}
+
+	//==================================================================
+
+////////////////////////////////////////////////////////////////////////
+//  Constructors
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Creates an instance of {@link FileEncrypter} with the specified kind of cipher but no KDF parameters
+	 * or header.
+	 * <p>
+	 * The absence of KDF parameters means that the {@link #encrypt(File, File, byte[], byte[])}, {@link
+	 * #decrypt(File, File, byte[])} and {@link #validate(File, byte[])} methods will not derive a
+	 * content-encryption key (CEK) from their {@code key} argument but will use the {@code key} argument
+	 * directly as the CEK.
+	 * </p>
+	 *
+	 * @param cipher  the kind of cipher that will be used by the pseudo-random number generator to generate
+	 *                a stream cipher for encryption.  {@code cipher} may be {@code null} if the encrypter
+	 *                will not be used for encryption.
+	 */
+
+	public FileEncrypter(FortunaCipher cipher)
+	{
+		this(cipher, null, null);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Creates an instance of {@link FileEncrypter} with the specified kind of cipher and KDF parameters but
+	 * no header.
+	 *
+	 * @param cipher     the kind of cipher that will be used by the pseudo-random number generator to
+	 *                   generate a stream cipher for encryption.  {@code cipher} may be {@code null} if the
+	 *                   encrypter will not be used for encryption.
+	 * @param kdfParams  the parameters that will be used by the key derivation function to derive the
+	 *                   content-encryption key when encrypting and decrypting a file.  If {@code kdfParams}
+	 *                   is {@code null}, the {@link #encrypt(File, File, byte[], byte[])}, {@link
+	 *                   #decrypt(File, File, byte[])} and {@link #validate(File, byte[])} methods will not
+	 *                   derive a content-encryption key (CEK) from their {@code key} argument but will use
+	 *                   the {@code key} argument directly as the CEK.
+	 */
+
+	public FileEncrypter(FortunaCipher             cipher,
+						 StreamEncrypter.KdfParams kdfParams)
+	{
+		this(cipher, kdfParams, null);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Creates an instance of {@link FileEncrypter} with the specified kind of cipher and header but no KDF
+	 * parameters.
+	 * <p>
+	 * The absence of KDF parameters means that the {@link #encrypt(File, File, byte[], byte[])}, {@link
+	 * #decrypt(File, File, byte[])} and {@link #validate(File, byte[])} methods will not derive a
+	 * content-encryption key (CEK) from their {@code key} argument but will use the {@code key} argument
+	 * directly as the CEK.
+	 * </p>
+	 *
+	 * @param cipher  the kind of cipher that will be used by the pseudo-random number generator to generate
+	 *                a stream cipher for encryption.  {@code cipher} may be {@code null} if the encrypter
+	 *                will not be used for encryption.
+	 * @param header  the header that will be included in the output file, in the case of encryption, or
+	 *                that will be used to check the identifier and version number against, in the case of
+	 *                decryption.
+	 */
+
+	public FileEncrypter(FortunaCipher          cipher,
+						 StreamEncrypter.Header header)
+	{
+		this(cipher, null, header);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Creates an instance of {@link FileEncrypter} with the specified kind of cipher, KDF parameters and
+	 * header.
+	 *
+	 * @param cipher     the kind of cipher that will be used by the pseudo-random number generator to
+	 *                   generate a stream cipher for encryption.  {@code cipher} may be {@code null} if the
+	 *                   encrypter will not be used for encryption.
+	 * @param kdfParams  the parameters that will be used by the key derivation function to derive the
+	 *                   content-encryption key when encrypting and decrypting a file.  If {@code kdfParams}
+	 *                   is {@code null}, the {@link #encrypt(File, File, byte[], byte[])}, {@link
+	 *                   #decrypt(File, File, byte[])} and {@link #validate(File, byte[])} methods will not
+	 *                   derive a content-encryption key (CEK) from their {@code key} argument but will use
+	 *                   the {@code key} argument directly as the CEK.
+	 * @param header     the header that will be included in the output file, in the case of encryption, or
+	 *                   that will be used to check the identifier and version number against, in the case
+	 *                   of decryption.
+	 */
+
+	public FileEncrypter(FortunaCipher             cipher,
+						 StreamEncrypter.KdfParams kdfParams,
+						 StreamEncrypter.Header    header)
+	{
+		this.cipher = cipher;
+		if (kdfParams != null)
+			this.kdfParams = kdfParams.clone();
+		this.header = header;
+		streamFormat = StreamEncrypter.StreamFormat.BASIC;
+		compression = StreamEncrypter.Compression.DEFLATE;
+		storeIncompressible = true;
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Returns a direct buffer for a channel reader or writer, taking it from the pool of buffers if the pool
+	 * is not empty.
+	 *
+	 * @return a direct buffer of {@link #PIPELINE_BUFFER_SIZE} bytes.
+	 */
+
+	private static ByteBuffer allocateBuffer()
+	{
+		ByteBuffer buffer = bufferPool.poll();
+		return (buffer == null) ? ByteBuffer.allocateDirect(PIPELINE_BUFFER_SIZE) : buffer;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns a buffer of a channel reader or writer to the pool of buffers.  The buffer is discarded if the
+	 * pool is full.  Buffers that were not obtained from {@link #allocateBuffer()}, such as the markers that
+	 * signal the end of data, are ignored.
+	 *
+	 * @param buffer  the buffer that will be returned to the pool; may be {@code null}.
+	 */
+
+	private static void releaseBuffer(ByteBuffer buffer)
+	{
+		if ((buffer != null) && buffer.isDirect())
+		{
+			buffer.clear();
+			bufferPool.offer(buffer);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Waits for a specified thread to terminate.  If the current thread is interrupted while it is waiting, it
+	 * continues to wait, and its interrupt status is restored when the specified thread has terminated.
+	 *
+	 * @param thread  the thread whose termination will be awaited.
+	 */
+
+	private static void awaitTermination(Thread thread)
+	{
+		boolean interrupted = false;
+		while (thread.isAlive())
+		{
+			try
+			{
+				thread.join();
+			}
+			catch (InterruptedException e)
+			{
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Returns the format of the payload of a file that is encrypted by this encrypter.
+	 *
+	 * @return the format of the payload of an encrypted file.
+	 * @see    #setStreamFormat(StreamEncrypter.StreamFormat)
+	 */
+
+	public StreamEncrypter.StreamFormat getStreamFormat()
+	{
+		return streamFormat;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Sets the format of the payload of a file that is encrypted by this encrypter.  The {@linkplain
+	 * StreamEncrypter.StreamFormat#SEGMENTED segmented format}, which allows a file to be encrypted and decrypted
+	 * by several threads, requires this encrypter to have a header.
+	 *
+	 * @param  format  the format of the payload of an encrypted file.
+	 * @throws IllegalArgumentException
+	 *           if {@code format} is {@code null}.
+	 * @see    #getStreamFormat()
+	 * @see    StreamEncrypter#setStreamFormat(StreamEncrypter.StreamFormat)
+	 */
+
+	public void setStreamFormat(StreamEncrypter.StreamFormat format)
+	{
+		if (format == null)
+			throw new IllegalArgumentException();
+		streamFormat = format;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns the number of worker threads that encrypt and decrypt the segments of a file in the segmented
+	 * format.
+	 *
+	 * @return the number of worker threads, or 0 if the number of threads is the number of available processors.
+	 * @see    #setNumThreads(int)
+	 */
+
+	public int getNumThreads()
+	{
+		return numThreads;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Sets the number of worker threads that encrypt and decrypt the segments of a file in the segmented format.
+	 *
+	 * @param  numThreads  the number of worker threads, or 0 for the number of available processors.
+	 * @throws IllegalArgumentException
+	 *           if {@code numThreads} is negative or greater than {@link StreamEncrypter#MAX_NUM_THREADS}.
+	 * @see    #getNumThreads()
+	 * @see    StreamEncrypter#setNumThreads(int)
+	 */
+
+	public void setNumThreads(int numThreads)
+	{
+		if ((numThreads < 0) || (numThreads > StreamEncrypter.MAX_NUM_THREADS))
+			throw new IllegalArgumentException();
+		this.numThreads = numThreads;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns the algorithm with which the payload of a file is compressed before encryption.
+	 *
+	 * @return the algorithm with which the payload of a file is compressed before encryption.
+	 * @see    #setCompression(StreamEncrypter.Compression)
+	 */
+
+	public StreamEncrypter.Compression getCompression()
+	{
+		return compression;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Sets the algorithm with which the payload of a file will be compressed before encryption.
+	 *
+	 * @param  compression  the compression algorithm.
+	 * @throws IllegalArgumentException
+	 *           if {@code compression} is {@code null}.
+	 * @see    #getCompression()
+	 * @see    StreamEncrypter#setCompression(StreamEncrypter.Compression)
+	 */
+
+	public void setCompression(StreamEncrypter.Compression compression)
+	{
+		if (compression == null)
+			throw new IllegalArgumentException();
+		this.compression = compression;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns {@code true} if data that is unlikely to be compressible is stored without compression.
+	 *
+	 * @return {@code true} if data that is unlikely to be compressible is stored without compression.
+	 * @see    #setStoreIncompressible(boolean)
+	 */
+
+	public boolean isStoreIncompressible()
+	{
+		return storeIncompressible;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Sets whether data that is unlikely to be compressible will be stored without compression.
+	 *
+	 * @param store  if {@code true}, data that is unlikely to be compressible will be stored without compression.
+	 * @see   #isStoreIncompressible()
+	 * @see   StreamEncrypter#setStoreIncompressible(boolean)
+	 */
+
+	public void setStoreIncompressible(boolean store)
+	{
+		storeIncompressible = store;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Encrypts data from a specified input file and writes the resulting ciphertext to the specified output
+	 * file.
+	 *
+	 * @param  inFile     the file from which the data to be encrypted will be read.
+	 * @param  outFile    the file to which the ciphertext will be written.
+	 * @param  key        if key derivation function (KDF) parameters were specified when this object was
+	 *                    created, the key from which the content-encryption key (CEK) will be derived;
+	 *                    otherwise, the key that will be used as the CEK.
+	 * @param  randomKey  the key that will be used as a seed for the pseudo-random number generator that
+	 *                    will generate the random data for the salt of the KDF and for padding.
+	 * @throws AppException
+	 *           if an error occurred during the encryption operation.
+	 * @throws TaskCancelledException
+	 *           if the encryption operation was cancelled by the user.
+	 * @see    #decrypt(File, File, byte[])
+	 * @see    #validate(File, byte[])
+	 */
+
+	public void encrypt(File   inFile,
+						File   outFile,
+						byte[] key,
+						byte[] randomKey)
+		throws AppException, TaskCancelledException
+	{
+		// Reset progress in progress view
+		IProgressView progressView = Task.getProgressView();
+		if (progressView != null)
+		{
+			progressView.setInfo(ENCRYPTING_STR, inFile);
+			progressView.setProgress(0, 0.0);
+			progressView.waitForIdle();
+		}
+
+		// Encrypt file
+		encrypt(inFile, outFile, key, randomKey,
+				(progressView instanceof IProgressListener) ? (IProgressListener)progressView : null);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Decrypts data from a specified input file and writes the resulting plaintext to a specified output
+	 * file.
+	 *
+	 * @param  inFile   the file from which the data to be decrypted will be read.
+	 * @param  outFile  the file to which the plaintext will be written.
+	 * @param  key      if key derivation function (KDF) parameters were specified when this object was
+	 *                  created, the key from which the content-encryption key (CEK) will be derived;
+	 *                  otherwise, the key that will be used as the CEK.
+	 * @throws AppException
+	 *           if an error occurred during the decryption operation.
+	 * @throws TaskCancelledException
+	 *           if the decryption operation was cancelled by the user.
+	 * @see    #encrypt(File, File, byte[], byte[])
+	 * @see    #validate(File, byte[])
+	 */
+
+	public void decrypt(File   inFile,
+						File   outFile,
+						byte[] key)
+		throws AppException, TaskCancelledException
+	{
+		// Reset progress in progress view
+		IProgressView progressView = Task.getProgressView();
+		if (progressView != null)
+		{
+			progressView.setInfo(DECRYPTING_STR, inFile);
+			progressView.setProgress(0, 0.0);
+			progressView.waitForIdle();
+		}
+
+		// Decrypt file
+		decrypt(inFile, outFile, key,
+				(progressView instanceof IProgressListener) ? (IProgressListener)progressView : null);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Validates data from a specified input file by decrypting it and discarding the resulting plaintext.
+	 *
+	 * @param  file  the file from which the data to be validated will be read.
+	 * @param  key   if key derivation function (KDF) parameters were specified when this object was
+	 *               created, the key from which the content-encryption key (CEK) will be derived;
+	 *               otherwise, the key that will be used as the CEK.
+	 * @throws AppException
+	 *           if an error occurred during the decryption operation.
+	 * @throws TaskCancelledException
+	 *           if the decryption operation was cancelled by the user.
+	 * @see    #encrypt(File, File, byte[], byte[])
+	 * @see    #decrypt(File, File, byte[])
+	 */
+
+	public void validate(File   file,
+						 byte[] key)
+		throws AppException, TaskCancelledException
+	{
+		// Reset progress in progress view
+		IProgressView progressView = Task.getProgressView();
+		if (progressView != null)
+		{
+			progressView.setInfo(VALIDATING_STR, file);
+			progressView.setProgress(0, 0.0);
+			progressView.waitForIdle();
+		}
+
+		// Validate file
+		validate(file, key,
+				 (progressView instanceof IProgressListener) ? (IProgressListener)progressView : null);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Applies a specified operation to each file in a directory tree that is accepted by a specified filter.
+	 * The files are processed concurrently by a pool of worker threads, and an error in one file does not
+	 * prevent the other files from being processed; the outcome for each file is returned in a list, in the
+	 * order in which the files were found.
+	 * <p>
+	 * When files are encrypted or decrypted, the output file of each input file has the same pathname relative
+	 * to the output directory as the input file has relative to the input directory; subdirectories of the
+	 * output directory are created as necessary.  If the output directory is the input directory, each file is
+	 * replaced.
+	 * </p>
+	 * <p>
+	 * When files are encrypted, a seed for each file is generated from {@code randomKey}, so that no two files
+	 * share a salt or padding.  The content-encryption key is derived separately for each file: because it
+	 * seeds the keystream of the file directly, a key that was shared by several files would expose their
+	 * plaintexts.
+	 * </p>
+	 * <p>
+	 * The progress of the whole batch is reported to {@code progressListener}, with each file weighted by its
+	 * length.  If the listener reports that the task has been cancelled, files that are being processed are
+	 * abandoned, no further files are processed and a {@link TaskCancelledException} is thrown.
+	 * </p>
+	 *
+	 * @param  operation         the operation that will be applied to each file.
+	 * @param  inDirectory       the root of the directory tree whose files will be processed.
+	 * @param  outDirectory      the directory to which output files will be written.  This is ignored if
+	 *                           {@code operation} is {@link BatchOperation#VALIDATE VALIDATE}.
+	 * @param  filter            the filter that selects the files that will be processed, or {@code null} if
+	 *                           all files will be processed.
+	 * @param  key               if key derivation function (KDF) parameters were specified when this object
+	 *                           was created, the key from which the content-encryption key (CEK) of each
+	 *                           file will be derived; otherwise, the key that will be used as the CEK.
+	 * @param  randomKey         the key from which the seed of the pseudo-random number generator of each
+	 *                           file will be generated when files are encrypted.  This is ignored for other
+	 *                           operations.
+	 * @param  numWorkers        the number of files that will be processed concurrently.
+	 * @param  progressListener  the listener to which the progress of the batch will be reported, which may be
+	 *                           {@code null}.
+	 * @return a list of the outcomes of the operation for each file that was found.
+	 * @throws IllegalArgumentException
+	 *           if {@code operation}, {@code inDirectory} or {@code key} is {@code null}, if {@code
+	 *           outDirectory} is {@code null} and {@code operation} is not {@code VALIDATE}, if {@code
+	 *           randomKey} is {@code null} and {@code operation} is {@code ENCRYPT}, or if {@code numWorkers}
+	 *           is less than 1.
+	 * @throws AppException
+	 *           if {@code inDirectory} is not a directory or the entries of a directory could not be listed.
+	 * @throws TaskCancelledException
+	 *           if the batch was cancelled.
+	 */
+
+	public List<BatchResult> processFiles(BatchOperation    operation,
+										  File              inDirectory,
+										  File              outDirectory,
+										  PathnameFilter    filter,
+										  byte[]            key,
+										  byte[]            randomKey,
+										  int               numWorkers,
+										  IProgressListener progressListener)
+		throws AppException, TaskCancelledException
+	{
+		// Validate arguments
+		if ((operation == null) || (inDirectory == null) || (key == null))
+			throw new IllegalArgumentException();
+		if ((operation != BatchOperation.VALIDATE) && (outDirectory == null))
+			throw new IllegalArgumentException();
+		if ((operation == BatchOperation.ENCRYPT) && (randomKey == null))
+			throw new IllegalArgumentException();
+		if (numWorkers < 1)
+			throw new IllegalArgumentException();
+
+		// Test input directory
+		if (!inDirectory.isDirectory())
+			throw new FileException(ErrorId.NOT_A_DIRECTORY, inDirectory);
+
+		// Find files
+		List<File> files = new ArrayList<>();
+		findFiles(inDirectory, getRealPath(inDirectory), filter, new HashSet<>(), files);
+
+		// Create results
+		List<BatchResult> results = new ArrayList<>(files.size());
+		for (File file : files)
+		{
+			File outFile = null;
+			if (operation != BatchOperation.VALIDATE)
+				outFile = new File(outDirectory, inDirectory.toPath().relativize(file.toPath()).toString());
+			results.add(new BatchResult(file, outFile));
+		}
+
+		// Process files
+		BatchProgress batchProgress = new BatchProgress(results, progressListener);
+		Fortuna prng = (operation == BatchOperation.ENCRYPT) ? cipher.createPrng(randomKey) : null;
+		ExecutorService executor = Executors.newFixedThreadPool(numWorkers, runnable ->
+				DaemonThread.create(runnable, BATCH_THREAD_NAME));
+		List<Future<?>> futures = new ArrayList<>();
+		try
+		{
+			// Submit a task for each file
+			for (BatchResult result : results)
+			{
+				byte[] fileRandomKey = (prng == null) ? null : prng.getRandomBytes(randomKey.length);
+				futures.add(executor.submit(() ->
+						processFile(operation, result, key, fileRandomKey, batchProgress)));
+			}
+
+			// Wait for tasks to finish; record an unexpected failure of a task in the result of its file
+			for (int i = 0; i < futures.size(); i++)
+			{
+				try
+				{
+					futures.get(i).get();
+				}
+				catch (ExecutionException e)
+				{
+					BatchResult result = results.get(i);
+					result.exception = new FileException(ErrorId.UNEXPECTED_ERROR_PROCESSING_FILE, result.inFile,
+														 e.getCause());
+				}
+			}
+		}
+		catch (InterruptedException e)
+		{
+			throw new TaskCancelledException();
+		}
+		finally
+		{
+			for (Future<?> future : futures)
+				future.cancel(true);
+			executor.shutdown();
+		}
+
+		// Test whether batch was cancelled
+		if (batchProgress.isTaskCancelled())
+			throw new TaskCancelledException();
+
+		// Return results
+		return results;
 	}
 
 	//------------------------------------------------------------------
 
 	/**
-	 * Creates an instance of {@link FileEncrypter} with the specified kind of cipher, KDF parameters and
-	 * header.
+	 * Opens a read-only channel on the plaintext of a specified file that was encrypted in the {@linkplain
+	 * StreamEncrypter.StreamFormat#INDEXED indexed format}.  The file is locked for shared access until the
+	 * channel is closed.  Data that is read from the channel is decrypted on demand, one segment at a time, so
+	 * any part of the plaintext can be read without decrypting the preceding data.
+	 * <p>
+	 * Each segment is verified when it is decrypted, but the hash value of the whole file is not verified; the
+	 * file can be fully verified with {@link #validate(File, byte[])}.  An error that occurs when reading from
+	 * the channel is reported as an {@link IOException} whose cause is the original exception.
+	 * </p>
 	 *
-	 * @param cipher     the kind of cipher that will be used by the pseudo-random number generator to
-	 *                   generate a stream cipher for encryption.  {@code cipher} may be {@code null} if the
-	 *                   encrypter will not be used for encryption.
-	 * @param kdfParams  the parameters that will be used by the key derivation function to derive the
-	 *                   content-encryption key when encrypting and decrypting a file.  If {@code kdfParams}
-	 *                   is {@code null}, the {@link #encrypt(File, File, byte[], byte[])}, {@link
-	 *                   #decrypt(File, File, byte[])} and {@link #validate(File, byte[])} methods will not
-	 *                   derive a content-encryption key (CEK) from their {@code key} argument but will use
-	 *                   the {@code key} argument directly as the CEK.
-	 * @param header     the header that will be included in the output file, in the case of encryption, or
-	 *                   that will be used to check the identifier and version number against, in the case
-	 *                   of decryption.
+	 * @param  file  the encrypted file on which the channel will be opened.
+	 * @param  key   if key derivation function (KDF) parameters were specified when this object was
+	 *               created, the key from which the content-encryption key (CEK) will be derived;
+	 *               otherwise, the key that will be used as the CEK.
+	 * @return a read-only channel on the plaintext of {@code file}.
+	 * @throws AppException
+	 *           if an error occurred when opening the file, or if the file does not have an index or its index
+	 *           is invalid.
 	 */
 
-	public FileEncrypter(FortunaCipher             cipher,
-						 StreamEncrypter.KdfParams kdfParams,
-						 StreamEncrypter.Header    header)
+	public SeekableByteChannel openDecryptingChannel(File   file,
+													 byte[] key)
+		throws AppException
 	{
-		this.cipher = cipher;
-		if (kdfParams != null)
-			this.kdfParams = kdfParams.clone();
-		this.header = header;
+		FileInputStream inStream = null;
+		try
+		{
+			// Open input stream on input file
+			try
+			{
+				inStream = new FileInputStream(file);
+			}
+			catch (FileNotFoundException e)
+			{
+				throw new FileException(ErrorId.FAILED_TO_OPEN_FILE, file, e);
+			}
+			catch (SecurityException e)
+			{
+				throw new FileException(ErrorId.FILE_ACCESS_NOT_PERMITTED, file, e);
+			}
+
+			// Lock input file
+			try
+			{
+				if (inStream.getChannel().tryLock(0, Long.MAX_VALUE, true) == null)
+					throw new FileException(ErrorId.FAILED_TO_LOCK_FILE, file);
+			}
+			catch (Exception e)
+			{
+				throw new FileException(ErrorId.FAILED_TO_LOCK_FILE, file, e);
+			}
+
+			// Create decrypter
+			StreamEncrypter decrypter = createEncrypter();
+
+			// Test length of input file
+			if (file.length() < decrypter.getMinOverheadSize())
+				throw new FileException(ErrorId.FILE_IS_TOO_SHORT, file);
+
+			// Create channel
+			try
+			{
+				return new DecryptingChannel(inStream,
+											 decrypter.createRandomAccessDecrypter(inStream.getChannel(), key));
+			}
+			catch (StreamEncrypter.InputException e)
+			{
+				e.setDataDescription(FILE_STR);
+				throw new FileException(e, file);
+			}
+		}
+		catch (AppException e)
+		{
+			// Close input file
+			try
+			{
+				if (inStream != null)
+					inStream.close();
+			}
+			catch (IOException e1)
+			{
+				// ignore
+			}
+
+			// Rethrow exception
+			throw e;
+		}
 	}
 
 	//------------------------------------------------------------------
 
-////////////////////////////////////////////////////////////////////////
-//  Instance methods
-////////////////////////////////////////////////////////////////////////
-
 	/**
-	 * Encrypts data from a specified input file and writes the resulting ciphertext to the specified output
-	 * file.
+	 * Encrypts a specified input file and writes the result to a specified output file, reporting progress to a
+	 * specified listener.
 	 *
-	 * @param  inFile     the file from which the data to be encrypted will be read.
-	 * @param  outFile    the file to which the ciphertext will be written.
-	 * @param  key        if key derivation function (KDF) parameters were specified when this object was
-	 *                    created, the key from which the content-encryption key (CEK) will be derived;
-	 *                    otherwise, the key that will be used as the CEK.
-	 * @param  randomKey  the key that will be used as a seed for the pseudo-random number generator that
-	 *                    will generate the random data for the salt of the KDF and for padding.
+	 * @param  inFile            the file whose contents will be encrypted.
+	 * @param  outFile           the file to which the encrypted data will be written.
+	 * @param  key               the key from which the CEK will be derived, or the CEK itself.
+	 * @param  randomKey         the seed of the PRNG that generates the salt and padding.
+	 * @param  progressListener  the listener to which progress will be reported, which may be {@code null}.
 	 * @throws AppException
 	 *           if an error occurred during the encryption operation.
 	 * @throws TaskCancelledException
-	 *           if the encryption operation was cancelled by the user.
-	 * @see    #decrypt(File, File, byte[])
-	 * @see    #validate(File, byte[])
+	 *           if the encryption operation was cancelled.
 	 */
 
-	public void encrypt(File   inFile,
-						File   outFile,
-						byte[] key,
-						byte[] randomKey)
+	private void encrypt(File              inFile,
+						 File              outFile,
+						 byte[]            key,
+						 byte[]            randomKey,
+						 IProgressListener progressListener)
 		throws AppException, TaskCancelledException
 	{
-		// Reset progress in progress view
-		IProgressView progressView = Task.getProgressView();
-		if (progressView != null)
-		{
-			progressView.setInfo(ENCRYPTING_STR, inFile);
-			progressView.setProgress(0, 0.0);
-			progressView.waitForIdle();
-		}
-
 		// Encrypt file
 		File tempFile = null;
 		FileInputStream inStream = null;
@@ -360,12 +1808,15 @@ public class FileEncrypter
 				throw new FileException(ErrorId.FAILED_TO_GET_TIMESTAMP, inFile);
 
 			// Encrypt file
+			ChannelReader reader = new ChannelReader(inStream.getChannel(), fileLength);
+			ChannelWriter writer = new ChannelWriter(outStream.getChannel(), fileLength);
 			try
 			{
-				StreamEncrypter encrypter = new StreamEncrypter(cipher, kdfParams, header);
-				if (progressView instanceof IProgressListener)
-					encrypter.addProgressListener((IProgressListener)progressView);
-				encrypter.encrypt(inStream, outStream, fileLength, timestamp, key, randomKey);
+				StreamEncrypter encrypter = createEncrypter();
+				if (progressListener != null)
+					encrypter.addProgressListener(progressListener);
+				encrypter.encrypt(reader, writer, fileLength, timestamp, key, randomKey);
+				closeWriter(writer, tempFile);
 			}
 			catch (StreamEncrypter.InputException e)
 			{
@@ -377,6 +1828,11 @@ public class FileEncrypter
 				e.setDataDescription(FILE_STR);
 				throw new FileException(e, tempFile);
 			}
+			finally
+			{
+				reader.close();
+				writer.abort();
+			}
 
 			// Close input file
 			try
@@ -466,36 +1922,25 @@ public class FileEncrypter
 	//------------------------------------------------------------------
 
 	/**
-	 * Decrypts data from a specified input file and writes the resulting plaintext to a specified output
-	 * file.
+	 * Decrypts a specified input file and writes the plaintext to a specified output file, reporting progress
+	 * to a specified listener.
 	 *
-	 * @param  inFile   the file from which the data to be decrypted will be read.
-	 * @param  outFile  the file to which the plaintext will be written.
-	 * @param  key      if key derivation function (KDF) parameters were specified when this object was
-	 *                  created, the key from which the content-encryption key (CEK) will be derived;
-	 *                  otherwise, the key that will be used as the CEK.
+	 * @param  inFile            the file from which the data to be decrypted will be read.
+	 * @param  outFile           the file to which the plaintext will be written.
+	 * @param  key               the key from which the CEK will be derived, or the CEK itself.
+	 * @param  progressListener  the listener to which progress will be reported, which may be {@code null}.
 	 * @throws AppException
 	 *           if an error occurred during the decryption operation.
 	 * @throws TaskCancelledException
-	 *           if the decryption operation was cancelled by the user.
-	 * @see    #encrypt(File, File, byte[], byte[])
-	 * @see    #validate(File, byte[])
+	 *           if the decryption operation was cancelled.
 	 */
 
-	public void decrypt(File   inFile,
-						File   outFile,
-						byte[] key)
+	private void decrypt(File              inFile,
+						 File              outFile,
+						 byte[]            key,
+						 IProgressListener progressListener)
 		throws AppException, TaskCancelledException
 	{
-		// Reset progress in progress view
-		IProgressView progressView = Task.getProgressView();
-		if (progressView != null)
-		{
-			progressView.setInfo(DECRYPTING_STR, inFile);
-			progressView.setProgress(0, 0.0);
-			progressView.waitForIdle();
-		}
-
 		// Decrypt file
 		File tempFile = null;
 		FileInputStream inStream = null;
@@ -565,7 +2010,7 @@ public class FileEncrypter
 			}
 
 			// Create decrypter
-			StreamEncrypter decrypter = new StreamEncrypter(cipher, kdfParams, header);
+			StreamEncrypter decrypter = createEncrypter();
 
 			// Test length of input file
 			long fileLength = inFile.length();
@@ -574,11 +2019,14 @@ public class FileEncrypter
 
 			// Decrypt file
 			long timestamp = 0;
+			ChannelReader reader = new ChannelReader(inStream.getChannel(), fileLength);
+			ChannelWriter writer = new ChannelWriter(outStream.getChannel(), fileLength);
 			try
 			{
-				if (progressView instanceof IProgressListener)
-					decrypter.addProgressListener((IProgressListener)progressView);
-				timestamp = decrypter.decrypt(inStream, outStream, fileLength, key);
+				if (progressListener != null)
+					decrypter.addProgressListener(progressListener);
+				timestamp = decrypter.decrypt(reader, writer, fileLength, key);
+				closeWriter(writer, tempFile);
 			}
 			catch (StreamEncrypter.InputException e)
 			{
@@ -590,6 +2038,11 @@ public class FileEncrypter
 				e.setDataDescription(FILE_STR);
 				throw new FileException(e, tempFile);
 			}
+			finally
+			{
+				reader.close();
+				writer.abort();
+			}
 
 			// Close input file
 			try
@@ -683,33 +2136,22 @@ public class FileEncrypter
 	//------------------------------------------------------------------
 
 	/**
-	 * Validates data from a specified input file by decrypting it and discarding the resulting plaintext.
+	 * Validates a specified encrypted file, reporting progress to a specified listener.
 	 *
-	 * @param  file  the file from which the data to be validated will be read.
-	 * @param  key   if key derivation function (KDF) parameters were specified when this object was
-	 *               created, the key from which the content-encryption key (CEK) will be derived;
-	 *               otherwise, the key that will be used as the CEK.
+	 * @param  file              the file that will be validated.
+	 * @param  key               the key from which the CEK will be derived, or the CEK itself.
+	 * @param  progressListener  the listener to which progress will be reported, which may be {@code null}.
 	 * @throws AppException
-	 *           if an error occurred during the decryption operation.
+	 *           if an error occurred during the validation.
 	 * @throws TaskCancelledException
-	 *           if the decryption operation was cancelled by the user.
-	 * @see    #encrypt(File, File, byte[], byte[])
-	 * @see    #decrypt(File, File, byte[])
+	 *           if the validation was cancelled.
 	 */
 
-	public void validate(File   file,
-						 byte[] key)
+	private void validate(File              file,
+						  byte[]            key,
+						  IProgressListener progressListener)
 		throws AppException, TaskCancelledException
 	{
-		// Reset progress in progress view
-		IProgressView progressView = Task.getProgressView();
-		if (progressView != null)
-		{
-			progressView.setInfo(VALIDATING_STR, file);
-			progressView.setProgress(0, 0.0);
-			progressView.waitForIdle();
-		}
-
 		// Decrypt file
 		FileInputStream inStream = null;
 		try
@@ -740,25 +2182,30 @@ public class FileEncrypter
 			}
 
 			// Create decrypter
-			StreamEncrypter decrypter = new StreamEncrypter(cipher, kdfParams, header);
+			StreamEncrypter decrypter = createEncrypter();
 
 			// Test length of input file
 			long fileLength = file.length();
 			if (fileLength < decrypter.getMinOverheadSize())
 				throw new FileException(ErrorId.FILE_IS_TOO_SHORT, file);
 
-			// Decrypt file
+			// Validate file
+			ChannelReader reader = new ChannelReader(inStream.getChannel(), fileLength);
 			try
 			{
-				if (progressView instanceof IProgressListener)
-					decrypter.addProgressListener((IProgressListener)progressView);
-				decrypter.decrypt(inStream, new NullOutputStream(), fileLength, key);
+				if (progressListener != null)
+					decrypter.addProgressListener(progressListener);
+				decrypter.validate(reader, fileLength, key);
 			}
 			catch (StreamEncrypter.InputException e)
 			{
 				e.setDataDescription(FILE_STR);
 				throw new FileException(e, file);
 			}
+			finally
+			{
+				reader.close();
+			}
 
 			// Close input file
 			try
@@ -791,13 +2238,209 @@ public class FileEncrypter
 
 	//------------------------------------------------------------------
 
+	/**
+	 * Applies a specified batch operation to a single file and records the outcome in a specified result.  This
+	 * method is executed by a worker thread of a batch.
+	 *
+	 * @param operation      the operation that will be applied to the file.
+	 * @param result         the result of the file, which identifies the input and output files.
+	 * @param key            the key from which the CEK will be derived, or the CEK itself.
+	 * @param randomKey      the seed of the PRNG that generates the salt and padding when the file is
+	 *                       encrypted.
+	 * @param batchProgress  the object that combines the progress of the files of the batch.
+	 */
+
+	private void processFile(BatchOperation operation,
+							 BatchResult    result,
+							 byte[]         key,
+							 byte[]         randomKey,
+							 BatchProgress  batchProgress)
+	{
+		IProgressListener progressListener = batchProgress.createFileListener(result);
+		try
+		{
+			// Test whether batch has been cancelled
+			if (batchProgress.isTaskCancelled())
+				throw new TaskCancelledException();
+
+			// Create parent directory of output file
+			if (result.outFile != null)
+			{
+				File directory = result.outFile.getAbsoluteFile().getParentFile();
+				if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory())
+					throw new FileException(ErrorId.FAILED_TO_CREATE_DIRECTORY, directory);
+			}
+
+			// Apply operation to file
+			switch (operation)
+			{
+				case ENCRYPT:
+					encrypt(result.inFile, result.outFile, key, randomKey, progressListener);
+					break;
+
+				case DECRYPT:
+					decrypt(result.inFile, result.outFile, key, progressListener);
+					break;
+
+				case VALIDATE:
+					validate(result.inFile, key, progressListener);
+					break;
+			}
+		}
+		catch (AppException e)
+		{
+			result.exception = e;
+		}
+		finally
+		{
+			progressListener.setProgress(1.0);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Adds the files in a specified directory tree that are accepted by a specified filter to a specified
+	 * list.  The entries of each directory are visited in order of their names.  A directory whose real path
+	 * has already been visited is skipped, so that a symbolic link to an ancestor directory does not cause an
+	 * endless loop.  A directory or file whose real path is not in the tree whose root has a specified real
+	 * path is also skipped, so that symbolic links do not lead the search out of the selected tree.
+	 *
+	 * @param  directory    the directory whose files will be added.
+	 * @param  root         the real path of the root of the directory tree.
+	 * @param  filter       the filter that selects files, or {@code null} if all files will be selected.
+	 * @param  directories  the real paths of the directories that have been visited.
+	 * @param  files        the list to which the selected files will be added.
+	 * @throws AppException
+	 *           if the real path of a directory or symbolic link could not be resolved or the entries of a
+	 *           directory could not be listed.
+	 */
+
+	private static void findFiles(File           directory,
+								  Path           root,
+								  PathnameFilter filter,
+								  Set<Path>      directories,
+								  List<File>     files)
+		throws AppException
+	{
+		// Skip directory if it is outside the tree or has already been visited
+		Path path = getRealPath(directory);
+		if (!path.startsWith(root) || !directories.add(path))
+			return;
+
+		// Get entries of directory
+		File[] entries = null;
+		try
+		{
+			entries = directory.listFiles();
+		}
+		catch (SecurityException e)
+		{
+			throw new FileException(ErrorId.FAILED_TO_LIST_DIRECTORY, directory, e);
+		}
+		if (entries == null)
+			throw new FileException(ErrorId.FAILED_TO_LIST_DIRECTORY, directory);
+		Arrays.sort(entries);
+
+		// Add files; search subdirectories
+		for (File entry : entries)
+		{
+			if (entry.isDirectory())
+				findFiles(entry, root, filter, directories, files);
+			else if (entry.isFile() && ((filter == null) || filter.accept(entry)))
+			{
+				if (!Files.isSymbolicLink(entry.toPath()) || getRealPath(entry).startsWith(root))
+					files.add(entry);
+			}
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns the real path of a specified file or directory, in which symbolic links have been resolved.
+	 *
+	 * @param  file  the file or directory whose real path is required.
+	 * @return the real path of {@code file}.
+	 * @throws FileException
+	 *           if the real path of {@code file} could not be resolved.
+	 */
+
+	private static Path getRealPath(File file)
+		throws FileException
+	{
+		try
+		{
+			return file.toPath().toRealPath();
+		}
+		catch (IOException | SecurityException e)
+		{
+			throw new FileException(ErrorId.FAILED_TO_LIST_DIRECTORY, file, e);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Writes any data that is buffered by a channel writer to its file, and stops the writer thread.
+	 *
+	 * @param  writer  the channel writer.
+	 * @param  file    the file to which the writer writes.
+	 * @throws FileException
+	 *           if an error occurred when writing to the file.
+	 */
+
+	private static void closeWriter(ChannelWriter writer,
+									File          file)
+		throws FileException
+	{
+		try
+		{
+			writer.close();
+		}
+		catch (IOException e)
+		{
+			throw new FileException(ErrorId.FAILED_TO_WRITE_FILE, file, e);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Creates and returns a stream encrypter with the parameters of this file encrypter.
+	 *
+	 * @return a stream encrypter with the parameters of this file encrypter.
+	 */
+
+	private StreamEncrypter createEncrypter()
+	{
+		StreamEncrypter encrypter = new StreamEncrypter(cipher, kdfParams, header);
+		encrypter.setStreamFormat(streamFormat);
+		encrypter.setNumThreads(numThreads);
+		encrypter.setCompression(compression);
+		encrypter.setStoreIncompressible(storeIncompressible);
+		return encrypter;
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Class fields
+////////////////////////////////////////////////////////////////////////
+
+	private static	BlockingQueue<ByteBuffer>	bufferPool	= new ArrayBlockingQueue<>(MAX_NUM_POOLED_BUFFERS);
+
 ////////////////////////////////////////////////////////////////////////
 //  Instance fields
 ////////////////////////////////////////////////////////////////////////
 
-	private	FortunaCipher				cipher;
-	private	StreamEncrypter.KdfParams	kdfParams;
-	private	StreamEncrypter.Header		header;
+	private	FortunaCipher					cipher;
+	private	StreamEncrypter.KdfParams		kdfParams;
+	private	StreamEncrypter.Header			header;
+	private	StreamEncrypter.StreamFormat	streamFormat;
+	private	int								numThreads;
+	private	StreamEncrypter.Compression		compression;
+	private	boolean							storeIncompressible;
 
 }
 
@@ -20,6 +20,8 @@ package common.crypto;
 
 import java.io.UnsupportedEncodingException;
 
+import java.util.Arrays;
+
 import common.exception.UnexpectedRuntimeException;
 
 //----------------------------------------------------------------------
@@ -69,6 +71,12 @@ public abstract class Fortuna
 
 	private static final	int	MIN_RESEED_INTERVAL	= 100;
 
+	/**
+	 * The minimum size (in bytes) of the buffer from which small random values are served in the buffered output
+	 * mode.
+	 */
+	public static final		int	MIN_OUTPUT_BUFFER_SIZE	= Long.BYTES;
+
 	private static final	String	KEY_ENCODING_NAME	= "UTF-8";
 
 ////////////////////////////////////////////////////////////////////////
@@ -189,12 +197,21 @@ public abstract class Fortuna
 				throw new IllegalArgumentException();
 
 			int endOffset = offset + length;
-			for (int i = offset; i < endOffset; i++)
+			while (offset < endOffset)
 			{
+				// Refill buffer of random data
 				if (index == 0)
 					prng.getRandomBytes(buffer);
-				data[i] ^= buffer[index++];
-				index &= indexMask;
+
+				// Combine data with as much of the buffer of random data as possible.  The loop is simple enough for
+				// the JIT compiler to vectorise it.
+				int blockLength = Math.min(endOffset - offset, buffer.length - index);
+				for (int i = 0; i < blockLength; i++)
+					data[offset + i] ^= buffer[index + i];
+
+				// Advance offset and index
+				offset += blockLength;
+				index = (index + blockLength) & indexMask;
 			}
 		}
 
@@ -204,10 +221,10 @@ public abstract class Fortuna
 	//  Instance fields
 	////////////////////////////////////////////////////////////////////
 
-		private	Fortuna	prng;
-		private	byte[]	buffer;
-		private	int		index;
-		private	int		indexMask;
+		private	Fortuna		prng;
+		private	byte[]		buffer;
+		private	int			index;
+		private	int			indexMask;
 
 	}
 
@@ -227,20 +244,45 @@ public abstract class Fortuna
 	 * cloneable, the entropy is stored in the state of the hash-function object and extracted on demand;
 	 * otherwise, each time entropy is added to the pool, it is hashed with the existing entropy and
 	 * immediately extracted from the hash-function object, which is less efficient.
+	 * <p>
+	 * If the hash-function object is cloneable, entropy that is added to the pool in small amounts is
+	 * collected in a buffer whose length is the block size of SHA-256, and the hash function is updated with
+	 * the contents of the buffer when it is full or when the entropy is removed from the pool.  Because the
+	 * entropy is stored in the state of the hash function, the value of the pool does not depend on how the
+	 * entropy is divided between additions.  Otherwise, each addition of entropy is hashed immediately, because
+	 * the value of the pool depends on the division of the entropy.  The length of the pool includes the
+	 * buffered entropy.
+	 * </p>
 	 */
 
-	private static class EntropyPool
+	static class EntropyPool
 		implements Cloneable
 	{
 
+	////////////////////////////////////////////////////////////////////
+	//  Constants
+	////////////////////////////////////////////////////////////////////
+
+		private static final	int	BUFFER_SIZE	= 64;  // the block size of SHA-256
+
 	////////////////////////////////////////////////////////////////////
 	//  Constructors
 	////////////////////////////////////////////////////////////////////
 
-		private EntropyPool()
+		/**
+		 * Creates an entropy pool.
+		 *
+		 * @param cloneHash  if {@code true}, the entropy will be stored in the state of the hash-function object
+		 *                   if the object is cloneable; if {@code false}, the entropy will be extracted from the
+		 *                   hash-function object each time it is added to the pool, as it is when the object
+		 *                   is not cloneable.
+		 */
+
+		EntropyPool(boolean cloneHash)
 		{
+			buffer = new byte[BUFFER_SIZE];
 			hash = new ShaD256();
-			cannotCloneHash = !hash.canClone();
+			cannotCloneHash = !cloneHash || !hash.canClone();
 			if (cannotCloneHash)
 				pool = hash.digest();
 		}
@@ -264,6 +306,8 @@ public abstract class Fortuna
 			{
 				EntropyPool copy = (EntropyPool)super.clone();
 
+				copy.buffer = buffer.clone();
+
 				if (cannotCloneHash)
 				{
 					copy.hash = new ShaD256();
@@ -293,6 +337,8 @@ public abstract class Fortuna
 		private synchronized void reset()
 		{
 			length = 0;
+			Arrays.fill(buffer, 0, bufferLength, (byte)0);
+			bufferLength = 0;
 			hash.reset();
 			if (cannotCloneHash)
 				pool = hash.digest();
@@ -308,9 +354,89 @@ public abstract class Fortuna
 		 * @param length  the number of bytes of random data to add.
 		 */
 
-		private synchronized void add(byte[] data,
-									  int    offset,
-									  int    length)
+		synchronized void add(byte[] data,
+							  int    offset,
+							  int    length)
+		{
+			// If hash function cannot be cloned, hash data with existing entropy ...
+			if (cannotCloneHash)
+				update(data, offset, length);
+
+			// ... otherwise, if data will fit in buffer, copy it to buffer ...
+			else if (bufferLength + length <= BUFFER_SIZE)
+			{
+				System.arraycopy(data, offset, buffer, bufferLength, length);
+				bufferLength += length;
+				if (bufferLength == BUFFER_SIZE)
+					flush();
+			}
+
+			// ... otherwise, update hash function with contents of buffer and data
+			else
+			{
+				flush();
+				update(data, offset, length);
+			}
+			this.length += length;
+		}
+
+		//--------------------------------------------------------------
+
+		/**
+		 * Adds a specified byte of random data to this entropy pool.
+		 *
+		 * @param b  the byte of random data that will be added to the entropy pool.
+		 */
+
+		synchronized void add(byte b)
+		{
+			// If hash function cannot be cloned, hash byte with existing entropy ...
+			if (cannotCloneHash)
+			{
+				buffer[0] = b;
+				update(buffer, 0, 1);
+				buffer[0] = 0;
+			}
+
+			// ... otherwise, add byte to buffer
+			else
+			{
+				buffer[bufferLength++] = b;
+				if (bufferLength == BUFFER_SIZE)
+					flush();
+			}
+			++length;
+		}
+
+		//--------------------------------------------------------------
+
+		/**
+		 * Updates the hash function of this entropy pool with the contents of the buffer, and clears the buffer.
+		 */
+
+		private void flush()
+		{
+			if (bufferLength > 0)
+			{
+				update(buffer, 0, bufferLength);
+				Arrays.fill(buffer, 0, bufferLength, (byte)0);
+				bufferLength = 0;
+			}
+		}
+
+		//--------------------------------------------------------------
+
+		/**
+		 * Updates the hash function of this entropy pool with the specified data.
+		 *
+		 * @param data    the data with which the hash function will be updated.
+		 * @param offset  the offset of the start of the data in {@code data}.
+		 * @param length  the number of bytes of data.
+		 */
+
+		private void update(byte[] data,
+							int    offset,
+							int    length)
 		{
 			if (cannotCloneHash)
 			{
@@ -320,7 +446,6 @@ public abstract class Fortuna
 			}
 			else
 				hash.update(data, offset, length);
-			this.length += length;
 		}
 
 		//--------------------------------------------------------------
@@ -331,8 +456,9 @@ public abstract class Fortuna
 		 * @return the entropy from this pool in the form of a SHAd-256 hash value of the pool's contents.
 		 */
 
-		private synchronized byte[] remove()
+		synchronized byte[] remove()
 		{
+			flush();
 			length = 0;
 			return (cannotCloneHash ? pool : hash.digest());
 		}
@@ -344,6 +470,8 @@ public abstract class Fortuna
 	////////////////////////////////////////////////////////////////////
 
 		private	int		length;
+		private	byte[]	buffer;
+		private	int		bufferLength;
 		private	ShaD256	hash;
 		private	byte[]	pool;
 		private	boolean	cannotCloneHash;
@@ -395,9 +523,10 @@ public abstract class Fortuna
 		this.keySize = keySize;
 		hash = new ShaD256();
 		blockBuffer = new byte[blockSize];
+		valueBuffer = new byte[Long.BYTES];
 		entropyPools = new EntropyPool[NUM_ENTROPY_POOLS];
 		for (int i = 0; i < entropyPools.length; i++)
-			entropyPools[i] = new EntropyPool();
+			entropyPools[i] = new EntropyPool(true);
 
 		// Initialise cipher
 		initCipher();
@@ -520,6 +649,39 @@ public abstract class Fortuna
 
 	//------------------------------------------------------------------
 
+////////////////////////////////////////////////////////////////////////
+//  Instance methods : overridable methods
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Encrypts a specified number of successive values of the block counter with this PRNG's cipher, stores the
+	 * results contiguously in a specified buffer and increments the block counter after each value.
+	 * <p>
+	 * The default implementation calls {@link #encryptCounter(byte[], int)} and {@link #incrementCounter()} for each
+	 * block.  A subclass may override this method to encrypt many blocks with a single call to its cipher, provided
+	 * that the output is identical.
+	 * </p>
+	 *
+	 * @param buffer     the buffer in which the encrypted data will be stored.
+	 * @param offset     the offset in {@code buffer} at which the first byte of encrypted data will be stored.
+	 * @param numBlocks  the number of blocks that will be encrypted.
+	 */
+
+	protected void encryptCounters(byte[] buffer,
+								   int    offset,
+								   int    numBlocks)
+	{
+		int blockSize = blockBuffer.length;
+		for (int i = 0; i < numBlocks; i++)
+		{
+			encryptCounter(buffer, offset);
+			incrementCounter();
+			offset += blockSize;
+		}
+	}
+
+	//------------------------------------------------------------------
+
 ////////////////////////////////////////////////////////////////////////
 //  Instance methods : IEntropyConsumer interface
 ////////////////////////////////////////////////////////////////////////
@@ -532,7 +694,12 @@ public abstract class Fortuna
 
 	public void addRandomByte(byte b)
 	{
-		addRandomBytes(new byte[]{ b }, 0, 1);
+		// Add byte to entropy pool
+		entropyPools[entropyPoolIndex].add(b);
+
+		// Increment entropy pool index
+		if (++entropyPoolIndex >= NUM_ENTROPY_POOLS)
+			entropyPoolIndex = 0;
 	}
 
 	//------------------------------------------------------------------
@@ -583,6 +750,9 @@ public abstract class Fortuna
 			copy.hash = new ShaD256();
 			copy.key = key.clone();
 			copy.blockBuffer = blockBuffer.clone();
+			copy.valueBuffer = valueBuffer.clone();
+			if (outputBuffer != null)
+				copy.outputBuffer = outputBuffer.clone();
 			for (int i = 0; i < entropyPools.length; i++)
 				copy.entropyPools[i] = entropyPools[i].clone();
 
@@ -642,6 +812,7 @@ public abstract class Fortuna
 		entropyPoolIndex = 0;
 		reseedIndex = 0;
 		lastReseedTime = 0;
+		discardOutputBuffer();
 
 		// Set key
 		if (seed == null)
@@ -725,7 +896,7 @@ public abstract class Fortuna
 
 	public byte getRandomByte()
 	{
-		return getRandomBytes(1)[0];
+		return (byte)getRandomValue(1);
 	}
 
 	//------------------------------------------------------------------
@@ -832,14 +1003,7 @@ public abstract class Fortuna
 
 	public int getRandomInt()
 	{
-		byte[] data = getRandomBytes(Integer.SIZE / Byte.SIZE);
-		int value = 0;
-		for (int i = 0; i < data.length; i++)
-		{
-			value <<= 8;
-			value |= data[i] & 0xFF;
-		}
-		return value;
+		return (int)getRandomValue(Integer.BYTES);
 	}
 
 	//------------------------------------------------------------------
@@ -854,14 +1018,63 @@ public abstract class Fortuna
 
 	public long getRandomLong()
 	{
-		byte[] data = getRandomBytes(Long.SIZE / Byte.SIZE);
-		long value = 0;
-		for (int i = 0; i < data.length; i++)
+		return getRandomValue(Long.BYTES);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns the size of the buffer from which {@link #getRandomByte()}, {@link #getRandomInt()} and {@link
+	 * #getRandomLong()} are served in the buffered output mode.
+	 *
+	 * @return the size (in bytes) of the output buffer, or 0 if the buffered output mode is disabled.
+	 * @see    #setOutputBufferSize(int)
+	 */
+
+	public int getOutputBufferSize()
+	{
+		return (outputBuffer == null) ? 0 : outputBuffer.length;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Sets the size of the buffer from which {@link #getRandomByte()}, {@link #getRandomInt()} and {@link
+	 * #getRandomLong()} are served, which enables or disables the buffered output mode.
+	 * <p>
+	 * By default, the buffered output mode is disabled, and each small value is generated by a separate request
+	 * to the generator, after which the generator is re-keyed, as prescribed by the Fortuna algorithm.  In the
+	 * buffered output mode, the output buffer is filled with a single request, so the generator is re-keyed once
+	 * for each {@code size} bytes of small values.  Each value is erased from the buffer when it is returned, but
+	 * the values that remain in the buffer are not protected against the compromise of the state of the
+	 * generator.  The buffered output mode should therefore be enabled only for a generator whose small values
+	 * are not used as key material.  It does not affect the generation of random data with the {@code
+	 * getRandomBytes} methods.
+	 * </p>
+	 * <p>
+	 * The sequence of values that is returned in the buffered output mode differs from the sequence that would
+	 * be returned with the same seed in the unbuffered mode.
+	 * </p>
+	 *
+	 * @param  size  the size (in bytes) of the output buffer, or 0 to disable the buffered output mode.
+	 * @throws IllegalArgumentException
+	 *           if {@code size} is not 0 and it is less than {@link #MIN_OUTPUT_BUFFER_SIZE} or greater than
+	 *           2<sup>20</sup> (1048576).
+	 */
+
+	public void setOutputBufferSize(int size)
+	{
+		if ((size != 0) && ((size < MIN_OUTPUT_BUFFER_SIZE) || (size > MAX_BLOCK_SIZE)))
+			throw new IllegalArgumentException();
+
+		discardOutputBuffer();
+		if (size == 0)
+			outputBuffer = null;
+		else
 		{
-			value <<= 8;
-			value |= data[i] & 0xFF;
+			outputBuffer = new byte[size];
+			outputIndex = size;
 		}
-		return value;
 	}
 
 	//------------------------------------------------------------------
@@ -916,6 +1129,68 @@ public abstract class Fortuna
 
 	//------------------------------------------------------------------
 
+	/**
+	 * Generates a random value of a specified number of bytes, either directly or from the output buffer, and
+	 * returns it.  The bytes are combined in big-endian order.
+	 *
+	 * @param  numBytes  the number of bytes of the value.
+	 * @return the random value.
+	 */
+
+	private long getRandomValue(int numBytes)
+	{
+		// Generate bytes of value
+		byte[] buffer = null;
+		int offset = 0;
+		if (outputBuffer == null)
+		{
+			buffer = valueBuffer;
+			getRandomBytes(buffer, 0, numBytes);
+		}
+		else
+		{
+			if (outputBuffer.length - outputIndex < numBytes)
+			{
+				getRandomBytes(outputBuffer);
+				outputIndex = 0;
+			}
+			buffer = outputBuffer;
+			offset = outputIndex;
+			outputIndex += numBytes;
+		}
+
+		// Combine bytes
+		long value = 0;
+		int endOffset = offset + numBytes;
+		for (int i = offset; i < endOffset; i++)
+		{
+			value <<= 8;
+			value |= buffer[i] & 0xFF;
+		}
+
+		// Erase bytes
+		Arrays.fill(buffer, offset, endOffset, (byte)0);
+
+		return value;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Erases the contents of the output buffer and marks it as empty.
+	 */
+
+	private void discardOutputBuffer()
+	{
+		if (outputBuffer != null)
+		{
+			Arrays.fill(outputBuffer, (byte)0);
+			outputIndex = outputBuffer.length;
+		}
+	}
+
+	//------------------------------------------------------------------
+
 	private void reseed()
 	{
 		lastReseedTime = System.currentTimeMillis();
@@ -949,19 +1224,22 @@ public abstract class Fortuna
 							   int    offset,
 							   int    length)
 	{
-		int endOffset = offset + length;
-		while (offset < endOffset)
+		// Generate whole blocks directly in buffer
+		int blockSize = blockBuffer.length;
+		int numBlocks = length / blockSize;
+		if (numBlocks > 0)
 		{
-			int blockLength = Math.min(endOffset - offset, blockBuffer.length);
-			if (blockLength < blockBuffer.length)
-			{
-				encryptCounter(blockBuffer, 0);
-				System.arraycopy(blockBuffer, 0, buffer, offset, blockLength);
-			}
-			else
-				encryptCounter(buffer, offset);
+			encryptCounters(buffer, offset, numBlocks);
+			offset += numBlocks * blockSize;
+			length -= numBlocks * blockSize;
+		}
+
+		// Generate final partial block
+		if (length > 0)
+		{
+			encryptCounter(blockBuffer, 0);
+			System.arraycopy(blockBuffer, 0, buffer, offset, length);
 			incrementCounter();
-			offset += blockLength;
 		}
 	}
 
@@ -975,6 +1253,9 @@ public abstract class Fortuna
 	private	ShaD256			hash;
 	private	byte[]			key;
 	private	byte[]			blockBuffer;
+	private	byte[]			valueBuffer;
+	private	byte[]			outputBuffer;
+	private	int				outputIndex;
 	private	EntropyPool[]	entropyPools;
 	private	int				entropyPoolIndex;
 	private	int				reseedIndex;
@@ -18,8 +18,16 @@ package common.crypto;
 // IMPORTS
 
 
+import java.security.GeneralSecurityException;
+
 import java.util.Arrays;
 
+import javax.crypto.Cipher;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import common.exception.UnexpectedRuntimeException;
+
 //----------------------------------------------------------------------
 
 
@@ -29,6 +37,12 @@ import java.util.Arrays;
 /**
  * This class implements the Fortuna pseudo-random number generator (PRNG) algorithm, using an AES-256 block
  * cipher running in counter mode as the underlying generator.
+ * <p>
+ * The block cipher may be provided by one of two backends: the pure-Java implementation of {@link Aes256}, or the
+ * AES implementation of the Java Cryptography Extension (JCE), which is usually accelerated by the JVM with
+ * hardware instructions.  The two backends generate identical data.  The JCE backend is used by default if it is
+ * available and it passes a known-answer test; otherwise, the pure-Java implementation is used.
+ * </p>
  */
 
 public class FortunaAes256
@@ -45,6 +59,69 @@ public class FortunaAes256
 	 */
 	public static final	int	KEY_SIZE	= Aes256.KEY_SIZE;
 
+	/** The maximum number of counter blocks that are encrypted by a single call to the JCE cipher. */
+	private static final	int	MAX_NUM_JCE_BLOCKS	= 256;
+
+	/** The transformation and key algorithm of the JCE cipher. */
+	private static final	String	JCE_TRANSFORMATION	= "AES/ECB/NoPadding";
+	private static final	String	JCE_KEY_ALGORITHM	= "AES";
+
+	/** The key, plaintext and ciphertext of the AES-256 example vector of FIPS-197, Appendix C.3. */
+	private static final	byte[]	TEST_KEY	=
+	{
+		(byte)0x00, (byte)0x01, (byte)0x02, (byte)0x03, (byte)0x04, (byte)0x05, (byte)0x06, (byte)0x07,
+		(byte)0x08, (byte)0x09, (byte)0x0A, (byte)0x0B, (byte)0x0C, (byte)0x0D, (byte)0x0E, (byte)0x0F,
+		(byte)0x10, (byte)0x11, (byte)0x12, (byte)0x13, (byte)0x14, (byte)0x15, (byte)0x16, (byte)0x17,
+		(byte)0x18, (byte)0x19, (byte)0x1A, (byte)0x1B, (byte)0x1C, (byte)0x1D, (byte)0x1E, (byte)0x1F
+	};
+	private static final	byte[]	TEST_PLAINTEXT	=
+	{
+		(byte)0x00, (byte)0x11, (byte)0x22, (byte)0x33, (byte)0x44, (byte)0x55, (byte)0x66, (byte)0x77,
+		(byte)0x88, (byte)0x99, (byte)0xAA, (byte)0xBB, (byte)0xCC, (byte)0xDD, (byte)0xEE, (byte)0xFF
+	};
+	private static final	byte[]	TEST_CIPHERTEXT	=
+	{
+		(byte)0x8E, (byte)0xA2, (byte)0xB7, (byte)0xCA, (byte)0x51, (byte)0x67, (byte)0x45, (byte)0xBF,
+		(byte)0xEA, (byte)0xFC, (byte)0x49, (byte)0x90, (byte)0x4B, (byte)0x49, (byte)0x60, (byte)0x89
+	};
+
+	/** The number of blocks of the test of the equivalence of the backends. */
+	private static final	int	NUM_TEST_BLOCKS	= 64;
+
+////////////////////////////////////////////////////////////////////////
+//  Member classes : non-inner classes
+////////////////////////////////////////////////////////////////////////
+
+
+	// ENUMERATION: BACKEND
+
+
+	/**
+	 * This is an enumeration of the implementations of the AES-256 block cipher that may be used by a {@link
+	 * FortunaAes256} PRNG.
+	 */
+
+	public enum Backend
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constants
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * The pure-Java implementation of {@link Aes256}.
+		 */
+		JAVA,
+
+		/**
+		 * The AES implementation of the Java Cryptography Extension.
+		 */
+		JCE
+
+	}
+
+	//==================================================================
+
 ////////////////////////////////////////////////////////////////////////
 //  Constructors
 ////////////////////////////////////////////////////////////////////////
@@ -104,6 +181,61 @@ public class FortunaAes256
 //  Class methods
 ////////////////////////////////////////////////////////////////////////
 
+	/**
+	 * Returns {@code true} if the JCE backend is available.  The backend is available if the JCE provides an AES
+	 * cipher that accepts a 256-bit key, and if the cipher generates the expected ciphertext of the AES-256 example
+	 * vector of FIPS-197 and the same output as the pure-Java implementation of {@link Aes256} for a sequence of
+	 * counter blocks.  The test is performed only once.
+	 *
+	 * @return {@code true} if the JCE backend is available.
+	 */
+
+	public static boolean isJceAvailable()
+	{
+		synchronized (FortunaAes256.class)
+		{
+			if (jceAvailable == null)
+				jceAvailable = Boolean.valueOf(testJce());
+			return jceAvailable.booleanValue();
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns the backend that will be used by PRNGs that are created subsequently.
+	 *
+	 * @return the backend that will be used by PRNGs that are created subsequently.
+	 */
+
+	public static Backend getDefaultBackend()
+	{
+		synchronized (FortunaAes256.class)
+		{
+			if (defaultBackend == null)
+				defaultBackend = isJceAvailable() ? Backend.JCE : Backend.JAVA;
+			return defaultBackend;
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Sets the backend that will be used by PRNGs that are created subsequently.  If the JCE backend is requested
+	 * but it is not available, the pure-Java backend will be used.
+	 *
+	 * @param backend  the backend that will be used by PRNGs that are created subsequently.
+	 */
+
+	public static void setDefaultBackend(Backend backend)
+	{
+		synchronized (FortunaAes256.class)
+		{
+			defaultBackend = ((backend == Backend.JCE) && !isJceAvailable()) ? Backend.JAVA : backend;
+		}
+	}
+
+	//------------------------------------------------------------------
 
 	/**
 	 * Creates an object that will combine data and random data generated by a PRNG with an exclusive-OR
@@ -134,6 +266,63 @@ public class FortunaAes256
 
 	//------------------------------------------------------------------
 
+	/**
+	 * Creates a JCE AES cipher, initialises it for encryption with a specified key and returns it.
+	 *
+	 * @param  key  the encryption key.
+	 * @return a JCE AES cipher that is initialised with {@code key}.
+	 * @throws GeneralSecurityException
+	 *           if the cipher could not be created or initialised.
+	 */
+
+	private static Cipher createJceCipher(SecretKeySpec key)
+		throws GeneralSecurityException
+	{
+		Cipher cipher = Cipher.getInstance(JCE_TRANSFORMATION);
+		cipher.init(Cipher.ENCRYPT_MODE, key);
+		return cipher;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Tests the JCE AES cipher against the AES-256 example vector of FIPS-197 and against the pure-Java
+	 * implementation of {@link Aes256} for a sequence of counter blocks.
+	 *
+	 * @return {@code true} if the JCE cipher passed the tests.
+	 */
+
+	private static boolean testJce()
+	{
+		try
+		{
+			// Test example vector
+			Cipher jceCipher = createJceCipher(new SecretKeySpec(TEST_KEY, JCE_KEY_ALGORITHM));
+			byte[] output = jceCipher.doFinal(TEST_PLAINTEXT);
+			if (!Arrays.equals(output, TEST_CIPHERTEXT))
+				return false;
+
+			// Test sequence of counter blocks against pure-Java cipher
+			Aes256 cipher = new Aes256();
+			cipher.setEncryptionKey(TEST_KEY);
+			byte[] counters = new byte[NUM_TEST_BLOCKS * Aes256.BLOCK_SIZE];
+			byte[] expected = new byte[counters.length];
+			for (int i = 0; i < counters.length; i += Aes256.BLOCK_SIZE)
+			{
+				System.arraycopy(TEST_PLAINTEXT, 0, counters, i, Aes256.BLOCK_SIZE);
+				counters[i] += (byte)(i / Aes256.BLOCK_SIZE);
+				cipher.encryptBlock(counters, i, expected, i);
+			}
+			return Arrays.equals(jceCipher.doFinal(counters), expected);
+		}
+		catch (GeneralSecurityException e)
+		{
+			return false;
+		}
+	}
+
+	//------------------------------------------------------------------
+
 ////////////////////////////////////////////////////////////////////////
 //  Instance methods : overriding methods
 ////////////////////////////////////////////////////////////////////////
@@ -154,6 +343,18 @@ public class FortunaAes256
 		FortunaAes256 copy = (FortunaAes256)super.clone();
 		copy.cipher = cipher.clone();
 		copy.counter = counter.clone();
+		copy.counterBuffer = null;
+		if (jceCipher != null)
+		{
+			try
+			{
+				copy.jceCipher = createJceCipher(jceKey);
+			}
+			catch (GeneralSecurityException e)
+			{
+				throw new UnexpectedRuntimeException(e);
+			}
+		}
 		return copy;
 	}
 
@@ -167,6 +368,7 @@ public class FortunaAes256
 	{
 		cipher = new Aes256();
 		counter = new byte[Aes256.BLOCK_SIZE];
+		backend = getDefaultBackend();
 	}
 
 	//------------------------------------------------------------------
@@ -179,6 +381,8 @@ public class FortunaAes256
 	{
 		cipher.reset();
 		Arrays.fill(counter, (byte)0);
+		jceCipher = null;
+		jceKey = null;
 	}
 
 	//------------------------------------------------------------------
@@ -191,6 +395,29 @@ public class FortunaAes256
 
 	protected void setCipherKey(byte[] key)
 	{
+		// Set key of JCE cipher
+		if (backend == Backend.JCE)
+		{
+			try
+			{
+				SecretKeySpec keySpec = new SecretKeySpec(key, JCE_KEY_ALGORITHM);
+				if (jceCipher == null)
+					jceCipher = createJceCipher(keySpec);
+				else
+					jceCipher.init(Cipher.ENCRYPT_MODE, keySpec);
+				jceKey = keySpec;
+				return;
+			}
+			catch (GeneralSecurityException e)
+			{
+				// Fall back to pure-Java cipher
+				backend = Backend.JAVA;
+				jceCipher = null;
+				jceKey = null;
+			}
+		}
+
+		// Set key of pure-Java cipher
 		cipher.setEncryptionKey(key);
 	}
 
@@ -222,7 +449,105 @@ public class FortunaAes256
 	protected void encryptCounter(byte[] buffer,
 								  int    offset)
 	{
-		cipher.encryptBlock(counter, 0, buffer, offset);
+		if (jceCipher == null)
+			cipher.encryptBlock(counter, 0, buffer, offset);
+		else
+			encryptJce(counter, 0, Aes256.BLOCK_SIZE, buffer, offset);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Encrypts a specified number of successive values of the block counter with this PRNG's cipher, stores the
+	 * results contiguously in a specified buffer and increments the block counter after each value.
+	 * <p>
+	 * If the JCE backend is in use, the values of the counter are written to a buffer, which is encrypted with a
+	 * single call to the JCE cipher.
+	 * </p>
+	 *
+	 * @param buffer     the buffer in which the encrypted data will be stored.
+	 * @param offset     the offset in {@code buffer} at which the first byte of encrypted data will be stored.
+	 * @param numBlocks  the number of blocks that will be encrypted.
+	 */
+
+	@Override
+	protected void encryptCounters(byte[] buffer,
+								   int    offset,
+								   int    numBlocks)
+	{
+		// Encrypt blocks one at a time with pure-Java cipher
+		if (jceCipher == null)
+		{
+			super.encryptCounters(buffer, offset, numBlocks);
+			return;
+		}
+
+		// Allocate buffer for counter values
+		if (counterBuffer == null)
+			counterBuffer = new byte[MAX_NUM_JCE_BLOCKS * Aes256.BLOCK_SIZE];
+
+		// Encrypt blocks in chunks with JCE cipher
+		while (numBlocks > 0)
+		{
+			int numChunkBlocks = Math.min(numBlocks, MAX_NUM_JCE_BLOCKS);
+			int length = numChunkBlocks * Aes256.BLOCK_SIZE;
+			for (int i = 0; i < length; i += Aes256.BLOCK_SIZE)
+			{
+				System.arraycopy(counter, 0, counterBuffer, i, Aes256.BLOCK_SIZE);
+				incrementCounter();
+			}
+			encryptJce(counterBuffer, 0, length, buffer, offset);
+			offset += length;
+			numBlocks -= numChunkBlocks;
+		}
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Returns the backend that is used by this PRNG.  The backend is initially the default backend at the time
+	 * when this PRNG was created, but the pure-Java backend will be substituted if the JCE cipher rejects a key.
+	 *
+	 * @return the backend that is used by this PRNG.
+	 */
+
+	public Backend getBackend()
+	{
+		return backend;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Encrypts data with the JCE cipher.
+	 *
+	 * @param input         the buffer containing the data that will be encrypted.
+	 * @param inputOffset   the offset of the data in {@code input}.
+	 * @param length        the length of the data, which must be a multiple of the block size.
+	 * @param output        the buffer in which the encrypted data will be stored.
+	 * @param outputOffset  the offset in {@code output} at which the encrypted data will be stored.
+	 * @throws UnexpectedRuntimeException
+	 *           if an error occurred when encrypting the data.
+	 */
+
+	private void encryptJce(byte[] input,
+							int    inputOffset,
+							int    length,
+							byte[] output,
+							int    outputOffset)
+	{
+		try
+		{
+			jceCipher.update(input, inputOffset, length, output, outputOffset);
+		}
+		catch (GeneralSecurityException e)
+		{
+			throw new UnexpectedRuntimeException(e);
+		}
 	}
 
 	//------------------------------------------------------------------
@@ -231,8 +556,19 @@ public class FortunaAes256
 //  Instance fields
 ////////////////////////////////////////////////////////////////////////
 
-	private	Aes256	cipher;
-	private	byte[]	counter;
+	private	Backend			backend;
+	private	Aes256			cipher;
+	private	byte[]			counter;
+	private	byte[]			counterBuffer;
+	private	Cipher			jceCipher;
+	private	SecretKeySpec	jceKey;
+
+////////////////////////////////////////////////////////////////////////
+//  Class fields
+////////////////////////////////////////////////////////////////////////
+
+	private static	Boolean	jceAvailable;
+	private static	Backend	defaultBackend;
 
 }
 
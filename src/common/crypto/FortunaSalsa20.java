@@ -237,6 +237,27 @@ public class FortunaSalsa20
 
 	//------------------------------------------------------------------
 
+	/**
+	 * Encrypts a specified number of successive values of the block counter with this PRNG's cipher, stores the
+	 * results contiguously in a specified buffer and increments the block counter after each value.  The blocks
+	 * are generated with a single call to the cipher.
+	 *
+	 * @param buffer     the buffer in which the encrypted data will be stored.
+	 * @param offset     the offset in {@code buffer} at which the first byte of encrypted data will be stored.
+	 * @param numBlocks  the number of blocks that will be encrypted.
+	 */
+
+	@Override
+	protected void encryptCounters(byte[] buffer,
+								   int    offset,
+								   int    numBlocks)
+	{
+		cipher.getBlocks(counter, numBlocks, buffer, offset);
+		counter += numBlocks;
+	}
+
+	//------------------------------------------------------------------
+
 ////////////////////////////////////////////////////////////////////////
 //  Instance fields
 ////////////////////////////////////////////////////////////////////////
@@ -18,6 +18,9 @@ package common.crypto;
 // IMPORTS
 
 
+import java.nio.ByteBuffer;
+
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -35,9 +38,19 @@ import common.exception.UnexpectedRuntimeException;
  * <p>
  * HMAC is specified in <a href="http://tools.ietf.org/html/rfc2104">IETF RFC2104</a>.
  * </p>
+ * <p>
+ * If the implementation of SHA-256 that is provided by {@link java.security.MessageDigest} supports cloning,
+ * the states of the hash function after it has been updated with the inner and outer padded keys are
+ * computed once, when the HMAC is created, and copied when the HMAC is reset and when its value is
+ * computed.  {@code MessageDigest} cannot copy a state into an existing object, so each copy is a new
+ * {@code MessageDigest} that is created with {@code clone()}; this is cheaper than hashing a padded key
+ * again, but it is not free of allocation.  A copy of an HMAC that is created with {@link #clone()} shares
+ * these states, so creating a copy is cheaper than creating a new HMAC with the same key.
+ * </p>
  */
 
 public class HmacSha256
+	implements Cloneable
 {
 
 ////////////////////////////////////////////////////////////////////////
@@ -71,15 +84,9 @@ public class HmacSha256
 
 	public HmacSha256(byte[] key)
 	{
-		// Create an SHA-256 hash-function object
-		try
-		{
-			hash = MessageDigest.getInstance(HASH_NAME);
-		}
-		catch (NoSuchAlgorithmException e)
-		{
-			throw new UnexpectedRuntimeException(e);
-		}
+		// Create SHA-256 hash-function objects
+		hash = createDigest();
+		outerHash = createDigest();
 
 		// If the key is longer than the block size of the hash function, reduce its length by hashing it
 		if (key.length > HASH_BLOCK_SIZE)
@@ -93,8 +100,33 @@ public class HmacSha256
 			System.arraycopy(k, 0, key, 0, k.length);
 		}
 
-		// Set the key instance field
-		this.key = key.clone();
+		// Create the padded inner and outer keys
+		innerKey = new byte[HASH_BLOCK_SIZE];
+		outerKey = new byte[HASH_BLOCK_SIZE];
+		for (int i = 0; i < HASH_BLOCK_SIZE; i++)
+		{
+			innerKey[i] = (byte)(key[i] ^ INNER_PADDING);
+			outerKey[i] = (byte)(key[i] ^ OUTER_PADDING);
+		}
+
+		// Precompute the states of the hash function after the padded keys, if the hash function can be cloned
+		MessageDigest innerState = createDigest();
+		innerState.update(innerKey);
+		MessageDigest outerState = createDigest();
+		outerState.update(outerKey);
+		try
+		{
+			innerState.clone();
+			this.innerState = innerState;
+			this.outerState = outerState;
+		}
+		catch (CloneNotSupportedException e)
+		{
+			// ignore
+		}
+
+		// Allocate buffer for inner hash value
+		innerHashValue = new byte[HASH_VALUE_SIZE];
 
 		// Initialise the function
 		reset();
@@ -102,6 +134,80 @@ public class HmacSha256
 
 	//------------------------------------------------------------------
 
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Creates and returns an SHA-256 hash function.
+	 *
+	 * @return an SHA-256 hash function.
+	 * @throws UnexpectedRuntimeException
+	 *           if the {@link java.security.MessageDigest} class does not support the SHA-256 algorithm.
+	 */
+
+	private static MessageDigest createDigest()
+	{
+		try
+		{
+			return MessageDigest.getInstance(HASH_NAME);
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new UnexpectedRuntimeException(e);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns a copy of a specified hash function that is known to support cloning.
+	 *
+	 * @param  digest  the hash function that will be copied.
+	 * @return a copy of {@code digest}.
+	 */
+
+	private static MessageDigest copyDigest(MessageDigest digest)
+	{
+		try
+		{
+			return (MessageDigest)digest.clone();
+		}
+		catch (CloneNotSupportedException e)
+		{
+			throw new UnexpectedRuntimeException(e);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods : overriding methods
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Creates a copy of this HMAC.  The copy has the same key and the same state as this HMAC, but the two
+	 * objects are independent.
+	 *
+	 * @return a copy of this HMAC.
+	 * @throws CloneNotSupportedException
+	 *           if the implementation of the SHA-256 algorithm by the {@link java.security.MessageDigest}
+	 *           class does not support cloning.
+	 */
+
+	@Override
+	public HmacSha256 clone()
+		throws CloneNotSupportedException
+	{
+		HmacSha256 copy = (HmacSha256)super.clone();
+		copy.hash = (MessageDigest)hash.clone();
+		copy.outerHash = (MessageDigest)outerHash.clone();
+		copy.innerHashValue = new byte[HASH_VALUE_SIZE];
+		return copy;
+	}
+
+	//------------------------------------------------------------------
+
 ////////////////////////////////////////////////////////////////////////
 //  Instance methods
 ////////////////////////////////////////////////////////////////////////
@@ -136,6 +242,25 @@ public class HmacSha256
 
 	//------------------------------------------------------------------
 
+	/**
+	 * Updates this HMAC with the remaining data in a specified buffer, which may be a direct buffer or a
+	 * mapped file.  On return, the position of the buffer will be equal to its limit.
+	 * <p>
+	 * The data in a buffer that is backed by an array is passed directly to the hash function.  The handling
+	 * of other buffers is determined by the implementation of SHA-256 that is provided by {@link
+	 * java.security.MessageDigest}.
+	 * </p>
+	 *
+	 * @param data  the buffer whose remaining data will be used to update the HMAC.
+	 */
+
+	public void update(ByteBuffer data)
+	{
+		hash.update(data);
+	}
+
+	//------------------------------------------------------------------
+
 	/**
 	 * Returns the value of this HMAC.
 	 * <p>
@@ -146,21 +271,14 @@ public class HmacSha256
 	 * @return the value of the HMAC.
 	 * @see    #getValue(byte[])
 	 * @see    #getValue(byte[], int, int)
+	 * @see    #getValueInto(byte[], int)
 	 */
 
 	public byte[] getValue()
 	{
-		// Get the inner hash value
-		byte[] innerHashValue = hash.digest();
-
-		// Create the padded outer key
-		byte[] outerKey = key.clone();
-		for (int i = 0; i < outerKey.length; i++)
-			outerKey[i] ^= OUTER_PADDING;
-
-		// Hash the outer key and inner hash value, and return the result
-		hash.update(outerKey);
-		return hash.digest(innerHashValue);
+		byte[] value = new byte[HASH_VALUE_SIZE];
+		getValueInto(value, 0);
+		return value;
 	}
 
 	//------------------------------------------------------------------
@@ -211,30 +329,85 @@ public class HmacSha256
 
 	//------------------------------------------------------------------
 
+	/**
+	 * Stores the value of this HMAC in a specified buffer.  Unlike {@link #getValue()}, this method does not
+	 * allocate an array for the value, although it may copy the precomputed state of the hash function after
+	 * the outer padded key (see the class comment).
+	 * <p>
+	 * The HMAC is left in an invalid state by this method, and it must be explicitly reset with {@link
+	 * #reset()} before it can be used again.
+	 * </p>
+	 *
+	 * @param  buffer  the buffer in which the value of the HMAC will be stored.
+	 * @param  offset  the offset in {@code buffer} at which the first byte of the value will be stored.
+	 * @throws IllegalArgumentException
+	 *           if {@code offset} is negative or there is not enough space for the value in {@code buffer}
+	 *           after {@code offset}.
+	 * @see    #getValue()
+	 */
+
+	public void getValueInto(byte[] buffer,
+							 int    offset)
+	{
+		// Validate arguments
+		if ((offset < 0) || (buffer.length - offset < HASH_VALUE_SIZE))
+			throw new IllegalArgumentException();
+
+		try
+		{
+			// Get the inner hash value
+			hash.digest(innerHashValue, 0, HASH_VALUE_SIZE);
+
+			// Hash the outer key and inner hash value, and store the result in the buffer
+			MessageDigest outer = outerHash;
+			if (outerState == null)
+			{
+				outer.reset();
+				outer.update(outerKey);
+			}
+			else
+				outer = copyDigest(outerState);
+			outer.update(innerHashValue);
+			outer.digest(buffer, offset, HASH_VALUE_SIZE);
+		}
+		catch (DigestException e)
+		{
+			throw new UnexpectedRuntimeException(e);
+		}
+	}
+
+	//------------------------------------------------------------------
+
 	/**
 	 * Resets this HMAC so that it can be used again.
 	 * <p>
 	 * If the HMAC is to be used again after calling any of the {@code getValue} methods, this method must
 	 * be called before the HMAC is updated with any more data.
 	 * </p>
+	 * <p>
+	 * If the hash function supports cloning, this method replaces the hash function with a copy of its
+	 * precomputed state after the inner padded key (see the class comment).
+	 * </p>
 	 *
 	 * @see #getValue()
 	 * @see #getValue(byte[])
 	 * @see #getValue(byte[], int, int)
+	 * @see #getValueInto(byte[], int)
 	 */
 
 	public void reset()
 	{
-		// Reset the hash function
-		hash.reset();
-
-		// Create the padded inner key
-		byte[] innerKey = key.clone();
-		for (int i = 0; i < innerKey.length; i++)
-			innerKey[i] ^= INNER_PADDING;
-
-		// Update the hash with the inner key
-		hash.update(innerKey);
+		if (innerState == null)
+		{
+			// Reset the hash function and update it with the inner key
+			hash.reset();
+			hash.update(innerKey);
+		}
+		else
+		{
+			// Restore the precomputed state of the hash function after the inner key
+			hash = copyDigest(innerState);
+		}
 	}
 
 	//------------------------------------------------------------------
@@ -243,8 +416,13 @@ public class HmacSha256
 //  Instance fields
 ////////////////////////////////////////////////////////////////////////
 
-	private	byte[]			key;
+	private	byte[]			innerKey;
+	private	byte[]			outerKey;
+	private	MessageDigest	innerState;
+	private	MessageDigest	outerState;
 	private	MessageDigest	hash;
+	private	MessageDigest	outerHash;
+	private	byte[]			innerHashValue;
 
 }
 
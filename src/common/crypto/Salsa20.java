@@ -20,6 +20,10 @@ package common.crypto;
 
 import java.io.UnsupportedEncodingException;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -258,6 +262,10 @@ public class Salsa20
 
 	/**
 	 * Performs a specified number of rounds of the Salsa20 core hash function on a specified block of data.
+	 * <p>
+	 * The state of the hash function is held in local variables, so {@code outBuffer} may be the same array
+	 * as {@code inData}.
+	 * </p>
 	 *
 	 * @param inData     the data that will be hashed.
 	 * @param outBuffer  a buffer in which the hashed data will be stored.
@@ -268,147 +276,81 @@ public class Salsa20
 							int[] outBuffer,
 							int   numRounds)
 	{
-		// Copy input array to output array
-		System.arraycopy(inData, 0, outBuffer, 0, inData.length);
+		// Copy input words to local variables
+		int x0 = inData[0];
+		int x1 = inData[1];
+		int x2 = inData[2];
+		int x3 = inData[3];
+		int x4 = inData[4];
+		int x5 = inData[5];
+		int x6 = inData[6];
+		int x7 = inData[7];
+		int x8 = inData[8];
+		int x9 = inData[9];
+		int x10 = inData[10];
+		int x11 = inData[11];
+		int x12 = inData[12];
+		int x13 = inData[13];
+		int x14 = inData[14];
+		int x15 = inData[15];
 
 		// Modify data
-		int a = 0;
-		int b = 0;
-		numRounds /= 2;
-		for (int i = 0; i < numRounds; i++)
+		for (int i = numRounds / 2; i > 0; i--)
 		{
-			a = outBuffer[0] + outBuffer[12];
-			b = 7;
-			outBuffer[ 4] ^= (a << b) | (a >>> (32 - b));
-
-			a = outBuffer[4] + outBuffer[0];
-			b = 9;
-			outBuffer[ 8] ^= (a << b) | (a >>> (32 - b));
-
-			a = outBuffer[8] + outBuffer[4];
-			b = 13;
-			outBuffer[12] ^= (a << b) | (a >>> (32 - b));
-
-			a = outBuffer[12] + outBuffer[8];
-			b = 18;
-			outBuffer[ 0] ^= (a << b) | (a >>> (32 - b));
-
-			a = outBuffer[5] + outBuffer[1];
-			b = 7;
-			outBuffer[ 9] ^= (a << b) | (a >>> (32 - b));
-
-			a = outBuffer[9] + outBuffer[5];
-			b = 9;
-			outBuffer[13] ^= (a << b) | (a >>> (32 - b));
-
-			a = outBuffer[13] + outBuffer[9];
-			b = 13;
-			outBuffer[ 1] ^= (a << b) | (a >>> (32 - b));
-
-			a = outBuffer[1] + outBuffer[13];
-			b = 18;
-			outBuffer[ 5] ^= (a << b) | (a >>> (32 - b));
-
-			a = outBuffer[10] + outBuffer[6];
-			b = 7;
-			outBuffer[14] ^= (a << b) | (a >>> (32 - b));
-
-			a = outBuffer[14] + outBuffer[10];
-			b = 9;
-			outBuffer[ 2] ^= (a << b) | (a >>> (32 - b));
-
-			a = outBuffer[2] + outBuffer[14];
-			b = 13;
-			outBuffer[ 6] ^= (a << b) | (a >>> (32 - b));
-
-			a = outBuffer[6] + outBuffer[2];
-			b = 18;
-			outBuffer[10] ^= (a << b) | (a >>> (32 - b));
-
-			a = outBuffer[15] + outBuffer[11];
-			b = 7;
-			outBuffer[ 3] ^= (a << b) | (a >>> (32 - b));
-
-			a = outBuffer[3] + outBuffer[15];
-			b = 9;
-			outBuffer[ 7] ^= (a << b) | (a >>> (32 - b));
-
-			a = outBuffer[7] + outBuffer[3];
-			b = 13;
-			outBuffer[11] ^= (a << b) | (a >>> (32 - b));
-
-			a = outBuffer[11] + outBuffer[7];
-			b = 18;
-			outBuffer[15] ^= (a << b) | (a >>> (32 - b));
-
-			a = outBuffer[0] + outBuffer[3];
-			b = 7;
-			outBuffer[ 1] ^= (a << b) | (a >>> (32 - b));
-
-			a = outBuffer[1] + outBuffer[0];
-			b = 9;
-			outBuffer[ 2] ^= (a << b) | (a >>> (32 - b));
-
-			a = outBuffer[2] + outBuffer[1];
-			b = 13;
-			outBuffer[ 3] ^= (a << b) | (a >>> (32 - b));
-
-			a = outBuffer[3] + outBuffer[2];
-			b = 18;
-			outBuffer[ 0] ^= (a << b) | (a >>> (32 - b));
-
-			a = outBuffer[5] + outBuffer[4];
-			b = 7;
-			outBuffer[ 6] ^= (a << b) | (a >>> (32 - b));
-
-			a = outBuffer[6] + outBuffer[5];
-			b = 9;
-			outBuffer[ 7] ^= (a << b) | (a >>> (32 - b));
-
-			a = outBuffer[7] + outBuffer[6];
-			b = 13;
-			outBuffer[ 4] ^= (a << b) | (a >>> (32 - b));
-
-			a = outBuffer[4] + outBuffer[7];
-			b = 18;
-			outBuffer[ 5] ^= (a << b) | (a >>> (32 - b));
-
-			a = outBuffer[10] + outBuffer[9];
-			b = 7;
-			outBuffer[11] ^= (a << b) | (a >>> (32 - b));
-
-			a = outBuffer[11] + outBuffer[10];
-			b = 9;
-			outBuffer[ 8] ^= (a << b) | (a >>> (32 - b));
-
-			a = outBuffer[8] + outBuffer[11];
-			b = 13;
-			outBuffer[ 9] ^= (a << b) | (a >>> (32 - b));
-
-			a = outBuffer[9] + outBuffer[8];
-			b = 18;
-			outBuffer[10] ^= (a << b) | (a >>> (32 - b));
-
-			a = outBuffer[15] + outBuffer[14];
-			b = 7;
-			outBuffer[12] ^= (a << b) | (a >>> (32 - b));
-
-			a = outBuffer[12] + outBuffer[15];
-			b = 9;
-			outBuffer[13] ^= (a << b) | (a >>> (32 - b));
-
-			a = outBuffer[13] + outBuffer[12];
-			b = 13;
-			outBuffer[14] ^= (a << b) | (a >>> (32 - b));
-
-			a = outBuffer[14] + outBuffer[13];
-			b = 18;
-			outBuffer[15] ^= (a << b) | (a >>> (32 - b));
+			// Column round
+			x4 ^= Integer.rotateLeft(x0 + x12, 7);
+			x8 ^= Integer.rotateLeft(x4 + x0, 9);
+			x12 ^= Integer.rotateLeft(x8 + x4, 13);
+			x0 ^= Integer.rotateLeft(x12 + x8, 18);
+			x9 ^= Integer.rotateLeft(x5 + x1, 7);
+			x13 ^= Integer.rotateLeft(x9 + x5, 9);
+			x1 ^= Integer.rotateLeft(x13 + x9, 13);
+			x5 ^= Integer.rotateLeft(x1 + x13, 18);
+			x14 ^= Integer.rotateLeft(x10 + x6, 7);
+			x2 ^= Integer.rotateLeft(x14 + x10, 9);
+			x6 ^= Integer.rotateLeft(x2 + x14, 13);
+			x10 ^= Integer.rotateLeft(x6 + x2, 18);
+			x3 ^= Integer.rotateLeft(x15 + x11, 7);
+			x7 ^= Integer.rotateLeft(x3 + x15, 9);
+			x11 ^= Integer.rotateLeft(x7 + x3, 13);
+			x15 ^= Integer.rotateLeft(x11 + x7, 18);
+
+			// Row round
+			x1 ^= Integer.rotateLeft(x0 + x3, 7);
+			x2 ^= Integer.rotateLeft(x1 + x0, 9);
+			x3 ^= Integer.rotateLeft(x2 + x1, 13);
+			x0 ^= Integer.rotateLeft(x3 + x2, 18);
+			x6 ^= Integer.rotateLeft(x5 + x4, 7);
+			x7 ^= Integer.rotateLeft(x6 + x5, 9);
+			x4 ^= Integer.rotateLeft(x7 + x6, 13);
+			x5 ^= Integer.rotateLeft(x4 + x7, 18);
+			x11 ^= Integer.rotateLeft(x10 + x9, 7);
+			x8 ^= Integer.rotateLeft(x11 + x10, 9);
+			x9 ^= Integer.rotateLeft(x8 + x11, 13);
+			x10 ^= Integer.rotateLeft(x9 + x8, 18);
+			x12 ^= Integer.rotateLeft(x15 + x14, 7);
+			x13 ^= Integer.rotateLeft(x12 + x15, 9);
+			x14 ^= Integer.rotateLeft(x13 + x12, 13);
+			x15 ^= Integer.rotateLeft(x14 + x13, 18);
 		}
 
-		// Add the input data to the output data
-		for (int i = 0; i < outBuffer.length; i++)
-			outBuffer[i] += inData[i];
+		// Add the input data to the modified data and store the result in the output array
+		outBuffer[0] = x0 + inData[0];
+		outBuffer[1] = x1 + inData[1];
+		outBuffer[2] = x2 + inData[2];
+		outBuffer[3] = x3 + inData[3];
+		outBuffer[4] = x4 + inData[4];
+		outBuffer[5] = x5 + inData[5];
+		outBuffer[6] = x6 + inData[6];
+		outBuffer[7] = x7 + inData[7];
+		outBuffer[8] = x8 + inData[8];
+		outBuffer[9] = x9 + inData[9];
+		outBuffer[10] = x10 + inData[10];
+		outBuffer[11] = x11 + inData[11];
+		outBuffer[12] = x12 + inData[12];
+		outBuffer[13] = x13 + inData[13];
+		outBuffer[14] = x14 + inData[14];
+		outBuffer[15] = x15 + inData[15];
 	}
 
 	//------------------------------------------------------------------
@@ -650,23 +592,90 @@ public class Salsa20
 						 byte[] buffer,
 						 int    offset)
 	{
-		// Set block counter in input block
-		inBlock[BLOCK_COUNTER_OFFSET] = (int)blockCounter;
-		inBlock[BLOCK_COUNTER_OFFSET + 1] = (int)(blockCounter >>> 32);
+		// Generate block
+		generateBlock(blockCounter);
 
-		// Perform hash
-		hash(inBlock, outBlock, numRounds);
-
-		// Copy output block to buffer
+		// Copy output block to buffer as little-endian words
 		for (int i = 0; i < BLOCK_SIZE_WORDS; i++)
 		{
-			wordToBytes(outBlock[i], buffer, offset);
-			offset += BYTES_PER_WORD;
+			int word = outBlock[i];
+			buffer[offset++] = (byte)word;
+			buffer[offset++] = (byte)(word >>> 8);
+			buffer[offset++] = (byte)(word >>> 16);
+			buffer[offset++] = (byte)(word >>> 24);
 		}
 	}
 
 	//------------------------------------------------------------------
 
+	/**
+	 * Generates a specified number of consecutive blocks of data, starting with a specified counter value, and
+	 * stores the resulting data as a contiguous sequence of bytes in a specified buffer.  The output is
+	 * identical to that of successive calls to {@link #getBlock(long, byte[], int)}.
+	 *
+	 * @param blockCounter  the value of the block counter that will be used for generating the first block.
+	 * @param numBlocks     the number of blocks that will be generated.
+	 * @param buffer        the buffer in which the generated data will be stored.
+	 * @param offset        the offset in {@code buffer} at which the first byte of the generated data will
+	 *                      be stored.
+	 * @see   #getBlocks(long, int, ByteBuffer)
+	 */
+
+	public void getBlocks(long   blockCounter,
+						  int    numBlocks,
+						  byte[] buffer,
+						  int    offset)
+	{
+		for (int i = 0; i < numBlocks; i++)
+		{
+			getBlock(blockCounter++, buffer, offset);
+			offset += BLOCK_SIZE;
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Generates a specified number of consecutive blocks of data, starting with a specified counter value, and
+	 * stores the resulting data as a contiguous sequence of bytes in a specified buffer, starting at the
+	 * buffer's position.  The buffer may be direct; its byte order is ignored.  The position of the buffer is
+	 * advanced by the length of the generated data.
+	 *
+	 * @param  blockCounter  the value of the block counter that will be used for generating the first block.
+	 * @param  numBlocks     the number of blocks that will be generated.
+	 * @param  buffer        the buffer in which the generated data will be stored.
+	 * @throws BufferOverflowException
+	 *           if there is not enough space remaining in {@code buffer} for the generated data.
+	 * @see    #getBlocks(long, int, byte[], int)
+	 */
+
+	public void getBlocks(long       blockCounter,
+						  int        numBlocks,
+						  ByteBuffer buffer)
+	{
+		int length = numBlocks * BLOCK_SIZE;
+		if (buffer.remaining() < length)
+			throw new BufferOverflowException();
+
+		ByteBuffer byteBuffer = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		int offset = buffer.position();
+		for (int i = 0; i < numBlocks; i++)
+		{
+			// Generate block
+			generateBlock(blockCounter++);
+
+			// Copy output block to buffer
+			for (int j = 0; j < BLOCK_SIZE_WORDS; j++)
+			{
+				byteBuffer.putInt(offset, outBlock[j]);
+				offset += BYTES_PER_WORD;
+			}
+		}
+		buffer.position(offset);
+	}
+
+	//------------------------------------------------------------------
+
 	/**
 	 * Generates a block of data with the current block counter value of this cipher and stores the
 	 * resulting data as a sequence of bytes in a specified buffer.
@@ -689,6 +698,24 @@ public class Salsa20
 
 	//------------------------------------------------------------------
 
+	/**
+	 * Generates a block of data with a specified counter value in the output block of this cipher.
+	 *
+	 * @param blockCounter  the value of the block counter that will be used for generating the block.
+	 */
+
+	private void generateBlock(long blockCounter)
+	{
+		// Set block counter in input block
+		inBlock[BLOCK_COUNTER_OFFSET] = (int)blockCounter;
+		inBlock[BLOCK_COUNTER_OFFSET + 1] = (int)(blockCounter >>> 32);
+
+		// Perform hash
+		hash(inBlock, outBlock, numRounds);
+	}
+
+	//------------------------------------------------------------------
+
 	/**
 	 * Initialises the input block with a specified key and nonce.
 	 *
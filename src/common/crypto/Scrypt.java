@@ -18,14 +18,27 @@ package common.crypto;
 // IMPORTS
 
 
-import java.util.concurrent.Executors;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import common.exception.UnexpectedRuntimeException;
 
 import common.gui.RunnableMessageDialog;
 
+import common.misc.DaemonThread;
 import common.misc.IStringKeyed;
 
 //----------------------------------------------------------------------
@@ -40,6 +53,12 @@ import common.misc.IStringKeyed;
  * The scrypt function is specified in an <a
  * href="https://tools.ietf.org/html/draft-josefsson-scrypt-kdf">IETF draft</a>.
  * </p>
+ * <p>
+ * The parallel superblocks of the function are mixed by a pool of worker threads that is shared by all
+ * invocations of the function and has one thread for each available processor.  The number of invocations
+ * whose superblocks are mixed at the same time is limited to half the number of processors (at least one);
+ * further invocations wait for one of them to finish.
+ * </p>
  */
 
 public class Scrypt
@@ -82,13 +101,13 @@ public class Scrypt
 	public static final		int	MAX_NUM_PARALLEL_BLOCKS	= 64;
 
 	/**
-	 * The minimum number of threads that may be created to perform the parallel processing of superblocks
+	 * The minimum number of threads that may be used to perform the parallel processing of superblocks
 	 * at the highest level of the scrypt algorithm.
 	 */
 	public static final		int	MIN_NUM_THREADS	= 1;
 
 	/**
-	 * The maximum number of threads that may be created to perform the parallel processing of superblocks
+	 * The maximum number of threads that may be used to perform the parallel processing of superblocks
 	 * at the highest level of the scrypt algorithm.
 	 */
 	public static final		int	MAX_NUM_THREADS	= 64;
@@ -101,6 +120,19 @@ public class Scrypt
 	private static final	int	BLOCK_SIZE		= 2 * SALSA20_CORE_BLOCK_SIZE;
 	private static final	int	BLOCK_NUM_INTS	= BLOCK_SIZE / BYTES_PER_INT;
 
+	private static final	int	MAX_ARRAY_LENGTH	= Integer.MAX_VALUE - 8;
+
+	private static final	int	NUM_PROCESSORS	= Runtime.getRuntime().availableProcessors();
+
+	// The maximum number of derivations whose superblocks may be mixed at the same time.  Each mixer of a
+	// derivation allocates a V array, so this bounds the memory that is used when several keys are derived
+	// concurrently.
+	private static final	int	MAX_NUM_CONCURRENT_DERIVATIONS	= Math.max(1, NUM_PROCESSORS / 2);
+
+	private static final	long	THREAD_KEEP_ALIVE_TIME	= 60;	// seconds
+
+	private static final	String	MIXER_THREAD_NAME	= "Scrypt-mixer";
+
 ////////////////////////////////////////////////////////////////////////
 //  Enumerated types
 ////////////////////////////////////////////////////////////////////////
@@ -384,9 +416,42 @@ public class Scrypt
 							int           maxNumThreads,
 							int           outKeyLength,
 							String        messageStr)
+		{
+			this(key, salt, null, params, maxNumThreads, outKeyLength, messageStr);
+		}
+
+		//--------------------------------------------------------------
+
+		/**
+		 * Creates an instance of {@code KeyGenerator} for deriving a key from a specified key and salt by
+		 * means of the scrypt key derivation function with the specified KDF parameters and number of rounds
+		 * of the Salsa20 core.
+		 *
+		 * @param key            the key from which the key will be derived.
+		 * @param salt           the salt from which the key will be derived.
+		 * @param numRounds      the number of rounds of the Salsa20 core, or {@code null} for the number of
+		 *                       rounds that is set with {@link Scrypt#setSalsa20CoreNumRounds(Salsa20NumRounds)}
+		 *                       when the KDF is run.
+		 * @param params         the parameters of the KDF that will derive the key.
+		 * @param maxNumThreads  the maximum number of threads that should be allocated for the processing
+		 *                       of parallel superblocks in the KDF.
+		 * @param outKeyLength   the length (in bytes) of the derived key, which must be a positive integral
+		 *                       multiple of 32.
+		 * @param messageStr     the message that will be displayed in the dialog if the KDF is run from an
+		 *                       instance of {@code common.gui.RunnableMessageDialog}.
+		 */
+
+		public KeyGenerator(byte[]           key,
+							byte[]           salt,
+							Salsa20NumRounds numRounds,
+							Scrypt.Params    params,
+							int              maxNumThreads,
+							int              outKeyLength,
+							String           messageStr)
 		{
 			this.key = key;
 			this.salt = salt;
+			this.numRounds = numRounds;
 			this.params = params;
 			this.maxNumThreads = maxNumThreads;
 			this.outKeyLength = outKeyLength;
@@ -436,7 +501,8 @@ public class Scrypt
 		{
 			try
 			{
-				derivedKey = deriveKey(key, salt, params, maxNumThreads, outKeyLength);
+				derivedKey = deriveKey(key, salt, (numRounds == null) ? salsa20CoreNumRounds : numRounds, params,
+									   maxNumThreads, outKeyLength);
 			}
 			catch (IllegalArgumentException e)
 			{
@@ -506,15 +572,16 @@ public class Scrypt
 	//  Instance fields
 	////////////////////////////////////////////////////////////////////
 
-		private	byte[]			key;
-		private	byte[]			salt;
-		private	Scrypt.Params	params;
-		private	int				maxNumThreads;
-		private	int				outKeyLength;
-		private	String			messageStr;
-		private	byte[]			derivedKey;
-		private	boolean			invalidParameterValue;
-		private	boolean			outOfMemory;
+		private	byte[]				key;
+		private	byte[]				salt;
+		private	Salsa20NumRounds	numRounds;
+		private	Scrypt.Params		params;
+		private	int					maxNumThreads;
+		private	int					outKeyLength;
+		private	String				messageStr;
+		private	byte[]				derivedKey;
+		private	boolean				invalidParameterValue;
+		private	boolean				outOfMemory;
 
 	}
 
@@ -529,9 +596,16 @@ public class Scrypt
 	 * derivation function.
 	 * <p>
 	 * The superblocks of the scrypt KDF can be processed independently of each other, which makes the set
-	 * of tasks suitable for execution in parallel.  Multiple instances of this class are created and their
-	 * {@link Mixer#run() run()} methods executed concurrently in separate threads that are created by the
-	 * {@link Scrypt#deriveKey(byte[], byte[], int, int, int, int, int)} method.
+	 * of tasks suitable for execution in parallel.  Multiple instances of this class are created by the
+	 * {@link Scrypt#deriveKey(byte[], byte[], Salsa20NumRounds, int, int, int, int, int)} method, and their
+	 * {@link Mixer#run() run()} methods are executed concurrently by the shared pool of worker threads.  Each mixer processes
+	 * every <i>n</i>th superblock, where <i>n</i> is the number of mixers.
+	 * </p>
+	 * <p>
+	 * The costly <i>V</i> array of a superblock is a single contiguous array, and the intermediate results
+	 * of the mixing are stored in scratch arrays that are allocated once for each mixer and reused for each
+	 * superblock that it processes, so the mixing of a superblock performs no allocation after it has
+	 * started.
 	 * </p>
 	 */
 
@@ -543,15 +617,28 @@ public class Scrypt
 	//  Constructors
 	////////////////////////////////////////////////////////////////////
 
-		private Mixer(byte[] data,
-					  int    offset,
-					  int    length,
-					  int    cost)
+		private Mixer(int length)
+		{
+			this(null, 0, 0, length, 0, salsa20CoreNumRounds);
+		}
+
+		//--------------------------------------------------------------
+
+		private Mixer(byte[]           data,
+					  int              offset,
+					  int              stride,
+					  int              length,
+					  int              cost,
+					  Salsa20NumRounds numRounds)
 		{
 			this.data = data;
 			this.offset = offset;
+			this.stride = stride;
 			this.length = length;
 			this.cost = cost;
+			this.numRounds = numRounds.value;
+			x = new int[SALSA20_CORE_BLOCK_NUM_INTS];
+			z = new int[SALSA20_CORE_BLOCK_NUM_INTS];
 		}
 
 		//--------------------------------------------------------------
@@ -561,47 +648,156 @@ public class Scrypt
 	////////////////////////////////////////////////////////////////////
 
 		/**
-		 * Mixes a single superblock at the highest level of the scrypt KDF.
+		 * Mixes the superblocks that are assigned to this mixer at the highest level of the scrypt KDF.
 		 */
 
 		public void run()
 		{
-			try
+			int[] buffer = new int[length];
+			int blockSize = length * BYTES_PER_INT;
+			for (int i = offset; i < data.length; i += stride)
 			{
 				// Convert the key data to integers
-				int[] buffer = new int[length];
-				int j = offset;
-				for (int i = 0; i < length; i++)
-					buffer[i] = (data[j++] & 0xFF) | (data[j++] & 0xFF) << 8 |
-													(data[j++] & 0xFF) << 16 | (data[j++] & 0xFF) << 24;
+				IntBuffer intBuffer = ByteBuffer.wrap(data, i, blockSize).order(ByteOrder.LITTLE_ENDIAN)
+																							.asIntBuffer();
+				intBuffer.get(buffer);
 
 				// Mix the key data
-				sMix(buffer, buffer, cost);
+				sMix(buffer);
 
 				// Convert the mixed key data back to bytes
-				j = offset;
-				for (int i = 0; i < length; i++)
-				{
-					int value = buffer[i];
-					data[j++] = (byte)value;
-					data[j++] = (byte)(value >>> 8);
-					data[j++] = (byte)(value >>> 16);
-					data[j++] = (byte)(value >>> 24);
-				}
-			}
-			catch (OutOfMemoryError e)
-			{
-				outOfMemory = true;
+				intBuffer.rewind();
+				intBuffer.put(buffer);
 			}
 		}
 
 		//--------------------------------------------------------------
 
 	////////////////////////////////////////////////////////////////////
-	//  Class fields
+	//  Instance methods
 	////////////////////////////////////////////////////////////////////
 
-		private static volatile	boolean	outOfMemory;
+		/**
+		 * Mixes a superblock of data in place at the highest level of the scrypt KDF.
+		 *
+		 * @param  buffer  the data that will be mixed.
+		 * @throws OutOfMemoryError
+		 *           if the length of the <i>V</i> array would exceed the maximum length of an array, or if
+		 *           there is not enough memory for the <i>V</i> array.
+		 */
+
+		private void sMix(int[] buffer)
+		{
+			// Allocate the costly V array and the scratch array, unless they have already been allocated
+			int numIterations = 1 << cost;
+			if (v == null)
+			{
+				long vLength = (long)numIterations * length;
+				if (vLength > MAX_ARRAY_LENGTH)
+					throw new OutOfMemoryError();
+				v = new int[(int)vLength];
+				t = new int[length];
+			}
+
+			// Fill the V array: each element is the mixed value of its predecessor
+			System.arraycopy(buffer, 0, v, 0, length);
+			int offset = 0;
+			for (int i = 1; i < numIterations; i++)
+			{
+				blockMix(v, offset, null, 0, v, offset + length);
+				offset += length;
+			}
+			blockMix(v, offset, null, 0, buffer, 0);
+
+			// Perform further mixing, alternating between the buffer and a scratch array
+			int mask = numIterations - 1;
+			int[] x = buffer;
+			int[] t = this.t;
+			for (int i = 0; i < numIterations; i++)
+			{
+				int vOffset = (x[length - (BLOCK_NUM_INTS / 2)] & mask) * length;
+				blockMix(x, 0, v, vOffset, t, 0);
+
+				int[] temp = x;
+				x = t;
+				t = temp;
+			}
+
+			// Copy the mixed data to the buffer if it ended in the scratch array
+			if (x != buffer)
+				System.arraycopy(x, 0, buffer, 0, length);
+		}
+
+		//--------------------------------------------------------------
+
+		/**
+		 * Mixes a block of data at the intermediate level of the scrypt KDF.  The input data may optionally be
+		 * combined with a second block of data by an exclusive-OR operation before it is mixed.  The output
+		 * must not overlap either of the inputs.
+		 *
+		 * @param in1        the data that will be mixed.
+		 * @param offset1    the offset of the data in {@code in1}.
+		 * @param in2        the data that will be combined with the data in {@code in1} before it is mixed, or
+		 *                   {@code null} if the data in {@code in1} will be mixed directly.
+		 * @param offset2    the offset of the data in {@code in2}.
+		 * @param out        a buffer in which the mixed output data will be stored.
+		 * @param outOffset  the offset of the output data in {@code out}.
+		 */
+
+		private void blockMix(int[] in1,
+							  int   offset1,
+							  int[] in2,
+							  int   offset2,
+							  int[] out,
+							  int   outOffset)
+		{
+			final	int	BLOCK_LENGTH	= SALSA20_CORE_BLOCK_NUM_INTS;
+
+			// Copy the last block of input data to the X array
+			int lastOffset = length - BLOCK_LENGTH;
+			if (in2 == null)
+				System.arraycopy(in1, offset1 + lastOffset, x, 0, BLOCK_LENGTH);
+			else
+			{
+				for (int i = 0; i < BLOCK_LENGTH; i++)
+					x[i] = in1[offset1 + lastOffset + i] ^ in2[offset2 + lastOffset + i];
+			}
+
+			// Hash the input data with the Salsa20 function; move even blocks to the first half of the output
+			// and odd blocks to the second half
+			int evenOffset = outOffset;
+			int oddOffset = outOffset + length / 2;
+			for (int offset = 0; offset < length; offset += BLOCK_LENGTH)
+			{
+				int j = offset1 + offset;
+				if (in2 == null)
+				{
+					for (int i = 0; i < BLOCK_LENGTH; i++)
+						z[i] = x[i] ^ in1[j++];
+				}
+				else
+				{
+					int k = offset2 + offset;
+					for (int i = 0; i < BLOCK_LENGTH; i++)
+						z[i] = x[i] ^ in1[j++] ^ in2[k++];
+				}
+
+				Salsa20.hash(z, x, numRounds);
+
+				if ((offset & BLOCK_LENGTH) == 0)
+				{
+					System.arraycopy(x, 0, out, evenOffset, BLOCK_LENGTH);
+					evenOffset += BLOCK_LENGTH;
+				}
+				else
+				{
+					System.arraycopy(x, 0, out, oddOffset, BLOCK_LENGTH);
+					oddOffset += BLOCK_LENGTH;
+				}
+			}
+		}
+
+		//--------------------------------------------------------------
 
 	////////////////////////////////////////////////////////////////////
 	//  Instance fields
@@ -609,8 +805,14 @@ public class Scrypt
 
 		private	byte[]	data;
 		private	int		offset;
+		private	int		stride;
 		private	int		length;
 		private	int		cost;
+		private	int		numRounds;
+		private	int[]	x;
+		private	int[]	z;
+		private	int[]	v;
+		private	int[]	t;
 
 	}
 
@@ -689,13 +891,14 @@ public class Scrypt
 
 	/**
 	 * Derives a key from a specified key and salt using the scrypt key derivation function with the
-	 * specified parameters, and returns the derived key.
+	 * specified parameters, and returns the derived key.  The Salsa20 core performs the number of rounds that
+	 * was set with {@link #setSalsa20CoreNumRounds(Salsa20NumRounds)}.
 	 *
 	 * @param  key            the key from which the key will be derived.
 	 * @param  salt           the salt from which the key will be derived.
 	 * @param  params         the parameters of the scrypt algorithm: CPU/memory cost, block size and
 	 *                        parallelisation.
-	 * @param  maxNumThreads  the maximum number of threads that will be created to perform the mixing of
+	 * @param  maxNumThreads  the maximum number of threads that will be used to perform the mixing of
 	 *                        the parallel superblocks at the highest level of the KDF.
 	 * @param  outKeyLength   the length (in bytes) of the derived key, which must be a positive integral
 	 *                        multiple of 32.
@@ -711,6 +914,7 @@ public class Scrypt
 	 *             <li>{@code maxNumThreads} is less than 1 or greater than 64, or</li>
 	 *             <li>{@code outKeyLength} is not a positive integral multiple of 32.</li>
 	 *           </ul>
+	 * @see    #deriveKey(byte[], byte[], Salsa20NumRounds, Params, int, int)
 	 * @see    #deriveKey(byte[], byte[], int, int, int, int, int)
 	 * @see    Scrypt.Params
 	 */
@@ -721,15 +925,60 @@ public class Scrypt
 								   int    maxNumThreads,
 								   int    outKeyLength)
 	{
-		return deriveKey(key, salt, params.cost, params.numBlocks, params.numParallelBlocks, maxNumThreads,
-						 outKeyLength);
+		return deriveKey(key, salt, salsa20CoreNumRounds, params, maxNumThreads, outKeyLength);
 	}
 
 	//------------------------------------------------------------------
 
 	/**
 	 * Derives a key from a specified key and salt using the scrypt key derivation function with the
-	 * specified parameters, and returns the derived key.
+	 * specified parameters and number of rounds of the Salsa20 core, and returns the derived key.  The
+	 * number of rounds that was set with {@link #setSalsa20CoreNumRounds(Salsa20NumRounds)} is ignored, so
+	 * keys with different numbers of rounds may be derived concurrently.
+	 *
+	 * @param  key            the key from which the key will be derived.
+	 * @param  salt           the salt from which the key will be derived.
+	 * @param  numRounds      the number of rounds of the Salsa20 core.
+	 * @param  params         the parameters of the scrypt algorithm: CPU/memory cost, block size and
+	 *                        parallelisation.
+	 * @param  maxNumThreads  the maximum number of threads that will be used to perform the mixing of
+	 *                        the parallel superblocks at the highest level of the KDF.
+	 * @param  outKeyLength   the length (in bytes) of the derived key, which must be a positive integral
+	 *                        multiple of 32.
+	 * @return a derived key of length {@code outKeyLength}.
+	 * @throws IllegalArgumentException
+	 *           if
+	 *           <ul>
+	 *             <li>{@code key} is {@code null}, or</li>
+	 *             <li>{@code salt} is {@code null}, or</li>
+	 *             <li>{@code numRounds} is {@code null}, or</li>
+	 *             <li>{@code params.cost} is less than 1 or greater than 24, or</li>
+	 *             <li>{@code params.numBlocks} is less than 1 or greater than 1024, or</li>
+	 *             <li>{@code params.numParallelBlocks} is less than 1 or greater than 64, or</li>
+	 *             <li>{@code maxNumThreads} is less than 1 or greater than 64, or</li>
+	 *             <li>{@code outKeyLength} is not a positive integral multiple of 32.</li>
+	 *           </ul>
+	 * @see    #deriveKey(byte[], byte[], Salsa20NumRounds, int, int, int, int, int)
+	 * @see    Scrypt.Params
+	 */
+
+	public static byte[] deriveKey(byte[]           key,
+								   byte[]           salt,
+								   Salsa20NumRounds numRounds,
+								   Params           params,
+								   int              maxNumThreads,
+								   int              outKeyLength)
+	{
+		return deriveKey(key, salt, numRounds, params.cost, params.numBlocks, params.numParallelBlocks,
+						 maxNumThreads, outKeyLength);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Derives a key from a specified key and salt using the scrypt key derivation function with the
+	 * specified parameters, and returns the derived key.  The Salsa20 core performs the number of rounds that
+	 * was set with {@link #setSalsa20CoreNumRounds(Salsa20NumRounds)}.
 	 *
 	 * @param  key                the key from which the key will be derived.
 	 * @param  salt               the salt from which the key will be derived.
@@ -737,7 +986,7 @@ public class Scrypt
 	 * @param  numBlocks          the number of blocks: the scrypt block size parameter, <i>r</i>.
 	 * @param  numParallelBlocks  the number of parallel superblocks: the scrypt parallelisation
 	 *                            parameter, <i>p</i>.
-	 * @param  maxNumThreads      the maximum number of threads that will be created to perform the mixing
+	 * @param  maxNumThreads      the maximum number of threads that will be used to perform the mixing
 	 *                            of the parallel superblocks at the highest level of the KDF.
 	 * @param  outKeyLength       the length (in bytes) of the derived key, which must be a positive
 	 *                            integral multiple of 32.
@@ -754,6 +1003,7 @@ public class Scrypt
 	 *             <li>{@code outKeyLength} is not a positive integral multiple of 32.</li>
 	 *           </ul>
 	 * @see    #deriveKey(byte[], byte[], Params, int, int)
+	 * @see    #deriveKey(byte[], byte[], Salsa20NumRounds, int, int, int, int, int)
 	 */
 
 	public static byte[] deriveKey(byte[] key,
@@ -763,11 +1013,59 @@ public class Scrypt
 								   int    numParallelBlocks,
 								   int    maxNumThreads,
 								   int    outKeyLength)
+	{
+		return deriveKey(key, salt, salsa20CoreNumRounds, cost, numBlocks, numParallelBlocks, maxNumThreads,
+						 outKeyLength);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Derives a key from a specified key and salt using the scrypt key derivation function with the
+	 * specified parameters and number of rounds of the Salsa20 core, and returns the derived key.  The
+	 * number of rounds that was set with {@link #setSalsa20CoreNumRounds(Salsa20NumRounds)} is ignored, so
+	 * keys with different numbers of rounds may be derived concurrently.
+	 *
+	 * @param  key                the key from which the key will be derived.
+	 * @param  salt               the salt from which the key will be derived.
+	 * @param  numRounds          the number of rounds of the Salsa20 core.
+	 * @param  cost               the binary logarithm of the scrypt CPU/memory cost parameter, <i>N</i>.
+	 * @param  numBlocks          the number of blocks: the scrypt block size parameter, <i>r</i>.
+	 * @param  numParallelBlocks  the number of parallel superblocks: the scrypt parallelisation
+	 *                            parameter, <i>p</i>.
+	 * @param  maxNumThreads      the maximum number of threads that will be used to perform the mixing
+	 *                            of the parallel superblocks at the highest level of the KDF.
+	 * @param  outKeyLength       the length (in bytes) of the derived key, which must be a positive
+	 *                            integral multiple of 32.
+	 * @return a derived key of length {@code outKeyLength}.
+	 * @throws IllegalArgumentException
+	 *           if
+	 *           <ul>
+	 *             <li>{@code key} is {@code null}, or</li>
+	 *             <li>{@code salt} is {@code null}, or</li>
+	 *             <li>{@code numRounds} is {@code null}, or</li>
+	 *             <li>{@code cost} is less than 1 or greater than 24, or</li>
+	 *             <li>{@code numBlocks} is less than 1 or greater than 1024, or</li>
+	 *             <li>{@code numParallelBlocks} is less than 1 or greater than 64, or</li>
+	 *             <li>{@code maxNumThreads} is less than 1 or greater than 64, or</li>
+	 *             <li>{@code outKeyLength} is not a positive integral multiple of 32.</li>
+	 *           </ul>
+	 * @see    #deriveKey(byte[], byte[], Salsa20NumRounds, Params, int, int)
+	 */
+
+	public static byte[] deriveKey(byte[]           key,
+								   byte[]           salt,
+								   Salsa20NumRounds numRounds,
+								   int              cost,
+								   int              numBlocks,
+								   int              numParallelBlocks,
+								   int              maxNumThreads,
+								   int              outKeyLength)
 	{
 		final	int	NUM_ITERATIONS	= 1;
 
 		// Validate arguments
-		if ((key == null) || (salt == null) ||
+		if ((key == null) || (salt == null) || (numRounds == null) ||
 			 (cost < MIN_COST) || (cost > MAX_COST) ||
 			 (numBlocks < MIN_NUM_BLOCKS) || (numBlocks > MAX_NUM_BLOCKS) ||
 			 (numParallelBlocks < MIN_NUM_PARALLEL_BLOCKS) ||
@@ -776,41 +1074,58 @@ public class Scrypt
 			 (outKeyLength <= 0) || (outKeyLength % HmacSha256.HASH_VALUE_SIZE != 0))
 			throw new IllegalArgumentException();
 
-		// Maximise available memory
-		System.gc();
-
 		// Generate key data from the input key and salt
 		int parallelBlockSize = numBlocks * BLOCK_SIZE;
 		byte[] keyData = pbkdf2HmacSha256(key, salt, NUM_ITERATIONS,
 										  numParallelBlocks * parallelBlockSize);
 
-		// Mix the key data using a thread pool
-		Mixer.outOfMemory = false;
-		ExecutorService executor =
-							Executors.newFixedThreadPool(Math.min(numParallelBlocks, maxNumThreads));
-		for (int offset = 0; offset < keyData.length; offset += parallelBlockSize)
+		// Mix the key data using the shared pool of worker threads
+		int numMixers = Math.min(numParallelBlocks, maxNumThreads);
+		List<Future<?>> futures = new ArrayList<>();
+		boolean permitAcquired = false;
+		try
 		{
-			executor.execute(new Mixer(keyData, offset, numBlocks * BLOCK_NUM_INTS, cost));
-			if (Mixer.outOfMemory)
-				break;
-		}
+			// Wait until the number of derivations in progress is below the limit
+			derivationPermits.acquire();
+			permitAcquired = true;
 
-		// Wait for threads to terminate
-		try
+			// Submit mixers
+			ExecutorService executor = getExecutor();
+			for (int i = 0; i < numMixers; i++)
+			{
+				futures.add(executor.submit(new Mixer(keyData, i * parallelBlockSize,
+													  numMixers * parallelBlockSize,
+													  numBlocks * BLOCK_NUM_INTS, cost, numRounds)));
+			}
+
+			// Wait for mixers to finish
+			for (Future<?> future : futures)
+				future.get();
+		}
+		catch (ExecutionException e)
 		{
-			executor.shutdown();
-			if (!executor.awaitTermination(1000, TimeUnit.SECONDS))
-				throw new UnexpectedRuntimeException();
+			if (e.getCause() instanceof OutOfMemoryError)
+				throw new OutOfMemoryError();
+			throw new UnexpectedRuntimeException(e.getCause());
 		}
 		catch (InterruptedException e)
 		{
 			throw new UnexpectedRuntimeException();
 		}
-		if (Mixer.outOfMemory)
-			throw new OutOfMemoryError();
+		finally
+		{
+			for (Future<?> future : futures)
+				future.cancel(true);
+			if (permitAcquired)
+				derivationPermits.release();
+		}
+
+		// Derive a key from the input key and processed key data
+		byte[] outKey = pbkdf2HmacSha256(key, keyData, NUM_ITERATIONS, outKeyLength);
+		Arrays.fill(keyData, (byte)0);
 
-		// Return a key derived from the input key and processed key data
-		return pbkdf2HmacSha256(key, keyData, NUM_ITERATIONS, outKeyLength);
+		// Return derived key
+		return outKey;
 	}
 
 	//------------------------------------------------------------------
@@ -819,47 +1134,16 @@ public class Scrypt
 	 * Mixes the specified block of data at the intermediate level of the scrypt KDF.
 	 *
 	 * @param in   the data that will be mixed.
-	 * @param out  a buffer in which the mixed output data will be stored.
+	 * @param out  a buffer in which the mixed output data will be stored.  It may be the same array as
+	 *             {@code in}.
 	 */
 
 	protected static void blockMix(int[] in,
 								   int[] out)
 	{
-		final	int	BLOCK_LENGTH	= SALSA20_CORE_BLOCK_NUM_INTS;
-
-		// Copy the last block of input data to the X array
-		int length = in.length;
-		int[] x = new int[BLOCK_LENGTH];
-		System.arraycopy(in, in.length - BLOCK_LENGTH, x, 0, BLOCK_LENGTH);
-
-		// Hash the input data with the Salsa20 function
-		int[] y = new int[length];
-		int[] z = new int[BLOCK_LENGTH];
-		int j = 0;
-		for (int offset = 0; offset < length; offset += BLOCK_LENGTH)
-		{
-			for (int i = 0; i < BLOCK_LENGTH; i++)
-				z[i] = x[i] ^ in[j++];
-
-			Salsa20.hash(z, x, salsa20CoreNumRounds.value);
-
-			System.arraycopy(x, 0, y, offset, BLOCK_LENGTH);
-		}
-
-		// Move the processed input data to the output array
-		int offset = 0;
-		int offset0 = 0;
-		int offset1 = length / 2;
-		while (offset < length)
-		{
-			System.arraycopy(y, offset, out, offset0, BLOCK_LENGTH);
-			offset += BLOCK_LENGTH;
-			offset0 += BLOCK_LENGTH;
-
-			System.arraycopy(y, offset, out, offset1, BLOCK_LENGTH);
-			offset += BLOCK_LENGTH;
-			offset1 += BLOCK_LENGTH;
-		}
+		if (in == out)
+			in = in.clone();
+		new Mixer(in.length).blockMix(in, 0, null, 0, out, 0);
 	}
 
 	//------------------------------------------------------------------
@@ -868,7 +1152,8 @@ public class Scrypt
 	 * Mixes the specified superblock of data at the highest level of the scrypt KDF.
 	 *
 	 * @param in    the data that will be mixed.
-	 * @param out   a buffer in which the mixed output data will be stored.
+	 * @param out   a buffer in which the mixed output data will be stored.  It may be the same array as
+	 *              {@code in}.
 	 * @param cost  the binary logarithm of the scrypt CPU/memory cost parameter, <i>N</i>.
 	 */
 
@@ -876,35 +1161,35 @@ public class Scrypt
 							   int[] out,
 							   int   cost)
 	{
-		// Copy the input data to the X array
 		int length = in.length;
-		int[] x = new int[length];
-		System.arraycopy(in, 0, x, 0, length);
+		if (in != out)
+			System.arraycopy(in, 0, out, 0, length);
+		new Mixer(null, 0, 0, length, cost, salsa20CoreNumRounds).sMix(out);
+	}
 
-		// Mix the data in the costly V array
-		int numIterations = 1 << cost;
-		int[][] v = new int[numIterations][length];
-		for (int i = 0; i < numIterations; i++)
-		{
-			System.arraycopy(x, 0, v[i], 0, length);
+	//------------------------------------------------------------------
 
-			blockMix(x, x);
-		}
+	/**
+	 * Returns the shared pool of worker threads that mix the parallel superblocks of the KDF.  The pool is
+	 * created when it is first requested.  It has one thread for each available processor; the threads are
+	 * daemon threads that terminate when they have been idle for a minute.  Mixers that are submitted while all
+	 * the threads are busy wait in a queue.
+	 *
+	 * @return the shared pool of worker threads.
+	 */
 
-		// Perform further mixing
-		int mask = numIterations - 1;
-		int[] t = new int[length];
-		for (int i = 0; i < numIterations; i++)
+	private static synchronized ExecutorService getExecutor()
+	{
+		if (executor == null)
 		{
-			int[] vv = v[x[length - (BLOCK_NUM_INTS / 2)] & mask];
-			for (int j = 0; j < length; j++)
-				t[j] = x[j] ^ vv[j];
-
-			blockMix(t, x);
+			ThreadPoolExecutor threadPool =
+					new ThreadPoolExecutor(NUM_PROCESSORS, NUM_PROCESSORS, THREAD_KEEP_ALIVE_TIME,
+										   TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+										   runnable -> DaemonThread.create(runnable, MIXER_THREAD_NAME));
+			threadPool.allowCoreThreadTimeOut(true);
+			executor = threadPool;
 		}
-
-		// Copy the mixed data to the output array
-		System.arraycopy(x, 0, out, 0, length);
+		return executor;
 	}
 
 	//------------------------------------------------------------------
@@ -962,6 +1247,10 @@ public class Scrypt
 		byte[] extendedSalt = new byte[salt.length + INDEX_LENGTH];
 		System.arraycopy(salt, 0, extendedSalt, 0, salt.length);
 
+		// Create the HMAC once; it is reset before each hash value is computed
+		HmacSha256 hmac = new HmacSha256(key);
+		byte[] hashValue = new byte[HmacSha256.HASH_VALUE_SIZE];
+
 		// Repeatedly hash the input key and the salt extended with the block index
 		byte[] outKey = new byte[outKeyLength];
 		int index = 0;
@@ -975,18 +1264,15 @@ public class Scrypt
 				value >>>= 8;
 			}
 
-			// Repeatedly hash the input key and extended salt
-			byte[] result = new byte[HmacSha256.HASH_VALUE_SIZE];
-			byte[] hashValue = extendedSalt;
+			// Repeatedly hash the input key and extended salt, combining the hash values in the output array
 			for (int i = 0; i < numIterations; i++)
 			{
-				hashValue = hmacSha256(key, hashValue);
+				hmac.reset();
+				hmac.update((i == 0) ? extendedSalt : hashValue);
+				hmac.getValueInto(hashValue, 0);
 				for (int j = 0; j < HmacSha256.HASH_VALUE_SIZE; j++)
-					result[j] ^= hashValue[j];
+					outKey[offset + j] ^= hashValue[j];
 			}
-
-			// Copy the result to the output array
-			System.arraycopy(result, 0, outKey, offset, HmacSha256.HASH_VALUE_SIZE);
 		}
 
 		// Return the derived key
@@ -1000,6 +1286,8 @@ public class Scrypt
 ////////////////////////////////////////////////////////////////////////
 
 	private static	Salsa20NumRounds	salsa20CoreNumRounds	= Salsa20NumRounds.DEFAULT;
+	private static	ExecutorService		executor;
+	private static	Semaphore			derivationPermits	= new Semaphore(MAX_NUM_CONCURRENT_DERIVATIONS, true);
 
 }
 
@@ -18,6 +18,9 @@ package common.crypto;
 // IMPORTS
 
 
+import java.nio.ByteBuffer;
+
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -56,8 +59,6 @@ public class ShaD256
 
 	private static final	String	HASH_NAME	= "SHA-256";
 
-	private static final	MessageDigest	OUTER_HASH;
-
 ////////////////////////////////////////////////////////////////////////
 //  Constructors
 ////////////////////////////////////////////////////////////////////////
@@ -75,11 +76,13 @@ public class ShaD256
 		try
 		{
 			hash = MessageDigest.getInstance(HASH_NAME);
+			outerHash = MessageDigest.getInstance(HASH_NAME);
 		}
 		catch (NoSuchAlgorithmException e)
 		{
 			throw new UnexpectedRuntimeException(e);
 		}
+		innerHashValue = new byte[HASH_VALUE_SIZE];
 	}
 
 	//------------------------------------------------------------------
@@ -103,6 +106,8 @@ public class ShaD256
 	{
 		ShaD256 copy = (ShaD256)super.clone();
 		copy.hash = (MessageDigest)hash.clone();
+		copy.outerHash = (MessageDigest)outerHash.clone();
+		copy.innerHashValue = new byte[HASH_VALUE_SIZE];
 		return copy;
 	}
 
@@ -155,15 +160,71 @@ public class ShaD256
 
 	//------------------------------------------------------------------
 
+	/**
+	 * Updates this hash function with the remaining data in a specified buffer, which may be a direct buffer
+	 * or a mapped file.  On return, the position of the buffer will be equal to its limit.
+	 * <p>
+	 * The data in a buffer that is backed by an array is passed directly to the hash function.  The handling
+	 * of other buffers is determined by the implementation of SHA-256 that is provided by {@link
+	 * java.security.MessageDigest}.
+	 * </p>
+	 *
+	 * @param data  the buffer whose remaining data will be used to update the hash function.
+	 */
+
+	public void update(ByteBuffer data)
+	{
+		hash.update(data);
+	}
+
+	//------------------------------------------------------------------
+
 	/**
 	 * Returns the value of this hash function.
 	 *
 	 * @return the value of this hash function.
+	 * @see    #digestInto(byte[], int)
 	 */
 
 	public byte[] digest()
 	{
-		return OUTER_HASH.digest(hash.digest());
+		byte[] value = new byte[HASH_VALUE_SIZE];
+		digestInto(value, 0);
+		return value;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Stores the value of this hash function in a specified buffer.  Unlike {@link #digest()}, this method
+	 * does not allocate an array for the value.  The hash function is reset by this method.
+	 *
+	 * @param  buffer  the buffer in which the value of the hash function will be stored.
+	 * @param  offset  the offset in {@code buffer} at which the first byte of the value will be stored.
+	 * @throws IllegalArgumentException
+	 *           if {@code offset} is negative or there is not enough space for the value in {@code buffer}
+	 *           after {@code offset}.
+	 * @see    #digest()
+	 */
+
+	public void digestInto(byte[] buffer,
+						   int    offset)
+	{
+		// Validate arguments
+		if ((offset < 0) || (buffer.length - offset < HASH_VALUE_SIZE))
+			throw new IllegalArgumentException();
+
+		// Hash the inner hash value, and store the result in the buffer
+		try
+		{
+			hash.digest(innerHashValue, 0, HASH_VALUE_SIZE);
+			outerHash.update(innerHashValue);
+			outerHash.digest(buffer, offset, HASH_VALUE_SIZE);
+		}
+		catch (DigestException e)
+		{
+			throw new UnexpectedRuntimeException(e);
+		}
 	}
 
 	//------------------------------------------------------------------
@@ -215,33 +276,13 @@ public class ShaD256
 
 	//------------------------------------------------------------------
 
-////////////////////////////////////////////////////////////////////////
-//  Static initialiser
-////////////////////////////////////////////////////////////////////////
-
-	/**
-	 * Initialised the outer SHA-256 hash function.
-	 *
-	 * @throws UnexpectedRuntimeException
-	 */
-
-	static
-	{
-		try
-		{
-			OUTER_HASH = MessageDigest.getInstance(HASH_NAME);
-		}
-		catch (NoSuchAlgorithmException e)
-		{
-			throw new UnexpectedRuntimeException(e);
-		}
-	}
-
 ////////////////////////////////////////////////////////////////////////
 //  Instance fields
 ////////////////////////////////////////////////////////////////////////
 
 	private	MessageDigest	hash;
+	private	MessageDigest	outerHash;
+	private	byte[]			innerHashValue;
 
 }
 
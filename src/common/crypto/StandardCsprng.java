@@ -19,12 +19,17 @@ package common.crypto;
 
 
 import java.awt.AWTEvent;
+import java.awt.GraphicsEnvironment;
 import java.awt.Toolkit;
 
 import java.io.File;
 
+import java.util.Arrays;
 import java.util.Map;
 
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
 import common.exception.AppException;
 
 //----------------------------------------------------------------------
@@ -36,6 +41,20 @@ import common.exception.AppException;
 /**
  * This class implements a standard cryptographically secure pseudo-random number generator (PRNG)
  * comprising a Fortuna PRNG and an entropy accumulator.
+ * <p>
+ * The methods that generate random data may be called concurrently from any number of threads.  Each thread
+ * generates random data with its own Fortuna PRNG, which is seeded with random data from the master PRNG when
+ * it is first used and is reseeded in the same way (<i>forked</i>) after it has generated 1 MB of random data or
+ * after one second, whichever is sooner.  The master PRNG is accessed only when a thread's PRNG is forked, so
+ * threads do not contend for it while they generate random data.
+ * </p>
+ * <p>
+ * The entropy accumulator does not add entropy to the master PRNG directly.  Instead, each byte of entropy is
+ * added without locking to one of several ring buffers, which is selected by the identifier of the current
+ * thread.  The buffered entropy is transferred to the entropy pools of the master PRNG, one byte at a time in
+ * the order in which it was added to each ring buffer, before the master PRNG is used.  A thread that finds its
+ * ring buffer full transfers the buffered entropy itself.
+ * </p>
  */
 
 public class StandardCsprng
@@ -47,10 +66,18 @@ public class StandardCsprng
 
 	private static final	int	DEFAULT_ENTROPY_SOURCE_MOUSE_INTERVAL	= 4;
 	private static final	int	DEFAULT_ENTROPY_SOURCE_TIMER_INTERVAL	= 4;
+	private static final	int	DEFAULT_ENTROPY_SOURCE_HEADLESS_INTERVAL	= 1000;
 	private static final	int	DEFAULT_TIMER_DIVISOR					= 1;
 
 	private static final	String	SEED_FILE_NAME	= "fortunaSeed.dat";
 
+	private static final	int		LOCAL_SEED_LENGTH		= 64;
+	private static final	int		LOCAL_RESEED_LENGTH		= 1 << 20;
+	private static final	long	LOCAL_RESEED_INTERVAL	= 1000000000L;  // 1 second in nanoseconds
+
+	private static final	int	MAX_NUM_ENTROPY_RINGS	= 64;
+	private static final	int	ENTROPY_RING_SIZE		= 1 << 10;
+
 ////////////////////////////////////////////////////////////////////////
 //  Enumerated types
 ////////////////////////////////////////////////////////////////////////
@@ -102,6 +129,224 @@ public class StandardCsprng
 
 	//==================================================================
 
+////////////////////////////////////////////////////////////////////////
+//  Member classes : non-inner classes
+////////////////////////////////////////////////////////////////////////
+
+
+	// ENTROPY RING BUFFER CLASS
+
+
+	/**
+	 * This class implements a bounded ring buffer of bytes of entropy to which any number of threads may add
+	 * bytes without locking, and from which one thread at a time may remove them.  Each slot of the buffer has
+	 * a sequence number that indicates whether the slot is free or holds a byte that has been published by a
+	 * producer.
+	 */
+
+	private static class EntropyRing
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Creates a ring buffer of a specified size.
+		 *
+		 * @param size  the number of slots in the buffer, which must be a power of two.
+		 */
+
+		private EntropyRing(int size)
+		{
+			data = new byte[size];
+			sequences = new AtomicLongArray(size);
+			for (int i = 0; i < size; i++)
+				sequences.set(i, i);
+			tail = new AtomicLong();
+			mask = size - 1;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Adds a byte of entropy to this buffer, if it is not full.
+		 *
+		 * @param  b  the byte of entropy.
+		 * @return {@code true} if the byte was added to this buffer; {@code false} if this buffer is full.
+		 */
+
+		private boolean offer(byte b)
+		{
+			long position = tail.get();
+			while (true)
+			{
+				int index = (int)position & mask;
+				long difference = sequences.get(index) - position;
+				if (difference == 0)
+				{
+					if (tail.compareAndSet(position, position + 1))
+					{
+						data[index] = b;
+						sequences.set(index, position + 1);
+						return true;
+					}
+					position = tail.get();
+				}
+				else if (difference < 0)
+					return false;
+				else
+					position = tail.get();
+			}
+		}
+
+		//--------------------------------------------------------------
+
+		/**
+		 * Removes the published bytes of entropy from this buffer and adds them to a specified consumer.  This
+		 * method must not be called concurrently by more than one thread.
+		 *
+		 * @param consumer  the consumer to which the bytes of entropy will be added.
+		 */
+
+		private void drain(IEntropyConsumer consumer)
+		{
+			while (true)
+			{
+				int index = (int)head & mask;
+				if (sequences.get(index) != head + 1)
+					break;
+				byte b = data[index];
+				data[index] = 0;
+				sequences.set(index, head + data.length);
+				++head;
+				consumer.addRandomByte(b);
+			}
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance fields
+	////////////////////////////////////////////////////////////////////
+
+		private	byte[]			data;
+		private	AtomicLongArray	sequences;
+		private	AtomicLong		tail;
+		private	long			head;
+		private	int				mask;
+
+	}
+
+	//==================================================================
+
+
+	// LOCAL GENERATOR CLASS
+
+
+	/**
+	 * This class encapsulates the Fortuna PRNG of a thread and the state that determines when it is forked
+	 * from the master PRNG.
+	 */
+
+	private static class LocalGenerator
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Creates a local generator with a specified PRNG.
+		 *
+		 * @param prng  the PRNG of the generator.
+		 */
+
+		private LocalGenerator(Fortuna prng)
+		{
+			this.prng = prng;
+			forkTime = System.nanoTime();
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance fields
+	////////////////////////////////////////////////////////////////////
+
+		private	Fortuna	prng;
+		private	long	forkTime;
+		private	long	length;
+
+	}
+
+	//==================================================================
+
+////////////////////////////////////////////////////////////////////////
+//  Member classes : inner classes
+////////////////////////////////////////////////////////////////////////
+
+
+	// ENTROPY INGESTER CLASS
+
+
+	/**
+	 * This class implements the consumer of entropy from the entropy accumulator.  It adds each byte of entropy
+	 * to the ring buffer of the current thread.
+	 */
+
+	private class EntropyIngester
+		implements IEntropyConsumer
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private EntropyIngester()
+		{
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : IEntropyConsumer interface
+	////////////////////////////////////////////////////////////////////
+
+		public void addRandomByte(byte b)
+		{
+			EntropyRing ring = entropyRings[(int)Thread.currentThread().getId() & (entropyRings.length - 1)];
+			if (!ring.offer(b))
+			{
+				synchronized (prng)
+				{
+					drainEntropy();
+				}
+				ring.offer(b);
+			}
+		}
+
+		//--------------------------------------------------------------
+
+		public void addRandomBytes(byte[] data,
+								   int    offset,
+								   int    length)
+		{
+			int endOffset = offset + length;
+			for (int i = offset; i < endOffset; i++)
+				addRandomByte(data[i]);
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
 ////////////////////////////////////////////////////////////////////////
 //  Constructors
 ////////////////////////////////////////////////////////////////////////
@@ -112,7 +357,10 @@ public class StandardCsprng
 	 * <p>
 	 * The default entropy sources are keyboard, mouse and timer.  The bit mask for all three sources
 	 * comprises the four low-order bits, and the sample interval of the mouse and timer sources is four
-	 * milliseconds.
+	 * milliseconds.  If the Java runtime is headless, the default entropy sources are instead the headless
+	 * sources of {@link EntropyAccumulator}, each with a bit mask that comprises the four low-order bits and
+	 * an interval of one second between batches of samples, after an initial period of fast sampling that
+	 * lets the master PRNG be reseeded soon after it is created.
 	 * </p>
 	 * <p>
 	 * The entropy accumulator is set as a listener for system-wide keyboard and mouse events.
@@ -139,7 +387,10 @@ public class StandardCsprng
 	 * <p>
 	 * The default entropy sources are keyboard, mouse and timer.  The bit mask for all three sources
 	 * comprises the four low-order bits, and the sample interval of the mouse and timer sources is four
-	 * milliseconds.
+	 * milliseconds.  If the Java runtime is headless, the default entropy sources are instead the headless
+	 * sources of {@link EntropyAccumulator}, each with a bit mask that comprises the four low-order bits and
+	 * an interval of one second between batches of samples, after an initial period of fast sampling that
+	 * lets the master PRNG be reseeded soon after it is created.
 	 * </p>
 	 * <p>
 	 * The entropy accumulator is set as a listener for system-wide keyboard and mouse events.
@@ -158,9 +409,7 @@ public class StandardCsprng
 						  int           timerDivisor)
 		throws AppException
 	{
-		this(cipher, EntropyAccumulator.getSourceParams(DEFAULT_ENTROPY_SOURCE_MOUSE_INTERVAL,
-														DEFAULT_ENTROPY_SOURCE_TIMER_INTERVAL),
-			 timerDivisor);
+		this(cipher, getDefaultSourceParams(), timerDivisor);
 	}
 
 	//------------------------------------------------------------------
@@ -216,14 +465,26 @@ public class StandardCsprng
 						   int                                  timerDivisor)
 		throws AppException
 	{
-		// Create the PRNG
+		// Create the master PRNG
+		this.cipher = cipher;
 		prng = cipher.createPrng(CryptoUtils.getSeedFromNanoTime(cipher.getKeySize(),
 																 timerDivisor));
 
-		// Create the entropy accumulator and set it as the supplier of entropy to the PRNG
+		// Create the ring buffers for entropy
+		int numRings = Math.min(Integer.highestOneBit(2 * Runtime.getRuntime().availableProcessors() - 1),
+								MAX_NUM_ENTROPY_RINGS);
+		entropyRings = new EntropyRing[numRings];
+		for (int i = 0; i < numRings; i++)
+			entropyRings[i] = new EntropyRing(ENTROPY_RING_SIZE);
+
+		// Create the entropy accumulator and set it as the supplier of entropy to the master PRNG through the
+		// ring buffers
 		entropyAccumulator = new EntropyAccumulator(entropySourceParams, timerDivisor);
 		entropyAccumulator.setMetricsEnabled(true);
-		entropyAccumulator.addEntropyConsumer(prng);
+		entropyAccumulator.addEntropyConsumer(new EntropyIngester());
+
+		// Initialise the thread-local PRNGs
+		localGenerators = new ThreadLocal<>();
 
 		// Set the entropy accumulator to use system-wide keyboard and mouse events as sources of entropy
 		try
@@ -239,14 +500,37 @@ public class StandardCsprng
 
 	//------------------------------------------------------------------
 
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Returns the parameters of the default entropy sources: the headless sources if the Java runtime is
+	 * headless, or the keyboard, mouse and timer sources otherwise.
+	 *
+	 * @return the parameters of the default entropy sources.
+	 */
+
+	private static Map<EntropyAccumulator.SourceKind, EntropyAccumulator.SourceParams> getDefaultSourceParams()
+	{
+		return GraphicsEnvironment.isHeadless()
+					? EntropyAccumulator.getHeadlessSourceParams(DEFAULT_ENTROPY_SOURCE_HEADLESS_INTERVAL)
+					: EntropyAccumulator.getSourceParams(DEFAULT_ENTROPY_SOURCE_MOUSE_INTERVAL,
+														 DEFAULT_ENTROPY_SOURCE_TIMER_INTERVAL);
+	}
+
+	//------------------------------------------------------------------
+
 ////////////////////////////////////////////////////////////////////////
 //  Instance methods
 ////////////////////////////////////////////////////////////////////////
 
 	/**
-	 * Returns the PRNG of this standard cryptographically secure PRNG.
+	 * Returns the master PRNG of this standard cryptographically secure PRNG.  The master PRNG is not
+	 * thread-safe: any access to it must be synchronized on the PRNG object.  Entropy that has been buffered
+	 * but not yet added to the master PRNG is not reflected in its state.
 	 *
-	 * @return the PRNG of this standard cryptographically secure PRNG.
+	 * @return the master PRNG of this standard cryptographically secure PRNG.
 	 */
 
 	public Fortuna getPrng()
@@ -279,7 +563,7 @@ public class StandardCsprng
 
 	public byte getRandomByte()
 	{
-		return prng.getRandomBytes(1)[0];
+		return getLocalPrng(1).getRandomByte();
 	}
 
 	//------------------------------------------------------------------
@@ -298,7 +582,7 @@ public class StandardCsprng
 
 	public byte[] getRandomBytes(int length)
 	{
-		return prng.getRandomBytes(length);
+		return getLocalPrng(length).getRandomBytes(length);
 	}
 
 	//------------------------------------------------------------------
@@ -317,7 +601,7 @@ public class StandardCsprng
 
 	public void getRandomBytes(byte[] buffer)
 	{
-		prng.getRandomBytes(buffer, 0, buffer.length);
+		getLocalPrng(buffer.length).getRandomBytes(buffer, 0, buffer.length);
 	}
 
 	//------------------------------------------------------------------
@@ -345,7 +629,7 @@ public class StandardCsprng
 							   int    offset,
 							   int    length)
 	{
-		prng.getRandomBytes(buffer, offset, length);
+		getLocalPrng(length).getRandomBytes(buffer, offset, length);
 	}
 
 	//------------------------------------------------------------------
@@ -360,7 +644,7 @@ public class StandardCsprng
 
 	public int getRandomInt()
 	{
-		return prng.getRandomInt();
+		return getLocalPrng(Integer.BYTES).getRandomInt();
 	}
 
 	//------------------------------------------------------------------
@@ -375,7 +659,7 @@ public class StandardCsprng
 
 	public long getRandomLong()
 	{
-		return prng.getRandomLong();
+		return getLocalPrng(Long.BYTES).getRandomLong();
 	}
 
 	//------------------------------------------------------------------
@@ -412,16 +696,22 @@ public class StandardCsprng
 			byte[] randomData = randomDataFile.getRandomData();
 			randomDataLength = randomData.length;
 
-			// Add random data to first entropy pool of PRNG
-			prng.addRandomBytes(0, randomData, 0, randomDataLength);
+			synchronized (prng)
+			{
+				// Add buffered entropy to master PRNG
+				drainEntropy();
 
-			// If PRNG can reseed, update seed file ...
-			if (prng.canReseed())
-				writeSeedFile(directory);
+				// Add random data to first entropy pool of master PRNG
+				prng.addRandomBytes(0, randomData, 0, randomDataLength);
 
-			// ... otherwise, delete seed file
-			else
-				file.delete();
+				// If master PRNG can reseed, update seed file ...
+				if (prng.canReseed())
+					writeSeedFile(directory);
+
+				// ... otherwise, delete seed file
+				else
+					file.delete();
+			}
 		}
 
 		return randomDataLength;
@@ -446,18 +736,89 @@ public class StandardCsprng
 		throws AppException
 	{
 		RandomDataFile randomDataFile = new RandomDataFile();
-		randomDataFile.setRandomData(prng.getRandomBytes(Fortuna.RESEED_ENTROPY_THRESHOLD));
+		synchronized (prng)
+		{
+			drainEntropy();
+			randomDataFile.setRandomData(prng.getRandomBytes(Fortuna.RESEED_ENTROPY_THRESHOLD));
+		}
 		randomDataFile.write(new File(directory, SEED_FILE_NAME));
 	}
 
 	//------------------------------------------------------------------
 
+	/**
+	 * Returns the PRNG of the current thread, creating it or forking it from the master PRNG if necessary, and
+	 * adds a specified length to the amount of random data that it has generated.
+	 *
+	 * @param  length  the number of bytes of random data that will be generated.
+	 * @return the PRNG of the current thread.
+	 */
+
+	private Fortuna getLocalPrng(int length)
+	{
+		LocalGenerator generator = localGenerators.get();
+		if (generator == null)
+		{
+			byte[] seed = getForkSeed();
+			generator = new LocalGenerator(cipher.createPrng(seed));
+			Arrays.fill(seed, (byte)0);
+			localGenerators.set(generator);
+		}
+		else if ((generator.length >= LOCAL_RESEED_LENGTH) ||
+				  (System.nanoTime() - generator.forkTime >= LOCAL_RESEED_INTERVAL))
+		{
+			byte[] seed = getForkSeed();
+			generator.prng.init(seed);
+			Arrays.fill(seed, (byte)0);
+			generator.forkTime = System.nanoTime();
+			generator.length = 0;
+		}
+		generator.length += length;
+		return generator.prng;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Adds the buffered entropy to the master PRNG, and returns a seed for the PRNG of a thread that is
+	 * generated by the master PRNG.
+	 *
+	 * @return a seed for the PRNG of a thread.
+	 */
+
+	private byte[] getForkSeed()
+	{
+		synchronized (prng)
+		{
+			drainEntropy();
+			return prng.getRandomBytes(LOCAL_SEED_LENGTH);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Transfers the buffered entropy from the ring buffers to the master PRNG.  The caller must hold the lock
+	 * of the master PRNG.
+	 */
+
+	private void drainEntropy()
+	{
+		for (EntropyRing ring : entropyRings)
+			ring.drain(prng);
+	}
+
+	//------------------------------------------------------------------
+
 ////////////////////////////////////////////////////////////////////////
 //  Instance fields
 ////////////////////////////////////////////////////////////////////////
 
-	private	Fortuna				prng;
-	private	EntropyAccumulator	entropyAccumulator;
+	private	FortunaCipher					cipher;
+	private	Fortuna							prng;
+	private	EntropyRing[]					entropyRings;
+	private	EntropyAccumulator				entropyAccumulator;
+	private	ThreadLocal<LocalGenerator>		localGenerators;
 
 }
 
@@ -19,6 +19,8 @@ package common.crypto;
 
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.WritableRaster;
 
 import java.io.InputStream;
 import java.io.IOException;
@@ -27,8 +29,12 @@ import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
 import common.exception.AppException;
 import common.exception.TaskCancelledException;
+import common.exception.UnexpectedRuntimeException;
 
 import common.misc.IProgressListener;
 import common.misc.NumberUtils;
@@ -61,6 +67,21 @@ import common.misc.NumberUtils;
  * RGB components at the start of the image.  The encoding and decoding of the payload length are delegated
  * to classes that implement the {@link ILengthEncoder} and {@link ILengthDecoder} interfaces.
  * </p>
+ * <p>
+ * The pixels of an image are processed a row at a time.  The rows of an image whose raster holds RGB values
+ * directly (an image of type {@code TYPE_INT_RGB}, {@code TYPE_INT_ARGB}, {@code TYPE_3BYTE_BGR} or {@code
+ * TYPE_4BYTE_ABGR}) are read from the raster without conversion by the colour model of the image; the rows of
+ * other images are converted to RGB values in bulk.  The output image is written directly to its data buffer.
+ * </p>
+ * <p>
+ * Although the Bresenham algorithm is incremental, the number of payload bits that precede any RGB component
+ * of the carrier and the value of the decision variable at that component can be calculated directly.  The
+ * image is therefore divided into bands of rows that are concealed or recovered independently of each other
+ * on the common fork-join pool.  The payload and random data of each band are read in sequence before the
+ * bands are processed, and the payload that is recovered from each band is written in sequence after they
+ * have been processed, so the result is identical to that of processing the pixels of the image in order.
+ * Cancellation is tested and progress is reported after each group of bands.
+ * </p>
  */
 
 public class StreamConcealer
@@ -100,9 +121,13 @@ public class StreamConcealer
 	 */
 	public static final		int	MAX_CARRIER_SIZE	= MAX_PAYLOAD_LENGTH / BYTES_PER_PIXEL;
 
-	private static final	int	BUFFER_SIZE			= 1 << 13;  // 8192
+	private static final	int	RGB_MASK	= 0xFFFFFF;
+
 	private static final	int	RANDOM_BUFFER_SIZE	= 1 << 12;  // 4096
 
+	private static final	int	BAND_NUM_PIXELS			= 1 << 16;
+	private static final	int	NUM_BANDS_PER_PROCESSOR	= 4;
+
 	private static final	String	DATA_STR	= "data";
 
 ////////////////////////////////////////////////////////////////////////
@@ -260,6 +285,46 @@ public class StreamConcealer
 	//==================================================================
 
 
+	// ROW OUTPUT INTERFACE
+
+
+	/**
+	 * This interface specifies an output for the rows of the image that is produced by a concealment operation.
+	 *
+	 * @see StreamConcealer#conceal(IInput, BufferedImage, int, ILengthEncoder, int, IRandomSource, IRowOutput)
+	 */
+
+	public interface IRowOutput
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Methods
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Writes a specified number of rows of pixels to the output.  The rows of an image are written in order
+		 * from the top of the image.
+		 *
+		 * @param  rgbValues  the RGB values of the pixels of the rows.  Only the low-order 24 bits of each value
+		 *                    are significant.
+		 * @param  offset     the offset in {@code rgbValues} of the first pixel of the first row.
+		 * @param  numRows    the number of rows to write.
+		 * @throws IOException
+		 *           if an error occurs when writing to the output.
+		 */
+
+		void writeRows(int[] rgbValues,
+					   int   offset,
+					   int   numRows)
+			throws IOException;
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+
 	// LENGTH ENCODER INTERFACE
 
 
@@ -656,6 +721,523 @@ public class StreamConcealer
 
 	//==================================================================
 
+
+	// IMAGE ROW OUTPUT CLASS
+
+
+	/**
+	 * This class implements an {@link IRowOutput} that stores rows in an image of type {@code TYPE_INT_RGB}.
+	 *
+	 * @see StreamConcealer#conceal(IInput, BufferedImage, int, ILengthEncoder, int, IRandomSource)
+	 */
+
+	private static class ImageRowOutput
+		implements IRowOutput
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Creates an output for the rows of an image of a specified size.  The image is created when the first
+		 * rows are written.
+		 *
+		 * @param width   the width of the image.
+		 * @param height  the height of the image.
+		 */
+
+		private ImageRowOutput(int width,
+							   int height)
+		{
+			this.width = width;
+			this.height = height;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : RowOutput interface
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Copies a specified number of rows of pixels to the image.
+		 *
+		 * @param rgbValues  the RGB values of the pixels of the rows.
+		 * @param offset     the offset in {@code rgbValues} of the first pixel of the first row.
+		 * @param numRows    the number of rows to copy.
+		 */
+
+		public void writeRows(int[] rgbValues,
+							  int   offset,
+							  int   numRows)
+		{
+			if (image == null)
+				image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			int[] pixels = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+			int length = numRows * width;
+			System.arraycopy(rgbValues, offset, pixels, pixelIndex, length);
+			pixelIndex += length;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance fields
+	////////////////////////////////////////////////////////////////////
+
+		private	int				width;
+		private	int				height;
+		private	BufferedImage	image;
+		private	int				pixelIndex;
+
+	}
+
+	//==================================================================
+
+	// BIT ALLOCATION CLASS
+
+
+	/**
+	 * This class encapsulates the allocation of the bits of a payload to the RGB components of a carrier by
+	 * the Bresenham algorithm.  It calculates the state of the algorithm at any RGB component directly, so that
+	 * a carrier can be processed in independent bands.
+	 */
+
+	private static class BitAllocation
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Creates an allocation of the bits of a payload to the RGB components of a carrier.
+		 *
+		 * @param lengthFieldNumBits  the number of RGB components that are reserved for the length field.
+		 * @param numImageBytes       the number of RGB components that are available for the payload.
+		 * @param numPayloadBits      the number of bits in the payload.
+		 */
+
+		private BitAllocation(int lengthFieldNumBits,
+							  int numImageBytes,
+							  int numPayloadBits)
+		{
+			this.lengthFieldNumBits = lengthFieldNumBits;
+			bitsPerImageByte = numPayloadBits / numImageBytes;
+			remainder = numPayloadBits % numImageBytes;
+			dx = numImageBytes - 1;
+			dy = remainder;
+			inc0 = 2 * dy;
+			inc1 = 2 * (dy - dx);
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Returns the number of payload bits that are concealed in the RGB components of the carrier that
+		 * precede a specified component.
+		 *
+		 * @param  componentIndex  the index of the RGB component.
+		 * @return the number of payload bits in the RGB components that precede {@code componentIndex}.
+		 */
+
+		private int getNumBitsBefore(int componentIndex)
+		{
+			int imageOffset = componentIndex - lengthFieldNumBits;
+			return (imageOffset <= 0) ? 0
+									  : imageOffset * bitsPerImageByte + (int)getNumExtraBits(imageOffset - 1);
+		}
+
+		//--------------------------------------------------------------
+
+		/**
+		 * Returns the value of the decision variable of the Bresenham algorithm before the number of payload bits
+		 * of a specified RGB component is determined.
+		 *
+		 * @param  componentIndex  the index of the RGB component.
+		 * @return the value of the decision variable at {@code componentIndex}.
+		 */
+
+		private int getDecision(int componentIndex)
+		{
+			int numSteps = Math.max(0, componentIndex - lengthFieldNumBits - 1);
+			return (int)(2L * dy - dx + 2L * dy * numSteps - 2L * dx * getNumExtraBits(numSteps));
+		}
+
+		//--------------------------------------------------------------
+
+		/**
+		 * Returns the number of steps of the Bresenham algorithm, up to a specified number, at which an extra
+		 * payload bit is allocated to an RGB component.
+		 *
+		 * @param  numSteps  the number of steps of the algorithm.
+		 * @return the number of the first {@code numSteps} steps at which an extra bit is allocated.
+		 */
+
+		private long getNumExtraBits(int numSteps)
+		{
+			return (dx == 0) ? 0 : (2L * dy * numSteps + dx - 1) / (2L * dx);
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance fields
+	////////////////////////////////////////////////////////////////////
+
+		private	int	lengthFieldNumBits;
+		private	int	bitsPerImageByte;
+		private	int	remainder;
+		private	int	dx;
+		private	int	dy;
+		private	int	inc0;
+		private	int	inc1;
+
+	}
+
+	//==================================================================
+
+
+	// CONCEALMENT BAND CLASS
+
+
+	/**
+	 * This class implements a task that conceals part of a payload in a band of rows of a carrier.
+	 */
+
+	private static class ConcealmentBand
+		extends RecursiveAction
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constants
+	////////////////////////////////////////////////////////////////////
+
+		private static final	long	serialVersionUID	= 1L;
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Creates a task that conceals part of a payload in a band of rows of a carrier.
+		 *
+		 * @param image        the carrier image.
+		 * @param startY       the y coordinate of the first row of the band.
+		 * @param endY         the y coordinate of the row after the last row of the band.
+		 * @param allocation   the allocation of payload bits to the RGB components of the carrier.
+		 * @param payloadData  the bytes of the payload that contain the bits that will be concealed in the band.
+		 * @param bitOffset    the offset of the first bit of the band in the first byte of {@code payloadData}.
+		 * @param randomData   the random data for the RGB components of the band, or {@code null} if there is no
+		 *                     random data.
+		 * @param randomMask   the mask that is applied to random data.
+		 * @param outPixels    the buffer in which the output pixels of the band will be stored.
+		 * @param outOffset    the offset in {@code outPixels} at which the first output pixel of the band will be
+		 *                     stored.
+		 */
+
+		private ConcealmentBand(BufferedImage image,
+								int           startY,
+								int           endY,
+								BitAllocation allocation,
+								byte[]        payloadData,
+								int           bitOffset,
+								byte[]        randomData,
+								int           randomMask,
+								int[]         outPixels,
+								int           outOffset)
+		{
+			this.image = image;
+			this.startY = startY;
+			this.endY = endY;
+			this.allocation = allocation;
+			this.payloadData = payloadData;
+			this.bitOffset = bitOffset;
+			this.randomData = randomData;
+			this.randomMask = randomMask;
+			this.outPixels = outPixels;
+			this.outOffset = outOffset;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : overriding methods
+	////////////////////////////////////////////////////////////////////
+
+		@Override
+		protected void compute()
+		{
+			// Initialise bit buffer
+			int bitBuffer = 0;
+			int bitDataLength = 0;
+			int payloadIndex = 0;
+			if (bitOffset > 0)
+			{
+				bitBuffer = payloadData[payloadIndex++] & 0xFF;
+				bitDataLength = 8 - bitOffset;
+			}
+
+			// Initialise variables of Bresenham algorithm
+			int width = image.getWidth();
+			int componentIndex = startY * width * BYTES_PER_PIXEL;
+			int imageOffset = componentIndex - allocation.lengthFieldNumBits;
+			int d = allocation.getDecision(componentIndex);
+			int bitsPerImageByte = allocation.bitsPerImageByte;
+			int inc0 = allocation.inc0;
+			int inc1 = allocation.inc1;
+
+			// Set payload data in least significant bits of RGB values of band
+			int[] rgbValues = new int[width];
+			byte[] rowData = createRowData(image);
+			int randomIndex = 0;
+			int pixelIndex = outOffset;
+			for (int y = startY; y < endY; y++)
+			{
+				// Get RGB values of row of pixels
+				getRgbRow(image, y, rgbValues, rowData);
+
+				for (int x = 0; x < width; x++)
+				{
+					// Get RGB value of pixel
+					int rgb = rgbValues[x];
+
+					// Set payload data in RGB components of pixel
+					int shift = RGB_INITIAL_SHIFT;
+					for (int i = 0; i < BYTES_PER_PIXEL; i++)
+					{
+						// Get number of bits of payload sample and increment decision threshold
+						int numBits = 0;
+						if (imageOffset >= 0)
+						{
+							numBits = bitsPerImageByte;
+							if (imageOffset > 0)
+							{
+								if (d > 0)
+								{
+									d += inc1;
+									++numBits;
+								}
+								else
+									d += inc0;
+							}
+						}
+						++imageOffset;
+
+						// Get bits from bit buffer, adding payload data if necessary
+						if (bitDataLength < numBits)
+						{
+							bitBuffer <<= 8;
+							bitBuffer |= payloadData[payloadIndex++] & 0xFF;
+							bitDataLength += 8;
+						}
+
+						// Set random bits in RGB value
+						if (randomData != null)
+						{
+							rgb &= ~(randomMask << shift);
+							rgb |= (randomData[randomIndex++] & randomMask) << shift;
+						}
+
+						// Set payload bits in RGB value
+						if (numBits > 0)
+						{
+							bitDataLength -= numBits;
+							int mask = (1 << numBits) - 1;
+							rgb &= ~(mask << shift);
+							rgb |= (bitBuffer >>> bitDataLength & mask) << shift;
+						}
+
+						// Decrement RGB shift
+						shift -= 8;
+					}
+
+					// Set RGB value of pixel in output image
+					outPixels[pixelIndex++] = rgb & RGB_MASK;
+				}
+			}
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance fields
+	////////////////////////////////////////////////////////////////////
+
+		private	BufferedImage	image;
+		private	int				startY;
+		private	int				endY;
+		private	BitAllocation	allocation;
+		private	byte[]			payloadData;
+		private	int				bitOffset;
+		private	byte[]			randomData;
+		private	int				randomMask;
+		private	int[]			outPixels;
+		private	int				outOffset;
+
+	}
+
+	//==================================================================
+
+
+	// RECOVERY BAND CLASS
+
+
+	/**
+	 * This class implements a task that recovers part of a payload from a band of rows of an image.
+	 */
+
+	private static class RecoveryBand
+		extends RecursiveAction
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constants
+	////////////////////////////////////////////////////////////////////
+
+		private static final	long	serialVersionUID	= 1L;
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Creates a task that recovers part of a payload from a band of rows of an image.
+		 *
+		 * @param image       the image from which the payload will be recovered.
+		 * @param startY      the y coordinate of the first row of the band.
+		 * @param endY        the y coordinate of the row after the last row of the band.
+		 * @param allocation  the allocation of payload bits to the RGB components of the image.
+		 */
+
+		private RecoveryBand(BufferedImage image,
+							 int           startY,
+							 int           endY,
+							 BitAllocation allocation)
+		{
+			this.image = image;
+			this.startY = startY;
+			this.endY = endY;
+			this.allocation = allocation;
+			int componentIndex = startY * image.getWidth() * BYTES_PER_PIXEL;
+			startBitIndex = allocation.getNumBitsBefore(componentIndex);
+			endBitIndex = allocation.getNumBitsBefore(endY * image.getWidth() * BYTES_PER_PIXEL);
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : overriding methods
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Recovers the payload bits of the band.  The bits are stored in an array of bytes that is aligned with
+		 * the bytes of the payload: the bits of the first and last bytes of the array that are not in the band
+		 * are zero.
+		 */
+
+		@Override
+		protected void compute()
+		{
+			// Allocate buffer for payload data; initialise bit buffer
+			payloadData = new byte[(endBitIndex + 7 >>> 3) - (startBitIndex >>> 3)];
+			int payloadIndex = 0;
+			int bitBuffer = 0;
+			int bitDataLength = startBitIndex & 0x07;
+
+			// Initialise variables of Bresenham algorithm
+			int width = image.getWidth();
+			int componentIndex = startY * width * BYTES_PER_PIXEL;
+			int imageOffset = componentIndex - allocation.lengthFieldNumBits;
+			int d = allocation.getDecision(componentIndex);
+			int bitsPerImageByte = allocation.bitsPerImageByte;
+			int inc0 = allocation.inc0;
+			int inc1 = allocation.inc1;
+
+			// Extract payload data from least significant bits of RGB values of band
+			int[] rgbValues = new int[width];
+			byte[] rowData = createRowData(image);
+			for (int y = startY; y < endY; y++)
+			{
+				// Get RGB values of row of pixels
+				getRgbRow(image, y, rgbValues, rowData);
+
+				for (int x = 0; x < width; x++)
+				{
+					// Get RGB value of pixel
+					int rgb = rgbValues[x];
+
+					// Extract payload data from RGB components of pixel
+					int shift = RGB_INITIAL_SHIFT;
+					for (int i = 0; i < BYTES_PER_PIXEL; i++)
+					{
+						// Get number of bits of payload sample and increment decision threshold
+						int numBits = 0;
+						if (imageOffset >= 0)
+						{
+							numBits = bitsPerImageByte;
+							if (imageOffset > 0)
+							{
+								if (d > 0)
+								{
+									d += inc1;
+									++numBits;
+								}
+								else
+									d += inc0;
+							}
+						}
+						++imageOffset;
+
+						// Extract payload bits from RGB component and add them to bit buffer
+						if (numBits > 0)
+						{
+							bitBuffer <<= numBits;
+							bitBuffer |= rgb >> shift & ((1 << numBits) - 1);
+							bitDataLength += numBits;
+						}
+
+						// Store buffered data
+						while (bitDataLength >= 8)
+						{
+							bitDataLength -= 8;
+							payloadData[payloadIndex++] = (byte)(bitBuffer >>> bitDataLength);
+						}
+
+						// Decrement RGB shift
+						shift -= 8;
+					}
+				}
+			}
+
+			// Store residual data
+			if (bitDataLength > 0)
+				payloadData[payloadIndex] = (byte)(bitBuffer << 8 - bitDataLength);
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance fields
+	////////////////////////////////////////////////////////////////////
+
+		private	BufferedImage	image;
+		private	int				startY;
+		private	int				endY;
+		private	BitAllocation	allocation;
+		private	int				startBitIndex;
+		private	int				endBitIndex;
+		private	byte[]			payloadData;
+
+	}
+
+	//==================================================================
+
 ////////////////////////////////////////////////////////////////////////
 //  Constructors
 ////////////////////////////////////////////////////////////////////////
@@ -724,6 +1306,45 @@ public class StreamConcealer
 
 	//------------------------------------------------------------------
 
+	/**
+	 * Encodes the length of a payload with a specified encoder and conceals the encoded length in the RGB values
+	 * of the first pixels of an image.
+	 *
+	 * @param rgbValues      the RGB values of the first rows of the image.
+	 * @param numPixels      the number of pixels in the image.
+	 * @param length         the length of the payload.
+	 * @param lengthEncoder  the object that will encode the length as an array of bytes.
+	 * @see   #concealLength(BufferedImage, int, ILengthEncoder)
+	 */
+
+	private static void concealLength(int[]          rgbValues,
+									  int            numPixels,
+									  int            length,
+									  ILengthEncoder lengthEncoder)
+	{
+		int lengthFieldNumBits = lengthEncoder.getLengthFieldNumBits(numPixels);
+		byte[] lengthData = lengthEncoder.encodeLength(length, numPixels);
+		int pixelIndex = 0;
+		int shift = RGB_INITIAL_SHIFT;
+		for (int i = 0; i < lengthFieldNumBits; i++)
+		{
+			int mask = 1 << shift;
+			if ((lengthData[i >>> 3] & 1 << (i & 0x07)) == 0)
+				rgbValues[pixelIndex] &= ~mask;
+			else
+				rgbValues[pixelIndex] |= mask;
+
+			shift -= 8;
+			if (shift < 0)
+			{
+				shift = RGB_INITIAL_SHIFT;
+				++pixelIndex;
+			}
+		}
+	}
+
+	//------------------------------------------------------------------
+
 	/**
 	 * Extracts the encoded length of a payload from a specified image, decodes the length with a specified
 	 * decoder and returns the length.
@@ -763,6 +1384,100 @@ public class StreamConcealer
 
 	//------------------------------------------------------------------
 
+	/**
+	 * Returns the number of bytes per pixel of an image whose raster holds RGB values as bytes, or 0 if the
+	 * raster of the image does not hold RGB values as bytes.
+	 *
+	 * @param  image  the image of interest.
+	 * @return the number of bytes per pixel of the raster of {@code image}, or 0 if the raster does not hold
+	 *         RGB values as bytes.
+	 */
+
+	private static int getBytesPerPixel(BufferedImage image)
+	{
+		switch (image.getType())
+		{
+			case BufferedImage.TYPE_3BYTE_BGR:
+				return 3;
+
+			case BufferedImage.TYPE_4BYTE_ABGR:
+				return 4;
+
+			default:
+				return 0;
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Creates and returns a buffer for the raster data of a row of pixels of a specified image, if the raster
+	 * holds RGB values as bytes.
+	 *
+	 * @param  image  the image for whose rows the buffer is required.
+	 * @return a buffer for the raster data of a row of pixels of {@code image}, or {@code null} if the raster of
+	 *         the image does not hold RGB values as bytes.
+	 */
+
+	private static byte[] createRowData(BufferedImage image)
+	{
+		int bytesPerPixel = getBytesPerPixel(image);
+		return (bytesPerPixel == 0) ? null : new byte[image.getWidth() * bytesPerPixel];
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Gets the RGB values of a row of pixels of a specified image.  The row is read directly from the raster of
+	 * the image if its raster holds RGB values; otherwise, the pixels of the row are converted to RGB values by
+	 * the colour model of the image.  Only the low-order 24 bits of each RGB value are significant.
+	 *
+	 * @param image      the image.
+	 * @param y          the y coordinate of the row.
+	 * @param rgbValues  the array in which the RGB values of the row will be stored.  Its length must be the
+	 *                   width of the image.
+	 * @param rowData    a buffer for the raster data of the row, which was created by {@link
+	 *                   #createRowData(BufferedImage)}.
+	 */
+
+	private static void getRgbRow(BufferedImage image,
+								  int           y,
+								  int[]         rgbValues,
+								  byte[]        rowData)
+	{
+		int width = rgbValues.length;
+		WritableRaster raster = image.getRaster();
+		switch (image.getType())
+		{
+			case BufferedImage.TYPE_INT_RGB:
+			case BufferedImage.TYPE_INT_ARGB:
+				raster.getDataElements(0, y, width, 1, rgbValues);
+				break;
+
+			case BufferedImage.TYPE_3BYTE_BGR:
+			case BufferedImage.TYPE_4BYTE_ABGR:
+			{
+				// The data elements of a pixel are in the order of the bands of the raster: R, G, B (, A)
+				raster.getDataElements(0, y, width, 1, rowData);
+				int bytesPerPixel = getBytesPerPixel(image);
+				int index = 0;
+				for (int x = 0; x < width; x++)
+				{
+					rgbValues[x] = (rowData[index] & 0xFF) << 16 | (rowData[index + 1] & 0xFF) << 8
+										| rowData[index + 2] & 0xFF;
+					index += bytesPerPixel;
+				}
+				break;
+			}
+
+			default:
+				image.getRGB(0, y, width, 1, rgbValues, 0, width);
+				break;
+		}
+	}
+
+	//------------------------------------------------------------------
+
 ////////////////////////////////////////////////////////////////////////
 //  Instance methods
 ////////////////////////////////////////////////////////////////////////
@@ -887,6 +1602,7 @@ public class StreamConcealer
 	 * @throws TaskCancelledException
 	 *           if the concealment operation was cancelled by the user.
 	 * @see    #conceal(InputStream, BufferedImage, int, ILengthEncoder, int, IRandomSource)
+	 * @see    #conceal(IInput, BufferedImage, int, ILengthEncoder, int, IRandomSource, IRowOutput)
 	 * @see    #recover(BufferedImage, IOutput, ILengthDecoder)
 	 * @see    #recover(BufferedImage, OutputStream, ILengthDecoder)
 	 */
@@ -898,6 +1614,63 @@ public class StreamConcealer
 								 int            maxReplacementDepth,
 								 IRandomSource  randomSource)
 		throws InputException, TaskCancelledException
+	{
+		ImageRowOutput output = new ImageRowOutput(image.getWidth(), image.getHeight());
+		try
+		{
+			conceal(input, image, length, lengthEncoder, maxReplacementDepth, randomSource, output);
+		}
+		catch (OutputException e)
+		{
+			// An image row output does not throw an exception
+			throw new UnexpectedRuntimeException(e);
+		}
+		return output.image;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Conceals data read from a specified input (the <i>payload</i>) in a specified image (the
+	 * <i>carrier</i>), and writes the rows of the resulting image to a specified output as they are produced.
+	 * The rows are written in groups, so the resulting image is never held in memory in its entirety.
+	 *
+	 * @param  input                the input from which the payload will be read.
+	 * @param  image                the image in which the payload will be concealed.
+	 * @param  length               the length (in bytes) of the payload.
+	 * @param  lengthEncoder        the object that will encode the length of the payload as an array of
+	 *                              bytes.
+	 * @param  maxReplacementDepth  the maximum number of bits per RGB colour component of {@code image}
+	 *                              that will be replaced by the payload.
+	 * @param  randomSource         a source of random data for replacing bits of the RGB components of
+	 *                              {@code image} that are not replaced by the payload, up to {@code
+	 *                              maxReplacementDepth}.  If {@code randomSource} is {@code null}, no
+	 *                              carrier bits will be replaced by random data.
+	 * @param  output               the output to which the rows of the resulting image will be written.
+	 * @throws IllegalArgumentException
+	 *           if
+	 *           <ul>
+	 *             <li>{@code length} is negative or greater than 2<sup>24</sup> - 1 (16777215), or</li>
+	 *             <li>{@code maxReplacementDepth} is less than 1 or greater than 6.</li>
+	 *           </ul>
+	 * @throws InputException
+	 *           if an error occurred when reading from the input.
+	 * @throws OutputException
+	 *           if an error occurred when writing to the output.
+	 * @throws TaskCancelledException
+	 *           if the concealment operation was cancelled by the user.
+	 * @see    #conceal(IInput, BufferedImage, int, ILengthEncoder, int, IRandomSource)
+	 * @see    #recover(BufferedImage, IOutput, ILengthDecoder)
+	 */
+
+	public void conceal(IInput         input,
+						BufferedImage  image,
+						int            length,
+						ILengthEncoder lengthEncoder,
+						int            maxReplacementDepth,
+						IRandomSource  randomSource,
+						IRowOutput     output)
+		throws InputException, OutputException, TaskCancelledException
 	{
 		// Validate arguments
 		if ((length < 0) || (length > MAX_PAYLOAD_LENGTH) ||
@@ -920,18 +1693,8 @@ public class StreamConcealer
 		if (imageSize * maxReplacementDepth < numPayloadBits)
 			throw new InputException(ErrorId.IMAGE_IS_TOO_SMALL);
 
-		// Create output image
-		BufferedImage outImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-
-		// Initialise variables of Bresenham algorithm: deltas, decision threshold and increments
-		int numImageBytes = (int)imageSize;
-		int payloadBitsPerImageByte = numPayloadBits / numImageBytes;
-		int remainder = numPayloadBits % numImageBytes;
-		int dx = numImageBytes - 1;
-		int dy = remainder;
-		int d = 2 * dy - dx;
-		int inc0 = 2 * dy;
-		int inc1 = 2 * (dy - dx);
+		// Initialise allocation of payload bits to RGB components of image
+		BitAllocation allocation = new BitAllocation(lengthFieldNumBits, (int)imageSize, numPayloadBits);
 
 		// Initialise random source
 		int randomMask = 0;
@@ -940,121 +1703,116 @@ public class StreamConcealer
 		int randomLength = 0;
 		if (randomSource != null)
 		{
-			int numRandomBits = payloadBitsPerImageByte;
-			if (remainder > 0)
+			int numRandomBits = allocation.bitsPerImageByte;
+			if (allocation.remainder > 0)
 				++numRandomBits;
 			randomMask = (1 << numRandomBits) - 1;
 			randomBuffer = new byte[RANDOM_BUFFER_SIZE];
 		}
 
-		// Set input data in least significant bits of RGB values of image
-		byte[] buffer = new byte[BUFFER_SIZE];
-		int numBits = 0;
-		int bitBuffer = 0;
-		int bitDataLength = 0;
-		int imageOffset = -lengthFieldNumBits;
-		int blockIndex = 0;
-		int blockLength = 0;
-		int offset = 0;
-		for (int y = 0; y < height; y++)
+		// Set input data in least significant bits of RGB values of image, processing groups of bands of rows
+		// in parallel.  The first band contains at least the rows of the length field.
+		int rowsPerBand = Math.max(1, BAND_NUM_PIXELS / width);
+		int numBandsPerGroup = Runtime.getRuntime().availableProcessors() * NUM_BANDS_PER_PROCESSOR;
+		int lengthFieldNumRows =
+				NumberUtils.roundUpQuotientInt(NumberUtils.roundUpQuotientInt(lengthFieldNumBits, BYTES_PER_PIXEL),
+											   width);
+		int[] outPixels = new int[Math.min(numBandsPerGroup * rowsPerBand + lengthFieldNumRows, height) * width];
+		List<ConcealmentBand> bands = new ArrayList<>();
+		int payloadOffset = 0;
+		byte lastPayloadByte = 0;
+		int y = 0;
+		while (y < height)
 		{
-			for (int x = 0; x < width; x++)
-			{
-				// Test whether task has been cancelled by a monitor
-				for (IProgressListener listener : progressListeners)
-				{
-					if (listener.isTaskCancelled())
-						throw new TaskCancelledException();
-				}
+			// Test whether task has been cancelled by a monitor
+			testCancelled();
 
-				// Get RGB value of pixel
-				int rgb = image.getRGB(x, y);
-
-				// Set input data in RGB components of pixel
-				int shift = RGB_INITIAL_SHIFT;
-				for (int i = 0; i < BYTES_PER_PIXEL; i++)
+			// Create group of bands
+			int startY = y;
+			bands.clear();
+			while ((y < height) && (bands.size() < numBandsPerGroup))
+			{
+				// Get extent of band
+				int endY = Math.min(Math.max(y + rowsPerBand, lengthFieldNumRows), height);
+				int componentIndex = y * width * BYTES_PER_PIXEL;
+				int numComponents = (endY - y) * width * BYTES_PER_PIXEL;
+				int startBitIndex = allocation.getNumBitsBefore(componentIndex);
+				int endBitIndex = allocation.getNumBitsBefore(componentIndex + numComponents);
+
+				// Read payload data of band from input.  The first byte of the data may be the last byte of the
+				// data of the previous band.
+				int startIndex = startBitIndex >>> 3;
+				byte[] payloadData = new byte[(endBitIndex + 7 >>> 3) - startIndex];
+				int index = 0;
+				if (startIndex < payloadOffset)
+					payloadData[index++] = lastPayloadByte;
+				while (index < payloadData.length)
 				{
-					// Get bits from bit buffer, reading data from input if necessary
-					if (bitDataLength < numBits)
+					try
 					{
-						while ((blockIndex >= blockLength) && (offset < length))
-						{
-							// Read data from input
-							blockIndex = 0;
-							blockLength = Math.min(length - offset, BUFFER_SIZE);
-							try
-							{
-								blockLength = input.read(buffer, 0, blockLength);
-								if (blockLength < 0)
-									throw new InputException(ErrorId.PREMATURE_END_OF_DATA);
-							}
-							catch (IOException e)
-							{
-								throw new InputException(ErrorId.ERROR_READING_DATA);
-							}
-							offset += blockLength;
-						}
-						bitBuffer <<= 8;
-						bitBuffer |= buffer[blockIndex++] & 0xFF;
-						bitDataLength += 8;
+						int blockLength = input.read(payloadData, index, payloadData.length - index);
+						if (blockLength < 0)
+							throw new InputException(ErrorId.PREMATURE_END_OF_DATA);
+						index += blockLength;
 					}
+					catch (IOException e)
+					{
+						throw new InputException(ErrorId.ERROR_READING_DATA);
+					}
+				}
+				payloadOffset = startIndex + payloadData.length;
+				if (payloadData.length > 0)
+					lastPayloadByte = payloadData[payloadData.length - 1];
 
-					// Set random bits in RGB value
-					if (randomSource != null)
+				// Get random data of band from random source
+				byte[] randomData = null;
+				if (randomSource != null)
+				{
+					randomData = new byte[numComponents];
+					index = 0;
+					while (index < randomData.length)
 					{
 						while (randomIndex >= randomLength)
 						{
 							randomIndex = 0;
-							randomLength = randomSource.getRandomBytes(randomBuffer, 0,
-																	   randomBuffer.length);
+							randomLength = randomSource.getRandomBytes(randomBuffer, 0, randomBuffer.length);
 						}
-						rgb &= ~(randomMask << shift);
-						rgb |= (randomBuffer[randomIndex++] & randomMask) << shift;
+						int blockLength = Math.min(randomLength - randomIndex, randomData.length - index);
+						System.arraycopy(randomBuffer, randomIndex, randomData, index, blockLength);
+						randomIndex += blockLength;
+						index += blockLength;
 					}
+				}
 
-					// Set payload bits in RGB value
-					if (numBits > 0)
-					{
-						bitDataLength -= numBits;
-						int mask = (1 << numBits) - 1;
-						rgb &= ~(mask << shift);
-						rgb |= (bitBuffer >>> bitDataLength & mask) << shift;
-					}
+				// Add band to group
+				bands.add(new ConcealmentBand(image, y, endY, allocation, payloadData, startBitIndex & 0x07,
+											  randomData, randomMask, outPixels, (y - startY) * width));
 
-					// Set number of bits of next payload sample and increment decision threshold
-					if (++imageOffset >= 0)
-					{
-						numBits = payloadBitsPerImageByte;
-						if (imageOffset > 0)
-						{
-							if (d > 0)
-							{
-								d += inc1;
-								++numBits;
-							}
-							else
-								d += inc0;
-						}
-					}
+				// Increment y coordinate
+				y = endY;
+			}
 
-					// Decrement RGB shift
-					shift -= 8;
-				}
+			// Process group of bands
+			ForkJoinTask.invokeAll(bands);
 
-				// Set RGB value of pixel in output image
-				outImage.setRGB(x, y, rgb);
+			// Set length in RGB values at start of image
+			if (startY == 0)
+				concealLength(outPixels, width * height, length, lengthEncoder);
 
-				// Update progress of task
-				double progress = (double)Math.max(0, imageOffset) / (double)imageSize;
-				for (IProgressListener listener : progressListeners)
-					listener.setProgress(progress);
+			// Write rows of group to output
+			try
+			{
+				output.writeRows(outPixels, 0, y - startY);
+			}
+			catch (IOException e)
+			{
+				throw new OutputException(ErrorId.ERROR_WRITING_DATA);
 			}
-		}
-
-		// Set length in RGB values at start of image
-		concealLength(outImage, length, lengthEncoder);
 
-		return outImage;
+			// Update progress of task
+			int imageOffset = y * width * BYTES_PER_PIXEL - lengthFieldNumBits;
+			updateProgress((double)Math.max(0, imageOffset) / (double)imageSize);
+		}
 	}
 
 	//------------------------------------------------------------------
@@ -1129,112 +1887,100 @@ public class StreamConcealer
 		if (length > imageSize)
 			throw new InputException(ErrorId.UNEXPECTED_DATA_FORMAT);
 
-		// Initialise variables of Bresenham algorithm: deltas, decision threshold and increments
-		int numPayloadBits = length * 8;
-		int numImageBytes = (int)imageSize;
-		int payloadBitsPerImageByte = numPayloadBits / numImageBytes;
-		int remainder = numPayloadBits % numImageBytes;
-		int dx = numImageBytes - 1;
-		int dy = remainder;
-		int d = 2 * dy - dx;
-		int inc0 = 2 * dy;
-		int inc1 = 2 * (dy - dx);
-
-		// Extract output data from least significant bits of RGB values of image
-		byte[] buffer = new byte[BUFFER_SIZE];
-		int numBits = 0;
-		int bitBuffer = 0;
-		int bitDataLength = 0;
-		int imageOffset = -lengthFieldNumBits;
-		int bufferIndex = 0;
-		for (int y = 0; y < height; y++)
+		// Initialise allocation of payload bits to RGB components of image
+		BitAllocation allocation = new BitAllocation(lengthFieldNumBits, (int)imageSize, length * 8);
+
+		// Extract output data from least significant bits of RGB values of image, processing groups of bands of
+		// rows in parallel
+		int rowsPerBand = Math.max(1, BAND_NUM_PIXELS / width);
+		int numBandsPerGroup = Runtime.getRuntime().availableProcessors() * NUM_BANDS_PER_PROCESSOR;
+		List<RecoveryBand> bands = new ArrayList<>();
+		byte residualByte = 0;
+		int y = 0;
+		while (y < height)
 		{
-			for (int x = 0; x < width; x++)
+			// Test whether task has been cancelled by a monitor
+			testCancelled();
+
+			// Create group of bands
+			bands.clear();
+			while ((y < height) && (bands.size() < numBandsPerGroup))
 			{
-				// Test whether task has been cancelled by a monitor
-				for (IProgressListener listener : progressListeners)
-				{
-					if (listener.isTaskCancelled())
-						throw new TaskCancelledException();
-				}
+				int endY = Math.min(y + rowsPerBand, height);
+				bands.add(new RecoveryBand(image, y, endY, allocation));
+				y = endY;
+			}
 
-				// Get RGB value of pixel
-				int rgb = image.getRGB(x, y);
+			// Process group of bands
+			ForkJoinTask.invokeAll(bands);
 
-				// Extract payload data from RGB components of pixel
-				int shift = RGB_INITIAL_SHIFT;
-				for (int i = 0; i < BYTES_PER_PIXEL; i++)
+			// Write payload data of bands to output.  A byte that is split between two bands is combined from the
+			// data of both bands.
+			for (RecoveryBand band : bands)
+			{
+				byte[] data = band.payloadData;
+				int dataLength = data.length;
+				if (dataLength > 0)
 				{
-					// Extract payload bits from RGB component and add them to bit buffer
-					if (numBits > 0)
+					if ((band.startBitIndex & 0x07) != 0)
+						data[0] |= residualByte;
+					if ((band.endBitIndex & 0x07) != 0)
+						residualByte = data[--dataLength];
+					if (dataLength > 0)
 					{
-						bitBuffer <<= numBits;
-						bitBuffer |= rgb >> shift & ((1 << numBits) - 1);
-						bitDataLength += numBits;
-					}
-
-					// Write buffered data to output
-					while (bitDataLength >= 8)
-					{
-						bitDataLength -= 8;
-						buffer[bufferIndex++] = (byte)(bitBuffer >>> bitDataLength);
-						if (bufferIndex >= buffer.length)
+						try
 						{
-							try
-							{
-								output.write(buffer, 0, buffer.length);
-							}
-							catch (IOException e)
-							{
-								throw new OutputException(ErrorId.ERROR_WRITING_DATA);
-							}
-							bufferIndex = 0;
+							output.write(data, 0, dataLength);
 						}
-					}
-
-					// Set number of bits of next payload sample and increment decision threshold
-					if (++imageOffset >= 0)
-					{
-						numBits = payloadBitsPerImageByte;
-						if (imageOffset > 0)
+						catch (IOException e)
 						{
-							if (d > 0)
-							{
-								d += inc1;
-								++numBits;
-							}
-							else
-								d += inc0;
+							throw new OutputException(ErrorId.ERROR_WRITING_DATA);
 						}
 					}
-
-					// Decrement RGB shift
-					shift -= 8;
 				}
-
-				// Update progress of task
-				double progress = (double)Math.max(0, imageOffset) / (double)imageSize;
-				for (IProgressListener listener : progressListeners)
-					listener.setProgress(progress);
 			}
+
+			// Update progress of task
+			int imageOffset = y * width * BYTES_PER_PIXEL - lengthFieldNumBits;
+			updateProgress((double)Math.max(0, imageOffset) / (double)imageSize);
 		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Tests whether the task has been cancelled by any of the progress listeners of this concealer.
+	 *
+	 * @throws TaskCancelledException
+	 *           if the task has been cancelled.
+	 */
 
-		// Write residual data to output
-		if (bufferIndex > 0)
+	private void testCancelled()
+		throws TaskCancelledException
+	{
+		for (IProgressListener listener : progressListeners)
 		{
-			try
-			{
-				output.write(buffer, 0, bufferIndex);
-			}
-			catch (IOException e)
-			{
-				throw new OutputException(ErrorId.ERROR_WRITING_DATA);
-			}
+			if (listener.isTaskCancelled())
+				throw new TaskCancelledException();
 		}
 	}
 
 	//------------------------------------------------------------------
 
+	/**
+	 * Reports the progress of the task to the progress listeners of this concealer.
+	 *
+	 * @param progress  the fraction of the task that has been completed.
+	 */
+
+	private void updateProgress(double progress)
+	{
+		for (IProgressListener listener : progressListeners)
+			listener.setProgress(progress);
+	}
+
+	//------------------------------------------------------------------
+
 ////////////////////////////////////////////////////////////////////////
 //  Instance fields
 ////////////////////////////////////////////////////////////////////////
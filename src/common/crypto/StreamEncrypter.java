@@ -20,14 +20,28 @@ package common.crypto;
 
 import java.awt.Window;
 
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 
+import java.nio.ByteBuffer;
+
+import java.nio.channels.SeekableByteChannel;
+
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import java.util.concurrent.atomic.AtomicReference;
+
 import java.util.zip.CRC32;
 import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
@@ -37,12 +51,15 @@ import common.bitarray.BitUtils;
 
 import common.exception.AppException;
 import common.exception.TaskCancelledException;
+import common.exception.UnexpectedRuntimeException;
 import common.exception.ValueOutOfBoundsException;
 
 import common.gui.IProgressView;
 import common.gui.RunnableMessageDialog;
 
+import common.misc.DaemonThread;
 import common.misc.IProgressListener;
+import common.misc.LzCodec;
 import common.misc.NumberUtils;
 import common.misc.Task;
 
@@ -70,7 +87,12 @@ import common.misc.Task;
  * supplementary data.
  * </p>
  * <p>
- * The payload is compressed with the Deflate algorithm before encryption.
+ * The payload is compressed before encryption.  The payload of a stream in the {@linkplain StreamFormat#BASIC
+ * basic format} is compressed with the Deflate algorithm.  Each segment of a stream in the {@linkplain
+ * StreamFormat#SEGMENTED segmented} or {@linkplain StreamFormat#INDEXED indexed} format is compressed with one of
+ * the algorithms of {@link Compression}, which is identified by the high-order bits of the length of the
+ * segment.  Unless it is disabled, a test of the entropy of the first block of the payload or of each segment
+ * selects storage without compression for data that is unlikely to be compressible.
  * </p>
  * <p>
  * In the encrypted stream, the ciphertext is followed by an HMAC-SHA256 hash value generated from the
@@ -97,6 +119,38 @@ import common.misc.Task;
  * <code># </code>HMAC-SHA256 hash value of timestamp and payload<br>
  * <code>~ </code>Padding 3<br>
  * </p>
+ * <p>
+ * If the stream has a header, the payload may alternatively be encrypted in the {@linkplain StreamFormat#SEGMENTED
+ * segmented format}, which is identified by the high-order bits of the version field of the header.  In this format,
+ * the payload is divided into segments that are compressed and encrypted independently of each other, so that they
+ * can be processed concurrently by several threads.  Each segment is encrypted with a stream cipher whose key is
+ * derived from the CEK and the index of the segment, and it is followed by an HMAC-SHA256 hash value of the index and
+ * plaintext of the segment.  The hash values of the segments are chained into the hash value at the end of the
+ * stream.  The payload in the segmented format consists of the blocks listed below:
+ * </p>
+ * <p>
+ * <code># </code>Segment size<br>
+ * <code>&nbsp; </code>For each segment:<br>
+ * <code>&nbsp;&nbsp;&nbsp;# </code>Compression algorithm and length of compressed data<br>
+ * <code>&nbsp;&nbsp;&nbsp;# </code>Compressed data (encrypted with the key of the segment)<br>
+ * <code>&nbsp;&nbsp;&nbsp;# </code>HMAC-SHA256 hash value of index and plaintext (encrypted with the key of the
+ * segment)<br>
+ * </p>
+ * <p>
+ * In the {@linkplain StreamFormat#INDEXED indexed format}, the segments are followed by an end-of-segments marker in
+ * place of a length, and by an index that allows a segment to be located and decrypted without processing the
+ * preceding segments (see {@link #createRandomAccessDecrypter(SeekableByteChannel, byte[])}).  The index and its
+ * trailer are encrypted with keys that are derived from the CEK.  The hash value of the index is chained into the
+ * hash value at the end of the stream.
+ * </p>
+ * <p>
+ * <code>&nbsp; </code>Index:<br>
+ * <code>&nbsp;&nbsp;&nbsp;# </code>Length of compressed data of each segment<br>
+ * <code>&nbsp;&nbsp;&nbsp;# </code>HMAC-SHA256 hash value of number of segments, lengths and length of payload<br>
+ * <code>&nbsp; </code>Index trailer:<br>
+ * <code>&nbsp;&nbsp;&nbsp;# </code>Number of segments<br>
+ * <code>&nbsp;&nbsp;&nbsp;# </code>Length of payload<br>
+ * </p>
  */
 
 public class StreamEncrypter
@@ -129,6 +183,30 @@ public class StreamEncrypter
 	 */
 	public static final		int	MAX_COMPRESSION_LEVEL	= Deflater.BEST_COMPRESSION;
 
+	/**
+	 * The minimum size (in bytes) of a segment of the payload in the {@linkplain StreamFormat#SEGMENTED segmented
+	 * format}.
+	 */
+	public static final		int	MIN_SEGMENT_SIZE	= 1 << 12;
+
+	/**
+	 * The maximum size (in bytes) of a segment of the payload in the {@linkplain StreamFormat#SEGMENTED segmented
+	 * format}.
+	 */
+	public static final		int	MAX_SEGMENT_SIZE	= 1 << 26;
+
+	/**
+	 * The default size (in bytes) of a segment of the payload in the {@linkplain StreamFormat#SEGMENTED segmented
+	 * format}.
+	 */
+	public static final		int	DEFAULT_SEGMENT_SIZE	= 1 << 20;
+
+	/**
+	 * The maximum number of threads that may be used to process the segments of a payload in the {@linkplain
+	 * StreamFormat#SEGMENTED segmented format}.
+	 */
+	public static final		int	MAX_NUM_THREADS	= 64;
+
 	private static final	int	NUM_PADDINGS	= 3;
 	private static final	int	PADDING_SIZE	= 255;
 	private static final	int	MIN_LENGTH		= 512;
@@ -139,6 +217,12 @@ public class StreamEncrypter
 	private static final	int	PADDING_LENGTH_FIELD_SIZE	= 1;
 	private static final	int	TIMESTAMP_FIELD_SIZE		= Long.SIZE / Byte.SIZE;
 	private static final	int	HASH_VALUE_FIELD_SIZE		= HmacSha256.HASH_VALUE_SIZE;
+	private static final	int	SEGMENT_SIZE_FIELD_SIZE		= 4;
+	private static final	int	SEGMENT_LENGTH_FIELD_SIZE	= 4;
+	private static final	int	SEGMENT_INDEX_FIELD_SIZE	= Long.SIZE / Byte.SIZE;
+	private static final	int	NUM_SEGMENTS_FIELD_SIZE		= Long.SIZE / Byte.SIZE;
+	private static final	int	PAYLOAD_LENGTH_FIELD_SIZE	= Long.SIZE / Byte.SIZE;
+	private static final	int	INDEX_TRAILER_SIZE			= NUM_SEGMENTS_FIELD_SIZE + PAYLOAD_LENGTH_FIELD_SIZE;
 
 	private static final	int	METADATA1_SIZE	= CIPHER_FIELD_SIZE + 3 * PADDING_LENGTH_FIELD_SIZE +
 															TIMESTAMP_FIELD_SIZE + HASH_VALUE_FIELD_SIZE;
@@ -148,13 +232,191 @@ public class StreamEncrypter
 
 	private static final	int	COMBINER_BLOCK_SIZE	= 1 << 12;  // 4096
 
-	private static final	String	DATA_STR	= "data";
+	private static final	byte	SEGMENT_KEY_TAG	= 'K';
+	private static final	byte	SEGMENT_MAC_TAG	= 'M';
+	private static final	byte	INDEX_TAG		= 'I';
+	private static final	byte	TRAILER_TAG		= 'T';
+
+	private static final	int	END_OF_SEGMENTS	= -1;
+
+	private static final	int	COMPRESSION_SHIFT	= 30;
+	private static final	int	SEGMENT_LENGTH_MASK	= (1 << COMPRESSION_SHIFT) - 1;
+
+	private static final	int		ENTROPY_SAMPLE_SIZE		= 1 << 16;
+	private static final	double	INCOMPRESSIBLE_ENTROPY	= 7.5;  // bits per byte
+
+	private static final	int	NUM_PENDING_SEGMENTS_PER_THREAD	= 2;
+
+	private static final	String	DATA_STR			= "data";
+	private static final	String	SEGMENT_THREAD_NAME	= "StreamEncrypter-segment";
 
 ////////////////////////////////////////////////////////////////////////
 //  Enumerated types
 ////////////////////////////////////////////////////////////////////////
 
 
+	// STREAM FORMAT
+
+
+	/**
+	 * This is an enumeration of the formats of the payload of an encrypted stream.  The format is identified by
+	 * the high-order bits of the version field of the {@linkplain Header header} of the stream; a stream that
+	 * does not have a header always has the basic format.
+	 */
+
+	public enum StreamFormat
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constants
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * The payload is compressed and encrypted as a single sequence of data.
+		 */
+		BASIC
+		(
+			0
+		),
+
+		/**
+		 * The payload is divided into segments that are compressed and encrypted independently of each other.
+		 */
+		SEGMENTED
+		(
+			1
+		),
+
+		/**
+		 * The payload is divided into segments, as in the {@linkplain #SEGMENTED segmented format}, and the
+		 * segments are followed by an index of their lengths, which allows any segment to be decrypted without
+		 * processing the preceding segments.
+		 */
+		INDEXED
+		(
+			2
+		);
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private StreamFormat(int id)
+		{
+			this.id = id;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Class methods
+	////////////////////////////////////////////////////////////////////
+
+		private static StreamFormat forId(int id)
+		{
+			for (StreamFormat value : values())
+			{
+				if (value.id == id)
+					return value;
+			}
+			return null;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance fields
+	////////////////////////////////////////////////////////////////////
+
+		private	int	id;
+
+	}
+
+	//==================================================================
+
+
+	// COMPRESSION
+
+
+	/**
+	 * This is an enumeration of the algorithms with which a segment of the payload of a stream in the {@linkplain
+	 * StreamFormat#SEGMENTED segmented} or {@linkplain StreamFormat#INDEXED indexed} format may be compressed.
+	 * The algorithm of each segment is identified by the high-order bits of its length, so the segments of a
+	 * stream may be compressed with different algorithms.
+	 */
+
+	public enum Compression
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constants
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * The data is compressed with the Deflate algorithm at the {@linkplain
+		 * StreamEncrypter#setCompressionLevel(int) compression level} of the encrypter.
+		 */
+		DEFLATE
+		(
+			0
+		),
+
+		/**
+		 * The data is stored without compression.
+		 */
+		STORE
+		(
+			1
+		),
+
+		/**
+		 * The data is compressed with a fast algorithm of the LZ77 family (see {@link LzCodec}), which
+		 * compresses less than the Deflate algorithm but is several times faster.  In the {@linkplain
+		 * StreamFormat#BASIC basic format}, the Deflate algorithm is used at its fastest compression level.
+		 */
+		FAST
+		(
+			2
+		);
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private Compression(int id)
+		{
+			this.id = id;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Class methods
+	////////////////////////////////////////////////////////////////////
+
+		private static Compression forId(int id)
+		{
+			for (Compression value : values())
+			{
+				if (value.id == id)
+					return value;
+			}
+			return null;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance fields
+	////////////////////////////////////////////////////////////////////
+
+		private	int	id;
+
+	}
+
+	//==================================================================
+
+
 	// ERROR IDENTIFIERS
 
 
@@ -187,6 +449,9 @@ public class StreamEncrypter
 		INCORRECT_KEY
 		("The current key does not match the one that was used to encrypt the %1."),
 
+		NO_INDEX
+		("The encrypted %1 does not have an index for random access."),
+
 		NOT_ENOUGH_MEMORY
 		("There was not enough memory to generate the content-encryption key.");
 
@@ -348,6 +613,15 @@ public class StreamEncrypter
 		 */
 		public static final	int	SIZE				= ID_FIELD_SIZE + VERSION_FIELD_SIZE;
 
+		/**
+		 * The maximum version number of the payload of a stream whose format is not {@linkplain
+		 * StreamFormat#BASIC basic}.  The high-order bits of the version field above this value identify the
+		 * {@linkplain StreamFormat format} of the stream.
+		 */
+		public static final	int	MAX_VERSION			= (1 << 12) - 1;
+
+		private static final	int	FORMAT_SHIFT	= 12;
+
 	////////////////////////////////////////////////////////////////////
 	//  Constructors
 	////////////////////////////////////////////////////////////////////
@@ -595,6 +869,32 @@ public class StreamEncrypter
 
 		public byte[] toByteArray()
 		{
+			return toByteArray(StreamFormat.BASIC);
+		}
+
+		//--------------------------------------------------------------
+
+		/**
+		 * Returns this header as an array of bytes, with the identifier of a specified stream format encoded in
+		 * the version field.
+		 *
+		 * @param  format  the format of the stream.
+		 * @return this header converted to an array of bytes.
+		 * @throws IllegalStateException
+		 *           if {@code format} is not {@link StreamFormat#BASIC} and the version number of this header is
+		 *           greater than {@link #MAX_VERSION}.
+		 */
+
+		private byte[] toByteArray(StreamFormat format)
+		{
+			int version = this.version;
+			if (format != StreamFormat.BASIC)
+			{
+				if ((version < 0) || (version > MAX_VERSION))
+					throw new IllegalStateException();
+				version |= format.id << FORMAT_SHIFT;
+			}
+
 			byte[] buffer = new byte[getSize()];
 			int offset = 0;
 
@@ -603,7 +903,7 @@ public class StreamEncrypter
 			NumberUtils.intToBytesLE(id, buffer, offset, length);
 			offset += length;
 
-			// Version number
+			// Version number and stream format
 			length = VERSION_FIELD_SIZE;
 			NumberUtils.intToBytesLE(version, buffer, offset, length);
 			offset += length;
@@ -1346,29 +1646,99 @@ public class StreamEncrypter
 	//==================================================================
 
 
-	// KEY GENERATOR CLASS
-
+	// RANDOM-ACCESS DECRYPTER CLASS
 
-	private static class KeyGenerator
-		extends Scrypt.KeyGenerator
-	{
 
-	////////////////////////////////////////////////////////////////////
-	//  Constants
-	////////////////////////////////////////////////////////////////////
+	/**
+	 * This class provides random access to the plaintext of a stream that was encrypted in the {@linkplain
+	 * StreamFormat#INDEXED indexed format}.  The index of the stream is read and verified when the decrypter is
+	 * created; each segment is decrypted and verified against its hash value when data is read from it.  The
+	 * hash value at the end of the stream, which depends on all the segments, is not verified.
+	 * <p>
+	 * An instance of this class can be created with {@link
+	 * StreamEncrypter#createRandomAccessDecrypter(SeekableByteChannel, byte[])}.  The methods of this class are
+	 * thread-safe.
+	 * </p>
+	 */
 
-		private static final	String	MESSAGE_STR	= "Generating the content-encryption key ...";
+	public static class RandomAccessDecrypter
+	{
 
 	////////////////////////////////////////////////////////////////////
 	//  Constructors
 	////////////////////////////////////////////////////////////////////
 
-		private KeyGenerator(byte[]    key,
-							 byte[]    salt,
-							 KdfParams kdfParams)
+		/**
+		 * Creates a random-access decrypter for a stream in the indexed format.
+		 *
+		 * @param  channel   the channel from which the stream will be read.
+		 * @param  prologue  the metadata that precedes the payload of the stream.
+		 * @throws InputException
+		 *           if an error occurred when reading from the channel, or if the index is invalid.
+		 */
+
+		private RandomAccessDecrypter(SeekableByteChannel channel,
+									  Prologue            prologue)
+			throws InputException
 		{
-			super(key, salt, kdfParams, kdfParams.getNumThreads(), DERIVED_KEY_SIZE, MESSAGE_STR);
-			Scrypt.setSalsa20CoreNumRounds(kdfParams.numRounds);
+			// Initialise instance fields
+			this.channel = channel;
+			cipher = prologue.cipher;
+			key = prologue.key;
+			timestamp = prologue.timestamp;
+			segmentIndex = -1;
+
+			// Read and decrypt segment size
+			long payloadLength = prologue.payloadLength;
+			if (payloadLength < SEGMENT_SIZE_FIELD_SIZE + SEGMENT_LENGTH_FIELD_SIZE + HASH_VALUE_FIELD_SIZE +
+																							INDEX_TRAILER_SIZE)
+				throw new InputException(ErrorId.UNEXPECTED_DATA_FORMAT);
+			byte[] segmentSizeData = new byte[SEGMENT_SIZE_FIELD_SIZE];
+			read(prologue.payloadOffset, segmentSizeData);
+			prologue.combiner.combine(segmentSizeData);
+			segmentSize = NumberUtils.bytesToIntLE(segmentSizeData);
+			if ((segmentSize < MIN_SEGMENT_SIZE) || (segmentSize > MAX_SEGMENT_SIZE))
+				throw new InputException(ErrorId.INCORRECT_KEY);
+
+			// Read and decrypt index trailer
+			long payloadEndOffset = prologue.payloadOffset + payloadLength;
+			byte[] trailer = new byte[INDEX_TRAILER_SIZE];
+			read(payloadEndOffset - INDEX_TRAILER_SIZE, trailer);
+			createSegmentCombiner(cipher, key, TRAILER_TAG, 0).combine(trailer);
+			long numSegments = NumberUtils.bytesToLongLE(trailer, 0, NUM_SEGMENTS_FIELD_SIZE);
+			length = NumberUtils.bytesToLongLE(trailer, NUM_SEGMENTS_FIELD_SIZE, PAYLOAD_LENGTH_FIELD_SIZE);
+			if ((length < 0) || (numSegments != (length + segmentSize - 1) / segmentSize) ||
+				 (numSegments > (payloadLength - INDEX_TRAILER_SIZE - HASH_VALUE_FIELD_SIZE) /
+													(SEGMENT_LENGTH_FIELD_SIZE + HASH_VALUE_FIELD_SIZE)))
+				throw new InputException(ErrorId.INCORRECT_KEY);
+
+			// Read, decrypt and verify index
+			int numEntries = (int)numSegments;
+			byte[] index = new byte[numEntries * SEGMENT_LENGTH_FIELD_SIZE + HASH_VALUE_FIELD_SIZE];
+			read(payloadEndOffset - INDEX_TRAILER_SIZE - index.length, index);
+			decryptIndex(cipher, key, index, numSegments, length);
+
+			// Calculate offsets of segments
+			segmentOffsets = new long[numEntries];
+			segmentLengths = new int[numEntries];
+			segmentCompressions = new Compression[numEntries];
+			long offset = prologue.payloadOffset + SEGMENT_SIZE_FIELD_SIZE;
+			int maxDataLength = getMaxCompressedLength(segmentSize);
+			for (int i = 0; i < numEntries; i++)
+			{
+				int lengthValue = NumberUtils.bytesToIntLE(index, i * SEGMENT_LENGTH_FIELD_SIZE,
+														   SEGMENT_LENGTH_FIELD_SIZE);
+				segmentCompressions[i] = Compression.forId(lengthValue >>> COMPRESSION_SHIFT);
+				int dataLength = lengthValue & SEGMENT_LENGTH_MASK;
+				if ((segmentCompressions[i] == null) || (dataLength > maxDataLength))
+					throw new InputException(ErrorId.UNEXPECTED_DATA_FORMAT);
+				offset += SEGMENT_LENGTH_FIELD_SIZE;
+				segmentOffsets[i] = offset;
+				segmentLengths[i] = dataLength + HASH_VALUE_FIELD_SIZE;
+				offset += segmentLengths[i];
+			}
+			if (offset + SEGMENT_LENGTH_FIELD_SIZE + index.length + INDEX_TRAILER_SIZE != payloadEndOffset)
+				throw new InputException(ErrorId.UNEXPECTED_DATA_FORMAT);
 		}
 
 		//--------------------------------------------------------------
@@ -1378,83 +1748,429 @@ public class StreamEncrypter
 	////////////////////////////////////////////////////////////////////
 
 		/**
-		 * Generates a key with the scrypt key derivation function.
-		 * <p>
-		 * A modal message dialog is optionally displayed while the key derivation function is running.  The
-		 * dialog cannot be closed by the user.
-		 * </p>
+		 * Returns the length of the plaintext of the stream.
 		 *
-		 * @param  window  the window that will be the owner of the message dialog, or {@code null} if the
-		 *                 key is to be generated without a message dialog.
-		 * @return the key that was generated by the KDF.
-		 * @throws AppException
-		 *           if there is not enough memory to generate the key.
+		 * @return the length (in bytes) of the plaintext of the stream.
 		 */
 
-		private byte[] generate(Window window)
-			throws AppException
+		public long getLength()
 		{
-			if (window == null)
-				run();
-			else
-				RunnableMessageDialog.showDialog(window, this);
-			if (isOutOfMemory())
-				throw new AppException(ErrorId.NOT_ENOUGH_MEMORY);
-			return getDerivedKey();
+			return length;
 		}
 
 		//--------------------------------------------------------------
 
-	}
+		/**
+		 * Returns the timestamp of the stream.
+		 *
+		 * @return the timestamp of the stream.
+		 */
 
-	//==================================================================
+		public long getTimestamp()
+		{
+			return timestamp;
+		}
 
-////////////////////////////////////////////////////////////////////////
-//  Constructors
-////////////////////////////////////////////////////////////////////////
+		//--------------------------------------------------------------
 
-	/**
-	 * Creates an instance of {@link StreamEncrypter} with the specified kind of cipher but no KDF
-	 * parameters or header.
-	 * <p>
-	 * The absence of KDF parameters means that the {@link #encrypt(IInput, IOutput, long, long, byte[],
-	 * byte[])} and {@link #decrypt(IInput, IOutput, long, byte[])} methods and their overloaded variants will
-	 * not derive a content-encryption key (CEK) from their {@code key} argument but will use the {@code
-	 * key} argument directly as the CEK.
-	 * </p>
-	 *
-	 * @param cipher  the kind of cipher that will be used by the pseudo-random number generator to generate
-	 *                a stream cipher for encryption.  {@code cipher} may be {@code null} if the encrypter
-	 *                will not be used for encryption.
-	 */
+		/**
+		 * Returns the size of the segments of the stream.  Reading data within a segment whose plaintext is
+		 * cached by the decrypter requires no decryption.
+		 *
+		 * @return the size (in bytes) of the segments of the stream.
+		 */
 
-	public StreamEncrypter(FortunaCipher cipher)
-	{
-		this(cipher, null, null);
-	}
+		public int getSegmentSize()
+		{
+			return segmentSize;
+		}
 
-	//------------------------------------------------------------------
+		//--------------------------------------------------------------
 
-	/**
-	 * Creates an instance of {@link StreamEncrypter} with the specified kind of cipher and KDF parameters
-	 * but no header.
-	 *
-	 * @param cipher     the kind of cipher that will be used by the pseudo-random number generator to
-	 *                   generate a stream cipher for encryption.  {@code cipher} may be {@code null} if the
-	 *                   encrypter will not be used for encryption.
-	 * @param kdfParams  the parameters that will be used by the key derivation function to derive the
-	 *                   content-encryption key when encrypting and decrypting a stream.  If {@code
-	 *                   kdfParams} is {@code null}, the {@link #encrypt(IInput, IOutput, long, long, byte[],
-	 *                   byte[])} and {@link #decrypt(IInput, IOutput, long, byte[])} methods and their
-	 *                   overloaded variants will not derive a content-encryption key (CEK) from their
-	 *                   {@code key} argument but will use the {@code key} argument directly as the CEK.
-	 */
+		/**
+		 * Reads plaintext from a specified position in the stream, and stores it in a buffer.  The segments that
+		 * contain the requested data are decrypted and verified; the plaintext of the last segment is cached.
+		 *
+		 * @param  position  the position in the plaintext from which data will be read.
+		 * @param  buffer    the buffer in which the data will be stored.
+		 * @param  offset    the offset in {@code buffer} at which the first byte of data will be stored.
+		 * @param  length    the maximum number of bytes to read.
+		 * @return the number of bytes that were read, or -1 if {@code position} is at or beyond the end of the
+		 *         plaintext.
+		 * @throws IllegalArgumentException
+		 *           if {@code position} or {@code length} is negative.
+		 * @throws InputException
+		 *           if an error occurred when reading from the channel, or if a segment is invalid.
+		 */
 
-	public StreamEncrypter(FortunaCipher cipher,
-						   KdfParams     kdfParams)
-	{
-		this(cipher, kdfParams, null);
-	}
+		public synchronized int read(long   position,
+									 byte[] buffer,
+									 int    offset,
+									 int    length)
+			throws InputException
+		{
+			// Validate arguments
+			if ((position < 0) || (length < 0))
+				throw new IllegalArgumentException();
+
+			// Test for end of plaintext
+			if (position >= this.length)
+				return -1;
+
+			// Copy data from segments
+			int endOffset = offset + (int)Math.min(length, this.length - position);
+			int startOffset = offset;
+			while (offset < endOffset)
+			{
+				int index = (int)(position / segmentSize);
+				if (index != segmentIndex)
+					decryptSegment(index);
+				int segmentOffset = (int)(position - (long)index * segmentSize);
+				int copyLength = Math.min(endOffset - offset, segmentData.length - segmentOffset);
+				System.arraycopy(segmentData, segmentOffset, buffer, offset, copyLength);
+				offset += copyLength;
+				position += copyLength;
+			}
+			return offset - startOffset;
+		}
+
+		//--------------------------------------------------------------
+
+		/**
+		 * Reads, decrypts and verifies a specified segment, and caches its plaintext.
+		 *
+		 * @param  index  the index of the segment.
+		 * @throws InputException
+		 *           if an error occurred when reading from the channel, or if the segment is invalid.
+		 */
+
+		private void decryptSegment(int index)
+			throws InputException
+		{
+			// Invalidate cached segment
+			segmentIndex = -1;
+			segmentData = null;
+
+			// Read, decrypt and verify segment
+			byte[] data = new byte[segmentLengths[index]];
+			read(segmentOffsets[index], data);
+			Segment segment = StreamEncrypter.decryptSegment(cipher, key, segmentSize, segmentCompressions[index],
+															 index, data, 0, null);
+
+			// Test length of plaintext
+			int expectedLength = (int)Math.min(length - (long)index * segmentSize, segmentSize);
+			if (segment.length != expectedLength)
+				throw new InputException(ErrorId.UNEXPECTED_DATA_FORMAT);
+
+			// Cache plaintext
+			segmentData = (segment.length == segment.data.length) ? segment.data
+																  : Arrays.copyOf(segment.data, segment.length);
+			segmentIndex = index;
+		}
+
+		//--------------------------------------------------------------
+
+		/**
+		 * Reads data from a specified position in the channel, and stores it in a buffer.
+		 *
+		 * @param  position  the position in the channel from which data will be read.
+		 * @param  buffer    the buffer in which the data will be stored.
+		 * @throws InputException
+		 *           if an error occurred when reading from the channel.
+		 */
+
+		private void read(long   position,
+						  byte[] buffer)
+			throws InputException
+		{
+			try
+			{
+				channel.position(position);
+			}
+			catch (IOException e)
+			{
+				throw new InputException(ErrorId.ERROR_READING_DATA, e);
+			}
+			StreamEncrypter.read(new ChannelAdapter(channel), buffer);
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance fields
+	////////////////////////////////////////////////////////////////////
+
+		private	SeekableByteChannel	channel;
+		private	FortunaCipher		cipher;
+		private	byte[]				key;
+		private	long				timestamp;
+		private	long				length;
+		private	int					segmentSize;
+		private	long[]				segmentOffsets;
+		private	int[]				segmentLengths;
+		private	Compression[]		segmentCompressions;
+		private	int					segmentIndex;
+		private	byte[]				segmentData;
+
+	}
+
+	//==================================================================
+
+
+	// CHANNEL ADAPTER CLASS
+
+
+	/**
+	 * This class translates the interface of the {@link SeekableByteChannel} class into the {@link IInput}
+	 * interface so that a channel can be read from its current position by the methods of {@link StreamEncrypter}.
+	 */
+
+	private static class ChannelAdapter
+		implements IInput
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private ChannelAdapter(SeekableByteChannel channel)
+		{
+			this.channel = channel;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : IInput interface
+	////////////////////////////////////////////////////////////////////
+
+		public int read(byte[] buffer,
+						int    offset,
+						int    length)
+			throws IOException
+		{
+			return channel.read(ByteBuffer.wrap(buffer, offset, length));
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance fields
+	////////////////////////////////////////////////////////////////////
+
+		private	SeekableByteChannel	channel;
+
+	}
+
+	//==================================================================
+
+
+	// PROLOGUE CLASS
+
+
+	/**
+	 * This class encapsulates the metadata that precedes the payload of an encrypted stream, and the objects that
+	 * are derived from it.
+	 */
+
+	private static class Prologue
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private Prologue()
+		{
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance fields
+	////////////////////////////////////////////////////////////////////
+
+		private	StreamFormat		format;
+		private	FortunaCipher		cipher;
+		private	byte[]				key;
+		private	Fortuna.XorCombiner	combiner;
+		private	HmacSha256			hash;
+		private	int[]				paddingLengths;
+		private	long				timestamp;
+		private	long				payloadOffset;
+		private	long				payloadLength;
+
+	}
+
+	//==================================================================
+
+
+	// SEGMENT CLASS
+
+
+	/**
+	 * This class encapsulates a segment of the payload of a stream in the {@linkplain StreamFormat#SEGMENTED
+	 * segmented format} after it has been processed by a worker thread.
+	 */
+
+	private static class Segment
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Creates a segment.
+		 *
+		 * @param data         the processed data of the segment: the encrypted compressed data and hash value
+		 *                     in the case of encryption, or the plaintext in the case of decryption.
+		 * @param length       the length of the processed data.
+		 * @param compression  the algorithm with which the plaintext of the segment is compressed.
+		 * @param hashValue    the HMAC-SHA256 hash value of the index and plaintext of the segment.
+		 * @param endOffset    the offset of the end of the segment in the input, which is used to report
+		 *                     progress.
+		 */
+
+		private Segment(byte[]      data,
+						int         length,
+						Compression compression,
+						byte[]      hashValue,
+						long        endOffset)
+		{
+			this.data = data;
+			this.length = length;
+			this.compression = compression;
+			this.hashValue = hashValue;
+			this.endOffset = endOffset;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance fields
+	////////////////////////////////////////////////////////////////////
+
+		private	byte[]		data;
+		private	int			length;
+		private	Compression	compression;
+		private	byte[]		hashValue;
+		private	long		endOffset;
+
+	}
+
+	//==================================================================
+
+
+	// KEY GENERATOR CLASS
+
+
+	private static class KeyGenerator
+		extends Scrypt.KeyGenerator
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constants
+	////////////////////////////////////////////////////////////////////
+
+		private static final	String	MESSAGE_STR	= "Generating the content-encryption key ...";
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private KeyGenerator(byte[]    key,
+							 byte[]    salt,
+							 KdfParams kdfParams)
+		{
+			super(key, salt, kdfParams.numRounds, kdfParams, kdfParams.getNumThreads(), DERIVED_KEY_SIZE,
+				  MESSAGE_STR);
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Generates a key with the scrypt key derivation function.
+		 * <p>
+		 * A modal message dialog is optionally displayed while the key derivation function is running.  The
+		 * dialog cannot be closed by the user.
+		 * </p>
+		 *
+		 * @param  window  the window that will be the owner of the message dialog, or {@code null} if the
+		 *                 key is to be generated without a message dialog.
+		 * @return the key that was generated by the KDF.
+		 * @throws AppException
+		 *           if there is not enough memory to generate the key.
+		 */
+
+		private byte[] generate(Window window)
+			throws AppException
+		{
+			if (window == null)
+				run();
+			else
+				RunnableMessageDialog.showDialog(window, this);
+			if (isOutOfMemory())
+				throw new AppException(ErrorId.NOT_ENOUGH_MEMORY);
+			return getDerivedKey();
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+////////////////////////////////////////////////////////////////////////
+//  Constructors
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Creates an instance of {@link StreamEncrypter} with the specified kind of cipher but no KDF
+	 * parameters or header.
+	 * <p>
+	 * The absence of KDF parameters means that the {@link #encrypt(IInput, IOutput, long, long, byte[],
+	 * byte[])} and {@link #decrypt(IInput, IOutput, long, byte[])} methods and their overloaded variants will
+	 * not derive a content-encryption key (CEK) from their {@code key} argument but will use the {@code
+	 * key} argument directly as the CEK.
+	 * </p>
+	 *
+	 * @param cipher  the kind of cipher that will be used by the pseudo-random number generator to generate
+	 *                a stream cipher for encryption.  {@code cipher} may be {@code null} if the encrypter
+	 *                will not be used for encryption.
+	 */
+
+	public StreamEncrypter(FortunaCipher cipher)
+	{
+		this(cipher, null, null);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Creates an instance of {@link StreamEncrypter} with the specified kind of cipher and KDF parameters
+	 * but no header.
+	 *
+	 * @param cipher     the kind of cipher that will be used by the pseudo-random number generator to
+	 *                   generate a stream cipher for encryption.  {@code cipher} may be {@code null} if the
+	 *                   encrypter will not be used for encryption.
+	 * @param kdfParams  the parameters that will be used by the key derivation function to derive the
+	 *                   content-encryption key when encrypting and decrypting a stream.  If {@code
+	 *                   kdfParams} is {@code null}, the {@link #encrypt(IInput, IOutput, long, long, byte[],
+	 *                   byte[])} and {@link #decrypt(IInput, IOutput, long, byte[])} methods and their
+	 *                   overloaded variants will not derive a content-encryption key (CEK) from their
+	 *                   {@code key} argument but will use the {@code key} argument directly as the CEK.
+	 */
+
+	public StreamEncrypter(FortunaCipher cipher,
+						   KdfParams     kdfParams)
+	{
+		this(cipher, kdfParams, null);
+	}
 
 	//------------------------------------------------------------------
 
@@ -1510,7 +2226,11 @@ public class StreamEncrypter
 		if (kdfParams != null)
 			this.kdfParams = kdfParams.clone();
 		this.header = header;
+		compression = Compression.DEFLATE;
 		compressionLevel = MAX_COMPRESSION_LEVEL;
+		storeIncompressible = true;
+		streamFormat = StreamFormat.BASIC;
+		segmentSize = DEFAULT_SEGMENT_SIZE;
 		progressListeners = new ArrayList<>();
 	}
 
@@ -1663,14 +2383,440 @@ public class StreamEncrypter
 
 	//------------------------------------------------------------------
 
-////////////////////////////////////////////////////////////////////////
-//  Instance methods
-////////////////////////////////////////////////////////////////////////
-
 	/**
-	 * Returns the compression level of the Deflate algorithm that is applied to the payload before
-	 * encryption.
-	 * <p>
+	 * Returns the maximum length of the compressed data of a segment of a specified size.  The length is an upper
+	 * bound of the output of the Deflate algorithm, including the overhead of stored blocks for incompressible data.
+	 *
+	 * @param  segmentSize  the size of the segment.
+	 * @return the maximum length of the compressed data of a segment whose size is {@code segmentSize}.
+	 */
+
+	private static int getMaxCompressedLength(int segmentSize)
+	{
+		return (segmentSize + (segmentSize >>> 8) + 64);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Creates and returns an exclusive-OR combiner for a segment of the payload or for the index of the segments.
+	 * The seed of the combiner's PRNG is derived from the content-encryption key, a tag and the index of the
+	 * segment.
+	 *
+	 * @param  cipher  the kind of cipher of the combiner's PRNG.
+	 * @param  key     the content-encryption key.
+	 * @param  tag     the tag that distinguishes the purpose of the combiner.
+	 * @param  index   the index of the segment.
+	 * @return an exclusive-OR combiner.
+	 */
+
+	private static Fortuna.XorCombiner createSegmentCombiner(FortunaCipher cipher,
+															 byte[]        key,
+															 byte          tag,
+															 long          index)
+	{
+		HmacSha256 hash = new HmacSha256(key);
+		updateSegmentHash(hash, tag, index);
+		return cipher.createCombiner(hash.getValue(), COMBINER_BLOCK_SIZE);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Updates a specified hash with a tag and the index of a segment.
+	 *
+	 * @param hash   the hash that will be updated.
+	 * @param tag    the tag that distinguishes the purpose of the hash.
+	 * @param index  the index of the segment.
+	 */
+
+	private static void updateSegmentHash(HmacSha256 hash,
+										  byte       tag,
+										  long       index)
+	{
+		byte[] data = new byte[1 + SEGMENT_INDEX_FIELD_SIZE];
+		data[0] = tag;
+		NumberUtils.longToBytesLE(index, data, 1, SEGMENT_INDEX_FIELD_SIZE);
+		hash.update(data);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns {@code true} if a sample of data is unlikely to be compressible.  The test is based on the entropy
+	 * of the distribution of the values of the bytes of the sample.
+	 *
+	 * @param  data    the array that contains the sample.
+	 * @param  offset  the offset of the sample in {@code data}.
+	 * @param  length  the length of the sample.
+	 * @return {@code true} if the data of the sample is unlikely to be compressible.
+	 */
+
+	private static boolean isIncompressible(byte[] data,
+											int    offset,
+											int    length)
+	{
+		// Count occurrences of byte values
+		int[] counts = new int[256];
+		int endOffset = offset + length;
+		for (int i = offset; i < endOffset; i++)
+			++counts[data[i] & 0xFF];
+
+		// Calculate entropy of distribution
+		double entropy = 0.0;
+		for (int count : counts)
+		{
+			if (count > 0)
+			{
+				double p = (double)count / (double)length;
+				entropy -= p * Math.log(p);
+			}
+		}
+		return (entropy / Math.log(2.0) > INCOMPRESSIBLE_ENTROPY);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Compresses and encrypts a segment of the payload.  The segment is stored without compression if the
+	 * compressed data would not be shorter than the plaintext.
+	 *
+	 * @param  cipher               the kind of cipher that will be used to encrypt the segment.
+	 * @param  key                  the content-encryption key.
+	 * @param  compression          the algorithm with which the segment will be compressed.
+	 * @param  compressionLevel     the compression level of the Deflate algorithm.
+	 * @param  storeIncompressible  if {@code true}, the segment will be stored without compression if a test of
+	 *                              its first block indicates that it is unlikely to be compressible.
+	 * @param  index                the index of the segment.
+	 * @param  data                 the plaintext of the segment.
+	 * @param  endOffset            the offset of the end of the segment in the input.
+	 * @return the encrypted segment, whose data consists of the compressed data followed by the hash value of
+	 *         the segment.
+	 */
+
+	private static Segment encryptSegment(FortunaCipher cipher,
+										  byte[]        key,
+										  Compression   compression,
+										  int           compressionLevel,
+										  boolean       storeIncompressible,
+										  long          index,
+										  byte[]        data,
+										  long          endOffset)
+	{
+		// Test whether data is compressible
+		if (storeIncompressible && (compression != Compression.STORE) &&
+			 isIncompressible(data, 0, Math.min(data.length, ENTROPY_SAMPLE_SIZE)))
+			compression = Compression.STORE;
+
+		// Compress data
+		byte[] buffer = new byte[getMaxCompressedLength(data.length) + HASH_VALUE_FIELD_SIZE];
+		int length = -1;
+		switch (compression)
+		{
+			case DEFLATE:
+			{
+				int maxLength = buffer.length - HASH_VALUE_FIELD_SIZE;
+				Deflater deflater = new Deflater(compressionLevel, true);
+				try
+				{
+					deflater.setInput(data);
+					deflater.finish();
+					length = 0;
+					while (!deflater.finished())
+					{
+						if (length >= maxLength)
+							throw new UnexpectedRuntimeException();
+						length += deflater.deflate(buffer, length, maxLength - length);
+					}
+				}
+				finally
+				{
+					deflater.end();
+				}
+				break;
+			}
+
+			case STORE:
+				break;
+
+			case FAST:
+				length = LzCodec.compress(data, 0, data.length, buffer, 0, data.length);
+				break;
+		}
+
+		// Store data if it was not compressed
+		if ((length < 0) || (length >= data.length))
+		{
+			compression = Compression.STORE;
+			length = data.length;
+			System.arraycopy(data, 0, buffer, 0, length);
+		}
+
+		// Append hash value of index and plaintext
+		HmacSha256 hash = new HmacSha256(key);
+		updateSegmentHash(hash, SEGMENT_MAC_TAG, index);
+		hash.update(data);
+		byte[] hashValue = hash.getValue();
+		System.arraycopy(hashValue, 0, buffer, length, HASH_VALUE_FIELD_SIZE);
+
+		// Encrypt compressed data and hash value
+		createSegmentCombiner(cipher, key, SEGMENT_KEY_TAG, index).combine(buffer, 0, length + HASH_VALUE_FIELD_SIZE);
+
+		return new Segment(buffer, length, compression, hashValue, endOffset);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Decrypts and decompresses a segment of the payload, and verifies its hash value.
+	 *
+	 * @param  cipher       the kind of cipher that was used to encrypt the segment.
+	 * @param  key          the content-encryption key.
+	 * @param  segmentSize  the maximum size of the plaintext of the segment.
+	 * @param  compression  the algorithm with which the segment was compressed.
+	 * @param  index        the index of the segment.
+	 * @param  data         the encrypted compressed data of the segment followed by its encrypted hash value.
+	 * @param  endOffset    the offset of the end of the segment in the input.
+	 * @param  buffer       the buffer into which the segment will be decompressed, whose length must be {@code
+	 *                      segmentSize}, or {@code null} if a new buffer should be allocated.
+	 * @return the decrypted segment, whose data is the plaintext of the segment.
+	 * @throws InputException
+	 *           if the data could not be decompressed or the hash value of the segment is incorrect.
+	 */
+
+	private static Segment decryptSegment(FortunaCipher cipher,
+										  byte[]        key,
+										  int           segmentSize,
+										  Compression   compression,
+										  long          index,
+										  byte[]        data,
+										  long          endOffset,
+										  byte[]        buffer)
+		throws InputException
+	{
+		// Decrypt compressed data and hash value
+		createSegmentCombiner(cipher, key, SEGMENT_KEY_TAG, index).combine(data);
+		int inLength = data.length - HASH_VALUE_FIELD_SIZE;
+
+		// Allocate buffer for plaintext
+		if (buffer == null)
+			buffer = new byte[segmentSize];
+
+		// Decompress data
+		int length = 0;
+		switch (compression)
+		{
+			case DEFLATE:
+			{
+				Inflater inflater = new Inflater(true);
+				try
+				{
+					inflater.setInput(data, 0, inLength);
+					while (!inflater.finished())
+					{
+						if (length >= buffer.length)
+							throw new InputException(ErrorId.INCORRECT_KEY);
+						int outLength = inflater.inflate(buffer, length, buffer.length - length);
+						if ((outLength == 0) && (inflater.needsInput() || inflater.needsDictionary()))
+							throw new InputException(ErrorId.INCORRECT_KEY);
+						length += outLength;
+					}
+				}
+				catch (DataFormatException e)
+				{
+					throw new InputException(ErrorId.INCORRECT_KEY);
+				}
+				finally
+				{
+					inflater.end();
+				}
+				break;
+			}
+
+			case STORE:
+				if (inLength > buffer.length)
+					throw new InputException(ErrorId.INCORRECT_KEY);
+				System.arraycopy(data, 0, buffer, 0, inLength);
+				length = inLength;
+				break;
+
+			case FAST:
+				length = LzCodec.decompress(data, 0, inLength, buffer, 0, buffer.length);
+				if (length < 0)
+					throw new InputException(ErrorId.INCORRECT_KEY);
+				break;
+		}
+
+		// Verify hash value of index and plaintext
+		HmacSha256 hash = new HmacSha256(key);
+		updateSegmentHash(hash, SEGMENT_MAC_TAG, index);
+		hash.update(buffer, 0, length);
+		byte[] hashValue = hash.getValue();
+		if (!Arrays.equals(hashValue, Arrays.copyOfRange(data, inLength, data.length)))
+			throw new InputException(ErrorId.INCORRECT_KEY);
+
+		return new Segment(buffer, length, compression, hashValue, endOffset);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Waits for a segment to be processed by a worker thread and returns it.
+	 *
+	 * @param  future  the result of the task that processes the segment.
+	 * @return the processed segment.
+	 * @throws InputException
+	 *           if the data of the segment is invalid.
+	 */
+
+	private static Segment getSegment(Future<Segment> future)
+		throws InputException
+	{
+		try
+		{
+			return future.get();
+		}
+		catch (ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof InputException)
+				throw (InputException)cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			if (cause instanceof Error)
+				throw (Error)cause;
+			throw new UnexpectedRuntimeException(cause);
+		}
+		catch (InterruptedException e)
+		{
+			throw new UnexpectedRuntimeException(e);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns the hash value of the index of the segments of a stream in the indexed format.
+	 *
+	 * @param  key            the content-encryption key.
+	 * @param  index          the index: the lengths of the compressed data of the segments.
+	 * @param  indexLength    the length of the index.
+	 * @param  numSegments    the number of segments.
+	 * @param  payloadLength  the length of the plaintext of the payload.
+	 * @return the hash value of the index.
+	 */
+
+	private static byte[] getIndexHashValue(byte[] key,
+											byte[] index,
+											int    indexLength,
+											long   numSegments,
+											long   payloadLength)
+	{
+		HmacSha256 hash = new HmacSha256(key);
+		updateSegmentHash(hash, INDEX_TAG, numSegments);
+		hash.update(index, 0, indexLength);
+		byte[] payloadLengthData = new byte[PAYLOAD_LENGTH_FIELD_SIZE];
+		NumberUtils.longToBytesLE(payloadLength, payloadLengthData);
+		hash.update(payloadLengthData);
+		return hash.getValue();
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Encrypts and writes the index of the segments of a stream in the indexed format, followed by the index
+	 * trailer.
+	 *
+	 * @param  output         the output to which the index will be written.
+	 * @param  cipher         the kind of cipher that will be used to encrypt the index.
+	 * @param  key            the content-encryption key.
+	 * @param  index          the index: the lengths of the compressed data of the segments.
+	 * @param  numSegments    the number of segments.
+	 * @param  payloadLength  the length of the plaintext of the payload.
+	 * @return the hash value of the index.
+	 * @throws OutputException
+	 *           if an error occurred when writing to the output.
+	 */
+
+	private static byte[] writeIndex(IOutput       output,
+									 FortunaCipher cipher,
+									 byte[]        key,
+									 byte[]        index,
+									 long          numSegments,
+									 long          payloadLength)
+		throws OutputException
+	{
+		// Encrypt and write index and its hash value
+		byte[] hashValue = getIndexHashValue(key, index, index.length, numSegments, payloadLength);
+		byte[] data = Arrays.copyOf(index, index.length + HASH_VALUE_FIELD_SIZE);
+		System.arraycopy(hashValue, 0, data, index.length, HASH_VALUE_FIELD_SIZE);
+		createSegmentCombiner(cipher, key, INDEX_TAG, 0).combine(data);
+		write(output, data);
+
+		// Encrypt and write index trailer
+		byte[] trailer = new byte[INDEX_TRAILER_SIZE];
+		NumberUtils.longToBytesLE(numSegments, trailer, 0, NUM_SEGMENTS_FIELD_SIZE);
+		NumberUtils.longToBytesLE(payloadLength, trailer, NUM_SEGMENTS_FIELD_SIZE, PAYLOAD_LENGTH_FIELD_SIZE);
+		createSegmentCombiner(cipher, key, TRAILER_TAG, 0).combine(trailer);
+		write(output, trailer);
+
+		return hashValue;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Decrypts the index of the segments of a stream in the indexed format in place, and verifies its hash value.
+	 *
+	 * @param  cipher         the kind of cipher that was used to encrypt the index.
+	 * @param  key            the content-encryption key.
+	 * @param  data           the encrypted index followed by its encrypted hash value.
+	 * @param  numSegments    the number of segments.
+	 * @param  payloadLength  the length of the plaintext of the payload.
+	 * @return the hash value of the index.
+	 * @throws InputException
+	 *           if the hash value of the index is incorrect.
+	 */
+
+	private static byte[] decryptIndex(FortunaCipher cipher,
+									   byte[]        key,
+									   byte[]        data,
+									   long          numSegments,
+									   long          payloadLength)
+		throws InputException
+	{
+		createSegmentCombiner(cipher, key, INDEX_TAG, 0).combine(data);
+		int indexLength = data.length - HASH_VALUE_FIELD_SIZE;
+		byte[] hashValue = getIndexHashValue(key, data, indexLength, numSegments, payloadLength);
+		if (!Arrays.equals(hashValue, Arrays.copyOfRange(data, indexLength, data.length)))
+			throw new InputException(ErrorId.INCORRECT_KEY);
+		return hashValue;
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Returns the algorithm with which the payload is compressed before encryption.
+	 *
+	 * @return the algorithm with which the payload is compressed before encryption.
+	 * @see    #setCompression(Compression)
+	 */
+
+	public Compression getCompression()
+	{
+		return compression;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns the compression level of the Deflate algorithm that is applied to the payload before
+	 * encryption.
+	 * <p>
 	 * The compression level can have values from 1 to 9.
 	 * </p>
 	 *
@@ -1686,6 +2832,20 @@ public class StreamEncrypter
 
 	//------------------------------------------------------------------
 
+	/**
+	 * Returns {@code true} if data that is unlikely to be compressible is stored without compression.
+	 *
+	 * @return {@code true} if data that is unlikely to be compressible is stored without compression.
+	 * @see    #setStoreIncompressible(boolean)
+	 */
+
+	public boolean isStoreIncompressible()
+	{
+		return storeIncompressible;
+	}
+
+	//------------------------------------------------------------------
+
 	/**
 	 * Returns the HMAC-SHA256 hash value of the unencrypted timestamp and payload for the last encryption
 	 * or decryption operation.
@@ -1753,6 +2913,27 @@ public class StreamEncrypter
 
 	//------------------------------------------------------------------
 
+	/**
+	 * Sets the algorithm with which the payload will be compressed before encryption.  The payload of a stream in
+	 * the {@linkplain StreamFormat#BASIC basic format} is always compressed with the Deflate algorithm, at the
+	 * compression level that corresponds to the algorithm.  A segment whose compressed data would not be shorter
+	 * than its plaintext is stored without compression, whatever the algorithm.
+	 *
+	 * @param  compression  the algorithm that will be set.
+	 * @throws IllegalArgumentException
+	 *           if {@code compression} is {@code null}.
+	 * @see    #getCompression()
+	 */
+
+	public void setCompression(Compression compression)
+	{
+		if (compression == null)
+			throw new IllegalArgumentException();
+		this.compression = compression;
+	}
+
+	//------------------------------------------------------------------
+
 	/**
 	 * Sets the compression level of the Deflate algorithm that is applied to the payload before encryption.
 	 * <p>
@@ -1775,100 +2956,226 @@ public class StreamEncrypter
 	//------------------------------------------------------------------
 
 	/**
-	 * Adds a specified progress listener to this encrypter's list of listeners.
-	 * <p>
-	 * The progress listeners are notified during encryption and decryption operations after each block of
-	 * the payload is processed.
-	 * </p>
+	 * Sets whether data that is unlikely to be compressible will be stored without compression.  If this is
+	 * enabled, the entropy of the distribution of byte values in the first block of the payload (in the
+	 * {@linkplain StreamFormat#BASIC basic format}) or of each segment (in the other formats) is measured before
+	 * compression, and data whose entropy is close to the maximum, such as compressed media and archives, is
+	 * stored.  This is enabled by default.
 	 *
-	 * @param listener  the progress listener that will be added to the list.
-	 * @see   #removeProgressListener(IProgressListener)
-	 * @see   #getProgressListeners()
+	 * @param store  if {@code true}, data that is unlikely to be compressible will be stored without compression.
+	 * @see   #isStoreIncompressible()
 	 */
 
-	public void addProgressListener(IProgressListener listener)
+	public void setStoreIncompressible(boolean store)
 	{
-		progressListeners.add(listener);
+		storeIncompressible = store;
 	}
 
 	//------------------------------------------------------------------
 
 	/**
-	 * Removes a specified progress listener from this encrypter's list of listeners.
-	 * <p>
-	 * The removal operation has no effect if the specified listener is not in the list.
-	 * </p>
+	 * Returns the format of the payload of a stream that is encrypted by this encrypter.  The format of a stream
+	 * that is decrypted is read from the header of the stream.
 	 *
-	 * @param listener  the listener that will be removed from the list.
-	 * @see   #addProgressListener(IProgressListener)
-	 * @see   #getProgressListeners()
+	 * @return the format of the payload of an encrypted stream.
+	 * @see    #setStreamFormat(StreamFormat)
 	 */
 
-	public void removeProgressListener(IProgressListener listener)
+	public StreamFormat getStreamFormat()
 	{
-		progressListeners.remove(listener);
+		return streamFormat;
 	}
 
 	//------------------------------------------------------------------
 
 	/**
-	 * Returns this encrypter's list of progress listeners.
+	 * Sets the format of the payload of a stream that is encrypted by this encrypter.  The default format is
+	 * {@link StreamFormat#BASIC}.
+	 * <p>
+	 * A format other than the basic format is identified by the version field of the header of the stream, so
+	 * it can be used only if this encrypter has a header whose version number is not greater than {@link
+	 * Header#MAX_VERSION}.
+	 * </p>
 	 *
-	 * @return the list of progress listeners as an array.
-	 * @see    #addProgressListener(IProgressListener)
-	 * @see    #removeProgressListener(IProgressListener)
+	 * @param  format  the format of the payload of an encrypted stream.
+	 * @throws IllegalArgumentException
+	 *           if {@code format} is {@code null}.
+	 * @see    #getStreamFormat()
 	 */
 
-	public IProgressListener[] getProgressListeners()
+	public void setStreamFormat(StreamFormat format)
 	{
-		return progressListeners.toArray(new IProgressListener[progressListeners.size()]);
+		if (format == null)
+			throw new IllegalArgumentException();
+		streamFormat = format;
 	}
 
 	//------------------------------------------------------------------
 
 	/**
-	 * Encrypts data from a specified input stream and writes the resulting ciphertext to a specified output
-	 * stream.
-	 * <p>
-	 * The output stream also contains metadata and blocks of padding of random lengths in addition to the
-	 * ciphertext.  The composition of the output data is described in the class comment for {@link
-	 * StreamEncrypter}.
-	 * </p>
+	 * Returns the size of the segments of the payload of a stream that is encrypted by this encrypter in the
+	 * {@linkplain StreamFormat#SEGMENTED segmented format}.
 	 *
-	 * @param  inStream   the input stream from which the data to be encrypted will be read.
-	 * @param  outStream  the output stream to which the ciphertext will be written, along with metadata and
-	 *                    blocks of random padding.
-	 * @param  length     the length of the data to be encrypted.
-	 * @param  timestamp  a timestamp that will be encrypted and written to the output stream.
-	 * @param  key        if key derivation function (KDF) parameters were specified when this object was
-	 *                    created, the key from which the content-encryption key (CEK) will be derived;
-	 *                    otherwise, the key that will be used as the CEK.
-	 * @param  randomKey  the key that will be used as a seed for the pseudo-random number generator that
-	 *                    will generate the random data for the salt of the KDF and for padding.
-	 * @throws AppException
-	 *           if there was not enough memory for the key derivation function to generate the
-	 *           content-encryption key.
-	 * @throws InputException
-	 *           if an error occurred when reading from the input stream.
-	 * @throws OutputException
-	 *           if an error occurred when writing to the output stream.
-	 * @throws TaskCancelledException
-	 *           if the encryption operation was cancelled by the user.
-	 * @see    #encrypt(IInput, IOutput, long, long, byte[], byte[])
-	 * @see    #decrypt(IInput, IOutput, long, byte[])
-	 * @see    #decrypt(InputStream, OutputStream, long, byte[])
+	 * @return the size (in bytes) of a segment of the payload.
+	 * @see    #setSegmentSize(int)
 	 */
 
-	public void encrypt(InputStream  inStream,
-						OutputStream outStream,
-						long         length,
-						long         timestamp,
-						byte[]       key,
-						byte[]       randomKey)
-		throws AppException, InputException, OutputException, TaskCancelledException
+	public int getSegmentSize()
 	{
-		encrypt(new InputStreamAdapter(inStream), new OutputStreamAdapter(outStream), length, timestamp, key,
-				randomKey);
+		return segmentSize;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Sets the size of the segments of the payload of a stream that is encrypted by this encrypter in the
+	 * {@linkplain StreamFormat#SEGMENTED segmented format}.  The default size is 1 MB.
+	 *
+	 * @param  size  the size (in bytes) of a segment of the payload.
+	 * @throws IllegalArgumentException
+	 *           if {@code size} is less than {@link #MIN_SEGMENT_SIZE} or greater than {@link
+	 *           #MAX_SEGMENT_SIZE}.
+	 * @see    #getSegmentSize()
+	 */
+
+	public void setSegmentSize(int size)
+	{
+		if ((size < MIN_SEGMENT_SIZE) || (size > MAX_SEGMENT_SIZE))
+			throw new IllegalArgumentException();
+		segmentSize = size;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns the number of worker threads that process the segments of a stream in the {@linkplain
+	 * StreamFormat#SEGMENTED segmented format}.
+	 *
+	 * @return the number of worker threads, or 0 if the number of threads is the number of available processors.
+	 * @see    #setNumThreads(int)
+	 */
+
+	public int getNumThreads()
+	{
+		return numThreads;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Sets the number of worker threads that process the segments of a stream in the {@linkplain
+	 * StreamFormat#SEGMENTED segmented format}.  The number of threads does not affect the encrypted stream.
+	 *
+	 * @param  numThreads  the number of worker threads, or 0 for the number of available processors.
+	 * @throws IllegalArgumentException
+	 *           if {@code numThreads} is negative or greater than {@link #MAX_NUM_THREADS}.
+	 * @see    #getNumThreads()
+	 */
+
+	public void setNumThreads(int numThreads)
+	{
+		if ((numThreads < 0) || (numThreads > MAX_NUM_THREADS))
+			throw new IllegalArgumentException();
+		this.numThreads = numThreads;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Adds a specified progress listener to this encrypter's list of listeners.
+	 * <p>
+	 * The progress listeners are notified during encryption and decryption operations after each block of
+	 * the payload is processed.
+	 * </p>
+	 *
+	 * @param listener  the progress listener that will be added to the list.
+	 * @see   #removeProgressListener(IProgressListener)
+	 * @see   #getProgressListeners()
+	 */
+
+	public void addProgressListener(IProgressListener listener)
+	{
+		progressListeners.add(listener);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Removes a specified progress listener from this encrypter's list of listeners.
+	 * <p>
+	 * The removal operation has no effect if the specified listener is not in the list.
+	 * </p>
+	 *
+	 * @param listener  the listener that will be removed from the list.
+	 * @see   #addProgressListener(IProgressListener)
+	 * @see   #getProgressListeners()
+	 */
+
+	public void removeProgressListener(IProgressListener listener)
+	{
+		progressListeners.remove(listener);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns this encrypter's list of progress listeners.
+	 *
+	 * @return the list of progress listeners as an array.
+	 * @see    #addProgressListener(IProgressListener)
+	 * @see    #removeProgressListener(IProgressListener)
+	 */
+
+	public IProgressListener[] getProgressListeners()
+	{
+		return progressListeners.toArray(new IProgressListener[progressListeners.size()]);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Encrypts data from a specified input stream and writes the resulting ciphertext to a specified output
+	 * stream.
+	 * <p>
+	 * The output stream also contains metadata and blocks of padding of random lengths in addition to the
+	 * ciphertext.  The composition of the output data is described in the class comment for {@link
+	 * StreamEncrypter}.
+	 * </p>
+	 *
+	 * @param  inStream   the input stream from which the data to be encrypted will be read.
+	 * @param  outStream  the output stream to which the ciphertext will be written, along with metadata and
+	 *                    blocks of random padding.
+	 * @param  length     the length of the data to be encrypted.
+	 * @param  timestamp  a timestamp that will be encrypted and written to the output stream.
+	 * @param  key        if key derivation function (KDF) parameters were specified when this object was
+	 *                    created, the key from which the content-encryption key (CEK) will be derived;
+	 *                    otherwise, the key that will be used as the CEK.
+	 * @param  randomKey  the key that will be used as a seed for the pseudo-random number generator that
+	 *                    will generate the random data for the salt of the KDF and for padding.
+	 * @throws AppException
+	 *           if there was not enough memory for the key derivation function to generate the
+	 *           content-encryption key.
+	 * @throws InputException
+	 *           if an error occurred when reading from the input stream.
+	 * @throws OutputException
+	 *           if an error occurred when writing to the output stream.
+	 * @throws TaskCancelledException
+	 *           if the encryption operation was cancelled by the user.
+	 * @see    #encrypt(IInput, IOutput, long, long, byte[], byte[])
+	 * @see    #decrypt(IInput, IOutput, long, byte[])
+	 * @see    #decrypt(InputStream, OutputStream, long, byte[])
+	 */
+
+	public void encrypt(InputStream  inStream,
+						OutputStream outStream,
+						long         length,
+						long         timestamp,
+						byte[]       key,
+						byte[]       randomKey)
+		throws AppException, InputException, OutputException, TaskCancelledException
+	{
+		encrypt(new InputStreamAdapter(inStream), new OutputStreamAdapter(outStream), length, timestamp, key,
+				randomKey);
 	}
 
 	//------------------------------------------------------------------
@@ -1915,10 +3222,15 @@ public class StreamEncrypter
 	{
 		final	int	RANDOM_DATA_POOL_LENGTH	= 256;
 
+		// Test whether the stream format can be signalled in the header
+		if ((streamFormat != StreamFormat.BASIC) && (header == null))
+			throw new IllegalStateException();
+
 		// Generate random padding lengths
 		byte[] randomDataPool = new byte[RANDOM_DATA_POOL_LENGTH];
 		int randomDataPoolIndex = 0;
 		Fortuna prng = cipher.createPrng(randomKey);
+		prng.setOutputBufferSize(RANDOM_DATA_POOL_LENGTH);
 		int[] paddingLengths = new int[NUM_PADDINGS];
 		int paddingIndex = 0;
 		while (true)
@@ -1979,7 +3291,7 @@ public class StreamEncrypter
 
 		// Write header
 		if (header != null)
-			write(output, header.toByteArray());
+			write(output, header.toByteArray(streamFormat));
 
 		// Write salt and KDF parameters; generate encryption key
 		byte[] encryptionKey = key;
@@ -2039,55 +3351,11 @@ public class StreamEncrypter
 		NumberUtils.longToBytesLE(timestamp, timestampData, 0, timestampData.length);
 		hash.update(timestampData);
 
-		// Compress and encrypt data from input stream
-		Deflater deflater = new Deflater(compressionLevel, true);
-		byte[] inBuffer = new byte[BUFFER_SIZE];
-		byte[] outBuffer = new byte[BUFFER_SIZE];
-		long offset = 0;
-		while (offset < length)
-		{
-			// Test whether task has been cancelled by a monitor
-			for (IProgressListener listener : progressListeners)
-			{
-				if (listener.isTaskCancelled())
-					throw new TaskCancelledException();
-			}
-
-			// Read block of data from input stream
-			int blockLength = (int)Math.min(length - offset, BUFFER_SIZE);
-			read(input, inBuffer, 0, blockLength);
-			hash.update(inBuffer, 0, blockLength);
-
-			// Compress and encrypt input data and write it to output stream
-			deflater.setInput(inBuffer, 0, blockLength);
-			while (true)
-			{
-				int outLength = deflater.deflate(outBuffer);
-				if (outLength == 0)
-					break;
-				combiner.combine(outBuffer, 0, outLength);
-				write(output, outBuffer, 0, outLength);
-			}
-
-			// Increment offset
-			offset += blockLength;
-
-			// Update progress of task
-			double progress = (double)offset / (double)length;
-			for (IProgressListener listener : progressListeners)
-				listener.setProgress(progress);
-		}
-
-		// Write remaining compressed data
-		deflater.finish();
-		while (true)
-		{
-			int outLength = deflater.deflate(outBuffer);
-			if (outLength == 0)
-				break;
-			combiner.combine(outBuffer, 0, outLength);
-			write(output, outBuffer, 0, outLength);
-		}
+		// Compress and encrypt payload
+		if (streamFormat == StreamFormat.BASIC)
+			encryptPayload(input, output, length, combiner, hash);
+		else
+			encryptSegments(input, output, length, encryptionKey, combiner, hash);
 
 		// Write second padding
 		write(output, padding, paddingIndex * PADDING_SIZE, paddingLengths[paddingIndex]);
@@ -2170,6 +3438,7 @@ public class StreamEncrypter
 	 * @throws TaskCancelledException
 	 *           if the decryption operation was cancelled by the user.
 	 * @see    #decrypt(InputStream, OutputStream, long, byte[])
+	 * @see    #validate(IInput, long, byte[])
 	 * @see    #encrypt(IInput, IOutput, long, long, byte[], byte[])
 	 * @see    #encrypt(InputStream, OutputStream, long, long, byte[], byte[])
 	 */
@@ -2180,7 +3449,163 @@ public class StreamEncrypter
 						byte[]  key)
 		throws AppException, InputException, OutputException, TaskCancelledException
 	{
+		return decryptStream(input, output, length, key);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Validates encrypted data from a specified input stream.  The data is decrypted, decompressed and verified as
+	 * it would be by {@link #decrypt(InputStream, OutputStream, long, byte[])}, but the plaintext is discarded.
+	 *
+	 * @param  inStream  the input stream from which the data to be validated will be read.
+	 * @param  length    the length of the data to be validated.
+	 * @param  key       if key derivation function (KDF) parameters were specified when this object was
+	 *                   created, the key from which the content-encryption key (CEK) will be derived;
+	 *                   otherwise, the key that will be used as the CEK.
+	 * @return the timestamp of the input data.
+	 * @throws AppException
+	 *           if there was not enough memory for the key derivation function to generate the
+	 *           content-encryption key.
+	 * @throws InputException
+	 *           if an error occurred when reading from the input stream or if the data is invalid.
+	 * @throws TaskCancelledException
+	 *           if the validation operation was cancelled by the user.
+	 * @see    #validate(IInput, long, byte[])
+	 * @see    #decrypt(InputStream, OutputStream, long, byte[])
+	 */
+
+	public long validate(InputStream inStream,
+						 long        length,
+						 byte[]      key)
+		throws AppException, InputException, TaskCancelledException
+	{
+		return validate(new InputStreamAdapter(inStream), length, key);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Validates encrypted data from a specified input.  The data is decrypted, decompressed and verified as it
+	 * would be by {@link #decrypt(IInput, IOutput, long, byte[])}, but the plaintext is discarded.
+	 * <p>
+	 * The segments of a stream in the {@linkplain StreamFormat#SEGMENTED segmented} or {@linkplain
+	 * StreamFormat#INDEXED indexed} format are verified concurrently in reusable buffers, and validation stops as
+	 * soon as any segment is found to be invalid, without reading the rest of the input.  The throughput of the
+	 * validation is reported to the progress listeners of this encrypter along with its progress.
+	 * </p>
+	 *
+	 * @param  input   the input from which the data to be validated will be read.
+	 * @param  length  the length of the data to be validated.
+	 * @param  key     if key derivation function (KDF) parameters were specified when this object was
+	 *                 created, the key from which the content-encryption key (CEK) will be derived;
+	 *                 otherwise, the key that will be used as the CEK.
+	 * @return the timestamp of the input data.
+	 * @throws AppException
+	 *           if there was not enough memory for the key derivation function to generate the
+	 *           content-encryption key.
+	 * @throws InputException
+	 *           if an error occurred when reading from the input or if the data is invalid.
+	 * @throws TaskCancelledException
+	 *           if the validation operation was cancelled by the user.
+	 * @see    #validate(InputStream, long, byte[])
+	 * @see    #decrypt(IInput, IOutput, long, byte[])
+	 */
+
+	public long validate(IInput input,
+						 long   length,
+						 byte[] key)
+		throws AppException, InputException, TaskCancelledException
+	{
+		try
+		{
+			return decryptStream(input, null, length, key);
+		}
+		catch (OutputException e)
+		{
+			// Nothing is written, so this should not happen
+			throw new UnexpectedRuntimeException(e);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Creates and returns a decrypter that provides random access to the plaintext of a stream that was encrypted
+	 * in the {@linkplain StreamFormat#INDEXED indexed format}.  The stream must start at position 0 of the
+	 * specified channel, and the length of the channel must be the length of the stream.  The metadata and the
+	 * index of the stream are read and verified when the decrypter is created.
+	 * <p>
+	 * The decrypter verifies each segment that it decrypts, but it does not verify the hash value at the end of
+	 * the stream.  The stream can be fully verified with {@link #validate(IInput, long, byte[])}.
+	 * </p>
+	 *
+	 * @param  channel  the channel from which the encrypted stream will be read.
+	 * @param  key      if key derivation function (KDF) parameters were specified when this object was created,
+	 *                  the key from which the content-encryption key (CEK) will be derived; otherwise, the key
+	 *                  that will be used as the CEK.
+	 * @return a random-access decrypter for the stream.
+	 * @throws AppException
+	 *           if there was not enough memory for the key derivation function to generate the
+	 *           content-encryption key.
+	 * @throws InputException
+	 *           if an error occurred when reading from the channel, if the stream does not have an index, or if
+	 *           the metadata or the index of the stream is invalid.
+	 */
+
+	public RandomAccessDecrypter createRandomAccessDecrypter(SeekableByteChannel channel,
+															 byte[]              key)
+		throws AppException, InputException
+	{
+		// Read metadata that precedes payload
+		long length = 0;
+		try
+		{
+			channel.position(0);
+			length = channel.size();
+		}
+		catch (IOException e)
+		{
+			throw new InputException(ErrorId.ERROR_READING_DATA, e);
+		}
+		Prologue prologue = readPrologue(new ChannelAdapter(channel), length, key);
+
+		// Test for index
+		if (prologue.format != StreamFormat.INDEXED)
+			throw new InputException(ErrorId.NO_INDEX);
+
+		// Create decrypter
+		return new RandomAccessDecrypter(channel, prologue);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Reads the metadata that precedes the payload of an encrypted stream, from the header to the timestamp, and
+	 * returns it.
+	 *
+	 * @param  input   the input from which the metadata will be read.
+	 * @param  length  the length of the encrypted stream.
+	 * @param  key     if key derivation function (KDF) parameters were specified when this object was created, the
+	 *                 key from which the content-encryption key (CEK) will be derived; otherwise, the key that
+	 *                 will be used as the CEK.
+	 * @return the metadata that precedes the payload.
+	 * @throws AppException
+	 *           if there was not enough memory for the key derivation function to generate the
+	 *           content-encryption key.
+	 * @throws InputException
+	 *           if an error occurred when reading from the input, or if the metadata is invalid.
+	 */
+
+	private Prologue readPrologue(IInput input,
+								  long   length,
+								  byte[] key)
+		throws AppException, InputException
+	{
+		long streamLength = length;
+
 		// Process header
+		StreamFormat format = StreamFormat.BASIC;
 		if (header != null)
 		{
 			// Read and test format identifier
@@ -2196,7 +3621,13 @@ public class StreamEncrypter
 
 			int version = NumberUtils.bytesToUIntLE(versionNum);
 			if (!header.isSupportedVersion(version))
-				throw new InputException(ErrorId.UNSUPPORTED_DATA_VERSION, Integer.toString(version));
+			{
+				// Extract stream format from version field
+				format = StreamFormat.forId(version >>> Header.FORMAT_SHIFT);
+				version &= Header.MAX_VERSION;
+				if ((format == null) || (format == StreamFormat.BASIC) || !header.isSupportedVersion(version))
+					throw new InputException(ErrorId.UNSUPPORTED_DATA_VERSION, Integer.toString(version));
+			}
 
 			// Read supplementary data
 			if (header.supplementaryData != null)
@@ -2249,10 +3680,9 @@ public class StreamEncrypter
 			combiner.combine(paddingLengthData);
 			paddingLengths[i] = paddingLengthData[0] & 0xFF;
 		}
-		int paddingIndex = 0;
 
 		// Skip first padding
-		byte[] padding = new byte[paddingLengths[paddingIndex++]];
+		byte[] padding = new byte[paddingLengths[0]];
 		read(input, padding);
 
 		// Get indices of timestamp bits
@@ -2278,24 +3708,322 @@ public class StreamEncrypter
 		NumberUtils.longToBytesLE(timestamp, timestampData, 0, timestampData.length);
 		hash.update(timestampData);
 
-		// Read and decrypt payload
-		Inflater inflater = new Inflater(true);
-		byte[] inBuffer = new byte[BUFFER_SIZE];
-		byte[] outBuffer = new byte[BUFFER_SIZE];
+		// Calculate length of payload
 		length -= METADATA1_SIZE;
 		if (kdfParams != null)
 			length -= METADATA2_SIZE;
 		for (int i = 0; i < NUM_PADDINGS; i++)
 			length -= paddingLengths[i];
+		if (length < 0)
+			throw new InputException(ErrorId.UNEXPECTED_DATA_FORMAT);
+
+		// Return metadata
+		Prologue prologue = new Prologue();
+		prologue.format = format;
+		prologue.cipher = cipher;
+		prologue.key = encryptionKey;
+		prologue.combiner = combiner;
+		prologue.hash = hash;
+		prologue.paddingLengths = paddingLengths;
+		prologue.timestamp = timestamp;
+		prologue.payloadOffset = streamLength - length - paddingLengths[1] - HASH_VALUE_FIELD_SIZE -
+																							paddingLengths[2];
+		prologue.payloadLength = length;
+		return prologue;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns the compression level of the Deflate algorithm with which the payload of a stream in the {@linkplain
+	 * StreamFormat#BASIC basic format} will be compressed.  The level is selected from the compression algorithm of
+	 * this encrypter and, if incompressible data is to be stored, the entropy of the first block of the payload.
+	 *
+	 * @param  data    the array that contains the first block of the payload.
+	 * @param  length  the length of the first block of the payload.
+	 * @return the compression level of the Deflate algorithm.
+	 */
+
+	private int getDeflateLevel(byte[] data,
+								int    length)
+	{
+		if ((compression == Compression.STORE) || (storeIncompressible && isIncompressible(data, 0, length)))
+			return Deflater.NO_COMPRESSION;
+		return ((compression == Compression.FAST) ? Deflater.BEST_SPEED : compressionLevel);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Compresses and encrypts the payload of a stream in the {@linkplain StreamFormat#BASIC basic format}.
+	 *
+	 * @param  input     the input from which the payload will be read.
+	 * @param  output    the output to which the encrypted payload will be written.
+	 * @param  length    the length of the payload.
+	 * @param  combiner  the exclusive-OR combiner that will encrypt the compressed payload.
+	 * @param  hash      the hash that will be updated with the payload.
+	 * @throws InputException
+	 *           if an error occurred when reading from the input.
+	 * @throws OutputException
+	 *           if an error occurred when writing to the output.
+	 * @throws TaskCancelledException
+	 *           if the encryption operation was cancelled by the user.
+	 */
+
+	private void encryptPayload(IInput              input,
+								IOutput             output,
+								long                length,
+								Fortuna.XorCombiner combiner,
+								HmacSha256          hash)
+		throws InputException, OutputException, TaskCancelledException
+	{
+		// Compress and encrypt data from input stream
+		Deflater deflater = null;
+		byte[] inBuffer = new byte[BUFFER_SIZE];
+		byte[] outBuffer = new byte[BUFFER_SIZE];
 		long offset = 0;
 		while (offset < length)
 		{
 			// Test whether task has been cancelled by a monitor
-			for (IProgressListener listener : progressListeners)
+			testCancelled();
+
+			// Read block of data from input stream
+			int blockLength = (int)Math.min(length - offset, BUFFER_SIZE);
+			read(input, inBuffer, 0, blockLength);
+			hash.update(inBuffer, 0, blockLength);
+
+			// Create deflater with compression level selected from first block of data
+			if (deflater == null)
+				deflater = new Deflater(getDeflateLevel(inBuffer, blockLength), true);
+
+			// Compress and encrypt input data and write it to output stream
+			deflater.setInput(inBuffer, 0, blockLength);
+			while (true)
+			{
+				int outLength = deflater.deflate(outBuffer);
+				if (outLength == 0)
+					break;
+				combiner.combine(outBuffer, 0, outLength);
+				write(output, outBuffer, 0, outLength);
+			}
+
+			// Increment offset
+			offset += blockLength;
+
+			// Update progress of task
+			updateProgress((double)offset / (double)length);
+		}
+
+		// Write remaining compressed data
+		if (deflater == null)
+			deflater = new Deflater(getDeflateLevel(inBuffer, 0), true);
+		deflater.finish();
+		while (true)
+		{
+			int outLength = deflater.deflate(outBuffer);
+			if (outLength == 0)
+				break;
+			combiner.combine(outBuffer, 0, outLength);
+			write(output, outBuffer, 0, outLength);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Compresses and encrypts the payload of a stream in the {@linkplain StreamFormat#SEGMENTED segmented format}.
+	 * The segments are read from the input and written to the output by the calling thread, and they are
+	 * compressed and encrypted concurrently by a pool of worker threads.
+	 *
+	 * @param  input     the input from which the payload will be read.
+	 * @param  output    the output to which the encrypted payload will be written.
+	 * @param  length    the length of the payload.
+	 * @param  key       the content-encryption key.
+	 * @param  combiner  the exclusive-OR combiner that will encrypt the metadata of the segments.
+	 * @param  hash      the hash that will be updated with the hash values of the segments and of the index.
+	 * @throws InputException
+	 *           if an error occurred when reading from the input.
+	 * @throws OutputException
+	 *           if an error occurred when writing to the output.
+	 * @throws TaskCancelledException
+	 *           if the encryption operation was cancelled by the user.
+	 */
+
+	private void encryptSegments(IInput              input,
+								 IOutput             output,
+								 long                length,
+								 byte[]              key,
+								 Fortuna.XorCombiner combiner,
+								 HmacSha256          hash)
+		throws InputException, OutputException, TaskCancelledException
+	{
+		// Encrypt and write segment size
+		byte[] segmentSizeData = new byte[SEGMENT_SIZE_FIELD_SIZE];
+		NumberUtils.intToBytesLE(segmentSize, segmentSizeData);
+		hash.update(segmentSizeData);
+		combiner.combine(segmentSizeData);
+		write(output, segmentSizeData);
+
+		// Compress and encrypt segments concurrently; write them in order
+		int numThreads = getNumWorkerThreads();
+		ExecutorService executor = createExecutor(numThreads);
+		try
+		{
+			Deque<Future<Segment>> pendingSegments = new ArrayDeque<>();
+			ByteArrayOutputStream index = new ByteArrayOutputStream();
+			byte[] lengthData = new byte[SEGMENT_LENGTH_FIELD_SIZE];
+			long numSegments = 0;
+			long offset = 0;
+			while ((offset < length) || !pendingSegments.isEmpty())
+			{
+				// Test whether task has been cancelled by a monitor
+				testCancelled();
+
+				// Read segment and submit it to worker threads
+				if ((offset < length) && (pendingSegments.size() < numThreads * NUM_PENDING_SEGMENTS_PER_THREAD))
+				{
+					byte[] data = new byte[(int)Math.min(length - offset, segmentSize)];
+					read(input, data);
+					offset += data.length;
+
+					long segmentIndex = numSegments++;
+					long endOffset = offset;
+					pendingSegments.add(executor.submit(() ->
+							encryptSegment(cipher, key, compression, compressionLevel, storeIncompressible,
+										   segmentIndex, data, endOffset)));
+					continue;
+				}
+
+				// Write oldest segment
+				Segment segment = getSegment(pendingSegments.remove());
+				NumberUtils.intToBytesLE(segment.compression.id << COMPRESSION_SHIFT | segment.length, lengthData);
+				index.write(lengthData, 0, lengthData.length);
+				combiner.combine(lengthData);
+				write(output, lengthData);
+				write(output, segment.data, 0, segment.length + HASH_VALUE_FIELD_SIZE);
+				hash.update(segment.hashValue);
+
+				// Update progress of task
+				updateProgress((double)segment.endOffset / (double)length);
+			}
+
+			// Update hash with number of segments
+			byte[] numSegmentsData = new byte[NUM_SEGMENTS_FIELD_SIZE];
+			NumberUtils.longToBytesLE(numSegments, numSegmentsData);
+			hash.update(numSegmentsData);
+
+			// Write end-of-segments marker and index; update hash with hash value of index
+			if (streamFormat == StreamFormat.INDEXED)
 			{
-				if (listener.isTaskCancelled())
-					throw new TaskCancelledException();
+				NumberUtils.intToBytesLE(END_OF_SEGMENTS, lengthData);
+				combiner.combine(lengthData);
+				write(output, lengthData);
+				hash.update(writeIndex(output, cipher, key, index.toByteArray(), numSegments, length));
 			}
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Decrypts data from a specified input and writes the resulting plaintext to a specified output, or discards
+	 * the plaintext if no output is specified.
+	 *
+	 * @param  input   the input from which the data to be decrypted will be read.
+	 * @param  output  the output to which the plaintext will be written, or {@code null} if the plaintext will be
+	 *                 discarded.
+	 * @param  length  the length of the data to be decrypted.
+	 * @param  key     the key from which the content-encryption key will be derived, or the content-encryption
+	 *                 key itself.
+	 * @return the timestamp of the input data.
+	 * @throws AppException
+	 *           if there was not enough memory for the key derivation function to generate the
+	 *           content-encryption key.
+	 * @throws InputException
+	 *           if an error occurred when reading from the input or if the data is invalid.
+	 * @throws OutputException
+	 *           if an error occurred when writing to the output.
+	 * @throws TaskCancelledException
+	 *           if the decryption operation was cancelled by the user.
+	 */
+
+	private long decryptStream(IInput  input,
+							   IOutput output,
+							   long    length,
+							   byte[]  key)
+		throws AppException, InputException, OutputException, TaskCancelledException
+	{
+		// Read metadata that precedes payload
+		Prologue prologue = readPrologue(input, length, key);
+
+		// Initialise start time for throughput
+		startTime = System.nanoTime();
+
+		// Read and decrypt payload
+		if (prologue.format == StreamFormat.BASIC)
+			decryptPayload(input, output, prologue.payloadLength, prologue.combiner, prologue.hash);
+		else
+			decryptSegments(input, output, prologue);
+
+		// Skip second padding
+		byte[] padding = new byte[prologue.paddingLengths[1]];
+		read(input, padding);
+
+		// Read and decrypt hash value
+		byte[] hashValueData = new byte[HASH_VALUE_FIELD_SIZE];
+		read(input, hashValueData);
+		prologue.combiner.combine(hashValueData);
+
+		// Compare actual hash value with value from input stream
+		if (!Arrays.equals(hashValueData, prologue.hash.getValue()))
+			throw new InputException(ErrorId.INCORRECT_KEY);
+
+		// Update instance fields
+		hashValue = hashValueData;
+
+		// Return timestamp
+		return prologue.timestamp;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Decrypts and decompresses the payload of a stream in the {@linkplain StreamFormat#BASIC basic format}.
+	 *
+	 * @param  input     the input from which the encrypted payload will be read.
+	 * @param  output    the output to which the plaintext will be written, or {@code null} if the plaintext will
+	 *                   be discarded.
+	 * @param  length    the length of the encrypted payload.
+	 * @param  combiner  the exclusive-OR combiner that will decrypt the payload.
+	 * @param  hash      the hash that will be updated with the plaintext.
+	 * @throws InputException
+	 *           if an error occurred when reading from the input or the payload could not be decompressed.
+	 * @throws OutputException
+	 *           if an error occurred when writing to the output.
+	 * @throws TaskCancelledException
+	 *           if the decryption operation was cancelled by the user.
+	 */
+
+	private void decryptPayload(IInput              input,
+								IOutput             output,
+								long                length,
+								Fortuna.XorCombiner combiner,
+								HmacSha256          hash)
+		throws InputException, OutputException, TaskCancelledException
+	{
+		// Read and decrypt data from input stream
+		Inflater inflater = new Inflater(true);
+		byte[] inBuffer = new byte[BUFFER_SIZE];
+		byte[] outBuffer = new byte[BUFFER_SIZE];
+		long offset = 0;
+		while (offset < length)
+		{
+			// Test whether task has been cancelled by a monitor
+			testCancelled();
 
 			// Read and decrypt block of data from input stream
 			int blockLength = (int)Math.min(length - offset, BUFFER_SIZE);
@@ -2312,7 +4040,8 @@ public class StreamEncrypter
 					if (outLength == 0)
 						break;
 					hash.update(outBuffer, 0, outLength);
-					write(output, outBuffer, 0, outLength);
+					if (output != null)
+						write(output, outBuffer, 0, outLength);
 				}
 			}
 			catch (DataFormatException e)
@@ -2324,29 +4053,289 @@ public class StreamEncrypter
 			offset += blockLength;
 
 			// Update progress of task
-			double progress = (double)offset / (double)length;
-			for (IProgressListener listener : progressListeners)
-				listener.setProgress(progress);
+			updateProgress((double)offset / (double)length);
+			updateThroughput(offset);
 		}
+	}
 
-		// Skip second padding
-		padding = new byte[paddingLengths[paddingIndex++]];
-		read(input, padding);
+	//------------------------------------------------------------------
 
-		// Read and decrypt hash value
-		byte[] hashValueData = new byte[HASH_VALUE_FIELD_SIZE];
-		read(input, hashValueData);
-		combiner.combine(hashValueData);
+	/**
+	 * Decrypts and decompresses the payload of a stream in the {@linkplain StreamFormat#SEGMENTED segmented} or
+	 * {@linkplain StreamFormat#INDEXED indexed} format.  The segments are read from the input and written to the
+	 * output by the calling thread, and they are decrypted, decompressed and verified concurrently by a pool of
+	 * worker threads.  The index of a stream in the indexed format is verified against the segments.
+	 * <p>
+	 * If a worker thread finds that a segment is invalid, the calling thread stops reading the input as soon as it
+	 * detects the failure, and the remaining segments are not processed.  If the plaintext is discarded, each
+	 * worker thread decompresses segments into a single reusable buffer.
+	 * </p>
+	 *
+	 * @param  input     the input from which the encrypted payload will be read.
+	 * @param  output    the output to which the plaintext will be written, or {@code null} if the plaintext will
+	 *                   be discarded.
+	 * @param  prologue  the metadata that precedes the payload.
+	 * @throws InputException
+	 *           if an error occurred when reading from the input or if a segment or the index is invalid.
+	 * @throws OutputException
+	 *           if an error occurred when writing to the output.
+	 * @throws TaskCancelledException
+	 *           if the decryption operation was cancelled by the user.
+	 */
 
-		// Compare actual hash value with value from input stream
-		if (!Arrays.equals(hashValueData, hash.getValue()))
+	private void decryptSegments(IInput   input,
+								 IOutput  output,
+								 Prologue prologue)
+		throws InputException, OutputException, TaskCancelledException
+	{
+		long length = prologue.payloadLength;
+		FortunaCipher cipher = prologue.cipher;
+		byte[] key = prologue.key;
+		Fortuna.XorCombiner combiner = prologue.combiner;
+		HmacSha256 hash = prologue.hash;
+		boolean indexed = (prologue.format == StreamFormat.INDEXED);
+
+		// Read and decrypt segment size
+		if (length < SEGMENT_SIZE_FIELD_SIZE)
+			throw new InputException(ErrorId.UNEXPECTED_DATA_FORMAT);
+		byte[] segmentSizeData = new byte[SEGMENT_SIZE_FIELD_SIZE];
+		read(input, segmentSizeData);
+		combiner.combine(segmentSizeData);
+		int segmentSize = NumberUtils.bytesToIntLE(segmentSizeData);
+		if ((segmentSize < MIN_SEGMENT_SIZE) || (segmentSize > MAX_SEGMENT_SIZE))
 			throw new InputException(ErrorId.INCORRECT_KEY);
+		hash.update(segmentSizeData);
+		int maxDataLength = getMaxCompressedLength(segmentSize) + HASH_VALUE_FIELD_SIZE;
+
+		// Decrypt segments concurrently; write them in order
+		int numThreads = getNumWorkerThreads();
+		ExecutorService executor = createExecutor(numThreads);
+		ThreadLocal<byte[]> buffers = (output == null) ? ThreadLocal.withInitial(() -> new byte[segmentSize]) : null;
+		AtomicReference<Exception> failure = new AtomicReference<>();
+		try
+		{
+			Deque<Future<Segment>> pendingSegments = new ArrayDeque<>();
+			ByteArrayOutputStream index = new ByteArrayOutputStream();
+			byte[] lengthData = new byte[SEGMENT_LENGTH_FIELD_SIZE];
+			long numSegments = 0;
+			long plaintextLength = 0;
+			long offset = SEGMENT_SIZE_FIELD_SIZE;
+			boolean moreSegments = indexed || (offset < length);
+			while (moreSegments || !pendingSegments.isEmpty())
+			{
+				// Test whether task has been cancelled by a monitor
+				testCancelled();
 
-		// Update instance fields
-		hashValue = hashValueData;
+				// Stop if a worker thread has found an invalid segment
+				throwFailure(failure);
 
-		// Return timestamp
-		return timestamp;
+				// Read segment and submit it to worker threads
+				if (moreSegments && (pendingSegments.size() < numThreads * NUM_PENDING_SEGMENTS_PER_THREAD))
+				{
+					// Read and decrypt length of segment
+					if (length - offset < SEGMENT_LENGTH_FIELD_SIZE)
+						throw new InputException(ErrorId.INCORRECT_KEY);
+					read(input, lengthData);
+					combiner.combine(lengthData);
+					offset += SEGMENT_LENGTH_FIELD_SIZE;
+
+					// Test for end of segments
+					if (indexed && (NumberUtils.bytesToIntLE(lengthData) == END_OF_SEGMENTS))
+					{
+						moreSegments = false;
+						continue;
+					}
+
+					// Decode compression algorithm and validate length of segment
+					int lengthValue = NumberUtils.bytesToIntLE(lengthData);
+					Compression compression = Compression.forId(lengthValue >>> COMPRESSION_SHIFT);
+					int dataLength = (lengthValue & SEGMENT_LENGTH_MASK) + HASH_VALUE_FIELD_SIZE;
+					if ((compression == null) || (dataLength > maxDataLength) || (dataLength > length - offset))
+						throw new InputException(ErrorId.INCORRECT_KEY);
+					index.write(lengthData, 0, lengthData.length);
+
+					// Read segment
+					byte[] data = new byte[dataLength];
+					read(input, data);
+					offset += dataLength;
+					if (!indexed)
+						moreSegments = (offset < length);
+
+					// Submit segment to worker threads
+					long segmentIndex = numSegments++;
+					long endOffset = offset;
+					pendingSegments.add(executor.submit(() ->
+					{
+						// Skip segment if another segment is invalid
+						if (failure.get() != null)
+							return null;
+
+						// Decrypt segment; record failure
+						try
+						{
+							return decryptSegment(cipher, key, segmentSize, compression, segmentIndex, data,
+												  endOffset, (buffers == null) ? null : buffers.get());
+						}
+						catch (InputException | RuntimeException e)
+						{
+							failure.compareAndSet(null, e);
+							throw e;
+						}
+					}));
+					continue;
+				}
+
+				// Write oldest segment
+				Segment segment = getSegment(pendingSegments.remove());
+				if (segment == null)
+					throwFailure(failure);
+				hash.update(segment.hashValue);
+				if (output != null)
+					write(output, segment.data, 0, segment.length);
+				plaintextLength += segment.length;
+
+				// Update progress of task
+				updateProgress((double)segment.endOffset / (double)length);
+				updateThroughput(segment.endOffset);
+			}
+
+			// Update hash with number of segments
+			byte[] numSegmentsData = new byte[NUM_SEGMENTS_FIELD_SIZE];
+			NumberUtils.longToBytesLE(numSegments, numSegmentsData);
+			hash.update(numSegmentsData);
+
+			// Read and verify index; update hash with hash value of index
+			if (indexed)
+			{
+				// Read index and trailer
+				byte[] indexData = index.toByteArray();
+				if (length - offset != indexData.length + HASH_VALUE_FIELD_SIZE + INDEX_TRAILER_SIZE)
+					throw new InputException(ErrorId.UNEXPECTED_DATA_FORMAT);
+				byte[] data = new byte[indexData.length + HASH_VALUE_FIELD_SIZE];
+				read(input, data);
+				byte[] trailer = new byte[INDEX_TRAILER_SIZE];
+				read(input, trailer);
+
+				// Decrypt and verify trailer
+				createSegmentCombiner(cipher, key, TRAILER_TAG, 0).combine(trailer);
+				if ((NumberUtils.bytesToLongLE(trailer, 0, NUM_SEGMENTS_FIELD_SIZE) != numSegments) ||
+					 (NumberUtils.bytesToLongLE(trailer, NUM_SEGMENTS_FIELD_SIZE, PAYLOAD_LENGTH_FIELD_SIZE) !=
+																								plaintextLength))
+					throw new InputException(ErrorId.INCORRECT_KEY);
+
+				// Decrypt and verify index
+				byte[] indexHashValue = decryptIndex(cipher, key, data, numSegments, plaintextLength);
+				if (!Arrays.equals(indexData, Arrays.copyOf(data, indexData.length)))
+					throw new InputException(ErrorId.INCORRECT_KEY);
+				hash.update(indexHashValue);
+			}
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Throws the exception that was recorded by a worker thread when it failed to process a segment, if there is
+	 * one.
+	 *
+	 * @param  failure  the exception that was recorded by a worker thread, if any.
+	 * @throws InputException
+	 *           if a worker thread found that a segment was invalid.
+	 */
+
+	private static void throwFailure(AtomicReference<Exception> failure)
+		throws InputException
+	{
+		Exception exception = failure.get();
+		if (exception instanceof InputException)
+			throw (InputException)exception;
+		if (exception instanceof RuntimeException)
+			throw (RuntimeException)exception;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns the number of worker threads that will process the segments of a stream in the segmented format.
+	 *
+	 * @return the number of worker threads that will process segments.
+	 */
+
+	private int getNumWorkerThreads()
+	{
+		int numProcessors = Runtime.getRuntime().availableProcessors();
+		return ((numThreads == 0) ? numProcessors : numThreads);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Creates and returns a pool of a specified number of worker threads for processing segments.
+	 *
+	 * @param  numThreads  the number of worker threads.
+	 * @return a pool of worker threads.
+	 */
+
+	private ExecutorService createExecutor(int numThreads)
+	{
+		return Executors.newFixedThreadPool(numThreads, runnable ->
+				DaemonThread.create(runnable, SEGMENT_THREAD_NAME));
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Throws an exception if the task has been cancelled by any of the progress listeners of this encrypter.
+	 *
+	 * @throws TaskCancelledException
+	 *           if the task has been cancelled.
+	 */
+
+	private void testCancelled()
+		throws TaskCancelledException
+	{
+		for (IProgressListener listener : progressListeners)
+		{
+			if (listener.isTaskCancelled())
+				throw new TaskCancelledException();
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Reports the progress of the task to the progress listeners of this encrypter.
+	 *
+	 * @param progress  the progress of the task, in the range [0..1].
+	 */
+
+	private void updateProgress(double progress)
+	{
+		for (IProgressListener listener : progressListeners)
+			listener.setProgress(progress);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Reports the throughput of a decryption or validation task to the progress listeners of this encrypter.
+	 *
+	 * @param numBytes  the number of bytes of encrypted payload that have been processed since the task started.
+	 */
+
+	private void updateThroughput(long numBytes)
+	{
+		long elapsedTime = System.nanoTime() - startTime;
+		if (elapsedTime > 0)
+		{
+			double throughput = (double)numBytes * 1.0e9 / (double)elapsedTime;
+			for (IProgressListener listener : progressListeners)
+				listener.setThroughput(throughput);
+		}
 	}
 
 	//------------------------------------------------------------------
@@ -2358,8 +4347,14 @@ public class StreamEncrypter
 	private	FortunaCipher			cipher;
 	private	KdfParams				kdfParams;
 	private	Header					header;
+	private	Compression				compression;
 	private	int						compressionLevel;
+	private	boolean					storeIncompressible;
+	private	StreamFormat			streamFormat;
+	private	int						segmentSize;
+	private	int						numThreads;
 	private	byte[]					hashValue;
+	private	long					startTime;
 	private	List<IProgressListener>	progressListeners;
 
 }
@@ -33,6 +33,21 @@ public interface IProgressListener
 
 	//------------------------------------------------------------------
 
+	/**
+	 * Reports the average rate at which a task has processed its data since the task started.  This method may be
+	 * called repeatedly while the task is running, each time with an updated value.  The default implementation
+	 * does nothing, so a listener that does not display throughput need not implement it.
+	 *
+	 * @param bytesPerSecond  the average throughput of the task, in bytes per second.
+	 */
+
+	default void setThroughput(double bytesPerSecond)
+	{
+		// do nothing
+	}
+
+	//------------------------------------------------------------------
+
 }
 
 //----------------------------------------------------------------------
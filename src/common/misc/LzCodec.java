@@ -0,0 +1,392 @@
+/*====================================================================*\
+
+LzCodec.java
+
+LZ77-family block compression class.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package common.misc;
+
+//----------------------------------------------------------------------
+
+
+// LZ77-FAMILY BLOCK COMPRESSION CLASS
+
+
+/**
+ * This class contains methods that compress and decompress a block of data with a fast, byte-oriented algorithm
+ * of the LZ77 family.  The compressed data has the block format of the LZ4 algorithm: it is a sequence of
+ * <i>sequences</i>, each of which consists of a token, a run of literal bytes and a back-reference to a match
+ * within the preceding 64 KB of the output.  The last sequence has literal bytes but no match.
+ * <p>
+ * The compressor searches for matches with a single-entry hash table, and it skips ahead increasingly quickly
+ * through data in which it does not find matches, so incompressible data is processed at a high rate.  The ratio
+ * of compression is lower than that of the Deflate algorithm, but compression and decompression are several
+ * times faster.
+ * </p>
+ * <p>
+ * The decompressor validates all lengths and offsets against the bounds of the input and output, so malformed
+ * data is detected rather than causing an exception.
+ * </p>
+ */
+
+public class LzCodec
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	private static final	int	MIN_MATCH_LENGTH	= 4;
+	private static final	int	MAX_DISTANCE		= (1 << 16) - 1;
+
+	// The last match must start at least this far from the end of the input
+	private static final	int	MATCH_FIND_LIMIT	= 12;
+
+	// The last literals of the input are never included in a match
+	private static final	int	NUM_LAST_LITERALS	= 5;
+
+	private static final	int	HASH_NUM_BITS		= 14;
+	private static final	int	HASH_MULTIPLIER		= -1640531535;  // 2654435761
+
+	private static final	int	SKIP_SHIFT	= 6;
+
+	private static final	int	RUN_MASK	= 0x0F;
+	private static final	int	RUN_SHIFT	= 4;
+	private static final	int	MAX_RUN_BYTE	= 0xFF;
+
+////////////////////////////////////////////////////////////////////////
+//  Constructors
+////////////////////////////////////////////////////////////////////////
+
+	private LzCodec()
+	{
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Returns an upper bound of the length of the compressed data of an input of a specified length.
+	 *
+	 * @param  length  the length of the input.
+	 * @return an upper bound of the length of the compressed data of an input whose length is {@code length}.
+	 */
+
+	public static int getMaxCompressedLength(int length)
+	{
+		return (length + length / MAX_RUN_BYTE + 16);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Compresses data from an array of bytes into another array of bytes.  If the compressed data would be longer
+	 * than a specified maximum length, compression is abandoned.
+	 *
+	 * @param  inBuffer   the buffer that contains the data that will be compressed.
+	 * @param  inOffset   the offset of the input data in {@code inBuffer}.
+	 * @param  inLength   the length of the input data.
+	 * @param  outBuffer  the buffer in which the compressed data will be stored.
+	 * @param  outOffset  the offset in {@code outBuffer} at which the compressed data will be stored.
+	 * @param  maxLength  the maximum length of the compressed data.
+	 * @return the length of the compressed data, or -1 if it would be longer than {@code maxLength}.
+	 */
+
+	public static int compress(byte[] inBuffer,
+							   int    inOffset,
+							   int    inLength,
+							   byte[] outBuffer,
+							   int    outOffset,
+							   int    maxLength)
+	{
+		int inEnd = inOffset + inLength;
+		int outEnd = outOffset + maxLength;
+		int inIndex = inOffset;
+		int outIndex = outOffset;
+		int anchor = inOffset;
+
+		// Find matches and write sequences
+		if (inLength > MATCH_FIND_LIMIT)
+		{
+			// The hash table holds the index of the last occurrence of each hash, plus one, so that zero is empty
+			int[] hashTable = new int[1 << HASH_NUM_BITS];
+			int matchFindEnd = inEnd - MATCH_FIND_LIMIT;
+			int matchEnd = inEnd - NUM_LAST_LITERALS;
+			while (inIndex < matchFindEnd)
+			{
+				// Look up the four bytes at the current index in the hash table
+				int value = getIntLE(inBuffer, inIndex);
+				int hash = hash(value);
+				int matchIndex = hashTable[hash] - 1;
+				hashTable[hash] = inIndex + 1;
+
+				// If there is no match, skip ahead further the longer it has been since the last match
+				if ((matchIndex < 0) || (inIndex - matchIndex > MAX_DISTANCE) ||
+					 (getIntLE(inBuffer, matchIndex) != value))
+				{
+					inIndex += 1 + ((inIndex - anchor) >>> SKIP_SHIFT);
+					continue;
+				}
+
+				// Extend match backwards
+				while ((inIndex > anchor) && (matchIndex > inOffset) &&
+						(inBuffer[inIndex - 1] == inBuffer[matchIndex - 1]))
+				{
+					--inIndex;
+					--matchIndex;
+				}
+
+				// Extend match forwards
+				int matchLength = MIN_MATCH_LENGTH;
+				while ((inIndex + matchLength < matchEnd) &&
+						(inBuffer[inIndex + matchLength] == inBuffer[matchIndex + matchLength]))
+					++matchLength;
+
+				// Write sequence
+				int literalLength = inIndex - anchor;
+				if (outIndex + getSequenceLength(literalLength, matchLength) > outEnd)
+					return -1;
+				outIndex = writeLiterals(inBuffer, anchor, literalLength, outBuffer, outIndex,
+										 matchLength - MIN_MATCH_LENGTH);
+				int distance = inIndex - matchIndex;
+				outBuffer[outIndex++] = (byte)distance;
+				outBuffer[outIndex++] = (byte)(distance >>> 8);
+				outIndex = writeRunLength(matchLength - MIN_MATCH_LENGTH, outBuffer, outIndex);
+
+				// Advance past match
+				inIndex += matchLength;
+				anchor = inIndex;
+
+				// Add an entry for a position within the match to improve the chance of finding the next match
+				if (inIndex < matchFindEnd)
+					hashTable[hash(getIntLE(inBuffer, inIndex - 2))] = inIndex - 2 + 1;
+			}
+		}
+
+		// Write last literals
+		int literalLength = inEnd - anchor;
+		if (outIndex + getSequenceLength(literalLength, 0) > outEnd)
+			return -1;
+		outIndex = writeLiterals(inBuffer, anchor, literalLength, outBuffer, outIndex, 0);
+
+		return (outIndex - outOffset);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Decompresses data from an array of bytes into another array of bytes.
+	 *
+	 * @param  inBuffer   the buffer that contains the compressed data.
+	 * @param  inOffset   the offset of the compressed data in {@code inBuffer}.
+	 * @param  inLength   the length of the compressed data.
+	 * @param  outBuffer  the buffer in which the decompressed data will be stored.
+	 * @param  outOffset  the offset in {@code outBuffer} at which the decompressed data will be stored.
+	 * @param  maxLength  the maximum length of the decompressed data.
+	 * @return the length of the decompressed data, or -1 if the compressed data is malformed or the decompressed
+	 *         data would be longer than {@code maxLength}.
+	 */
+
+	public static int decompress(byte[] inBuffer,
+								 int    inOffset,
+								 int    inLength,
+								 byte[] outBuffer,
+								 int    outOffset,
+								 int    maxLength)
+	{
+		int inEnd = inOffset + inLength;
+		int outEnd = outOffset + maxLength;
+		int inIndex = inOffset;
+		int outIndex = outOffset;
+		while (true)
+		{
+			// Read token
+			if (inIndex >= inEnd)
+				return -1;
+			int token = inBuffer[inIndex++] & 0xFF;
+
+			// Read length of literals
+			int literalLength = token >>> RUN_SHIFT;
+			if (literalLength == RUN_MASK)
+			{
+				while (true)
+				{
+					if ((inIndex >= inEnd) || (literalLength > maxLength))
+						return -1;
+					int b = inBuffer[inIndex++] & 0xFF;
+					literalLength += b;
+					if (b != MAX_RUN_BYTE)
+						break;
+				}
+			}
+
+			// Copy literals
+			if ((literalLength > inEnd - inIndex) || (literalLength > outEnd - outIndex))
+				return -1;
+			System.arraycopy(inBuffer, inIndex, outBuffer, outIndex, literalLength);
+			inIndex += literalLength;
+			outIndex += literalLength;
+
+			// The last sequence has no match
+			if (inIndex == inEnd)
+				break;
+
+			// Read distance of match
+			if (inEnd - inIndex < 2)
+				return -1;
+			int distance = (inBuffer[inIndex] & 0xFF) | (inBuffer[inIndex + 1] & 0xFF) << 8;
+			inIndex += 2;
+			if ((distance == 0) || (distance > outIndex - outOffset))
+				return -1;
+
+			// Read length of match
+			int matchLength = token & RUN_MASK;
+			if (matchLength == RUN_MASK)
+			{
+				while (true)
+				{
+					if ((inIndex >= inEnd) || (matchLength > maxLength))
+						return -1;
+					int b = inBuffer[inIndex++] & 0xFF;
+					matchLength += b;
+					if (b != MAX_RUN_BYTE)
+						break;
+				}
+			}
+			matchLength += MIN_MATCH_LENGTH;
+
+			// Copy match; an overlapping match must be copied a byte at a time to replicate its pattern
+			if (matchLength > outEnd - outIndex)
+				return -1;
+			int matchIndex = outIndex - distance;
+			if (distance >= matchLength)
+				System.arraycopy(outBuffer, matchIndex, outBuffer, outIndex, matchLength);
+			else
+			{
+				for (int i = 0; i < matchLength; i++)
+					outBuffer[outIndex + i] = outBuffer[matchIndex + i];
+			}
+			outIndex += matchLength;
+		}
+
+		return (outIndex - outOffset);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns the hash of a four-byte value.
+	 *
+	 * @param  value  the value whose hash is required.
+	 * @return the hash of {@code value}.
+	 */
+
+	private static int hash(int value)
+	{
+		return ((value * HASH_MULTIPLIER) >>> (Integer.SIZE - HASH_NUM_BITS));
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns the four-byte little-endian value at a specified offset in an array of bytes.
+	 *
+	 * @param  buffer  the array of bytes.
+	 * @param  offset  the offset of the value in {@code buffer}.
+	 * @return the four-byte little-endian value at {@code offset} in {@code buffer}.
+	 */
+
+	private static int getIntLE(byte[] buffer,
+								int    offset)
+	{
+		return ((buffer[offset] & 0xFF) | (buffer[offset + 1] & 0xFF) << 8 | (buffer[offset + 2] & 0xFF) << 16
+					| buffer[offset + 3] << 24);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns an upper bound of the length of a sequence with a specified number of literals and length of match.
+	 *
+	 * @param  literalLength  the number of literals of the sequence.
+	 * @param  matchLength    the length of the match of the sequence, or 0 if the sequence has no match.
+	 * @return an upper bound of the length of the sequence.
+	 */
+
+	private static int getSequenceLength(int literalLength,
+										 int matchLength)
+	{
+		return (1 + literalLength / MAX_RUN_BYTE + 1 + literalLength + 2 + matchLength / MAX_RUN_BYTE + 1);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Writes the token and literals of a sequence.
+	 *
+	 * @param  inBuffer       the buffer that contains the literals.
+	 * @param  inOffset       the offset of the literals in {@code inBuffer}.
+	 * @param  literalLength  the number of literals.
+	 * @param  outBuffer      the buffer to which the token and literals will be written.
+	 * @param  outOffset      the offset in {@code outBuffer} at which the token will be written.
+	 * @param  matchRun       the length of the match of the sequence minus the minimum length of a match.
+	 * @return the offset in {@code outBuffer} of the end of the literals.
+	 */
+
+	private static int writeLiterals(byte[] inBuffer,
+									 int    inOffset,
+									 int    literalLength,
+									 byte[] outBuffer,
+									 int    outOffset,
+									 int    matchRun)
+	{
+		outBuffer[outOffset++] = (byte)(Math.min(literalLength, RUN_MASK) << RUN_SHIFT | Math.min(matchRun, RUN_MASK));
+		if (literalLength >= RUN_MASK)
+			outOffset = writeRunLength(literalLength, outBuffer, outOffset);
+		System.arraycopy(inBuffer, inOffset, outBuffer, outOffset, literalLength);
+		return (outOffset + literalLength);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Writes the extension bytes of a run length whose low-order part is stored in a token.  Nothing is written if
+	 * the run length fits in the token.
+	 *
+	 * @param  runLength  the run length.
+	 * @param  outBuffer  the buffer to which the extension bytes will be written.
+	 * @param  outOffset  the offset in {@code outBuffer} at which the extension bytes will be written.
+	 * @return the offset in {@code outBuffer} of the end of the extension bytes.
+	 */
+
+	private static int writeRunLength(int    runLength,
+									  byte[] outBuffer,
+									  int    outOffset)
+	{
+		if (runLength >= RUN_MASK)
+		{
+			runLength -= RUN_MASK;
+			while (runLength >= MAX_RUN_BYTE)
+			{
+				outBuffer[outOffset++] = (byte)MAX_RUN_BYTE;
+				runLength -= MAX_RUN_BYTE;
+			}
+			outBuffer[outOffset++] = (byte)runLength;
+		}
+		return outOffset;
+	}
+
+	//------------------------------------------------------------------
+
+}
+
+//----------------------------------------------------------------------
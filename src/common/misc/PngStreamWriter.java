@@ -0,0 +1,734 @@
+/*====================================================================*\
+
+PngStreamWriter.java
+
+Streaming PNG writer class.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package common.misc;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import java.util.concurrent.RecursiveAction;
+
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+//----------------------------------------------------------------------
+
+
+// STREAMING PNG WRITER CLASS
+
+
+/**
+ * This class writes an 8-bit RGB image in PNG format to an output stream.  The rows of the image are supplied in
+ * order as they become available, so the complete image need not be held in memory.
+ * <p>
+ * The image data is compressed in blocks of rows in the manner of <i>pigz</i>: each block is filtered and
+ * compressed independently on the common fork-join pool, and the compressed blocks are concatenated in order to
+ * form a single zlib stream.  Each block except the last ends with a sync flush, so that the next block starts
+ * on a byte boundary, and each block except the first is compressed with the last 32 KB of the filtered data of
+ * its predecessor as a preset dictionary, so the ratio of compression is close to that of a single stream.  The
+ * Adler-32 checksums of the blocks are combined to give the checksum of the stream.  Each compressed block is
+ * written as an IDAT chunk.
+ * </p>
+ * <p>
+ * Each row is filtered with the filter type that minimises the sum of the absolute values of the filtered bytes,
+ * which is the heuristic that is recommended by the PNG specification.  At compression level 0, rows are not
+ * filtered.
+ * </p>
+ */
+
+public class PngStreamWriter
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	private static final	byte[]	SIGNATURE	=
+	{
+		(byte)0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'
+	};
+
+	private static final	byte[]	IHDR_CHUNK_TYPE	= "IHDR".getBytes(StandardCharsets.US_ASCII);
+	private static final	byte[]	IDAT_CHUNK_TYPE	= "IDAT".getBytes(StandardCharsets.US_ASCII);
+	private static final	byte[]	IEND_CHUNK_TYPE	= "IEND".getBytes(StandardCharsets.US_ASCII);
+
+	private static final	int	IHDR_LENGTH	= 13;
+
+	private static final	int	BIT_DEPTH			= 8;
+	private static final	int	COLOUR_TYPE_RGB		= 2;
+	private static final	int	BYTES_PER_PIXEL		= 3;
+
+	private static final	int	FILTER_NONE		= 0;
+	private static final	int	FILTER_SUB		= 1;
+	private static final	int	FILTER_UP		= 2;
+	private static final	int	FILTER_AVERAGE	= 3;
+	private static final	int	FILTER_PAETH	= 4;
+
+	private static final	int	ZLIB_METHOD_AND_WINDOW	= 0x78;
+	private static final	int	ZLIB_CHECK_DIVISOR		= 31;
+	private static final	int	ADLER_MODULUS			= 65521;
+
+	private static final	int	DICTIONARY_SIZE	= 1 << 15;  // 32768
+	private static final	int	BLOCK_SIZE		= 1 << 17;  // 131072
+
+	private static final	int	NUM_PENDING_BLOCKS_PER_PROCESSOR	= 2;
+
+////////////////////////////////////////////////////////////////////////
+//  Member classes : non-inner classes
+////////////////////////////////////////////////////////////////////////
+
+
+	// BLOCK CLASS
+
+
+	/**
+	 * This class implements a task that filters and compresses a block of rows of an image.
+	 */
+
+	private static class Block
+		extends RecursiveAction
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constants
+	////////////////////////////////////////////////////////////////////
+
+		private static final	long	serialVersionUID	= 1L;
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Creates a task that filters and compresses a block of rows of an image.
+		 *
+		 * @param rowData           the data of the rows of the block, preceded by the data of the rows of the
+		 *                          image that precede the block and are required for its dictionary.
+		 * @param numPrefixRows     the number of rows that precede the rows of the block in {@code rowData}.
+		 * @param hasPredecessor    {@code true} if the first row of {@code rowData} is used only to filter the
+		 *                          second row; {@code false} if the first row of {@code rowData} is the first
+		 *                          row of the image.
+		 * @param numRows           the number of rows in the block.
+		 * @param rowLength         the length (in bytes) of a row of the image.
+		 * @param compressionLevel  the level of compression.
+		 * @param last              {@code true} if the block is the last block of the image.
+		 */
+
+		private Block(byte[]  rowData,
+					  int     numPrefixRows,
+					  boolean hasPredecessor,
+					  int     numRows,
+					  int     rowLength,
+					  int     compressionLevel,
+					  boolean last)
+		{
+			this.rowData = rowData;
+			this.numPrefixRows = numPrefixRows;
+			this.hasPredecessor = hasPredecessor;
+			this.numRows = numRows;
+			this.rowLength = rowLength;
+			this.compressionLevel = compressionLevel;
+			this.last = last;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : overriding methods
+	////////////////////////////////////////////////////////////////////
+
+		@Override
+		protected void compute()
+		{
+			// Do nothing if writer has been aborted
+			if (aborted)
+				return;
+
+			// Filter rows
+			int firstRow = hasPredecessor ? 1 : 0;
+			int filteredRowLength = rowLength + 1;
+			int numFilteredRows = numPrefixRows + numRows - firstRow;
+			byte[] filteredData = new byte[numFilteredRows * filteredRowLength];
+			for (int i = 0; i < numFilteredRows; i++)
+			{
+				int row = firstRow + i;
+				filterRow(rowData, row * rowLength, (row == 0) ? -1 : (row - 1) * rowLength, rowLength,
+						  compressionLevel == Deflater.NO_COMPRESSION, filteredData, i * filteredRowLength);
+			}
+			rowData = null;
+			if (aborted)
+				return;
+
+			// Calculate checksum of filtered data of block
+			int offset = (numPrefixRows - firstRow) * filteredRowLength;
+			dataLength = filteredData.length - offset;
+			Adler32 adler32 = new Adler32();
+			adler32.update(filteredData, offset, dataLength);
+			checksum = (int)adler32.getValue();
+
+			// Compress filtered data of block, using filtered data of preceding rows as dictionary
+			Deflater deflater = new Deflater(compressionLevel, true);
+			try
+			{
+				int dictionaryLength = Math.min(offset, DICTIONARY_SIZE);
+				if (dictionaryLength > 0)
+					deflater.setDictionary(filteredData, offset - dictionaryLength, dictionaryLength);
+				deflater.setInput(filteredData, offset, dataLength);
+				if (last)
+					deflater.finish();
+
+				compressedData = new byte[dataLength + (dataLength >>> 12) + (dataLength >>> 14) + 64];
+				int flush = last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH;
+				while (!aborted)
+				{
+					compressedLength += deflater.deflate(compressedData, compressedLength,
+														 compressedData.length - compressedLength, flush);
+					if (last ? deflater.finished() : (compressedLength < compressedData.length))
+						break;
+					if (compressedLength == compressedData.length)
+					{
+						byte[] buffer = new byte[2 * compressedData.length];
+						System.arraycopy(compressedData, 0, buffer, 0, compressedLength);
+						compressedData = buffer;
+					}
+				}
+			}
+			finally
+			{
+				deflater.end();
+			}
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance fields
+	////////////////////////////////////////////////////////////////////
+
+		private	byte[]	rowData;
+		private	int		numPrefixRows;
+		private	boolean	hasPredecessor;
+		private	int		numRows;
+		private	int		rowLength;
+		private	int		compressionLevel;
+		private	boolean	last;
+		private	int		dataLength;
+		private	int		checksum;
+		private	byte[]	compressedData;
+		private	int		compressedLength;
+		private volatile	boolean	aborted;
+
+	}
+
+	//==================================================================
+
+////////////////////////////////////////////////////////////////////////
+//  Constructors
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Creates a writer that will write an RGB image of a specified size in PNG format to a specified output
+	 * stream.
+	 *
+	 * @param  outStream         the output stream to which the image will be written.
+	 * @param  width             the width of the image.
+	 * @param  height            the height of the image.
+	 * @param  compressionLevel  the level of compression, from {@link Deflater#NO_COMPRESSION} (0) to {@link
+	 *                           Deflater#BEST_COMPRESSION} (9), or {@link Deflater#DEFAULT_COMPRESSION} (-1).
+	 * @throws IllegalArgumentException
+	 *           if {@code width} or {@code height} is not positive, or if {@code compressionLevel} is out of
+	 *           bounds.
+	 */
+
+	public PngStreamWriter(OutputStream outStream,
+						   int          width,
+						   int          height,
+						   int          compressionLevel)
+	{
+		// Validate arguments
+		if ((width <= 0) || (height <= 0) || (width > Integer.MAX_VALUE / BYTES_PER_PIXEL - 1) ||
+			 (compressionLevel < Deflater.DEFAULT_COMPRESSION) || (compressionLevel > Deflater.BEST_COMPRESSION))
+			throw new IllegalArgumentException();
+
+		// Initialise instance variables
+		outputStream = outStream;
+		this.width = width;
+		this.height = height;
+		this.compressionLevel = compressionLevel;
+		rowLength = width * BYTES_PER_PIXEL;
+		numRowsPerBlock = Math.max(1, BLOCK_SIZE / (rowLength + 1));
+		maxNumPrefixRows = NumberUtils.roundUpQuotientInt(DICTIONARY_SIZE, rowLength + 1) + 1;
+		maxNumPendingBlocks = Runtime.getRuntime().availableProcessors() * NUM_PENDING_BLOCKS_PER_PROCESSOR;
+		pendingBlocks = new ArrayDeque<>();
+		prefixData = new byte[0];
+		crc = new CRC32();
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Filters a row of an image with the filter type that minimises the sum of the absolute values of the
+	 * filtered bytes, and stores the filter type and the filtered row in a buffer.
+	 *
+	 * @param data          the image data.
+	 * @param offset        the offset of the row in {@code data}.
+	 * @param prevOffset    the offset of the previous row in {@code data}, or -1 if the row is the first row of
+	 *                      the image.
+	 * @param length        the length of the row.
+	 * @param unfiltered    if {@code true}, the row will not be filtered.
+	 * @param buffer        the buffer in which the filtered row will be stored.
+	 * @param bufferOffset  the offset in {@code buffer} at which the filtered row will be stored.
+	 */
+
+	private static void filterRow(byte[]  data,
+								  int     offset,
+								  int     prevOffset,
+								  int     length,
+								  boolean unfiltered,
+								  byte[]  buffer,
+								  int     bufferOffset)
+	{
+		// Select filter type
+		int filter = FILTER_NONE;
+		if (!unfiltered)
+		{
+			long sumNone = 0;
+			long sumSub = 0;
+			long sumUp = 0;
+			long sumAverage = 0;
+			long sumPaeth = 0;
+			for (int i = 0; i < length; i++)
+			{
+				int x = data[offset + i] & 0xFF;
+				int a = (i < BYTES_PER_PIXEL) ? 0 : data[offset + i - BYTES_PER_PIXEL] & 0xFF;
+				int b = (prevOffset < 0) ? 0 : data[prevOffset + i] & 0xFF;
+				int c = ((i < BYTES_PER_PIXEL) || (prevOffset < 0))
+																? 0
+																: data[prevOffset + i - BYTES_PER_PIXEL] & 0xFF;
+				sumNone += Math.abs((byte)x);
+				sumSub += Math.abs((byte)(x - a));
+				sumUp += Math.abs((byte)(x - b));
+				sumAverage += Math.abs((byte)(x - (a + b >>> 1)));
+				sumPaeth += Math.abs((byte)(x - paethPredictor(a, b, c)));
+			}
+			long[] sums = { sumNone, sumSub, sumUp, sumAverage, sumPaeth };
+			for (int i = 1; i < sums.length; i++)
+			{
+				if (sums[i] < sums[filter])
+					filter = i;
+			}
+		}
+
+		// Store filter type and filtered row
+		buffer[bufferOffset++] = (byte)filter;
+		if (filter == FILTER_NONE)
+			System.arraycopy(data, offset, buffer, bufferOffset, length);
+		else
+		{
+			for (int i = 0; i < length; i++)
+			{
+				int x = data[offset + i] & 0xFF;
+				int a = (i < BYTES_PER_PIXEL) ? 0 : data[offset + i - BYTES_PER_PIXEL] & 0xFF;
+				int b = (prevOffset < 0) ? 0 : data[prevOffset + i] & 0xFF;
+				int c = ((i < BYTES_PER_PIXEL) || (prevOffset < 0))
+																? 0
+																: data[prevOffset + i - BYTES_PER_PIXEL] & 0xFF;
+				int predictor = 0;
+				switch (filter)
+				{
+					case FILTER_SUB:
+						predictor = a;
+						break;
+
+					case FILTER_UP:
+						predictor = b;
+						break;
+
+					case FILTER_AVERAGE:
+						predictor = a + b >>> 1;
+						break;
+
+					case FILTER_PAETH:
+						predictor = paethPredictor(a, b, c);
+						break;
+				}
+				buffer[bufferOffset + i] = (byte)(x - predictor);
+			}
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns the value of the Paeth predictor for the specified neighbouring bytes.
+	 *
+	 * @param  a  the corresponding byte of the pixel to the left.
+	 * @param  b  the corresponding byte of the pixel above.
+	 * @param  c  the corresponding byte of the pixel above and to the left.
+	 * @return the value of the Paeth predictor for {@code a}, {@code b} and {@code c}.
+	 */
+
+	private static int paethPredictor(int a,
+									  int b,
+									  int c)
+	{
+		int p = a + b - c;
+		int pa = Math.abs(p - a);
+		int pb = Math.abs(p - b);
+		int pc = Math.abs(p - c);
+		return ((pa <= pb) && (pa <= pc)) ? a : (pb <= pc) ? b : c;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Combines the Adler-32 checksums of two consecutive sequences of data.
+	 *
+	 * @param  checksum1  the checksum of the first sequence.
+	 * @param  checksum2  the checksum of the second sequence.
+	 * @param  length2    the length of the second sequence.
+	 * @return the checksum of the concatenation of the two sequences.
+	 */
+
+	private static int combineAdler32(int  checksum1,
+									  int  checksum2,
+									  long length2)
+	{
+		long a1 = checksum1 & 0xFFFF;
+		long b1 = checksum1 >>> 16;
+		long a2 = checksum2 & 0xFFFF;
+		long b2 = checksum2 >>> 16;
+		long a = (a1 + a2 + ADLER_MODULUS - 1) % ADLER_MODULUS;
+		long b = (b1 + b2 + length2 % ADLER_MODULUS * ((a1 + ADLER_MODULUS - 1) % ADLER_MODULUS)) % ADLER_MODULUS;
+		return (int)(b << 16 | a);
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Returns the number of rows that have been supplied to this writer.
+	 *
+	 * @return the number of rows that have been supplied to this writer.
+	 */
+
+	public int getNumRows()
+	{
+		return numRowsSupplied;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Supplies rows of the image to this writer.  The rows are compressed in the background, and they are
+	 * written to the output stream in blocks as they are compressed.
+	 *
+	 * @param  rgbValues  the RGB values of the pixels of the rows.  Only the low-order 24 bits of each value are
+	 *                    significant.
+	 * @param  offset     the offset of the first pixel of the first row in {@code rgbValues}.
+	 * @param  numRows    the number of rows.
+	 * @throws IllegalStateException
+	 *           if the number of rows would exceed the height of the image.
+	 * @throws IOException
+	 *           if an error occurred when writing to the output stream.
+	 */
+
+	public void writeRows(int[] rgbValues,
+						  int   offset,
+						  int   numRows)
+		throws IOException
+	{
+		// Validate argument
+		if (numRows > height - numRowsSupplied)
+			throw new IllegalStateException();
+
+		// Write signature and header
+		if (!headerWritten)
+			writeHeader();
+
+		// Add rows to blocks
+		for (int i = 0; i < numRows; i++)
+		{
+			// Create block data
+			if (blockData == null)
+			{
+				int numBlockRows = Math.min(numRowsPerBlock, height - numRowsSupplied);
+				int prefixLength = prefixData.length;
+				blockData = new byte[prefixLength + numBlockRows * rowLength];
+				System.arraycopy(prefixData, 0, blockData, 0, prefixLength);
+				blockOffset = prefixLength;
+			}
+
+			// Convert RGB values of row to bytes
+			for (int x = 0; x < width; x++)
+			{
+				int rgb = rgbValues[offset++];
+				blockData[blockOffset++] = (byte)(rgb >> 16);
+				blockData[blockOffset++] = (byte)(rgb >> 8);
+				blockData[blockOffset++] = (byte)rgb;
+			}
+			++numRowsSupplied;
+
+			// Compress block if it is full
+			if (blockOffset == blockData.length)
+				submitBlock();
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Writes the remaining compressed data and the end of the image to the output stream.  The output stream is
+	 * not closed.
+	 *
+	 * @throws IllegalStateException
+	 *           if fewer rows than the height of the image have been supplied.
+	 * @throws IOException
+	 *           if an error occurred when writing to the output stream.
+	 */
+
+	public void finish()
+		throws IOException
+	{
+		// Test number of rows
+		if (numRowsSupplied < height)
+			throw new IllegalStateException();
+
+		// Write remaining blocks
+		while (!pendingBlocks.isEmpty())
+			writeBlock(pendingBlocks.removeFirst());
+
+		// Write end of image
+		writeChunk(IEND_CHUNK_TYPE, null, new byte[0], 0, null);
+		outputStream.flush();
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Abandons the image.  The compression of the blocks that have been submitted but not yet written is stopped,
+	 * and this method waits for any block whose compression is in progress to stop, so that no task of this
+	 * writer is running on the fork-join pool when the method returns.  Nothing more is written to the output
+	 * stream, which is not closed.
+	 */
+
+	public void abort()
+	{
+		// Signal pending blocks to stop
+		for (Block block : pendingBlocks)
+			block.aborted = true;
+
+		// Wait for pending blocks to stop
+		while (!pendingBlocks.isEmpty())
+			pendingBlocks.removeFirst().quietlyJoin();
+		blockData = null;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Writes the PNG signature and the header chunk of the image to the output stream.
+	 *
+	 * @throws IOException
+	 *           if an error occurred when writing to the output stream.
+	 */
+
+	private void writeHeader()
+		throws IOException
+	{
+		// Write signature
+		outputStream.write(SIGNATURE);
+
+		// Write header chunk
+		byte[] data = new byte[IHDR_LENGTH];
+		NumberUtils.intToBytesBE(width, data, 0, 4);
+		NumberUtils.intToBytesBE(height, data, 4, 4);
+		data[8] = BIT_DEPTH;
+		data[9] = COLOUR_TYPE_RGB;
+		writeChunk(IHDR_CHUNK_TYPE, null, data, data.length, null);
+
+		headerWritten = true;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Submits the current block for compression, and writes the oldest pending blocks if the number of pending
+	 * blocks has reached its limit.
+	 *
+	 * @throws IOException
+	 *           if an error occurred when writing to the output stream.
+	 */
+
+	private void submitBlock()
+		throws IOException
+	{
+		// Create task for block and submit it to the fork-join pool
+		int numPrefixRows = prefixData.length / rowLength;
+		int numBlockRows = (blockData.length - prefixData.length) / rowLength;
+		Block block = new Block(blockData, numPrefixRows, numPrefixRows == maxNumPrefixRows, numBlockRows,
+								rowLength, compressionLevel, numRowsSupplied == height);
+		block.fork();
+		pendingBlocks.addLast(block);
+
+		// Retain the last rows of the block data as the prefix of the next block
+		int numRows = Math.min(numPrefixRows + numBlockRows, maxNumPrefixRows);
+		prefixData = new byte[numRows * rowLength];
+		System.arraycopy(blockData, blockData.length - prefixData.length, prefixData, 0, prefixData.length);
+		blockData = null;
+
+		// Write oldest blocks
+		while (pendingBlocks.size() > maxNumPendingBlocks)
+			writeBlock(pendingBlocks.removeFirst());
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Waits for a block to be compressed, and writes it to the output stream as an IDAT chunk.  The chunk of the
+	 * first block starts with the zlib header; the chunk of the last block ends with the zlib checksum.
+	 *
+	 * @param  block  the block.
+	 * @throws IOException
+	 *           if an error occurred when writing to the output stream.
+	 */
+
+	private void writeBlock(Block block)
+		throws IOException
+	{
+		// Wait for compression of block to finish
+		block.join();
+
+		// Update checksum of zlib stream
+		checksum = (dataLength == 0) ? block.checksum
+									 : combineAdler32(checksum, block.checksum, block.dataLength);
+		dataLength += block.dataLength;
+
+		// Write compressed data as IDAT chunk
+		byte[] header = null;
+		if (!zlibHeaderWritten)
+		{
+			int level = (compressionLevel == Deflater.DEFAULT_COMPRESSION) ? 6 : compressionLevel;
+			int flags = ((level < 2) ? 0 : (level < 6) ? 1 : (level == 6) ? 2 : 3) << 6;
+			flags |= ZLIB_CHECK_DIVISOR - (ZLIB_METHOD_AND_WINDOW << 8 | flags) % ZLIB_CHECK_DIVISOR;
+			header = new byte[] { ZLIB_METHOD_AND_WINDOW, (byte)flags };
+			zlibHeaderWritten = true;
+		}
+		byte[] trailer = null;
+		if (block.last)
+		{
+			trailer = new byte[4];
+			NumberUtils.intToBytesBE(checksum, trailer, 0, trailer.length);
+		}
+		writeChunk(IDAT_CHUNK_TYPE, header, block.compressedData, block.compressedLength, trailer);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Writes a chunk to the output stream.
+	 *
+	 * @param  type     the type of the chunk.
+	 * @param  prefix   data that precedes the main data of the chunk, or {@code null} if there is no such data.
+	 * @param  data     the main data of the chunk.
+	 * @param  length   the length of the main data of the chunk.
+	 * @param  suffix   data that follows the main data of the chunk, or {@code null} if there is no such data.
+	 * @throws IOException
+	 *           if an error occurred when writing to the output stream.
+	 */
+
+	private void writeChunk(byte[] type,
+							byte[] prefix,
+							byte[] data,
+							int    length,
+							byte[] suffix)
+		throws IOException
+	{
+		// Write length of chunk
+		int chunkLength = length;
+		if (prefix != null)
+			chunkLength += prefix.length;
+		if (suffix != null)
+			chunkLength += suffix.length;
+		byte[] buffer = new byte[4];
+		NumberUtils.intToBytesBE(chunkLength, buffer, 0, buffer.length);
+		outputStream.write(buffer);
+
+		// Write type and data of chunk, updating CRC
+		crc.reset();
+		outputStream.write(type);
+		crc.update(type);
+		if (prefix != null)
+		{
+			outputStream.write(prefix);
+			crc.update(prefix);
+		}
+		outputStream.write(data, 0, length);
+		crc.update(data, 0, length);
+		if (suffix != null)
+		{
+			outputStream.write(suffix);
+			crc.update(suffix);
+		}
+
+		// Write CRC of chunk
+		NumberUtils.intToBytesBE((int)crc.getValue(), buffer, 0, buffer.length);
+		outputStream.write(buffer);
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance fields
+////////////////////////////////////////////////////////////////////////
+
+	private	OutputStream	outputStream;
+	private	int				width;
+	private	int				height;
+	private	int				compressionLevel;
+	private	int				rowLength;
+	private	int				numRowsPerBlock;
+	private	int				maxNumPrefixRows;
+	private	int				maxNumPendingBlocks;
+	private	int				numRowsSupplied;
+	private	boolean			headerWritten;
+	private	boolean			zlibHeaderWritten;
+	private	byte[]			prefixData;
+	private	byte[]			blockData;
+	private	int				blockOffset;
+	private	Deque<Block>	pendingBlocks;
+	private	int				checksum;
+	private	long			dataLength;
+	private	CRC32			crc;
+
+}
+
+//----------------------------------------------------------------------
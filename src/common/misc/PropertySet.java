@@ -29,6 +29,10 @@ import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
 
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -350,15 +354,18 @@ public class PropertySet
 	{
 		try
 		{
-			// Read document
-			document = XmlFile.read(file);
+			XmlFile.read(file, reader ->
+			{
+				// Validate name of root element
+				if (!XmlUtils.nextChildElement(reader) || !reader.getLocalName().equals(rootElementName))
+					throw new FileException(ErrorId.UNEXPECTED_FILE_FORMAT, file);
 
-			// Validate name of root element
-			if (!document.getDocumentElement().getTagName().equals(rootElementName))
-				throw new FileException(ErrorId.UNEXPECTED_FILE_FORMAT, file);
+				// Create document from root element
+				document = createDocument(reader);
 
-			// Update properties
-			updateProperties();
+				// Update properties
+				parseProperties(reader);
+			});
 		}
 		catch (AppException e)
 		{
@@ -459,6 +466,83 @@ public class PropertySet
 
 	//------------------------------------------------------------------
 
+	private Document createDocument(XMLStreamReader reader)
+		throws AppException
+	{
+		Document document = XmlUtils.createDocument();
+		Element rootElement = document.createElement(reader.getLocalName());
+		for (int i = 0; i < reader.getNamespaceCount(); i++)
+		{
+			String prefix = reader.getNamespacePrefix(i);
+			String attrName = ((prefix == null) || prefix.isEmpty()) ? AttrName.XMLNS
+																	 : AttrName.XMLNS + ":" + prefix;
+			String namespaceName = reader.getNamespaceURI(i);
+			rootElement.setAttribute(attrName, (namespaceName == null) ? "" : namespaceName);
+		}
+		for (int i = 0; i < reader.getAttributeCount(); i++)
+		{
+			String prefix = reader.getAttributePrefix(i);
+			String attrName = ((prefix == null) || prefix.isEmpty()) ? reader.getAttributeLocalName(i)
+																	 : prefix + ":" + reader.getAttributeLocalName(i);
+			rootElement.setAttribute(attrName, reader.getAttributeValue(i));
+		}
+		document.appendChild(rootElement);
+		return document;
+	}
+
+	//------------------------------------------------------------------
+
+	private void parseProperties(XMLStreamReader reader)
+		throws XmlParseException, XMLStreamException
+	{
+		properties.clear();
+		List<String> path = new ArrayList<>();
+		path.add(reader.getLocalName());
+		while (!path.isEmpty())
+		{
+			switch (reader.next())
+			{
+				case XMLStreamConstants.START_ELEMENT:
+				{
+					path.add(reader.getLocalName());
+					if (reader.getLocalName().equals(ElementName.PROPERTY))
+					{
+						String elementPath = XmlUtils.concatenatePath(path.toArray(new String[path.size()]));
+
+						// Attribute: key
+						String attrName = AttrName.KEY;
+						String attrKey = XmlUtils.appendAttributeName(elementPath, attrName);
+						String attrValue = reader.getAttributeValue(null, attrName);
+						if (attrValue == null)
+							throw new XmlParseException(ErrorId.NO_ATTRIBUTE, attrKey);
+						String key = attrValue;
+
+						// Attribute: value
+						attrName = AttrName.VALUE;
+						attrKey = XmlUtils.appendAttributeName(elementPath, attrName);
+						attrValue = reader.getAttributeValue(null, attrName);
+						if (attrValue == null)
+							throw new XmlParseException(ErrorId.NO_ATTRIBUTE, attrKey);
+						String value = attrValue;
+
+						properties.put(key, value);
+					}
+					break;
+				}
+
+				case XMLStreamConstants.END_ELEMENT:
+					path.remove(path.size() - 1);
+					break;
+
+				default:
+					// ignore
+					break;
+			}
+		}
+	}
+
+	//------------------------------------------------------------------
+
 	private void updateProperties()
 		throws XmlParseException
 	{
@@ -38,6 +38,10 @@ import java.net.URLConnection;
 
 import java.nio.channels.FileChannel;
 
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+
 import java.nio.charset.Charset;
 
 import java.util.ArrayList;
@@ -75,6 +79,8 @@ public class TextFile
 
 	private static final	String	TEMP_FILE_PREFIX	= "_$_";
 
+	private static final	int	MAX_NUM_LOCK_FREE_READS	= 3;
+
 ////////////////////////////////////////////////////////////////////////
 //  Enumerated types
 ////////////////////////////////////////////////////////////////////////
@@ -146,7 +152,10 @@ public class TextFile
 		("Reading from the URI is not supported."),
 
 		TIMED_OUT_READING_FROM_URI
-		("Timed out when reading from the URI.");
+		("Timed out when reading from the URI."),
+
+		FILE_MODIFIED_DURING_READ
+		("The file was repeatedly modified while it was being read.");
 
 	////////////////////////////////////////////////////////////////////
 	//  Constructors
@@ -720,6 +729,26 @@ public class TextFile
 
 	//------------------------------------------------------------------
 
+	public boolean isLockFreeRead()
+	{
+		return lockFreeRead;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Sets the mode in which a file is read.  By default, a shared lock is taken on a file before it is read.  In
+	 * lock-free mode, no lock is taken; instead, the size and modification time of the file are compared before and
+	 * after it is read, and the file is read again if it was modified in the meantime.
+	 */
+
+	public void setLockFreeRead(boolean lockFreeRead)
+	{
+		this.lockFreeRead = lockFreeRead;
+	}
+
+	//------------------------------------------------------------------
+
 	protected boolean isFile()
 	{
 		return (file != null);
@@ -731,11 +760,45 @@ public class TextFile
 							  boolean sync)
 		throws AppException
 	{
-		// Test file length
-		if (file.length() >= Integer.MAX_VALUE)
-			throw new FileException(ErrorId.FILE_IS_TOO_LONG, file);
-		int fileLength = (int)file.length();
+		// Read file with lock
+		if (!lockFreeRead)
+		{
+			// Test file length
+			if (file.length() >= Integer.MAX_VALUE)
+				throw new FileException(ErrorId.FILE_IS_TOO_LONG, file);
+
+			// Read file
+			return readFile((int)file.length(), compressed, sync, true);
+		}
+
+		// Read file without lock, and read it again if it was modified while it was being read
+		for (int i = 0; i < MAX_NUM_LOCK_FREE_READS; i++)
+		{
+			// Get size and modification time of file
+			BasicFileAttributes attrs = readAttributes();
+
+			// Test file length
+			if (attrs.size() >= Integer.MAX_VALUE)
+				throw new FileException(ErrorId.FILE_IS_TOO_LONG, file);
 
+			// Read file
+			Object buffer = readFile((int)attrs.size(), compressed, sync, false);
+
+			// Return buffer if file was not modified while it was being read
+			if (isUnchanged(attrs))
+				return buffer;
+		}
+		throw new FileException(ErrorId.FILE_MODIFIED_DURING_READ, file);
+	}
+
+	//------------------------------------------------------------------
+
+	protected Object readFile(int     fileLength,
+							  boolean compressed,
+							  boolean sync,
+							  boolean lock)
+		throws AppException
+	{
 		// Read file
 		FileInputStream inStream = null;
 		try
@@ -757,14 +820,17 @@ public class TextFile
 			}
 
 			// Lock file
-			try
-			{
-				if (fileChannel.tryLock(0, Long.MAX_VALUE, true) == null)
-					throw new FileException(ErrorId.FAILED_TO_LOCK_FILE, file);
-			}
-			catch (Exception e)
+			if (lock)
 			{
-				throw new FileException(ErrorId.FAILED_TO_LOCK_FILE, file, e);
+				try
+				{
+					if (fileChannel.tryLock(0, Long.MAX_VALUE, true) == null)
+						throw new FileException(ErrorId.FAILED_TO_LOCK_FILE, file);
+				}
+				catch (Exception e)
+				{
+					throw new FileException(ErrorId.FAILED_TO_LOCK_FILE, file, e);
+				}
 			}
 
 			// Read file and return buffer
@@ -797,6 +863,43 @@ public class TextFile
 
 	//------------------------------------------------------------------
 
+	/**
+	 * Returns the size and modification time of the file in a single file-system query.
+	 */
+
+	private BasicFileAttributes readAttributes()
+		throws AppException
+	{
+		try
+		{
+			return Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+		}
+		catch (NoSuchFileException e)
+		{
+			throw new FileException(ErrorId.FAILED_TO_OPEN_FILE, file, e);
+		}
+		catch (SecurityException e)
+		{
+			throw new FileException(ErrorId.FILE_ACCESS_NOT_PERMITTED, file, e);
+		}
+		catch (Exception e)
+		{
+			throw new FileException(ErrorId.ERROR_READING_FILE, file, e);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	private boolean isUnchanged(BasicFileAttributes attrs)
+		throws AppException
+	{
+		BasicFileAttributes currentAttrs = readAttributes();
+		return ((currentAttrs.size() == attrs.size())
+				&& currentAttrs.lastModifiedTime().equals(attrs.lastModifiedTime()));
+	}
+
+	//------------------------------------------------------------------
+
 	protected Object readUri(boolean compressed,
 							 boolean sync)
 		throws AppException
@@ -851,6 +954,28 @@ public class TextFile
 	protected List<String> readLinesFile(boolean compressed,
 										 int     maxNumLines)
 		throws AppException
+	{
+		// Read file with lock
+		if (!lockFreeRead)
+			return readLinesFile(compressed, maxNumLines, true);
+
+		// Read file without lock, and read it again if it was modified while it was being read
+		for (int i = 0; i < MAX_NUM_LOCK_FREE_READS; i++)
+		{
+			BasicFileAttributes attrs = readAttributes();
+			List<String> lines = readLinesFile(compressed, maxNumLines, false);
+			if (isUnchanged(attrs))
+				return lines;
+		}
+		throw new FileException(ErrorId.FILE_MODIFIED_DURING_READ, file);
+	}
+
+	//------------------------------------------------------------------
+
+	protected List<String> readLinesFile(boolean compressed,
+										 int     maxNumLines,
+										 boolean lock)
+		throws AppException
 	{
 		FileInputStream inStream = null;
 		try
@@ -872,14 +997,17 @@ public class TextFile
 			}
 
 			// Lock file
-			try
-			{
-				if (fileChannel.tryLock(0, Long.MAX_VALUE, true) == null)
-					throw new FileException(ErrorId.FAILED_TO_LOCK_FILE, file);
-			}
-			catch (Exception e)
+			if (lock)
 			{
-				throw new FileException(ErrorId.FAILED_TO_LOCK_FILE, file, e);
+				try
+				{
+					if (fileChannel.tryLock(0, Long.MAX_VALUE, true) == null)
+						throw new FileException(ErrorId.FAILED_TO_LOCK_FILE, file);
+				}
+				catch (Exception e)
+				{
+					throw new FileException(ErrorId.FAILED_TO_LOCK_FILE, file, e);
+				}
 			}
 
 			// Read file and return lines
@@ -1550,6 +1678,7 @@ public class TextFile
 	private	File					file;
 	private	String					encodingName;
 	private	List<IProgressListener>	progressListeners;
+	private	boolean					lockFreeRead;
 
 }
 
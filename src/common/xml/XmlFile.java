@@ -25,9 +25,15 @@ import java.io.InputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
 import java.net.URI;
 import java.net.URL;
 
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
@@ -167,6 +173,26 @@ public class XmlFile
 
 	//==================================================================
 
+
+	// STREAM PARSER INTERFACE
+
+
+	public interface IStreamParser
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Methods
+	////////////////////////////////////////////////////////////////////
+
+		void parse(XMLStreamReader reader)
+			throws AppException, XMLStreamException;
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
 ////////////////////////////////////////////////////////////////////////
 //  Constructors
 ////////////////////////////////////////////////////////////////////////
@@ -206,79 +232,106 @@ public class XmlFile
 		FileInputStream inStream = null;
 		try
 		{
-			// Test for file
-			try
-			{
-				if (!file.isFile())
-					throw new FileException(ErrorId.FILE_DOES_NOT_EXIST, file);
-			}
-			catch (SecurityException e)
-			{
-				throw new FileException(ErrorId.FILE_ACCESS_NOT_PERMITTED, file);
-			}
+			// Open and lock file
+			inStream = openFile(file);
 
-			// Open input stream on file
+			// Read and parse file
+			XmlUtils.getErrorHandler().clear();
+			Document document = null;
 			try
 			{
-				inStream = new FileInputStream(file);
+				document = XmlUtils.createDocument(inStream, baseUri, validate);
 			}
-			catch (FileNotFoundException e)
+			catch (OutOfMemoryError e)
 			{
-				throw new FileException(ErrorId.FAILED_TO_OPEN_FILE, file);
+				throw new FileException(ErrorId.NOT_ENOUGH_MEMORY, file);
 			}
-			catch (SecurityException e)
+			catch (AppException e)
 			{
-				throw new FileException(ErrorId.FILE_ACCESS_NOT_PERMITTED, file);
+				throw new FileException(e, file);
 			}
+			if (!XmlUtils.getErrorHandler().isEmpty())
+				throw new XmlValidationException(ErrorId.INVALID_DOCUMENT, file,
+												 XmlUtils.getErrorHandler().getErrorStrings());
 
-			// Lock file
+			// Close input stream
 			try
 			{
-				if (inStream.getChannel().tryLock(0, Long.MAX_VALUE, true) == null)
-					throw new FileException(ErrorId.FAILED_TO_LOCK_FILE, file);
+				inStream.close();
+				inStream = null;
 			}
-			catch (Exception e)
+			catch (IOException e)
 			{
-				throw new FileException(ErrorId.FAILED_TO_LOCK_FILE, file, e);
+				throw new FileException(ErrorId.FAILED_TO_CLOSE_FILE, file);
 			}
 
-			// Test for XML file
+			// Return document
+			return document;
+		}
+		catch (AppException e)
+		{
+			// Close input stream
 			try
 			{
-				if (!XmlUtils.isXml(file))
-					throw new FileException(ErrorId.UNEXPECTED_DOCUMENT_FORMAT, file);
-			}
-			catch (FileNotFoundException e)
-			{
-				throw new FileException(ErrorId.FAILED_TO_OPEN_FILE, file, e);
-			}
-			catch (IOException e)
-			{
-				throw new FileException(ErrorId.ERROR_READING_FILE, file, e);
+				if (inStream != null)
+					inStream.close();
 			}
-			catch (SecurityException e)
+			catch (Exception e1)
 			{
-				throw new FileException(ErrorId.FILE_ACCESS_NOT_PERMITTED, file, e);
+				// ignore
 			}
 
+			// Set default file type in exception
+			e.setSubstitutionStrings(FILE_STR);
+
+			// Rethrow exception
+			throw e;
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Reads the specified file with a streaming parser, which avoids building a DOM document for the file.
+	 */
+
+	public static void read(File          file,
+							IStreamParser parser)
+		throws AppException
+	{
+		FileInputStream inStream = null;
+		try
+		{
+			// Open and lock file
+			inStream = openFile(file);
+
 			// Read and parse file
-			XmlUtils.getErrorHandler().clear();
-			Document document = null;
 			try
 			{
-				document = XmlUtils.createDocument(inStream, baseUri, validate);
+				XMLStreamReader reader = XmlUtils.createStreamReader(inStream);
+				parser.parse(reader);
+				reader.close();
+			}
+			catch (XMLStreamException e)
+			{
+				throw new FileException(XmlUtils.createParseException(e), file);
 			}
 			catch (OutOfMemoryError e)
 			{
 				throw new FileException(ErrorId.NOT_ENOUGH_MEMORY, file);
 			}
+			catch (XmlParseException e)
+			{
+				throw new XmlParseException(e, file);
+			}
+			catch (FileException e)
+			{
+				throw e;
+			}
 			catch (AppException e)
 			{
 				throw new FileException(e, file);
 			}
-			if (!XmlUtils.getErrorHandler().isEmpty())
-				throw new XmlValidationException(ErrorId.INVALID_DOCUMENT, file,
-												 XmlUtils.getErrorHandler().getErrorStrings());
 
 			// Close input stream
 			try
@@ -290,9 +343,6 @@ public class XmlFile
 			{
 				throw new FileException(ErrorId.FAILED_TO_CLOSE_FILE, file);
 			}
-
-			// Return document
-			return document;
 		}
 		catch (AppException e)
 		{
@@ -510,27 +560,47 @@ public class XmlFile
 				throw new FileException(ErrorId.FAILED_TO_CLOSE_FILE, tempFile, e);
 			}
 
-			// Delete any existing file
+			// Replace any existing file with temporary file in a single step, if the file system allows it
+			boolean replaced = false;
 			try
 			{
-				if (file.exists() && !file.delete())
-					throw new FileException(ErrorId.FAILED_TO_DELETE_FILE, file);
-				oldFileDeleted = true;
+				Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						   StandardCopyOption.ATOMIC_MOVE);
+				replaced = true;
 			}
-			catch (SecurityException e)
+			catch (IOException e)
 			{
-				throw new FileException(ErrorId.FAILED_TO_DELETE_FILE, file);
+				// fall back to deleting existing file and renaming temporary file
 			}
-
-			// Rename temporary file
-			try
+			catch (Exception e)
 			{
-				if (!tempFile.renameTo(file))
-					throw new TempFileException(ErrorId.FAILED_TO_RENAME_FILE, file, tempFile);
+				throw new FileException(ErrorId.FAILED_TO_RENAME_FILE, file, e);
 			}
-			catch (SecurityException e)
+
+			if (!replaced)
 			{
-				throw new TempFileException(ErrorId.FAILED_TO_RENAME_FILE, file, tempFile);
+				// Delete any existing file
+				try
+				{
+					if (file.exists() && !file.delete())
+						throw new FileException(ErrorId.FAILED_TO_DELETE_FILE, file);
+					oldFileDeleted = true;
+				}
+				catch (SecurityException e)
+				{
+					throw new FileException(ErrorId.FAILED_TO_DELETE_FILE, file);
+				}
+
+				// Rename temporary file
+				try
+				{
+					if (!tempFile.renameTo(file))
+						throw new TempFileException(ErrorId.FAILED_TO_RENAME_FILE, file, tempFile);
+				}
+				catch (SecurityException e)
+				{
+					throw new TempFileException(ErrorId.FAILED_TO_RENAME_FILE, file, tempFile);
+				}
 			}
 		}
 		catch (AppException e)
@@ -567,6 +637,90 @@ public class XmlFile
 
 	//------------------------------------------------------------------
 
+	private static FileInputStream openFile(File file)
+		throws AppException
+	{
+		FileInputStream inStream = null;
+		try
+		{
+			// Test for file
+			try
+			{
+				if (!file.isFile())
+					throw new FileException(ErrorId.FILE_DOES_NOT_EXIST, file);
+			}
+			catch (SecurityException e)
+			{
+				throw new FileException(ErrorId.FILE_ACCESS_NOT_PERMITTED, file);
+			}
+
+			// Open input stream on file
+			try
+			{
+				inStream = new FileInputStream(file);
+			}
+			catch (FileNotFoundException e)
+			{
+				throw new FileException(ErrorId.FAILED_TO_OPEN_FILE, file);
+			}
+			catch (SecurityException e)
+			{
+				throw new FileException(ErrorId.FILE_ACCESS_NOT_PERMITTED, file);
+			}
+
+			// Lock file
+			try
+			{
+				if (inStream.getChannel().tryLock(0, Long.MAX_VALUE, true) == null)
+					throw new FileException(ErrorId.FAILED_TO_LOCK_FILE, file);
+			}
+			catch (Exception e)
+			{
+				throw new FileException(ErrorId.FAILED_TO_LOCK_FILE, file, e);
+			}
+
+			// Test for XML file
+			try
+			{
+				if (!XmlUtils.isXml(file))
+					throw new FileException(ErrorId.UNEXPECTED_DOCUMENT_FORMAT, file);
+			}
+			catch (FileNotFoundException e)
+			{
+				throw new FileException(ErrorId.FAILED_TO_OPEN_FILE, file, e);
+			}
+			catch (IOException e)
+			{
+				throw new FileException(ErrorId.ERROR_READING_FILE, file, e);
+			}
+			catch (SecurityException e)
+			{
+				throw new FileException(ErrorId.FILE_ACCESS_NOT_PERMITTED, file, e);
+			}
+
+			// Return input stream
+			return inStream;
+		}
+		catch (AppException e)
+		{
+			// Close input stream
+			try
+			{
+				if (inStream != null)
+					inStream.close();
+			}
+			catch (Exception e1)
+			{
+				// ignore
+			}
+
+			// Rethrow exception
+			throw e;
+		}
+	}
+
+	//------------------------------------------------------------------
+
 }
 
 //----------------------------------------------------------------------
@@ -39,6 +39,11 @@ import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.FactoryConfigurationError;
 import javax.xml.parsers.ParserConfigurationException;
 
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -100,6 +105,9 @@ public class XmlUtils
 		FAILED_TO_CREATE_DOCUMENT_BUILDER
 		("Failed to create a DOM document builder."),
 
+		FAILED_TO_CREATE_STREAM_READER
+		("Failed to create an XML stream reader."),
+
 		ERROR_PARSING_FILE
 		("An error occurred when parsing the file.");
 
@@ -196,6 +204,19 @@ public class XmlUtils
 
 		//--------------------------------------------------------------
 
+		private ParseException(AppException.IId   id,
+							   XMLStreamException cause)
+		{
+			super(id, cause);
+			if (cause.getLocation() != null)
+			{
+				lineNum = cause.getLocation().getLineNumber();
+				columnNum = cause.getLocation().getColumnNumber();
+			}
+		}
+
+		//--------------------------------------------------------------
+
 	////////////////////////////////////////////////////////////////////
 	//  Instance methods : overriding methods
 	////////////////////////////////////////////////////////////////////
@@ -515,6 +536,162 @@ public class XmlUtils
 
 	//------------------------------------------------------------------
 
+	/**
+	 * Creates a namespace-aware streaming reader on the specified input stream.  DTDs and external entities are not
+	 * supported by the reader.
+	 */
+
+	public static XMLStreamReader createStreamReader(InputStream inStream)
+		throws AppException
+	{
+		try
+		{
+			XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+			inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+			inputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+			inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+			inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+			return inputFactory.createXMLStreamReader(inStream);
+		}
+		catch (XMLStreamException e)
+		{
+			throw new ParseException(ErrorId.ERROR_PARSING_FILE, e);
+		}
+		catch (RuntimeException e)
+		{
+			throw new AppException(ErrorId.FAILED_TO_CREATE_STREAM_READER, e);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	public static AppException createParseException(XMLStreamException exception)
+	{
+		return new ParseException(ErrorId.ERROR_PARSING_FILE, exception);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns the namespace name that is declared for the default namespace on the current start element of the
+	 * specified reader, or {@code null} if the element does not declare a default namespace.
+	 */
+
+	public static String getDefaultNamespaceDeclaration(XMLStreamReader reader)
+	{
+		for (int i = 0; i < reader.getNamespaceCount(); i++)
+		{
+			String prefix = reader.getNamespacePrefix(i);
+			if ((prefix == null) || prefix.isEmpty())
+			{
+				String namespaceName = reader.getNamespaceURI(i);
+				return ((namespaceName == null) ? "" : namespaceName);
+			}
+		}
+		return null;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Advances the specified reader to the next child element of the current element.  Text, comments and processing
+	 * instructions between elements are ignored.
+	 *
+	 * @return {@code true} if the reader is positioned on the start tag of a child element; {@code false} if it is
+	 *         positioned on the end tag of the current element.
+	 */
+
+	public static boolean nextChildElement(XMLStreamReader reader)
+		throws XMLStreamException
+	{
+		while (true)
+		{
+			switch (reader.next())
+			{
+				case XMLStreamConstants.START_ELEMENT:
+					return true;
+
+				case XMLStreamConstants.END_ELEMENT:
+				case XMLStreamConstants.END_DOCUMENT:
+					return false;
+
+				default:
+					// ignore
+					break;
+			}
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Reads the text content of the current start element of the specified reader, including the text of any
+	 * descendant elements, and leaves the reader on the corresponding end element.
+	 */
+
+	public static String readTextContent(XMLStreamReader reader)
+		throws XMLStreamException
+	{
+		StringBuilder buffer = new StringBuilder();
+		int depth = 1;
+		while (depth > 0)
+		{
+			switch (reader.next())
+			{
+				case XMLStreamConstants.START_ELEMENT:
+					++depth;
+					break;
+
+				case XMLStreamConstants.END_ELEMENT:
+					--depth;
+					break;
+
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.CDATA:
+				case XMLStreamConstants.SPACE:
+					buffer.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+					break;
+
+				default:
+					// ignore
+					break;
+			}
+		}
+		return buffer.toString();
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Skips the current start element of the specified reader and all its content, and leaves the reader on the
+	 * corresponding end element.
+	 */
+
+	public static void skipElement(XMLStreamReader reader)
+		throws XMLStreamException
+	{
+		int depth = 1;
+		while (depth > 0)
+		{
+			switch (reader.next())
+			{
+				case XMLStreamConstants.START_ELEMENT:
+					++depth;
+					break;
+
+				case XMLStreamConstants.END_ELEMENT:
+					--depth;
+					break;
+
+				default:
+					// ignore
+					break;
+			}
+		}
+	}
+
+	//------------------------------------------------------------------
+
 	public static String getAttribute(Element element,
 									  String  attributeName)
 	{
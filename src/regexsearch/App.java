@@ -32,6 +32,7 @@ import common.gui.TextRendering;
 
 import common.misc.CalendarTime;
 import common.misc.ClassUtils;
+import common.misc.DaemonThread;
 import common.misc.ResourceProperties;
 
 import common.textfield.TextFieldUtils;
@@ -67,6 +68,13 @@ public class App
 	private static final	String	SEARCH_PARAMS_STR		= "Search parameters";
 	private static final	String	READ_SEARCH_PARAMS_STR	= "Read search parameters";
 
+	private static final	String	READ_THREAD_NAME	= SHORT_NAME + " search parameters reader";
+
+	private static final	String	CONFIG_PHASE_STR			= "config";
+	private static final	String	LOOK_AND_FEEL_PHASE_STR		= "lookAndFeel";
+	private static final	String	MAIN_WINDOW_PHASE_STR		= "mainWindow";
+	private static final	String	CONTROL_DIALOG_PHASE_STR	= "controlDialog";
+
 ////////////////////////////////////////////////////////////////////////
 //  Enumerated types
 ////////////////////////////////////////////////////////////////////////
@@ -153,26 +161,22 @@ public class App
 		{
 			// Create main window
 			mainWindow = new MainWindow();
+			StartupTimer.mark(MAIN_WINDOW_PHASE_STR);
 
-			// Create control dialog
-			mainWindow.openControlDialog();
-
-			// Read search parameters
-			try
+			// Create control dialog after main window has been displayed.  Any input to the main window that
+			// needs the control dialog before then creates it on demand.
+			SwingUtilities.invokeLater(() ->
 			{
-				File file = AppConfig.INSTANCE.getDefaultSearchParamsFile();
-				if (file != null)
-				{
-					if (!file.isFile())
-						throw new FileException(ErrorId.FILE_DOES_NOT_EXIST, file);
-					searchParams = new SearchParameters(file);
-					mainWindow.getControlDialog().updateComponents();
-				}
-			}
-			catch (AppException e)
-			{
-				showErrorMessage(SHORT_NAME + " : " + SEARCH_PARAMS_STR, e);
-			}
+				// Create control dialog
+				mainWindow.openControlDialog();
+				StartupTimer.mark(CONTROL_DIALOG_PHASE_STR);
+
+				// Apply default search parameters if they have already been read
+				applyDefaultSearchParams();
+
+				// End startup
+				StartupTimer.finish();
+			});
 		}
 
 		//--------------------------------------------------------------
@@ -197,6 +201,7 @@ public class App
 
 	public static void main(String[] args)
 	{
+		StartupTimer.start();
 		INSTANCE.init();
 	}
 
@@ -311,6 +316,68 @@ public class App
 
 	//------------------------------------------------------------------
 
+	/**
+	 * Reads the default search parameters.  This method is called on a background thread during initialisation so
+	 * that the main window does not wait for the file to be parsed; the result is handed to the event-dispatching
+	 * thread.
+	 */
+
+	private void readDefaultSearchParams(File file)
+	{
+		SearchParameters params = null;
+		AppException exception = null;
+		try
+		{
+			if (!file.isFile())
+				throw new FileException(ErrorId.FILE_DOES_NOT_EXIST, file);
+			params = new SearchParameters(file);
+		}
+		catch (AppException e)
+		{
+			exception = e;
+		}
+
+		SearchParameters result = params;
+		AppException resultException = exception;
+		SwingUtilities.invokeLater(() ->
+		{
+			defaultSearchParams = result;
+			defaultSearchParamsException = resultException;
+			applyDefaultSearchParams();
+		});
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Replaces the current search parameters with the default search parameters once both the main window and the
+	 * default search parameters are available, provided that the current parameters have not been changed or
+	 * replaced in the meantime.
+	 */
+
+	private void applyDefaultSearchParams()
+	{
+		if (mainWindow != null)
+		{
+			if (defaultSearchParamsException != null)
+			{
+				showErrorMessage(SHORT_NAME + " : " + SEARCH_PARAMS_STR, defaultSearchParamsException);
+				defaultSearchParamsException = null;
+			}
+			if (defaultSearchParams != null)
+			{
+				if ((searchParams.getFile() == null) && !searchParams.isChanged())
+				{
+					searchParams = defaultSearchParams;
+					mainWindow.getControlDialog().updateComponents();
+				}
+				defaultSearchParams = null;
+			}
+		}
+	}
+
+	//------------------------------------------------------------------
+
 	private void init()
 	{
 		// Read build properties
@@ -323,6 +390,12 @@ public class App
 		// Read configuration
 		AppConfig config = AppConfig.INSTANCE;
 		config.read();
+		StartupTimer.mark(CONFIG_PHASE_STR);
+
+		// Start reading default search parameters
+		File defaultSearchParamsFile = config.getDefaultSearchParamsFile();
+		if (defaultSearchParamsFile != null)
+			DaemonThread.create(() -> readDefaultSearchParams(defaultSearchParamsFile), READ_THREAD_NAME).start();
 
 		// Set UNIX style for pathnames in file exceptions
 		ExceptionUtils.setUnixStyle(config.isShowUnixPathnames());
@@ -351,6 +424,7 @@ public class App
 		if (lookAndFeelName != null)
 			showWarningMessage(SHORT_NAME + " : " + CONFIG_ERROR_STR,
 							   LAF_ERROR1_STR + lookAndFeelName + LAF_ERROR2_STR);
+		StartupTimer.mark(LOOK_AND_FEEL_PHASE_STR);
 
 		// Select all text when a text field gains focus
 		if (config.isSelectTextOnFocusGained())
@@ -371,6 +445,8 @@ public class App
 	private	SearchParameters	searchParams;
 	private	TextSearcher		textSearcher;
 	private	MainWindow			mainWindow;
+	private	SearchParameters	defaultSearchParams;
+	private	AppException		defaultSearchParamsException;
 
 }
 
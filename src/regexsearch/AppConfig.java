@@ -33,7 +33,13 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
 
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
 import javax.swing.JFileChooser;
+import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
 
 import common.exception.AppException;
@@ -44,6 +50,7 @@ import common.gui.FontEx;
 import common.gui.IProgressView;
 import common.gui.TextRendering;
 
+import common.misc.DaemonThread;
 import common.misc.FilenameSuffixFilter;
 import common.misc.FileWritingMode;
 import common.misc.IntegerRange;
@@ -99,6 +106,10 @@ class AppConfig
 	private static final	String	CONFIG_OLD_FILENAME	= FILENAME_BASE + "-old" +
 																			AppConstants.XML_FILE_SUFFIX;
 
+	private static final	int	DEFERRED_WRITE_DELAY	= 1000;
+
+	private static final	String	WRITE_THREAD_NAME	= App.SHORT_NAME + " configuration writer";
+
 	private static final	String	SAVE_CONFIGURATION_FILE_STR	= "Save configuration file";
 	private static final	String	WRITING_STR					= "Writing";
 
@@ -2306,35 +2317,79 @@ class AppConfig
 	//------------------------------------------------------------------
 
 	public void write()
+	{
+		// Cancel any deferred write; the properties that it would have written are written with the current ones
+		boolean deferredWritePending = cancelDeferredWrite();
+
+		// Write configuration file
+		if (deferredWritePending || isChanged())
+		{
+			try
+			{
+				File file = getOutputFile();
+				if (file != null)
+				{
+					write(file);
+					resetChanged();
+				}
+			}
+			catch (AppException e)
+			{
+				showErrorMessage(e);
+			}
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Writes the configuration file on a background thread after a short delay.  The properties are copied when this
+	 * method is called, so it must be called on the event-dispatching thread.  A further call within the delay
+	 * replaces the pending write, so a burst of changes results in a single write.
+	 */
+
+	public void writeDeferred()
 	{
 		if (isChanged())
 		{
 			try
 			{
-				if (file == null)
+				File file = getOutputFile();
+				if (file != null)
 				{
-					if (System.getProperty(CONFIG_DIR_KEY) == null)
+					// Copy properties to new DOM document
+					ConfigFile configFile = new ConfigFile(Integer.toString(VERSION));
+					putProperties(configFile);
+					resetChanged();
+
+					// Schedule write, replacing any pending write
+					synchronized (this)
 					{
-						String pathname = Utils.getPropertiesPathname();
-						if (pathname != null)
+						if (deferredWrite != null)
+							deferredWrite.cancel(false);
+						if (writeExecutor == null)
 						{
-							File directory = new File(pathname);
-							if (!directory.exists() && !directory.mkdirs())
-								throw new FileException(ErrorId.FAILED_TO_CREATE_DIRECTORY, directory);
-							file = new File(directory, CONFIG_FILENAME);
+							writeExecutor = Executors.newSingleThreadScheduledExecutor(runnable ->
+									DaemonThread.create(runnable, WRITE_THREAD_NAME));
 						}
+						deferredWrite = writeExecutor.schedule(() ->
+						{
+							try
+							{
+								configFile.write(file);
+							}
+							catch (AppException e)
+							{
+								synchronized (this)
+								{
+									deferredWriteFailed = true;
+								}
+								SwingUtilities.invokeLater(() -> showErrorMessage(e));
+							}
+						},
+						DEFERRED_WRITE_DELAY, TimeUnit.MILLISECONDS);
 					}
 				}
-				else
-				{
-					if (!fileRead)
-						file.renameTo(new File(file.getParentFile(), CONFIG_OLD_FILENAME));
-				}
-				if (file != null)
-				{
-					write(file);
-					resetChanged();
-				}
 			}
 			catch (AppException e)
 			{
@@ -2368,6 +2423,82 @@ class AppConfig
 
 	//------------------------------------------------------------------
 
+	private File getOutputFile()
+		throws AppException
+	{
+		if (file == null)
+		{
+			if (System.getProperty(CONFIG_DIR_KEY) == null)
+			{
+				String pathname = Utils.getPropertiesPathname();
+				if (pathname != null)
+				{
+					File directory = new File(pathname);
+					if (!directory.exists() && !directory.mkdirs())
+						throw new FileException(ErrorId.FAILED_TO_CREATE_DIRECTORY, directory);
+					file = new File(directory, CONFIG_FILENAME);
+				}
+			}
+		}
+		else
+		{
+			if (!fileRead)
+			{
+				file.renameTo(new File(file.getParentFile(), CONFIG_OLD_FILENAME));
+				fileRead = true;
+			}
+		}
+		return file;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Cancels any pending deferred write, and waits for a deferred write that is in progress to finish.
+	 *
+	 * @return {@code true} if a deferred write was cancelled or failed.
+	 */
+
+	private boolean cancelDeferredWrite()
+	{
+		// Cancel pending write
+		ScheduledFuture<?> write = null;
+		boolean pending = false;
+		synchronized (this)
+		{
+			write = deferredWrite;
+			deferredWrite = null;
+			if (write != null)
+				pending = write.cancel(false);
+		}
+
+		// Wait for write in progress to finish
+		if ((write != null) && !pending)
+		{
+			try
+			{
+				write.get();
+			}
+			catch (Exception e)
+			{
+				// ignore
+			}
+		}
+
+		// Treat failed write as pending
+		synchronized (this)
+		{
+			if (deferredWriteFailed)
+			{
+				deferredWriteFailed = false;
+				pending = true;
+			}
+		}
+		return pending;
+	}
+
+	//------------------------------------------------------------------
+
 	private void getProperties(Property.ISource... propertySources)
 	{
 		for (Property property : getProperties())
@@ -2449,11 +2580,14 @@ class AppConfig
 //  Instance fields
 ////////////////////////////////////////////////////////////////////////
 
-	private	File			file;
-	private	boolean			fileRead;
-	private	File			selectedFile;
-	private	JFileChooser	fileChooser;
-	private	List<Property>	properties;
+	private	File						file;
+	private	boolean						fileRead;
+	private	File						selectedFile;
+	private	JFileChooser				fileChooser;
+	private	List<Property>				properties;
+	private	ScheduledExecutorService	writeExecutor;
+	private	ScheduledFuture<?>			deferredWrite;
+	private	boolean						deferredWriteFailed;
 
 }
 
@@ -19,6 +19,7 @@ package regexsearch;
 
 
 import java.awt.Image;
+import java.awt.Toolkit;
 
 import java.util.Arrays;
 import java.util.List;
@@ -38,15 +39,6 @@ class AppIcon
 //  Constants
 ////////////////////////////////////////////////////////////////////////
 
-	public static final	ImageIcon	APPLICATION_16	= new ImageIcon(ImageData.APPLICATION_16);
-	public static final	ImageIcon	APPLICATION_32	= new ImageIcon(ImageData.APPLICATION_32);
-	public static final	ImageIcon	APPLICATION_48	= new ImageIcon(ImageData.APPLICATION_48);
-	public static final	ImageIcon	ARROW_LEFT		= new ImageIcon(ImageData.ARROW_LEFT);
-	public static final	ImageIcon	ARROW_RIGHT		= new ImageIcon(ImageData.ARROW_RIGHT);
-	public static final	ImageIcon	MINUS			= new ImageIcon(ImageData.MINUS);
-	public static final	ImageIcon	PLUS			= new ImageIcon(ImageData.PLUS);
-	public static final	ImageIcon	RHOMB_PAIR		= new ImageIcon(ImageData.RHOMB_PAIR);
-
 	private interface ImageData
 	{
 		byte[]	APPLICATION_16	=
@@ -405,23 +397,83 @@ class AppIcon
 //  Class methods
 ////////////////////////////////////////////////////////////////////////
 
+	/**
+	 * Returns the images of the application icon.  The images are created without waiting for them to be decoded, so
+	 * that they do not delay the display of the main window.
+	 */
+
 	public static List<Image> getAppIconImages()
 	{
+		if (appIconImages == null)
+		{
+			Toolkit toolkit = Toolkit.getDefaultToolkit();
+			appIconImages = Arrays.asList
+			(
+				toolkit.createImage(ImageData.APPLICATION_16),
+				toolkit.createImage(ImageData.APPLICATION_32),
+				toolkit.createImage(ImageData.APPLICATION_48)
+			);
+		}
 		return appIconImages;
 	}
 
 	//------------------------------------------------------------------
 
+	public static ImageIcon arrowLeft()
+	{
+		if (arrowLeft == null)
+			arrowLeft = new ImageIcon(ImageData.ARROW_LEFT);
+		return arrowLeft;
+	}
+
+	//------------------------------------------------------------------
+
+	public static ImageIcon arrowRight()
+	{
+		if (arrowRight == null)
+			arrowRight = new ImageIcon(ImageData.ARROW_RIGHT);
+		return arrowRight;
+	}
+
+	//------------------------------------------------------------------
+
+	public static ImageIcon minus()
+	{
+		if (minus == null)
+			minus = new ImageIcon(ImageData.MINUS);
+		return minus;
+	}
+
+	//------------------------------------------------------------------
+
+	public static ImageIcon plus()
+	{
+		if (plus == null)
+			plus = new ImageIcon(ImageData.PLUS);
+		return plus;
+	}
+
+	//------------------------------------------------------------------
+
+	public static ImageIcon rhombPair()
+	{
+		if (rhombPair == null)
+			rhombPair = new ImageIcon(ImageData.RHOMB_PAIR);
+		return rhombPair;
+	}
+
+	//------------------------------------------------------------------
+
 ////////////////////////////////////////////////////////////////////////
 //  Class fields
 ////////////////////////////////////////////////////////////////////////
 
-	private static	List<Image>	appIconImages	= Arrays.asList
-	(
-		APPLICATION_16.getImage(),
-		APPLICATION_32.getImage(),
-		APPLICATION_48.getImage()
-	);
+	private static	List<Image>	appIconImages;
+	private static	ImageIcon	arrowLeft;
+	private static	ImageIcon	arrowRight;
+	private static	ImageIcon	minus;
+	private static	ImageIcon	plus;
+	private static	ImageIcon	rhombPair;
 
 }
 
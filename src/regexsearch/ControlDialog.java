@@ -797,7 +797,7 @@ class ControlDialog
 		gridX = 0;
 
 		// Button: insert file set
-		insertFileSetButton = new JButton(AppIcon.PLUS);
+		insertFileSetButton = new JButton(AppIcon.plus());
 		insertFileSetButton.setMargin(ICON_BUTTON_MARGINS);
 		insertFileSetButton.setToolTipText(INSERT_FILE_SET_STR);
 		insertFileSetButton.setActionCommand(Command.INSERT_FILE_SET);
@@ -816,7 +816,7 @@ class ControlDialog
 		fileSetCommandPanel.add(insertFileSetButton);
 
 		// Button: duplicate file set
-		duplicateFileSetButton = new JButton(AppIcon.RHOMB_PAIR);
+		duplicateFileSetButton = new JButton(AppIcon.rhombPair());
 		duplicateFileSetButton.setMargin(ICON_BUTTON_MARGINS);
 		duplicateFileSetButton.setToolTipText(DUPLICATE_FILE_SET_STR);
 		duplicateFileSetButton.setActionCommand(Command.DUPLICATE_FILE_SET);
@@ -835,7 +835,7 @@ class ControlDialog
 		fileSetCommandPanel.add(duplicateFileSetButton);
 
 		// Button: delete file set
-		deleteFileSetButton = new JButton(AppIcon.MINUS);
+		deleteFileSetButton = new JButton(AppIcon.minus());
 		deleteFileSetButton.setMargin(ICON_BUTTON_MARGINS);
 		deleteFileSetButton.setToolTipText(DELETE_CURRENT_FILE_SET_STR);
 		deleteFileSetButton.setActionCommand(Command.DELETE_FILE_SET);
@@ -24,9 +24,8 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import common.exception.AppException;
 
@@ -323,15 +322,21 @@ class FileSet
 
 	//------------------------------------------------------------------
 
-	public FileSet(Element element)
-		throws XmlParseException
+	/**
+	 * Creates a file set from the element on which the specified reader is positioned.  On return, the reader is
+	 * positioned on the end tag of the element.
+	 */
+
+	public FileSet(XMLStreamReader reader,
+				   String          parentPath)
+		throws XmlParseException, XMLStreamException
 	{
-		String elementPath = XmlUtils.getElementPath(element);
+		String elementPath = XmlUtils.concatenatePath(parentPath, reader.getLocalName());
 
 		// Attribute: kind
 		String attrName = AttrName.KIND;
 		String attrKey = XmlUtils.appendAttributeName(elementPath, attrName);
-		String attrValue = XmlUtils.getAttribute(element, attrName);
+		String attrValue = reader.getAttributeValue(null, attrName);
 		if (attrValue == null)
 			throw new XmlParseException(ErrorId.NO_ATTRIBUTE, attrKey);
 		kind = Kind.forKey(attrValue);
@@ -341,7 +346,7 @@ class FileSet
 		// Attribute: pathname index
 		attrName = AttrName.PATHNAME_INDEX;
 		attrKey = XmlUtils.appendAttributeName(elementPath, attrName);
-		attrValue = XmlUtils.getAttribute(element, attrName);
+		attrValue = reader.getAttributeValue(null, attrName);
 		if (attrValue != null)
 		{
 			try
@@ -357,7 +362,7 @@ class FileSet
 		// Attribute: inclusion filter index
 		attrName = AttrName.INCLUDE_INDEX;
 		attrKey = XmlUtils.appendAttributeName(elementPath, attrName);
-		attrValue = XmlUtils.getAttribute(element, attrName);
+		attrValue = reader.getAttributeValue(null, attrName);
 		if (attrValue != null)
 		{
 			try
@@ -373,7 +378,7 @@ class FileSet
 		// Attribute: exclusion filter index
 		attrName = AttrName.EXCLUDE_INDEX;
 		attrKey = XmlUtils.appendAttributeName(elementPath, attrName);
-		attrValue = XmlUtils.getAttribute(element, attrName);
+		attrValue = reader.getAttributeValue(null, attrName);
 		if (attrValue != null)
 		{
 			try
@@ -390,31 +395,25 @@ class FileSet
 		pathnames = new ArrayList<>();
 		inclusionFilters = new ArrayList<>();
 		exclusionFilters = new ArrayList<>();
-		NodeList childNodes = element.getChildNodes();
-		for (int i = 0; i < childNodes.getLength(); i++)
+		while (XmlUtils.nextChildElement(reader))
 		{
-			Node node = childNodes.item(i);
-			if (node.getNodeType() == Node.ELEMENT_NODE)
-			{
-				Element childElement = (Element)node;
-				String elementName = node.getNodeName();
-
-				// Pathname
-				if (kind.hasPathname() && elementName.equals(ElementName.PATHNAME))
-					pathnames.add(childElement.getTextContent());
-
-				// Filters
-				if (kind.hasFilters())
-				{
-					// Inclusion filter
-					if (elementName.equals(ElementName.INCLUDE))
-						inclusionFilters.add(parseFilter(childElement));
-
-					// Exclusion filter
-					else if (elementName.equals(ElementName.EXCLUDE))
-						exclusionFilters.add(parseFilter(childElement));
-				}
-			}
+			String elementName = reader.getLocalName();
+
+			// Pathname
+			if (kind.hasPathname() && elementName.equals(ElementName.PATHNAME))
+				pathnames.add(XmlUtils.readTextContent(reader));
+
+			// Inclusion filter
+			else if (kind.hasFilters() && elementName.equals(ElementName.INCLUDE))
+				inclusionFilters.add(parseFilter(reader));
+
+			// Exclusion filter
+			else if (kind.hasFilters() && elementName.equals(ElementName.EXCLUDE))
+				exclusionFilters.add(parseFilter(reader));
+
+			// Unrecognised element
+			else
+				XmlUtils.skipElement(reader);
 		}
 
 		// Fix up pathname index and filter indices
@@ -465,17 +464,16 @@ class FileSet
 
 	//------------------------------------------------------------------
 
-	private static List<String> parseFilter(Element element)
-		throws XmlParseException
+	private static List<String> parseFilter(XMLStreamReader reader)
+		throws XMLStreamException
 	{
 		List<String> patterns = new ArrayList<>();
-		NodeList childNodes = element.getChildNodes();
-		for (int i = 0; i < childNodes.getLength(); i++)
+		while (XmlUtils.nextChildElement(reader))
 		{
-			Node node = childNodes.item(i);
-			if ((node.getNodeType() == Node.ELEMENT_NODE) &&
-				 node.getNodeName().equals(ElementName.PATTERN))
-				patterns.add(((Element)node).getTextContent());
+			if (reader.getLocalName().equals(ElementName.PATTERN))
+				patterns.add(XmlUtils.readTextContent(reader));
+			else
+				XmlUtils.skipElement(reader);
 		}
 		return patterns;
 	}
@@ -40,6 +40,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.swing.JDialog;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JMenu;
@@ -877,8 +878,16 @@ class MainWindow
 
 	//------------------------------------------------------------------
 
+	/**
+	 * Returns the control dialog.  The dialog is normally created just after the main window is first displayed; if
+	 * it has not yet been created, it is created and displayed by this method.
+	 *
+	 * @return the control dialog.
+	 */
+
 	public ControlDialog getControlDialog()
 	{
+		openControlDialog();
 		return controlDialog;
 	}
 
@@ -892,9 +901,9 @@ class MainWindow
 
 	//------------------------------------------------------------------
 
-	public void initTextModel(File         file,
-							  StringBuffer text,
-							  boolean      visible)
+	public void initTextModel(File          file,
+							  StringBuilder text,
+							  boolean       visible)
 	{
 		// Perform any deferred edit
 		deferredEdit();
@@ -991,6 +1000,11 @@ class MainWindow
 
 	public void executeCommand(AppCommand command)
 	{
+		// Create control dialog if a command is issued before the dialog has been created
+		if (command != AppCommand.TOGGLE_CONTROL_DIALOG)
+			openControlDialog();
+
+		// Execute command
 		try
 		{
 			switch (command)
@@ -1178,7 +1192,7 @@ class MainWindow
 													  JOptionPane.YES_NO_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE,
 													  null, optionStrs, optionStrs[0]);
 			if (result == JOptionPane.YES_OPTION)
-				searchParams.write();
+				searchParams.writeDeferred();
 			else if (result != JOptionPane.NO_OPTION)
 				return false;
 		}
@@ -1258,6 +1272,11 @@ class MainWindow
 					showSearchDialog(SearchDialog.Kind.PREVIEW);
 					break;
 
+				case PREVIEW_ALL:
+					searchDialog = ReplacementPreviewDialog.showDialog(this, currentPathname, textSearcher.getText(),
+																	   textSearcher.getReplacements());
+					break;
+
 				case DONE:
 					// do nothing
 					break;
@@ -1436,9 +1455,12 @@ class MainWindow
 		// Update configuration
 		updateConfiguration();
 
-		// Close window and exit
+		// Close window
 		setVisible(false);
 		dispose();
+
+		// Wait for search parameters to be written, and exit
+		SearchParameters.awaitDeferredWrites();
 		System.exit(0);
 	}
 
@@ -1522,7 +1544,9 @@ class MainWindow
 
 	private void onToggleControlDialog()
 	{
-		if (controlDialog != null)
+		if (controlDialog == null)
+			openControlDialog();
+		else
 			controlDialog.setVisible(!controlDialog.isVisible());
 	}
 
@@ -1534,6 +1558,7 @@ class MainWindow
 		{
 			ExceptionUtils.setUnixStyle(AppConfig.INSTANCE.isShowUnixPathnames());
 			controlDialog.updatePreferences();
+			AppConfig.INSTANCE.writeDeferred();
 		}
 	}
 
@@ -1550,7 +1575,7 @@ class MainWindow
 	private	boolean				controlDialogHidden;
 	private	File				deferredFile;
 	private	ControlDialog		controlDialog;
-	private	SearchDialog		searchDialog;
+	private	JDialog				searchDialog;
 	private	JPopupMenu			contextMenu;
 	private	TextArea			textView;
 	private	TextArea			resultArea;
@@ -863,7 +863,7 @@ class ParameterEditor
 
 		// Button: previous
 		JButton previousButton = new JButton(editor.getAction(ListEditor.Command.SELECT_PREVIOUS));
-		previousButton.setIcon(AppIcon.ARROW_LEFT);
+		previousButton.setIcon(AppIcon.arrowLeft());
 		previousButton.setText(null);
 		previousButton.setMargin(ICON_BUTTON_MARGINS);
 		previousButton.setToolTipText(SELECT_PREVIOUS_TOOLTIP_STR);
@@ -871,7 +871,7 @@ class ParameterEditor
 
 		// Button: next
 		JButton nextButton = new JButton(editor.getAction(ListEditor.Command.SELECT_NEXT));
-		nextButton.setIcon(AppIcon.ARROW_RIGHT);
+		nextButton.setIcon(AppIcon.arrowRight());
 		nextButton.setText(null);
 		nextButton.setMargin(ICON_BUTTON_MARGINS);
 		nextButton.setToolTipText(SELECT_NEXT_TOOLTIP_STR);
@@ -0,0 +1,207 @@
+/*====================================================================*\
+
+ReplacementList.java
+
+Replacement list class.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package regexsearch;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.util.Arrays;
+
+//----------------------------------------------------------------------
+
+
+// REPLACEMENT LIST CLASS
+
+
+class ReplacementList
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	private static final	int	INITIAL_CAPACITY	= 64;
+
+////////////////////////////////////////////////////////////////////////
+//  Constructors
+////////////////////////////////////////////////////////////////////////
+
+	public ReplacementList()
+	{
+		startIndices = new int[INITIAL_CAPACITY];
+		endIndices = new int[INITIAL_CAPACITY];
+		lineIndices = new int[INITIAL_CAPACITY];
+		replacementOffsets = new int[INITIAL_CAPACITY + 1];
+		accepted = new boolean[INITIAL_CAPACITY];
+		replacementText = new StringBuilder();
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	public int getNumReplacements()
+	{
+		return numReplacements;
+	}
+
+	//------------------------------------------------------------------
+
+	public int getNumAccepted()
+	{
+		int numAccepted = 0;
+		for (int i = 0; i < numReplacements; i++)
+		{
+			if (accepted[i])
+				++numAccepted;
+		}
+		return numAccepted;
+	}
+
+	//------------------------------------------------------------------
+
+	public int getStartIndex(int index)
+	{
+		return startIndices[index];
+	}
+
+	//------------------------------------------------------------------
+
+	public int getEndIndex(int index)
+	{
+		return endIndices[index];
+	}
+
+	//------------------------------------------------------------------
+
+	public int getLineIndex(int index)
+	{
+		return lineIndices[index];
+	}
+
+	//------------------------------------------------------------------
+
+	public String getReplacement(int index)
+	{
+		return replacementText.substring(replacementOffsets[index], replacementOffsets[index + 1]);
+	}
+
+	//------------------------------------------------------------------
+
+	public boolean isAccepted(int index)
+	{
+		return accepted[index];
+	}
+
+	//------------------------------------------------------------------
+
+	public void setAccepted(int     index,
+							boolean accepted)
+	{
+		this.accepted[index] = accepted;
+	}
+
+	//------------------------------------------------------------------
+
+	public void setAllAccepted(boolean accepted)
+	{
+		Arrays.fill(this.accepted, 0, numReplacements, accepted);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Replacements must be added in order of increasing start index, and they must not overlap.
+	 */
+
+	public void add(int    startIndex,
+					int    endIndex,
+					int    lineIndex,
+					String replacement)
+	{
+		// Increase the capacity of the arrays if necessary
+		if (numReplacements >= startIndices.length)
+		{
+			int capacity = 2 * startIndices.length;
+			startIndices = Arrays.copyOf(startIndices, capacity);
+			endIndices = Arrays.copyOf(endIndices, capacity);
+			lineIndices = Arrays.copyOf(lineIndices, capacity);
+			replacementOffsets = Arrays.copyOf(replacementOffsets, capacity + 1);
+			accepted = Arrays.copyOf(accepted, capacity);
+		}
+
+		// Add the replacement
+		startIndices[numReplacements] = startIndex;
+		endIndices[numReplacements] = endIndex;
+		lineIndices[numReplacements] = lineIndex;
+		accepted[numReplacements] = true;
+		replacementText.append(replacement);
+		replacementOffsets[++numReplacements] = replacementText.length();
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Applies the accepted replacements of this list to the specified text in a single pass, and returns the result
+	 * in a new buffer.  The specified text is not modified.
+	 */
+
+	public StringBuilder apply(CharSequence text)
+	{
+		// Calculate the length of the result
+		int length = text.length();
+		for (int i = 0; i < numReplacements; i++)
+		{
+			if (accepted[i])
+				length += replacementOffsets[i + 1] - replacementOffsets[i] - (endIndices[i] - startIndices[i]);
+		}
+
+		// Concatenate the unmatched text and the accepted replacements
+		StringBuilder buffer = new StringBuilder(length);
+		int index = 0;
+		for (int i = 0; i < numReplacements; i++)
+		{
+			if (accepted[i])
+			{
+				buffer.append(text, index, startIndices[i]);
+				buffer.append(replacementText, replacementOffsets[i], replacementOffsets[i + 1]);
+				index = endIndices[i];
+			}
+		}
+		buffer.append(text, index, text.length());
+
+		return buffer;
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance fields
+////////////////////////////////////////////////////////////////////////
+
+	private	int				numReplacements;
+	private	int[]			startIndices;
+	private	int[]			endIndices;
+	private	int[]			lineIndices;
+	private	int[]			replacementOffsets;
+	private	boolean[]		accepted;
+	private	StringBuilder	replacementText;
+
+}
+
+//----------------------------------------------------------------------
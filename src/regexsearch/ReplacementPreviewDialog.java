@@ -0,0 +1,597 @@
+/*====================================================================*\
+
+ReplacementPreviewDialog.java
+
+Replacement preview dialog box class.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package regexsearch;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.GridBagConstraints;
+import java.awt.GridBagLayout;
+import java.awt.GridLayout;
+import java.awt.Insets;
+import java.awt.Point;
+import java.awt.Window;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.KeyEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JComponent;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.KeyStroke;
+
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.TableColumnModel;
+
+import common.gui.FButton;
+import common.gui.FLabel;
+import common.gui.GuiUtils;
+
+import common.misc.KeyAction;
+
+//----------------------------------------------------------------------
+
+
+// REPLACEMENT PREVIEW DIALOG BOX CLASS
+
+
+class ReplacementPreviewDialog
+	extends JDialog
+	implements ActionListener
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	private static final	long	serialVersionUID	= 1L;
+
+	private static final	int	CONTEXT_LENGTH	= 40;
+
+	private static final	int	NUM_ROWS	= 20;
+
+	private static final	int	ACCEPT_COLUMN_WIDTH	= 24;
+	private static final	int	LINE_COLUMN_WIDTH	= 64;
+	private static final	int	TEXT_COLUMN_WIDTH	= 400;
+
+	private static final	char	LINE_FEED_GLYPH_CHAR	= '\u00B6';
+
+	private static final	String	TITLE_STR			= "Replacement preview";
+	private static final	String	FILE_STR			= "File";
+	private static final	String	REPLACEMENTS_STR	= "Replacements";
+	private static final	String	LINE_STR			= "Line";
+	private static final	String	ORIGINAL_STR		= "Original text";
+	private static final	String	REPLACEMENT_STR		= "Replacement";
+	private static final	String	SELECT_ALL_STR		= "Select all";
+	private static final	String	SELECT_NONE_STR		= "Select none";
+	private static final	String	APPLY_STR			= "Apply";
+	private static final	String	ELLIPSIS_STR		= "\u2026";
+
+	private static final	String	APPLY_TOOLTIP_STR	= "Apply the selected replacements, save any changes to the " +
+															"current file, then search the next file";
+	private static final	String	CANCEL_TOOLTIP_STR	= "Cancel the search, discarding any changes to the current " +
+															"file";
+
+	// Commands
+	private interface Command
+	{
+		String	SELECT_ALL	= "selectAll";
+		String	SELECT_NONE	= "selectNone";
+		String	APPLY		= "apply";
+		String	CLOSE		= "close";
+	}
+
+////////////////////////////////////////////////////////////////////////
+//  Member classes : non-inner classes
+////////////////////////////////////////////////////////////////////////
+
+
+	// REPLACEMENT TABLE MODEL CLASS
+
+
+	private static class TableModel
+		extends AbstractTableModel
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constants
+	////////////////////////////////////////////////////////////////////
+
+		private static final	long	serialVersionUID	= 1L;
+
+		private static final	int	ACCEPT_COLUMN		= 0;
+		private static final	int	LINE_COLUMN			= 1;
+		private static final	int	ORIGINAL_COLUMN		= 2;
+		private static final	int	REPLACEMENT_COLUMN	= 3;
+
+		private static final	String[]	COLUMN_NAMES	=
+		{
+			"",
+			LINE_STR,
+			ORIGINAL_STR,
+			REPLACEMENT_STR
+		};
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private TableModel(CharSequence    text,
+						   ReplacementList replacements)
+		{
+			this.text = text;
+			this.replacements = replacements;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : TableModel interface
+	////////////////////////////////////////////////////////////////////
+
+		public int getRowCount()
+		{
+			return replacements.getNumReplacements();
+		}
+
+		//--------------------------------------------------------------
+
+		public int getColumnCount()
+		{
+			return COLUMN_NAMES.length;
+		}
+
+		//--------------------------------------------------------------
+
+		public Object getValueAt(int row,
+								 int column)
+		{
+			switch (column)
+			{
+				case ACCEPT_COLUMN:
+					return replacements.isAccepted(row);
+
+				case LINE_COLUMN:
+					return replacements.getLineIndex(row) + 1;
+
+				case ORIGINAL_COLUMN:
+					return getText(row, false);
+
+				case REPLACEMENT_COLUMN:
+					return getText(row, true);
+			}
+			return null;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : overriding methods
+	////////////////////////////////////////////////////////////////////
+
+		@Override
+		public String getColumnName(int column)
+		{
+			return COLUMN_NAMES[column];
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public Class<?> getColumnClass(int column)
+		{
+			switch (column)
+			{
+				case ACCEPT_COLUMN:
+					return Boolean.class;
+
+				case LINE_COLUMN:
+					return Integer.class;
+			}
+			return String.class;
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public boolean isCellEditable(int row,
+									  int column)
+		{
+			return (column == ACCEPT_COLUMN);
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public void setValueAt(Object value,
+							   int    row,
+							   int    column)
+		{
+			if (column == ACCEPT_COLUMN)
+			{
+				replacements.setAccepted(row, (Boolean)value);
+				fireTableCellUpdated(row, column);
+			}
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		private void setAllAccepted(boolean accepted)
+		{
+			replacements.setAllAccepted(accepted);
+			fireTableDataChanged();
+		}
+
+		//--------------------------------------------------------------
+
+		private String getText(int     index,
+							   boolean replace)
+		{
+			// Get the bounds of the context of the matched text within its line
+			int startIndex = replacements.getStartIndex(index);
+			int endIndex = replacements.getEndIndex(index);
+			int lineStartIndex = Math.max(0, startIndex - CONTEXT_LENGTH);
+			for (int i = startIndex - 1; i >= lineStartIndex; i--)
+			{
+				if (text.charAt(i) == '\n')
+				{
+					lineStartIndex = i + 1;
+					break;
+				}
+			}
+			int lineEndIndex = Math.min(text.length(), endIndex + CONTEXT_LENGTH);
+			for (int i = endIndex; i < lineEndIndex; i++)
+			{
+				if (text.charAt(i) == '\n')
+				{
+					lineEndIndex = i;
+					break;
+				}
+			}
+
+			// Concatenate the context and either the matched text or its replacement
+			StringBuilder buffer = new StringBuilder();
+			if ((lineStartIndex > 0) && (text.charAt(lineStartIndex - 1) != '\n'))
+				buffer.append(ELLIPSIS_STR);
+			appendText(buffer, text.subSequence(lineStartIndex, startIndex));
+			appendText(buffer, replace ? replacements.getReplacement(index) : text.subSequence(startIndex, endIndex));
+			appendText(buffer, text.subSequence(endIndex, lineEndIndex));
+			if ((lineEndIndex < text.length()) && (text.charAt(lineEndIndex) != '\n'))
+				buffer.append(ELLIPSIS_STR);
+			return buffer.toString();
+		}
+
+		//--------------------------------------------------------------
+
+		private void appendText(StringBuilder buffer,
+								CharSequence  text)
+		{
+			for (int i = 0; i < text.length(); i++)
+			{
+				char ch = text.charAt(i);
+				switch (ch)
+				{
+					case '\n':
+						ch = LINE_FEED_GLYPH_CHAR;
+						break;
+
+					case '\t':
+						ch = ' ';
+						break;
+				}
+				buffer.append(ch);
+			}
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance fields
+	////////////////////////////////////////////////////////////////////
+
+		private	CharSequence	text;
+		private	ReplacementList	replacements;
+
+	}
+
+	//==================================================================
+
+////////////////////////////////////////////////////////////////////////
+//  Constructors
+////////////////////////////////////////////////////////////////////////
+
+	private ReplacementPreviewDialog(Window          owner,
+									 String          pathname,
+									 CharSequence    text,
+									 ReplacementList replacements)
+	{
+
+		// Call superclass constructor
+		super(owner, TITLE_STR);
+
+		// Set icons
+		setIconImages(owner.getIconImages());
+
+		// Initialise instance fields
+		tableModel = new TableModel(text, replacements);
+
+
+		//----  Information panel
+
+		GridBagLayout gridBag = new GridBagLayout();
+		GridBagConstraints gbc = new GridBagConstraints();
+
+		JPanel infoPanel = new JPanel(gridBag);
+
+		int gridY = 0;
+
+		// Label: file
+		JLabel fileLabel = new FLabel(FILE_STR + ": " + pathname);
+
+		gbc.gridx = 0;
+		gbc.gridy = gridY++;
+		gbc.gridwidth = 1;
+		gbc.gridheight = 1;
+		gbc.weightx = 0.0;
+		gbc.weighty = 0.0;
+		gbc.anchor = GridBagConstraints.LINE_START;
+		gbc.fill = GridBagConstraints.NONE;
+		gbc.insets = AppConstants.COMPONENT_INSETS;
+		gridBag.setConstraints(fileLabel, gbc);
+		infoPanel.add(fileLabel);
+
+		// Label: number of replacements
+		JLabel numReplacementsLabel = new FLabel(REPLACEMENTS_STR + ": " + replacements.getNumReplacements());
+
+		gbc.gridx = 0;
+		gbc.gridy = gridY++;
+		gbc.gridwidth = 1;
+		gbc.gridheight = 1;
+		gbc.weightx = 0.0;
+		gbc.weighty = 0.0;
+		gbc.anchor = GridBagConstraints.LINE_START;
+		gbc.fill = GridBagConstraints.NONE;
+		gbc.insets = AppConstants.COMPONENT_INSETS;
+		gridBag.setConstraints(numReplacementsLabel, gbc);
+		infoPanel.add(numReplacementsLabel);
+
+
+		//----  Replacement table
+
+		JTable table = new JTable(tableModel);
+		AppFont.MAIN.apply(table);
+		table.setRowHeight(table.getFontMetrics(table.getFont()).getHeight() + 2);
+		table.getTableHeader().setReorderingAllowed(false);
+		table.setAutoResizeMode(JTable.AUTO_RESIZE_LAST_COLUMN);
+
+		TableColumnModel columnModel = table.getColumnModel();
+		columnModel.getColumn(TableModel.ACCEPT_COLUMN).setPreferredWidth(ACCEPT_COLUMN_WIDTH);
+		columnModel.getColumn(TableModel.ACCEPT_COLUMN).setMaxWidth(ACCEPT_COLUMN_WIDTH);
+		columnModel.getColumn(TableModel.LINE_COLUMN).setPreferredWidth(LINE_COLUMN_WIDTH);
+		columnModel.getColumn(TableModel.LINE_COLUMN).setMaxWidth(2 * LINE_COLUMN_WIDTH);
+		columnModel.getColumn(TableModel.ORIGINAL_COLUMN).setPreferredWidth(TEXT_COLUMN_WIDTH);
+		columnModel.getColumn(TableModel.REPLACEMENT_COLUMN).setPreferredWidth(TEXT_COLUMN_WIDTH);
+
+		table.setPreferredScrollableViewportSize(
+						new Dimension(ACCEPT_COLUMN_WIDTH + LINE_COLUMN_WIDTH + 2 * TEXT_COLUMN_WIDTH,
+									  NUM_ROWS * table.getRowHeight()));
+
+		JScrollPane tableScrollPane = new JScrollPane(table);
+
+
+		//----  Button panel
+
+		JPanel buttonPanel = new JPanel(new GridLayout(1, 0, 8, 0));
+		buttonPanel.setBorder(BorderFactory.createEmptyBorder(3, 8, 3, 8));
+
+		// Button: select all
+		JButton selectAllButton = new FButton(SELECT_ALL_STR);
+		selectAllButton.setMnemonic(KeyEvent.VK_S);
+		selectAllButton.setActionCommand(Command.SELECT_ALL);
+		selectAllButton.addActionListener(this);
+		buttonPanel.add(selectAllButton);
+
+		// Button: select none
+		JButton selectNoneButton = new FButton(SELECT_NONE_STR);
+		selectNoneButton.setMnemonic(KeyEvent.VK_N);
+		selectNoneButton.setActionCommand(Command.SELECT_NONE);
+		selectNoneButton.addActionListener(this);
+		buttonPanel.add(selectNoneButton);
+
+		// Button: apply
+		JButton applyButton = new FButton(APPLY_STR);
+		applyButton.setMnemonic(KeyEvent.VK_A);
+		applyButton.setToolTipText(APPLY_TOOLTIP_STR);
+		applyButton.setActionCommand(Command.APPLY);
+		applyButton.addActionListener(this);
+		buttonPanel.add(applyButton);
+
+		// Button: cancel
+		JButton cancelButton = new FButton(AppConstants.CANCEL_STR);
+		cancelButton.setToolTipText(CANCEL_TOOLTIP_STR);
+		cancelButton.setActionCommand(Command.CLOSE);
+		cancelButton.addActionListener(this);
+		buttonPanel.add(cancelButton);
+
+
+		//----  Main panel
+
+		JPanel mainPanel = new JPanel(gridBag);
+		mainPanel.setBorder(BorderFactory.createEmptyBorder(2, 2, 2, 2));
+
+		gridY = 0;
+
+		gbc.gridx = 0;
+		gbc.gridy = gridY++;
+		gbc.gridwidth = 1;
+		gbc.gridheight = 1;
+		gbc.weightx = 1.0;
+		gbc.weighty = 0.0;
+		gbc.anchor = GridBagConstraints.LINE_START;
+		gbc.fill = GridBagConstraints.NONE;
+		gbc.insets = new Insets(0, 0, 0, 0);
+		gridBag.setConstraints(infoPanel, gbc);
+		mainPanel.add(infoPanel);
+
+		gbc.gridx = 0;
+		gbc.gridy = gridY++;
+		gbc.gridwidth = 1;
+		gbc.gridheight = 1;
+		gbc.weightx = 1.0;
+		gbc.weighty = 1.0;
+		gbc.anchor = GridBagConstraints.NORTH;
+		gbc.fill = GridBagConstraints.BOTH;
+		gbc.insets = new Insets(2, 0, 0, 0);
+		gridBag.setConstraints(tableScrollPane, gbc);
+		mainPanel.add(tableScrollPane);
+
+		gbc.gridx = 0;
+		gbc.gridy = gridY++;
+		gbc.gridwidth = 1;
+		gbc.gridheight = 1;
+		gbc.weightx = 0.0;
+		gbc.weighty = 0.0;
+		gbc.anchor = GridBagConstraints.NORTH;
+		gbc.fill = GridBagConstraints.NONE;
+		gbc.insets = new Insets(3, 0, 0, 0);
+		gridBag.setConstraints(buttonPanel, gbc);
+		mainPanel.add(buttonPanel);
+
+		// Add commands to action map
+		KeyAction.create(mainPanel, JComponent.WHEN_IN_FOCUSED_WINDOW,
+						 KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0), Command.CLOSE, this);
+
+
+		//----  Window
+
+		// Set content pane
+		setContentPane(mainPanel);
+
+		// Dispose of window explicitly
+		setDefaultCloseOperation(DO_NOTHING_ON_CLOSE);
+
+		// Handle window closing
+		addWindowListener(new WindowAdapter()
+		{
+			@Override
+			public void windowClosing(WindowEvent event)
+			{
+				close(TextSearcher.Option.CANCEL);
+			}
+		});
+
+		// Resize dialog to its preferred size or to its previous size
+		pack();
+		if (size != null)
+			setSize(size);
+
+		// Set location of dialog box
+		if (location == null)
+			location = GuiUtils.getComponentLocation(this, owner);
+		setLocation(GuiUtils.getLocationWithinScreen(this, location));
+
+		// Set default button
+		getRootPane().setDefaultButton(applyButton);
+
+		// Show dialog
+		setVisible(true);
+
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	public static ReplacementPreviewDialog showDialog(Component       parent,
+													  String          pathname,
+													  CharSequence    text,
+													  ReplacementList replacements)
+	{
+		return new ReplacementPreviewDialog(GuiUtils.getWindow(parent), pathname, text, replacements);
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods : ActionListener interface
+////////////////////////////////////////////////////////////////////////
+
+	public void actionPerformed(ActionEvent event)
+	{
+		String command = event.getActionCommand();
+
+		if (command.equals(Command.SELECT_ALL))
+			tableModel.setAllAccepted(true);
+
+		else if (command.equals(Command.SELECT_NONE))
+			tableModel.setAllAccepted(false);
+
+		else if (command.equals(Command.APPLY))
+			close(TextSearcher.Option.APPLY_ALL);
+
+		else if (command.equals(Command.CLOSE))
+			close(TextSearcher.Option.CANCEL);
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	private void close(TextSearcher.Option option)
+	{
+		location = getLocation();
+		size = getSize();
+		setVisible(false);
+		dispose();
+		App.INSTANCE.getMainWindow().searchDialogClosed(option);
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Class fields
+////////////////////////////////////////////////////////////////////////
+
+	private static	Point		location;
+	private static	Dimension	size;
+
+////////////////////////////////////////////////////////////////////////
+//  Instance fields
+////////////////////////////////////////////////////////////////////////
+
+	private	TableModel	tableModel;
+
+}
+
+//----------------------------------------------------------------------
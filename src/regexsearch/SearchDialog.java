@@ -101,6 +101,9 @@ class SearchDialog
 					 "Don't replace this occurrence; resume the search"),
 		new OptionEx(Option.PREVIEW,
 					 "Replace this occurrence and display the replacement"),
+		new OptionEx(Option.PREVIEW_ALL,
+					 "Find this and all remaining occurrences in the current file, and review their " +
+						"replacements side by side"),
 		new OptionEx(Option.THIS_FILE,
 					 "Replace all remaining occurrences in the current file, then search the next file"),
 		new OptionEx(Option.GLOBAL,
@@ -269,6 +272,13 @@ class SearchDialog
 			KeyEvent.VK_P
 		),
 
+		PREVIEW_ALL
+		(
+			TextSearcher.Option.PREVIEW_ALL,
+			"Preview all",
+			KeyEvent.VK_A
+		),
+
 		THIS_FILE
 		(
 			TextSearcher.Option.REPLACE_FILE,
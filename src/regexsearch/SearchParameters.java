@@ -18,6 +18,7 @@ package regexsearch;
 // IMPORTS
 
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -25,14 +26,19 @@ import java.io.InputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import common.exception.AppException;
 import common.exception.FileException;
@@ -41,15 +47,16 @@ import common.exception.UnexpectedRuntimeException;
 
 import common.gui.IProgressView;
 
+import common.misc.DaemonThread;
 import common.misc.NoYes;
 
 import common.xml.Attribute;
 import common.xml.XmlConstants;
 import common.xml.XmlParseException;
 import common.xml.XmlUtils;
-import common.xml.XmlValidationException;
 import common.xml.XmlWriter;
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 
 //----------------------------------------------------------------------
 
@@ -75,6 +82,8 @@ class SearchParameters
 	private static final	String	NAMESPACE_NAME			= "";
 	private static final	String	NAMESPACE_NAME_REGEX	= "http://ns\\.[a-z.]+/regexSearch-1";
 
+	private static final	String	WRITE_THREAD_NAME	= App.SHORT_NAME + " search-parameters writer";
+
 	private static final	String	READING_STR	= "Reading";
 	private static final	String	WRITING_STR	= "Writing";
 
@@ -227,6 +236,139 @@ class SearchParameters
 
 	//------------------------------------------------------------------
 
+	/**
+	 * Waits for any deferred writes of search parameters to finish.  This method should be called before the
+	 * application exits.
+	 */
+
+	public static void awaitDeferredWrites()
+	{
+		Future<?> write = null;
+		synchronized (SearchParameters.class)
+		{
+			write = deferredWrite;
+		}
+		if (write != null)
+		{
+			try
+			{
+				write.get();
+			}
+			catch (Exception e)
+			{
+				// ignore
+			}
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Writes some specified data to a temporary file in the directory of a specified file, and then replaces the
+	 * file with the temporary file.
+	 *
+	 * @param  file  the file to which the data will be written.
+	 * @param  data  the data that will be written.
+	 * @throws AppException
+	 *           if an error occurred when writing the temporary file or replacing the file.
+	 */
+
+	private static void writeFile(File   file,
+								  byte[] data)
+		throws AppException
+	{
+		File tempFile = null;
+		boolean oldFileDeleted = false;
+		try
+		{
+			// Create temporary file
+			try
+			{
+				tempFile = File.createTempFile(AppConstants.TEMP_FILE_PREFIX, null,
+											   file.getAbsoluteFile().getParentFile());
+			}
+			catch (Exception e)
+			{
+				throw new AppException(ErrorId.FAILED_TO_CREATE_TEMPORARY_FILE, e);
+			}
+
+			// Write temporary file
+			try
+			{
+				Files.write(tempFile.toPath(), data);
+			}
+			catch (IOException e)
+			{
+				throw new FileException(ErrorId.ERROR_WRITING_FILE, tempFile, e);
+			}
+			catch (SecurityException e)
+			{
+				throw new FileException(ErrorId.FILE_ACCESS_NOT_PERMITTED, tempFile, e);
+			}
+
+			// Replace any existing file with temporary file in a single step, if the file system allows it
+			boolean replaced = false;
+			try
+			{
+				Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						   StandardCopyOption.ATOMIC_MOVE);
+				replaced = true;
+			}
+			catch (IOException e)
+			{
+				// fall back to deleting existing file and renaming temporary file
+			}
+			catch (Exception e)
+			{
+				throw new FileException(ErrorId.FAILED_TO_RENAME_FILE, file, e);
+			}
+
+			if (!replaced)
+			{
+				// Delete any existing file
+				try
+				{
+					if (file.exists() && !file.delete())
+						throw new FileException(ErrorId.FAILED_TO_DELETE_FILE, file);
+					oldFileDeleted = true;
+				}
+				catch (SecurityException e)
+				{
+					throw new FileException(ErrorId.FAILED_TO_DELETE_FILE, file, e);
+				}
+
+				// Rename temporary file
+				try
+				{
+					if (!tempFile.renameTo(file))
+						throw new TempFileException(ErrorId.FAILED_TO_RENAME_FILE, file, tempFile);
+				}
+				catch (SecurityException e)
+				{
+					throw new TempFileException(ErrorId.FAILED_TO_RENAME_FILE, file, e, tempFile);
+				}
+			}
+		}
+		catch (AppException e)
+		{
+			// Delete temporary file
+			try
+			{
+				if (!oldFileDeleted && (tempFile != null) && tempFile.exists())
+					tempFile.delete();
+			}
+			catch (Exception e1)
+			{
+				// ignore
+			}
+
+			// Rethrow exception
+			throw e;
+		}
+	}
+
+	//------------------------------------------------------------------
+
 	/**
 	 * @throws IllegalArgumentException
 	 */
@@ -504,6 +646,9 @@ class SearchParameters
 			progressView.setProgress(0, -1.0);
 		}
 
+		// Wait for any deferred write, which might be to the same file, to finish
+		awaitDeferredWrites();
+
 		// Read file
 		FileInputStream inStream = null;
 		try
@@ -619,6 +764,57 @@ class SearchParameters
 
 	//------------------------------------------------------------------
 
+	/**
+	 * Writes the search parameters to their file on a background thread.  The parameters are encoded when this
+	 * method is called, so it must be called on the event-dispatching thread.  If the write fails, an error message
+	 * is displayed and the parameters are marked as changed.
+	 */
+
+	public void writeDeferred()
+	{
+		if (file != null)
+		{
+			try
+			{
+				// Encode parameters
+				File outFile = file;
+				byte[] data = encode(outFile);
+				changed = false;
+
+				// Submit write; writes are performed in the order in which they are submitted
+				synchronized (SearchParameters.class)
+				{
+					if (writeExecutor == null)
+					{
+						writeExecutor = Executors.newSingleThreadExecutor(runnable ->
+								DaemonThread.create(runnable, WRITE_THREAD_NAME));
+					}
+					deferredWrite = writeExecutor.submit(() ->
+					{
+						try
+						{
+							writeFile(outFile, data);
+						}
+						catch (AppException e)
+						{
+							SwingUtilities.invokeLater(() ->
+							{
+								changed = true;
+								App.INSTANCE.showErrorMessage(App.SHORT_NAME, e);
+							});
+						}
+					});
+				}
+			}
+			catch (AppException e)
+			{
+				App.INSTANCE.showErrorMessage(App.SHORT_NAME, e);
+			}
+		}
+	}
+
+	//------------------------------------------------------------------
+
 	public void write(File file)
 		throws AppException
 	{
@@ -630,162 +826,101 @@ class SearchParameters
 			progressView.setProgress(0, -1.0);
 		}
 
+		// Wait for any deferred write, which might be to the same file, to finish
+		awaitDeferredWrites();
+
 		// Write file
-		File tempFile = null;
-		XmlWriter writer = null;
-		boolean oldFileDeleted = false;
+		writeFile(file, encode(file));
+
+		// Indicate that the file has been written and that the parameters are unchanged
+		this.file = file;
+		changed = false;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Encodes the search parameters as an XML document, and returns the document.
+	 *
+	 * @param  file  the file to which the document will be written, which is used only in an error message.
+	 * @return the search parameters as an XML document encoded in UTF-8.
+	 * @throws AppException
+	 *           if an error occurred when encoding the document.
+	 */
+
+	private byte[] encode(File file)
+		throws AppException
+	{
+		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
 		try
 		{
-			// Create temporary file
+			// Open XML writer on output stream
+			XmlWriter writer = null;
 			try
 			{
-				tempFile = File.createTempFile(AppConstants.TEMP_FILE_PREFIX, null,
-											   file.getAbsoluteFile().getParentFile());
-			}
-			catch (Exception e)
-			{
-				throw new AppException(ErrorId.FAILED_TO_CREATE_TEMPORARY_FILE, e);
-			}
-
-			// Open XML writer on temporary file
-			try
-			{
-				writer = new XmlWriter(tempFile, XmlConstants.ENCODING_NAME_UTF8);
-			}
-			catch (FileNotFoundException e)
-			{
-				throw new FileException(ErrorId.FAILED_TO_OPEN_FILE, tempFile, e);
-			}
-			catch (SecurityException e)
-			{
-				throw new FileException(ErrorId.FILE_ACCESS_NOT_PERMITTED, tempFile, e);
+				writer = new XmlWriter(outStream, XmlConstants.ENCODING_NAME_UTF8);
 			}
 			catch (UnsupportedEncodingException e)
 			{
 				throw new UnexpectedRuntimeException(e);
 			}
 
-			// Write file
-			try
-			{
-				// Write XML declaration
-				writer.writeXmlDeclaration(AppConstants.XML_VERSION_STR, XmlConstants.ENCODING_NAME_UTF8,
-										   XmlWriter.Standalone.NO);
-
-				// Write root element start tag
-				List<Attribute> attributes = new ArrayList<>();
-				attributes.add(new Attribute(AttrName.XMLNS, NAMESPACE_NAME));
-				attributes.add(new Attribute(AttrName.VERSION, VERSION));
-				attributes.add(new Attribute(AttrName.REPLACE, replace));
-				attributes.add(new Attribute(AttrName.REGEX, regex));
-				attributes.add(new Attribute(AttrName.IGNORE_CASE, ignoreCase));
-				attributes.add(new Attribute(AttrName.SHOW_NOT_FOUND, showNotFound));
-				if (!fileSets.isEmpty())
-					attributes.add(new Attribute(AttrName.FILE_SET_INDEX, fileSetIndex));
-				if (!targets.isEmpty())
-					attributes.add(new Attribute(AttrName.TARGET_INDEX, targetIndex));
-				if (!replacements.isEmpty())
-					attributes.add(new Attribute(AttrName.REPLACEMENT_INDEX, replacementIndex));
-				writer.writeElementStart(ElementName.SEARCH_PARAMETERS, attributes, 0, true, true);
-
-				// Write file sets
-				for (FileSet fileSet : fileSets)
-				{
-					writer.writeEol();
-					fileSet.write(writer, 2);
-				}
-
-				// Write targets
-				if (!targets.isEmpty())
-				{
-					writer.writeEol();
-					for (String target : targets)
-						writer.writeEscapedTextElement(ElementName.TARGET, 2, escape(target));
-				}
-
-				// Write replacements
-				if (!replacements.isEmpty())
-				{
-					writer.writeEol();
-					for (String replacement : replacements)
-						writer.writeEscapedTextElement(ElementName.REPLACEMENT, 2, escape(replacement));
-				}
-
-				// Write root element end tag
-				if (!(fileSets.isEmpty() && targets.isEmpty() && replacements.isEmpty()))
-					writer.writeEol();
-				writer.writeElementEnd(ElementName.SEARCH_PARAMETERS, 0);
-			}
-			catch (IOException e)
+			// Write XML declaration
+			writer.writeXmlDeclaration(AppConstants.XML_VERSION_STR, XmlConstants.ENCODING_NAME_UTF8,
+									   XmlWriter.Standalone.NO);
+
+			// Write root element start tag
+			List<Attribute> attributes = new ArrayList<>();
+			attributes.add(new Attribute(AttrName.XMLNS, NAMESPACE_NAME));
+			attributes.add(new Attribute(AttrName.VERSION, VERSION));
+			attributes.add(new Attribute(AttrName.REPLACE, replace));
+			attributes.add(new Attribute(AttrName.REGEX, regex));
+			attributes.add(new Attribute(AttrName.IGNORE_CASE, ignoreCase));
+			attributes.add(new Attribute(AttrName.SHOW_NOT_FOUND, showNotFound));
+			if (!fileSets.isEmpty())
+				attributes.add(new Attribute(AttrName.FILE_SET_INDEX, fileSetIndex));
+			if (!targets.isEmpty())
+				attributes.add(new Attribute(AttrName.TARGET_INDEX, targetIndex));
+			if (!replacements.isEmpty())
+				attributes.add(new Attribute(AttrName.REPLACEMENT_INDEX, replacementIndex));
+			writer.writeElementStart(ElementName.SEARCH_PARAMETERS, attributes, 0, true, true);
+
+			// Write file sets
+			for (FileSet fileSet : fileSets)
 			{
-				throw new FileException(ErrorId.ERROR_WRITING_FILE, tempFile, e);
+				writer.writeEol();
+				fileSet.write(writer, 2);
 			}
 
-			// Close output stream
-			try
+			// Write targets
+			if (!targets.isEmpty())
 			{
-				writer.close();
-				writer = null;
-			}
-			catch (IOException e)
-			{
-				throw new FileException(ErrorId.FAILED_TO_CLOSE_FILE, tempFile, e);
+				writer.writeEol();
+				for (String target : targets)
+					writer.writeEscapedTextElement(ElementName.TARGET, 2, escape(target));
 			}
 
-			// Delete any existing file
-			try
+			// Write replacements
+			if (!replacements.isEmpty())
 			{
-				if (file.exists() && !file.delete())
-					throw new FileException(ErrorId.FAILED_TO_DELETE_FILE, file);
-				oldFileDeleted = true;
-			}
-			catch (SecurityException e)
-			{
-				throw new FileException(ErrorId.FAILED_TO_DELETE_FILE, file, e);
+				writer.writeEol();
+				for (String replacement : replacements)
+					writer.writeEscapedTextElement(ElementName.REPLACEMENT, 2, escape(replacement));
 			}
 
-			// Rename temporary file
-			try
-			{
-				if (!tempFile.renameTo(file))
-					throw new TempFileException(ErrorId.FAILED_TO_RENAME_FILE, file, tempFile);
-			}
-			catch (SecurityException e)
-			{
-				throw new TempFileException(ErrorId.FAILED_TO_RENAME_FILE, file, e, tempFile);
-			}
+			// Write root element end tag
+			if (!(fileSets.isEmpty() && targets.isEmpty() && replacements.isEmpty()))
+				writer.writeEol();
+			writer.writeElementEnd(ElementName.SEARCH_PARAMETERS, 0);
 
-			// Indicate that the file has been written and that the parameters are unchanged
-			this.file = file;
-			changed = false;
+			// Flush writer
+			writer.close();
 		}
-		catch (AppException e)
+		catch (IOException e)
 		{
-			// Close output stream
-			try
-			{
-				if (writer != null)
-					writer.close();
-			}
-			catch (Exception e1)
-			{
-				// ignore
-			}
-
-			// Delete temporary file
-			try
-			{
-				if (!oldFileDeleted && (tempFile != null) && tempFile.exists())
-					tempFile.delete();
-			}
-			catch (Exception e1)
-			{
-				// ignore
-			}
-
-			// Rethrow exception
-			throw e;
+			throw new FileException(ErrorId.ERROR_WRITING_FILE, file, e);
 		}
+		return outStream.toByteArray();
 	}
 
 	//------------------------------------------------------------------
@@ -803,22 +938,33 @@ class SearchParameters
 					   InputStream inStream)
 		throws AppException
 	{
-		// Create DOM document
-		Document document = XmlUtils.createDocument(inStream);
-		if (!XmlUtils.getErrorHandler().isEmpty())
-			throw new XmlValidationException(ErrorId.INVALID_DOCUMENT, file,
-											 XmlUtils.getErrorHandler().getErrorStrings());
+		XMLStreamReader reader = XmlUtils.createStreamReader(inStream);
+		try
+		{
+			parse(file, reader);
+			reader.close();
+		}
+		catch (XMLStreamException e)
+		{
+			throw new FileException(XmlUtils.createParseException(e), file);
+		}
+	}
 
+	//------------------------------------------------------------------
+
+	private void parse(File            file,
+					   XMLStreamReader reader)
+		throws AppException, XMLStreamException
+	{
 		// Test document format
-		Element rootElement = document.getDocumentElement();
-		if (!rootElement.getNodeName().equals(ElementName.SEARCH_PARAMETERS))
+		if (!XmlUtils.nextChildElement(reader) || !reader.getLocalName().equals(ElementName.SEARCH_PARAMETERS))
 			throw new FileException(ErrorId.UNEXPECTED_DOCUMENT_FORMAT, file);
 		String elementPath = ElementName.SEARCH_PARAMETERS;
 
 		// Attribute: namespace
 		String attrName = AttrName.XMLNS;
 		String attrKey = XmlUtils.appendAttributeName(elementPath, attrName);
-		String attrValue = XmlUtils.getAttribute(rootElement, attrName);
+		String attrValue = XmlUtils.getDefaultNamespaceDeclaration(reader);
 		if (attrValue == null)
 			throw new XmlParseException(ErrorId.NO_ATTRIBUTE, file, attrKey);
 		if (!attrValue.matches(NAMESPACE_NAME_REGEX))
@@ -827,7 +973,7 @@ class SearchParameters
 		// Attribute: version
 		attrName = AttrName.VERSION;
 		attrKey = XmlUtils.appendAttributeName(elementPath, attrName);
-		attrValue = XmlUtils.getAttribute(rootElement, attrName);
+		attrValue = reader.getAttributeValue(null, attrName);
 		if (attrValue == null)
 			throw new XmlParseException(ErrorId.NO_ATTRIBUTE, file, attrKey);
 		int version = -1;
@@ -845,7 +991,7 @@ class SearchParameters
 		// Attribute: replace
 		attrName = AttrName.REPLACE;
 		attrKey = XmlUtils.appendAttributeName(elementPath, attrName);
-		attrValue = XmlUtils.getAttribute(rootElement, attrName);
+		attrValue = reader.getAttributeValue(null, attrName);
 		if (attrValue == null)
 			throw new XmlParseException(ErrorId.NO_ATTRIBUTE, file, attrKey);
 		NoYes booleanValue = NoYes.forKey(attrValue);
@@ -856,7 +1002,7 @@ class SearchParameters
 		// Attribute: regex
 		attrName = AttrName.REGEX;
 		attrKey = XmlUtils.appendAttributeName(elementPath, attrName);
-		attrValue = XmlUtils.getAttribute(rootElement, attrName);
+		attrValue = reader.getAttributeValue(null, attrName);
 		if (attrValue == null)
 			throw new XmlParseException(ErrorId.NO_ATTRIBUTE, file, attrKey);
 		booleanValue = NoYes.forKey(attrValue);
@@ -867,7 +1013,7 @@ class SearchParameters
 		// Attribute: ignore case
 		attrName = AttrName.IGNORE_CASE;
 		attrKey = XmlUtils.appendAttributeName(elementPath, attrName);
-		attrValue = XmlUtils.getAttribute(rootElement, attrName);
+		attrValue = reader.getAttributeValue(null, attrName);
 		if (attrValue == null)
 			throw new XmlParseException(ErrorId.NO_ATTRIBUTE, file, attrKey);
 		booleanValue = NoYes.forKey(attrValue);
@@ -880,7 +1026,7 @@ class SearchParameters
 		{
 			attrName = AttrName.SHOW_NOT_FOUND;
 			attrKey = XmlUtils.appendAttributeName(elementPath, attrName);
-			attrValue = XmlUtils.getAttribute(rootElement, attrName);
+			attrValue = reader.getAttributeValue(null, attrName);
 			if (attrValue == null)
 				throw new XmlParseException(ErrorId.NO_ATTRIBUTE, file, attrKey);
 			booleanValue = NoYes.forKey(attrValue);
@@ -892,7 +1038,7 @@ class SearchParameters
 		// Attribute: file-set index
 		attrName = AttrName.FILE_SET_INDEX;
 		attrKey = XmlUtils.appendAttributeName(elementPath, attrName);
-		attrValue = XmlUtils.getAttribute(rootElement, attrName);
+		attrValue = reader.getAttributeValue(null, attrName);
 		if (attrValue != null)
 		{
 			try
@@ -908,7 +1054,7 @@ class SearchParameters
 		// Attribute: target index
 		attrName = AttrName.TARGET_INDEX;
 		attrKey = XmlUtils.appendAttributeName(elementPath, attrName);
-		attrValue = XmlUtils.getAttribute(rootElement, attrName);
+		attrValue = reader.getAttributeValue(null, attrName);
 		if (attrValue != null)
 		{
 			try
@@ -924,7 +1070,7 @@ class SearchParameters
 		// Attribute: replacement index
 		attrName = AttrName.REPLACEMENT_INDEX;
 		attrKey = XmlUtils.appendAttributeName(elementPath, attrName);
-		attrValue = XmlUtils.getAttribute(rootElement, attrName);
+		attrValue = reader.getAttributeValue(null, attrName);
 		if (attrValue != null)
 		{
 			try
@@ -943,45 +1089,43 @@ class SearchParameters
 		replacements.clear();
 		try
 		{
-			NodeList childNodes = rootElement.getChildNodes();
-			for (int i = 0; i < childNodes.getLength(); i++)
+			while (XmlUtils.nextChildElement(reader))
 			{
-				Node node = childNodes.item(i);
-				if (node.getNodeType() == Node.ELEMENT_NODE)
-				{
-					Element element = (Element)node;
-					String elementName = node.getNodeName();
+				String elementName = reader.getLocalName();
 
-					// File set
-					if (elementName.equals(FileSet.getElementName()))
-						fileSets.add(new FileSet(element));
+				// File set
+				if (elementName.equals(FileSet.getElementName()))
+					fileSets.add(new FileSet(reader, elementPath));
 
-					// Target
-					else if (elementName.equals(ElementName.TARGET))
+				// Target
+				else if (elementName.equals(ElementName.TARGET))
+				{
+					try
 					{
-						try
-						{
-							targets.add(unescape(element.getTextContent()));
-						}
-						catch (IllegalArgumentException e)
-						{
-							throw new XmlParseException(ErrorId.MALFORMED_TEXT, elementName);
-						}
+						targets.add(unescape(XmlUtils.readTextContent(reader)));
+					}
+					catch (IllegalArgumentException e)
+					{
+						throw new XmlParseException(ErrorId.MALFORMED_TEXT, elementName);
 					}
+				}
 
-					// Replacement
-					else if (elementName.equals(ElementName.REPLACEMENT))
+				// Replacement
+				else if (elementName.equals(ElementName.REPLACEMENT))
+				{
+					try
 					{
-						try
-						{
-							replacements.add(unescape(element.getTextContent()));
-						}
-						catch (IllegalArgumentException e)
-						{
-							throw new XmlParseException(ErrorId.MALFORMED_TEXT, elementName);
-						}
+						replacements.add(unescape(XmlUtils.readTextContent(reader)));
+					}
+					catch (IllegalArgumentException e)
+					{
+						throw new XmlParseException(ErrorId.MALFORMED_TEXT, elementName);
 					}
 				}
+
+				// Unrecognised element
+				else
+					XmlUtils.skipElement(reader);
 			}
 		}
 		catch (XmlParseException e)
@@ -997,6 +1141,13 @@ class SearchParameters
 
 	//------------------------------------------------------------------
 
+////////////////////////////////////////////////////////////////////////
+//  Class fields
+////////////////////////////////////////////////////////////////////////
+
+	private static	ExecutorService	writeExecutor;
+	private static	Future<?>		deferredWrite;
+
 ////////////////////////////////////////////////////////////////////////
 //  Instance fields
 ////////////////////////////////////////////////////////////////////////
@@ -0,0 +1,183 @@
+/*====================================================================*\
+
+StartupTimer.java
+
+Startup timer class.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package regexsearch;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+import java.lang.management.ManagementFactory;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import common.misc.CalendarTime;
+import common.misc.Property;
+
+//----------------------------------------------------------------------
+
+
+// STARTUP TIMER CLASS
+
+
+/**
+ * This class records the times at which the phases of the startup of the application end, and writes them as a single
+ * line of a log when startup is complete.  Timing is enabled by the system property {@code app.startupLog}: if its
+ * value is empty, the line is written to the standard error stream; otherwise, the value is the pathname of a file to
+ * which the line is appended.
+ * <p>
+ * If the system property {@code app.exitAfterStartup} is set, the application exits when startup is complete.  This
+ * allows a training run to generate a list of the classes that are loaded at startup (see the {@code cds-class-list}
+ * target of the build file).
+ * </p>
+ */
+
+class StartupTimer
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	private static final	String	LOG_KEY		= Property.APP_PREFIX + "startupLog";
+	private static final	String	EXIT_KEY	= Property.APP_PREFIX + "exitAfterStartup";
+
+	private static final	String	JAVA_VERSION_KEY	= "java.version";
+
+	private static final	String	TOTAL_STR	= "total";
+	private static final	String	JVM_STR		= "jvm";
+	private static final	String	FAILED_TO_WRITE_STR	= "Failed to write startup log: ";
+
+	private static final	double	NANOSECONDS_PER_MILLISECOND	= 1.0e6;
+
+////////////////////////////////////////////////////////////////////////
+//  Constructors
+////////////////////////////////////////////////////////////////////////
+
+	private StartupTimer()
+	{
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	public static void start()
+	{
+		logPathname = System.getProperty(LOG_KEY);
+		if (logPathname != null)
+		{
+			startTime = System.nanoTime();
+			lastTime = startTime;
+			phases = new ArrayList<>();
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Records the end of a phase of startup.  The time of the phase is measured from the end of the previous phase.
+	 */
+
+	public static void mark(String phaseName)
+	{
+		if (phases != null)
+		{
+			long time = System.nanoTime();
+			phases.add(phaseName + "=" + toMillisecondsString(time - lastTime));
+			lastTime = time;
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	public static void finish()
+	{
+		// Write log
+		if (phases != null)
+		{
+			// Create line of log
+			StringBuilder buffer = new StringBuilder(256);
+			buffer.append(CalendarTime.timeToString(System.currentTimeMillis(), 'T'));
+			buffer.append(' ');
+			buffer.append(System.getProperty(JAVA_VERSION_KEY));
+			for (String phase : phases)
+			{
+				buffer.append(' ');
+				buffer.append(phase);
+			}
+			buffer.append(' ');
+			buffer.append(TOTAL_STR);
+			buffer.append('=');
+			buffer.append(toMillisecondsString(lastTime - startTime));
+			buffer.append(' ');
+			buffer.append(JVM_STR);
+			buffer.append('=');
+			buffer.append(ManagementFactory.getRuntimeMXBean().getUptime());
+			String line = buffer.toString();
+			phases = null;
+
+			// Write line to stderr or append it to file
+			if (logPathname.isEmpty())
+				System.err.println(line);
+			else
+			{
+				try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(
+											new FileOutputStream(logPathname, true), StandardCharsets.UTF_8)))
+				{
+					writer.println(line);
+				}
+				catch (IOException e)
+				{
+					System.err.println(FAILED_TO_WRITE_STR + e);
+				}
+			}
+		}
+
+		// Exit after training run
+		if (System.getProperty(EXIT_KEY) != null)
+			System.exit(0);
+	}
+
+	//------------------------------------------------------------------
+
+	private static String toMillisecondsString(long nanoseconds)
+	{
+		return Long.toString(Math.round((double)nanoseconds / NANOSECONDS_PER_MILLISECOND));
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Class fields
+////////////////////////////////////////////////////////////////////////
+
+	private static	String			logPathname;
+	private static	long			startTime;
+	private static	long			lastTime;
+	private static	List<String>	phases;
+
+}
+
+//----------------------------------------------------------------------
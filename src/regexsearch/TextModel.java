@@ -115,7 +115,7 @@ class TextModel
 	//  Constructors
 	////////////////////////////////////////////////////////////////////
 
-		public Content(StringBuffer  text,
+		public Content(StringBuilder text,
 					   LineSeparator lineSeparator)
 		{
 			this.text = text;
@@ -128,7 +128,7 @@ class TextModel
 	//  Instance fields
 	////////////////////////////////////////////////////////////////////
 
-		StringBuffer	text;
+		StringBuilder	text;
 		LineSeparator	lineSeparator;
 
 	}
@@ -139,17 +139,19 @@ class TextModel
 //  Constructors
 ////////////////////////////////////////////////////////////////////////
 
-	public TextModel(File         file,
-					 StringBuffer text,
-					 char         tabGlyphChar)
+	public TextModel(File          file,
+					 StringBuilder text,
+					 char          tabGlyphChar)
 	{
 		// Initialise instance fields
 		this.file = file;
 		this.tabGlyphChar = tabGlyphChar;
 		changeListeners = new ArrayList<>();
 
-		// Initialise the buffer and line offsets
-		buffer = (text == null) ? new StringBuffer() : text;
+		// Initialise the buffer and line offsets.  The buffer is not synchronised: it is shared with the text
+		// searcher, which hands it over to the event-dispatching thread with SwingUtilities.invokeLater() or
+		// invokeAndWait() and does not access it again until the hand-off has completed.
+		buffer = (text == null) ? new StringBuilder() : text;
 		lineOffsets = getLineOffsets(0, buffer.length());
 
 		// Set the tab width according to the filename
@@ -176,8 +178,10 @@ class TextModel
 	public static Content read(File file)
 		throws AppException
 	{
-		// Read the file
-		StringBuffer text = TextFile.readSync(file, getCharacterEncoding());
+		// Read the file without locking it; a lock is taken only if the file is rewritten
+		TextFile textFile = new TextFile(file, getCharacterEncoding());
+		textFile.setLockFreeRead(true);
+		StringBuilder text = textFile.read();
 
 		// Change line separators to LFs
 		EnumMap<LineSeparator, Integer> lineSeparatorCounts =
@@ -455,18 +459,39 @@ class TextModel
 
 	//------------------------------------------------------------------
 
+	public void replaceText(StringBuilder text,
+							boolean       changed)
+	{
+		// Replace the buffer and rebuild the line offsets
+		buffer = text;
+		lineOffsets = getLineOffsets(0, buffer.length());
+
+		// Update the "model has changed" flag
+		if (changed)
+			this.changed = true;
+
+		// Clear the selection
+		selectionStart = 0;
+		selectionEnd = 0;
+
+		// Notify listeners of a change to the text model
+		fireStateChanged();
+	}
+
+	//------------------------------------------------------------------
+
 	public void write(LineSeparator lineSeparator)
 		throws AppException
 	{
 		if (changed)
 		{
-			StringBuffer outBuffer = buffer;
+			StringBuilder outBuffer = buffer;
 			switch (lineSeparator)
 			{
 				case CR:
 				{
 					int length = buffer.length();
-					outBuffer = new StringBuffer(length);
+					outBuffer = new StringBuilder(length);
 					for (int i = 0; i < length; i++)
 					{
 						char ch = buffer.charAt(i);
@@ -484,7 +509,7 @@ class TextModel
 				case CR_LF:
 				{
 					int length = buffer.length();
-					outBuffer = new StringBuffer(length + lineOffsets.length);
+					outBuffer = new StringBuilder(length + lineOffsets.length);
 					for (int i = 0; i < length; i++)
 					{
 						char ch = buffer.charAt(i);
@@ -568,7 +593,7 @@ class TextModel
 ////////////////////////////////////////////////////////////////////////
 
 	private	File					file;
-	private	StringBuffer			buffer;
+	private	StringBuilder			buffer;
 	private	int[]					lineOffsets;
 	private	int						tabWidth;
 	private	char					tabGlyphChar;
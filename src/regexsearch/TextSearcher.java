@@ -65,6 +65,7 @@ class TextSearcher
 	{
 		MATCH,
 		PREVIEW,
+		PREVIEW_ALL,
 		DONE
 	}
 
@@ -76,6 +77,8 @@ class TextSearcher
 		SKIP,
 		NEXT_FILE,
 		PREVIEW,
+		PREVIEW_ALL,
+		APPLY_ALL,
 		KEEP,
 		RESTORE,
 		CANCEL
@@ -91,6 +94,8 @@ class TextSearcher
 		SEARCH,
 		REPLACE,
 		PREVIEW,
+		PREVIEW_ALL,
+		APPLY_ALL,
 		RESTORE,
 		WRITE_FILE,
 		PUT_TEXT,
@@ -744,6 +749,20 @@ class TextSearcher
 
 	//------------------------------------------------------------------
 
+	public ReplacementList getReplacements()
+	{
+		return replacements;
+	}
+
+	//------------------------------------------------------------------
+
+	public CharSequence getText()
+	{
+		return text;
+	}
+
+	//------------------------------------------------------------------
+
 	public AggregateResult getAggregateResult()
 	{
 		return new AggregateResult((targetFile == null) ? -1 : numFiles,
@@ -828,6 +847,14 @@ class TextSearcher
 				searchState = SearchState.PREVIEW;
 				break;
 
+			case PREVIEW_ALL:
+				searchState = SearchState.PREVIEW_ALL;
+				break;
+
+			case APPLY_ALL:
+				searchState = SearchState.APPLY_ALL;
+				break;
+
 			case KEEP:
 				searchState = SearchState.SEARCH;
 				break;
@@ -998,7 +1025,7 @@ class TextSearcher
 					((TaskProgressDialog)Task.getProgressView()).setInfo(null, 0);
 
 					targetFile = null;
-					text = new StringBuffer(Utils.getClipboardText());
+					text = new StringBuilder(Utils.getClipboardText());
 					lineSeparator = LineSeparator.LF;
 					++numFiles;
 					searchState = SearchState.INIT_SEARCH;
@@ -1081,6 +1108,31 @@ class TextSearcher
 					break;
 				}
 
+				case PREVIEW_ALL:
+				{
+					try
+					{
+						findReplacements();
+						stopSubstate = StopSubstate.PREVIEW_ALL;
+						searchState = SearchState.STOP;
+					}
+					catch (AppException e)
+					{
+						addUnprocessed(targetFile);
+						searchState = (confirmContinue(e) && (targetFile != null)) ? SearchState.ITERATE_FILES
+																				   : SearchState.DONE;
+					}
+					break;
+				}
+
+				case APPLY_ALL:
+				{
+					searchState = !applyReplacements()
+											? SearchState.DONE
+											: (targetFile == null) ? SearchState.PUT_TEXT : SearchState.WRITE_FILE;
+					break;
+				}
+
 				case RESTORE:
 				{
 					searchState = replace(TextModel.ReplacementKind.RESTORE) ? SearchState.SEARCH : SearchState.DONE;
@@ -1145,6 +1197,7 @@ class TextSearcher
 				{
 					if (stopSubstate == StopSubstate.PREVIEW)
 						replace(TextModel.ReplacementKind.RESTORE);
+					replacements = null;
 					numReplacementsInFile = 0;
 					if (targetFile != null)
 					{
@@ -1239,6 +1292,8 @@ class TextSearcher
 		{
 			try
 			{
+				// The text buffer is modified only on the event-dispatching thread while this thread is blocked in
+				// invokeAndWait(), so the buffer needs no synchronisation of its own
 				if (replacementKind == TextModel.ReplacementKind.RESTORE)
 				{
 					SwingUtilities.invokeAndWait(() ->
@@ -1285,6 +1340,94 @@ class TextSearcher
 
 	//------------------------------------------------------------------
 
+	private void findReplacements()
+		throws AppException
+	{
+		try
+		{
+			// Create a list of the replacements of the current match and all remaining matches in the text.  The text
+			// is not modified, so the matches are found in the original text.
+			replacements = new ReplacementList();
+			int lineIndex = 0;
+			int index = 0;
+			while (true)
+			{
+				// Get the index of the line that contains the start of the match
+				int startIndex = matcher.start();
+				while (index < startIndex)
+				{
+					if (text.charAt(index++) == '\n')
+						++lineIndex;
+				}
+
+				// Add the replacement to the list
+				replacements.add(startIndex, matcher.end(), lineIndex,
+								 createReplacementString(replacementStr, matcher, regex));
+
+				// Find the next match
+				if (Task.isCancelled() || !matcher.find())
+					break;
+				++numMatchesInFile;
+				++numMatches;
+			}
+		}
+		catch (OutOfMemoryError e)
+		{
+			replacements = null;
+			throw new FileException(ErrorId.NOT_ENOUGH_MEMORY_TO_REPLACE, targetFile);
+		}
+		catch (AppException e)
+		{
+			replacements = null;
+			throw e;
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	private boolean applyReplacements()
+		throws AppException
+	{
+		try
+		{
+			try
+			{
+				// Apply the accepted replacements to a copy of the text, and pass the copy to the text model in a
+				// single hand-off to the event-dispatching thread
+				int numAccepted = replacements.getNumAccepted();
+				StringBuilder newText = replacements.apply(text);
+				SwingUtilities.invokeAndWait(() ->
+						getWindow().getTextModel().replaceText(newText, (numAccepted > 0)));
+				text = newText;
+				numReplacementsInFile += numAccepted;
+				return true;
+			}
+			catch (OutOfMemoryError e)
+			{
+				throw new FileException(ErrorId.NOT_ENOUGH_MEMORY_TO_REPLACE, targetFile);
+			}
+			catch (InvocationTargetException e)
+			{
+				throw new FileException(ErrorId.ERROR_DURING_REPLACEMENT, targetFile, e.getCause());
+			}
+			catch (Exception e)
+			{
+				throw new FileException(ErrorId.ERROR_DURING_REPLACEMENT, targetFile, e);
+			}
+			finally
+			{
+				replacements = null;
+			}
+		}
+		catch (AppException e)
+		{
+			addUnprocessed(targetFile);
+			return confirmContinue(e);
+		}
+	}
+
+	//------------------------------------------------------------------
+
 	private void addUnprocessed(File file)
 	{
 		if (file != null)
@@ -1319,7 +1462,8 @@ class TextSearcher
 	private	FileFilter			exclusionFilter;
 	private	Deque<Directory>	directoryStack;
 	private	File				targetFile;
-	private	StringBuffer		text;
+	private	StringBuilder		text;
+	private	ReplacementList		replacements;
 	private	int					textIndex;
 	private	LineSeparator		lineSeparator;
 	private	SearchState			searchState;
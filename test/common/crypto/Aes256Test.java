@@ -0,0 +1,75 @@
+/*====================================================================*\
+
+Aes256Test.java
+
+AES-256 block cipher test class.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package common.crypto;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import org.junit.Assert;
+import org.junit.Test;
+
+//----------------------------------------------------------------------
+
+
+// AES-256 BLOCK CIPHER TEST CLASS
+
+
+/**
+ * This class contains the unit tests of {@link Aes256}, which use the AES-256 example vector of FIPS-197,
+ * appendix C.3.
+ */
+
+public class Aes256Test
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	private static final	byte[]	KEY			=
+			CryptoTestUtils.hexToBytes("000102030405060708090a0b0c0d0e0f101112131415161718191a1b1c1d1e1f");
+	private static final	byte[]	PLAINTEXT	=
+			CryptoTestUtils.hexToBytes("00112233445566778899aabbccddeeff");
+	private static final	byte[]	CIPHERTEXT	=
+			CryptoTestUtils.hexToBytes("8ea2b7ca516745bfeafc49904b496089");
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	@Test
+	public void encryptBlock()
+	{
+		byte[] buffer = new byte[Aes256.BLOCK_SIZE];
+		Aes256.encryptBlock(PLAINTEXT, 0, buffer, 0, Aes256.createEncryptionKey(KEY));
+		Assert.assertArrayEquals(CIPHERTEXT, buffer);
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void decryptBlock()
+	{
+		byte[] buffer = new byte[Aes256.BLOCK_SIZE];
+		Aes256.decryptBlock(CIPHERTEXT, 0, buffer, 0, Aes256.createDecryptionKey(KEY));
+		Assert.assertArrayEquals(PLAINTEXT, buffer);
+	}
+
+	//------------------------------------------------------------------
+
+}
+
+//----------------------------------------------------------------------
@@ -0,0 +1,708 @@
+/*====================================================================*\
+
+CryptoBenchmark.java
+
+Cryptographic benchmark class.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package common.crypto;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.awt.image.BufferedImage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import common.misc.DaemonThread;
+
+//----------------------------------------------------------------------
+
+
+// CRYPTOGRAPHIC BENCHMARK CLASS
+
+
+/**
+ * This class provides throughput benchmarks for the cryptographic primitives of the {@code common.crypto}
+ * package, so that a change to the implementation of a primitive can be shown to be faster.  The correctness of
+ * the primitives is verified by the unit tests of the package.
+ * <p>
+ * Each benchmark runs a specified number of threads, each of which repeatedly performs an operation on its own
+ * instance of a primitive with a buffer of a specified size, first for a warm-up period and then for a
+ * measurement period.  The result of a benchmark is the total number of operations and bytes that were
+ * processed by all threads in the measurement period.
+ * </p>
+ * <p>
+ * The {@link #main(String[])} method runs each benchmark with buffer sizes of 1 kB, 64 kB and 1 MB and with one
+ * thread and as many threads as there are available processors.
+ * </p>
+ */
+
+public class CryptoBenchmark
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	/** The default duration (in milliseconds) of the measurement period of a benchmark. */
+	public static final		int	DEFAULT_BENCHMARK_DURATION	= 1000;
+
+	private static final	int[]	DEFAULT_BUFFER_SIZES	= { 1 << 10, 1 << 16, 1 << 20 };
+
+	private static final	String	BENCHMARK_THREAD_NAME	= "CryptoBenchmark";
+
+	private static final	int	SCRYPT_BENCHMARK_COST		= 14;
+	private static final	int	SCRYPT_BENCHMARK_NUM_BLOCKS	= 8;
+
+	private static final	int	ENCRYPTER_HEADER_ID	= 0x42454E43;  // "BENC"
+
+	private static final	int	CONCEALER_MAX_REPLACEMENT_DEPTH	= 2;
+
+	private static final	String	BENCHMARK_HEADER	=
+			String.format("%-20s %10s %8s %12s %12s", "Benchmark", "Buffer", "Threads", "MB/s", "Ops/s");
+
+	private static final	String	BENCHMARK_FORMAT	= "%-20s %10d %8d %12.2f %12.1f";
+
+////////////////////////////////////////////////////////////////////////
+//  Enumerated types
+////////////////////////////////////////////////////////////////////////
+
+
+	// BENCHMARK
+
+
+	/**
+	 * This is an enumeration of the benchmarks.
+	 */
+
+	public enum Benchmark
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constants
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Encryption of a buffer in ECB mode with the AES-256 block cipher.
+		 */
+		AES256
+		(
+			"AES-256"
+		),
+
+		/**
+		 * Generation of a buffer of Salsa20/20 keystream.
+		 */
+		SALSA20
+		(
+			"Salsa20/20"
+		),
+
+		/**
+		 * HMAC-SHA256 of a buffer.
+		 */
+		HMAC_SHA256
+		(
+			"HMAC-SHA256"
+		),
+
+		/**
+		 * SHAd-256 hash of a buffer.
+		 */
+		SHAD256
+		(
+			"SHAd-256"
+		),
+
+		/**
+		 * Generation of a buffer of random data by Fortuna with the AES-256 cipher.
+		 */
+		FORTUNA_AES256
+		(
+			"Fortuna/AES-256"
+		),
+
+		/**
+		 * Generation of a buffer of random data by Fortuna with the Salsa20 cipher.
+		 */
+		FORTUNA_SALSA20
+		(
+			"Fortuna/Salsa20"
+		),
+
+		/**
+		 * Derivation of a key with the scrypt KDF (<i>N</i> = 2<sup>14</sup>, <i>r</i> = 8, <i>p</i> = 1).
+		 * The buffer size is ignored, and the number of bytes is the size of the memory that is used by the
+		 * KDF.
+		 */
+		SCRYPT
+		(
+			"scrypt"
+		),
+
+		/**
+		 * Encryption of a buffer by {@link StreamEncrypter} in the segmented format without compression, with the
+		 * buffer size as the segment size.
+		 */
+		STREAM_ENCRYPTER
+		(
+			"StreamEncrypter"
+		),
+
+		/**
+		 * Concealment of a buffer by {@link StreamConcealer} in the smallest square carrier image that can
+		 * hold it with a replacement depth of 2 bits per colour component.
+		 */
+		STREAM_CONCEALER
+		(
+			"StreamConcealer"
+		);
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private Benchmark(String text)
+		{
+			this.text = text;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : overriding methods
+	////////////////////////////////////////////////////////////////////
+
+		@Override
+		public String toString()
+		{
+			return text;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance fields
+	////////////////////////////////////////////////////////////////////
+
+		private	String	text;
+
+	}
+
+	//==================================================================
+
+////////////////////////////////////////////////////////////////////////
+//  Member interfaces
+////////////////////////////////////////////////////////////////////////
+
+
+	// OPERATION INTERFACE
+
+
+	/**
+	 * This interface defines the method that is called repeatedly by a thread of a benchmark.
+	 */
+
+	private interface IOperation
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Methods
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Performs the operation of a benchmark once.
+		 *
+		 * @return the number of bytes that were processed by the operation.
+		 * @throws Exception
+		 *           if an error occurred when performing the operation.
+		 */
+
+		long perform()
+			throws Exception;
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+////////////////////////////////////////////////////////////////////////
+//  Member classes : non-inner classes
+////////////////////////////////////////////////////////////////////////
+
+
+	// BENCHMARK RESULT CLASS
+
+
+	/**
+	 * This class encapsulates the result of a benchmark.
+	 */
+
+	public static class BenchmarkResult
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private BenchmarkResult(Benchmark benchmark,
+								int       bufferSize,
+								int       numThreads,
+								long      numOperations,
+								long      numBytes,
+								long      time)
+		{
+			this.benchmark = benchmark;
+			this.bufferSize = bufferSize;
+			this.numThreads = numThreads;
+			this.numOperations = numOperations;
+			this.numBytes = numBytes;
+			this.time = time;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : overriding methods
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Returns a string representation of this result, in the form of a row of the table that is written by
+		 * {@link CryptoBenchmark#main(String[])}.
+		 *
+		 * @return a string representation of this result.
+		 */
+
+		@Override
+		public String toString()
+		{
+			return String.format(BENCHMARK_FORMAT, benchmark, bufferSize, numThreads,
+								 getBytesPerSecond() / (double)(1 << 20), getOperationsPerSecond());
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Returns the throughput of the benchmark in bytes per second.
+		 *
+		 * @return the throughput of the benchmark in bytes per second.
+		 */
+
+		public double getBytesPerSecond()
+		{
+			return (double)numBytes * 1.0e9 / (double)time;
+		}
+
+		//--------------------------------------------------------------
+
+		/**
+		 * Returns the throughput of the benchmark in operations per second.
+		 *
+		 * @return the throughput of the benchmark in operations per second.
+		 */
+
+		public double getOperationsPerSecond()
+		{
+			return (double)numOperations * 1.0e9 / (double)time;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance fields
+	////////////////////////////////////////////////////////////////////
+
+		/** The benchmark. */
+		public	Benchmark	benchmark;
+
+		/** The size (in bytes) of the buffer of each operation. */
+		public	int			bufferSize;
+
+		/** The number of threads. */
+		public	int			numThreads;
+
+		/** The number of operations that were performed in the measurement period. */
+		public	long		numOperations;
+
+		/** The number of bytes that were processed in the measurement period. */
+		public	long		numBytes;
+
+		/** The duration (in nanoseconds) of the measurement period. */
+		public	long		time;
+
+	}
+
+	//==================================================================
+
+
+	// BENCHMARK WORKER CLASS
+
+
+	/**
+	 * This class implements a thread of a benchmark.
+	 */
+
+	private static class Worker
+		implements Runnable
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private Worker(IOperation operation,
+					   long       warmUpEndTime,
+					   long       endTime)
+		{
+			this.operation = operation;
+			this.warmUpEndTime = warmUpEndTime;
+			this.endTime = endTime;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : Runnable interface
+	////////////////////////////////////////////////////////////////////
+
+		public void run()
+		{
+			try
+			{
+				// Warm up
+				while (System.nanoTime() < warmUpEndTime)
+					operation.perform();
+
+				// Measure
+				while (System.nanoTime() < endTime)
+				{
+					numBytes += operation.perform();
+					++numOperations;
+				}
+			}
+			catch (Throwable e)
+			{
+				exception = e;
+			}
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance fields
+	////////////////////////////////////////////////////////////////////
+
+		private	IOperation	operation;
+		private	long		warmUpEndTime;
+		private	long		endTime;
+		private	long		numOperations;
+		private	long		numBytes;
+		private	Throwable	exception;
+
+	}
+
+	//==================================================================
+
+////////////////////////////////////////////////////////////////////////
+//  Constructors
+////////////////////////////////////////////////////////////////////////
+
+	private CryptoBenchmark()
+	{
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Runs each benchmark with the default buffer sizes and thread counts, and writes the results to the standard
+	 * output stream as a table.
+	 *
+	 * @param  args  the command-line arguments, which are ignored.
+	 * @throws Exception
+	 *           if an error occurred when running a benchmark.
+	 */
+
+	public static void main(String[] args)
+		throws Exception
+	{
+		// Run benchmarks
+		int numProcessors = Runtime.getRuntime().availableProcessors();
+		int[] threadCounts = (numProcessors > 1) ? new int[] { 1, numProcessors } : new int[] { 1 };
+		System.out.println(BENCHMARK_HEADER);
+		for (Benchmark benchmark : Benchmark.values())
+		{
+			for (int numThreads : threadCounts)
+			{
+				for (int bufferSize : DEFAULT_BUFFER_SIZES)
+				{
+					System.out.println(runBenchmark(benchmark, bufferSize, numThreads, DEFAULT_BENCHMARK_DURATION));
+					if (benchmark == Benchmark.SCRYPT)
+						break;
+				}
+			}
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Runs a specified benchmark with a specified buffer size and number of threads, and returns the result.
+	 * Each thread performs the operation of the benchmark for a warm-up period of half the specified duration
+	 * before the measurement period starts.
+	 *
+	 * @param  benchmark   the benchmark that will be run.
+	 * @param  bufferSize  the size (in bytes) of the buffer of each operation.
+	 * @param  numThreads  the number of threads that will perform the operation concurrently.
+	 * @param  duration    the duration (in milliseconds) of the measurement period.
+	 * @return the result of the benchmark.
+	 * @throws IllegalArgumentException
+	 *           if
+	 *           <ul>
+	 *             <li>{@code bufferSize} is less than 1 or greater than {@link Fortuna#MAX_BLOCK_SIZE}, or</li>
+	 *             <li>{@code numThreads} is less than 1, or</li>
+	 *             <li>{@code duration} is less than 1.</li>
+	 *           </ul>
+	 * @throws Exception
+	 *           if an error occurred when performing the operation of the benchmark.
+	 */
+
+	public static BenchmarkResult runBenchmark(Benchmark benchmark,
+											   int       bufferSize,
+											   int       numThreads,
+											   int       duration)
+		throws Exception
+	{
+		// Validate arguments
+		if ((bufferSize < 1) || (bufferSize > Fortuna.MAX_BLOCK_SIZE) || (numThreads < 1) || (duration < 1))
+			throw new IllegalArgumentException();
+
+		// Create operations
+		List<IOperation> operations = new ArrayList<>();
+		for (int i = 0; i < numThreads; i++)
+			operations.add(createOperation(benchmark, bufferSize));
+
+		// Start threads
+		long warmUpEndTime = System.nanoTime() + (long)duration * 500000L;
+		long endTime = warmUpEndTime + (long)duration * 1000000L;
+		List<Worker> workers = new ArrayList<>();
+		List<Thread> threads = new ArrayList<>();
+		for (IOperation operation : operations)
+		{
+			Worker worker = new Worker(operation, warmUpEndTime, endTime);
+			workers.add(worker);
+			Thread thread = DaemonThread.create(worker, BENCHMARK_THREAD_NAME);
+			threads.add(thread);
+			thread.start();
+		}
+
+		// Wait for threads to finish
+		for (Thread thread : threads)
+			thread.join();
+		long time = Math.max(System.nanoTime(), endTime) - warmUpEndTime;
+
+		// Combine results of threads
+		long numOperations = 0;
+		long numBytes = 0;
+		for (Worker worker : workers)
+		{
+			if (worker.exception instanceof Exception)
+				throw (Exception)worker.exception;
+			if (worker.exception instanceof Error)
+				throw (Error)worker.exception;
+			numOperations += worker.numOperations;
+			numBytes += worker.numBytes;
+		}
+		return new BenchmarkResult(benchmark, bufferSize, numThreads, numOperations, numBytes, time);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Creates and returns an operation for a specified benchmark and buffer size.  Each operation has its own
+	 * instance of the primitive and its own buffers.
+	 *
+	 * @param  benchmark   the benchmark.
+	 * @param  bufferSize  the size (in bytes) of the buffer of the operation.
+	 * @return an operation for {@code benchmark}.
+	 */
+
+	private static IOperation createOperation(Benchmark benchmark,
+											  int       bufferSize)
+	{
+		byte[] data = new byte[bufferSize];
+		new FortunaAes256(BENCHMARK_THREAD_NAME).getRandomBytes(data, 0, bufferSize);
+		byte[] key = Aes256.padCipherKey(Arrays.copyOf(data, Math.min(Aes256.KEY_SIZE, bufferSize)));
+
+		switch (benchmark)
+		{
+			case AES256:
+			{
+				int[][] roundKeys = Aes256.createEncryptionKey(key);
+				int length = bufferSize - bufferSize % Aes256.BLOCK_SIZE;
+				byte[] outBuffer = new byte[bufferSize];
+				return () ->
+				{
+					for (int offset = 0; offset < length; offset += Aes256.BLOCK_SIZE)
+						Aes256.encryptBlock(data, offset, outBuffer, offset, roundKeys);
+					return length;
+				};
+			}
+
+			case SALSA20:
+			{
+				Salsa20 cipher = new Salsa20(20, key, new byte[Salsa20.NONCE_SIZE]);
+				int numBlocks = Math.max(1, bufferSize / Salsa20.BLOCK_SIZE);
+				byte[] outBuffer = new byte[numBlocks * Salsa20.BLOCK_SIZE];
+				long[] blockCounter = new long[1];
+				return () ->
+				{
+					cipher.getBlocks(blockCounter[0], numBlocks, outBuffer, 0);
+					blockCounter[0] += numBlocks;
+					return outBuffer.length;
+				};
+			}
+
+			case HMAC_SHA256:
+			{
+				HmacSha256 hmac = new HmacSha256(key);
+				return () ->
+				{
+					hmac.getValue(data);
+					return bufferSize;
+				};
+			}
+
+			case SHAD256:
+			{
+				ShaD256 hash = new ShaD256();
+				return () ->
+				{
+					hash.digest(data);
+					return bufferSize;
+				};
+			}
+
+			case FORTUNA_AES256:
+			case FORTUNA_SALSA20:
+			{
+				FortunaCipher cipher = (benchmark == Benchmark.FORTUNA_AES256) ? FortunaCipher.AES256
+																				: FortunaCipher.SALSA20;
+				Fortuna prng = cipher.createPrng(key);
+				return () ->
+				{
+					prng.getRandomBytes(data, 0, bufferSize);
+					return bufferSize;
+				};
+			}
+
+			case SCRYPT:
+			{
+				byte[] salt = new byte[Long.BYTES];
+				return () ->
+				{
+					Scrypt.deriveKey(key, salt, SCRYPT_BENCHMARK_COST, SCRYPT_BENCHMARK_NUM_BLOCKS, 1, 1,
+									 HmacSha256.HASH_VALUE_SIZE);
+					return 128L * SCRYPT_BENCHMARK_NUM_BLOCKS << SCRYPT_BENCHMARK_COST;
+				};
+			}
+
+			case STREAM_ENCRYPTER:
+			{
+				StreamEncrypter encrypter = new StreamEncrypter(FortunaCipher.AES256,
+																new StreamEncrypter.Header(ENCRYPTER_HEADER_ID, 0));
+				encrypter.setStreamFormat(StreamEncrypter.StreamFormat.SEGMENTED);
+				encrypter.setCompression(StreamEncrypter.Compression.STORE);
+				encrypter.setSegmentSize(Math.min(Math.max(StreamEncrypter.MIN_SEGMENT_SIZE, bufferSize),
+												  StreamEncrypter.MAX_SEGMENT_SIZE));
+				encrypter.setNumThreads(1);
+				int[] offset = new int[1];
+				StreamEncrypter.IInput input = (buffer, off, length) ->
+				{
+					int readLength = Math.min(length, bufferSize - offset[0]);
+					System.arraycopy(data, offset[0], buffer, off, readLength);
+					offset[0] += readLength;
+					return readLength;
+				};
+				StreamEncrypter.IOutput output = (buffer, off, length) -> { };
+				return () ->
+				{
+					offset[0] = 0;
+					encrypter.encrypt(input, output, bufferSize, 0, key, key);
+					return bufferSize;
+				};
+			}
+
+			case STREAM_CONCEALER:
+			{
+				int bitsPerPixel = 3 * CONCEALER_MAX_REPLACEMENT_DEPTH;
+				long numPixels = ((long)bufferSize * Byte.SIZE + StreamConcealer.MAX_NUM_LENGTH_BITS
+										+ bitsPerPixel - 1) / bitsPerPixel;
+				int size = (int)Math.ceil(Math.sqrt((double)numPixels));
+				BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+				StreamConcealer concealer = new StreamConcealer();
+				StreamConcealer.ILengthEncoder lengthEncoder = new StreamConcealer.ILengthEncoder()
+				{
+					public int getLengthFieldNumBits(int numPixels)
+					{
+						return StreamConcealer.MAX_NUM_LENGTH_BITS;
+					}
+
+					public byte[] encodeLength(int length,
+											   int numPixels)
+					{
+						return new byte[] { (byte)(length >>> 16), (byte)(length >>> 8), (byte)length };
+					}
+				};
+				StreamConcealer.IRandomSource randomSource = (buffer, off, length) ->
+				{
+					System.arraycopy(data, 0, buffer, off, Math.min(length, bufferSize));
+					return Math.min(length, bufferSize);
+				};
+				int[] offset = new int[1];
+				StreamConcealer.IInput input = (buffer, off, length) ->
+				{
+					int readLength = Math.min(length, bufferSize - offset[0]);
+					System.arraycopy(data, offset[0], buffer, off, readLength);
+					offset[0] += readLength;
+					return readLength;
+				};
+				StreamConcealer.IRowOutput output = (rgbValues, off, numRows) -> { };
+				return () ->
+				{
+					offset[0] = 0;
+					concealer.conceal(input, image, bufferSize, lengthEncoder, CONCEALER_MAX_REPLACEMENT_DEPTH,
+									  randomSource, output);
+					return bufferSize;
+				};
+			}
+
+			default:
+				throw new IllegalArgumentException();
+		}
+	}
+
+	//------------------------------------------------------------------
+
+}
+
+//----------------------------------------------------------------------
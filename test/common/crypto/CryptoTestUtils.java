@@ -0,0 +1,165 @@
+/*====================================================================*\
+
+CryptoTestUtils.java
+
+Cryptographic test utility methods class.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package common.crypto;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import common.misc.NumberUtils;
+
+//----------------------------------------------------------------------
+
+
+// CRYPTOGRAPHIC TEST UTILITY METHODS CLASS
+
+
+/**
+ * This class provides utility methods that create the data of the unit tests of the {@code common.crypto}
+ * package.
+ */
+
+class CryptoTestUtils
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	private static final	String[]	TEXT_WORDS	=
+	{
+		"alpha ", "bravo ", "charlie ", "delta ", "echo ", "foxtrot ", "golf ", "hotel ", "india ", "juliet ",
+		"kilo ", "lima ", "mike ", "november ", "oscar ", "papa ", "quebec\n"
+	};
+
+////////////////////////////////////////////////////////////////////////
+//  Constructors
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Prevents this class from being instantiated externally.
+	 */
+
+	private CryptoTestUtils()
+	{
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Converts a string of hexadecimal digits, such as a test vector from a specification, to an array of bytes.
+	 *
+	 * @param  str  the string of hexadecimal digits that will be converted.
+	 * @return the bytes whose hexadecimal representation is {@code str}.
+	 */
+
+	static byte[] hexToBytes(String str)
+	{
+		return NumberUtils.hexStringToBytes(str);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns the UTF-8 encoding of a specified string.
+	 *
+	 * @param  str  the string that will be encoded.
+	 * @return the UTF-8 encoding of {@code str}.
+	 */
+
+	static byte[] textToBytes(String str)
+	{
+		return str.getBytes(StandardCharsets.UTF_8);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Creates and returns an array of a specified length whose elements all have a specified value.
+	 *
+	 * @param  length  the length of the array.
+	 * @param  value   the value of each element of the array; only the low-order eight bits are used.
+	 * @return an array of {@code length} bytes, each of which is {@code value}.
+	 */
+
+	static byte[] filledBytes(int length,
+							  int value)
+	{
+		byte[] data = new byte[length];
+		Arrays.fill(data, (byte)value);
+		return data;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Creates and returns an array of a specified length that is filled with pseudo-random data from a generator
+	 * with a specified seed, so that the data is reproducible.
+	 *
+	 * @param  length  the length of the array.
+	 * @param  seed    the seed of the generator of the data.
+	 * @return an array of {@code length} pseudo-random bytes.
+	 */
+
+	static byte[] randomBytes(int  length,
+							  long seed)
+	{
+		byte[] data = new byte[length];
+		new Random(seed).nextBytes(data);
+		return data;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Creates and returns an array of a specified length that contains text-like data, which consists of words
+	 * that are drawn from a small vocabulary by a generator with a specified seed.  The data is compressible but
+	 * not trivially so.
+	 *
+	 * @param  length  the length of the array.
+	 * @param  seed    the seed of the generator that selects the words.
+	 * @return an array of {@code length} bytes of text-like data.
+	 */
+
+	static byte[] textLikeBytes(int  length,
+								long seed)
+	{
+		Random prng = new Random(seed);
+		byte[] data = new byte[length];
+		int offset = 0;
+		while (offset < length)
+		{
+			byte[] word = textToBytes(TEXT_WORDS[prng.nextInt(TEXT_WORDS.length)]);
+			int copyLength = Math.min(word.length, length - offset);
+			System.arraycopy(word, 0, data, offset, copyLength);
+			offset += copyLength;
+		}
+		return data;
+	}
+
+	//------------------------------------------------------------------
+
+}
+
+//----------------------------------------------------------------------
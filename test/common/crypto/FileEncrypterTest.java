@@ -0,0 +1,300 @@
+/*====================================================================*\
+
+FileEncrypterTest.java
+
+File encrypter test class.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package common.crypto;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+
+import java.nio.file.Files;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+
+import org.junit.rules.TemporaryFolder;
+
+import common.exception.AppException;
+
+//----------------------------------------------------------------------
+
+
+// FILE ENCRYPTER TEST CLASS
+
+
+/**
+ * This class contains the unit tests of {@link FileEncrypter}, which test that files of various lengths are
+ * decrypted to the original data, that the plaintext of a file in the {@linkplain
+ * StreamEncrypter.StreamFormat#INDEXED indexed format} can be read at arbitrary positions through a decrypting
+ * channel, that a batch operation is neither misled by a symbolic link to an ancestor directory nor led out of
+ * its directory tree by symbolic links, and that the keys of files in a batch are derived with the number of
+ * rounds of the Salsa20 core of each file.
+ */
+
+public class FileEncrypterTest
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	private static final	int		HEADER_ID	= 0x54455354;  // "TEST"
+
+	// Lengths of files that are read and written directly or through pipeline threads
+	private static final	int[]	FILE_LENGTHS	= { 0, 10, (4 << 20) - 1, (4 << 20) + 1 };
+
+	private static final	int		RANDOM_ACCESS_FILE_LENGTH	= (5 << 20) + 123;
+	private static final	int		NUM_RANDOM_READS			= 100;
+	private static final	int		MAX_READ_LENGTH				= 3 << 20;
+
+	// Files whose keys are derived with different numbers of rounds of the Salsa20 core are decrypted in one batch
+	private static final	int		NUM_MIXED_ROUNDS_FILES	= 16;
+	private static final	int		NUM_BATCH_WORKERS		= 4;
+
+	private static final	byte[]	KEY			= CryptoTestUtils.randomBytes(32, 11);
+	private static final	byte[]	RANDOM_KEY	= CryptoTestUtils.randomBytes(32, 12);
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	@Test
+	public void roundTrip()
+		throws AppException, IOException
+	{
+		for (StreamEncrypter.StreamFormat format : StreamEncrypter.StreamFormat.values())
+		{
+			FileEncrypter encrypter = createEncrypter(format);
+			for (int length : FILE_LENGTHS)
+			{
+				byte[] data = CryptoTestUtils.textLikeBytes(length, length);
+				File inFile = writeFile(data);
+				File encryptedFile = temporaryFolder.newFile();
+				File outFile = temporaryFolder.newFile();
+				encrypter.encrypt(inFile, encryptedFile, KEY, RANDOM_KEY);
+				encrypter.validate(encryptedFile, KEY);
+				encrypter.decrypt(encryptedFile, outFile, KEY);
+				Assert.assertArrayEquals(data, Files.readAllBytes(outFile.toPath()));
+			}
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void decryptingChannel()
+		throws AppException, IOException
+	{
+		// Encrypt file
+		byte[] data = CryptoTestUtils.textLikeBytes(RANDOM_ACCESS_FILE_LENGTH, 13);
+		FileEncrypter encrypter = createEncrypter(StreamEncrypter.StreamFormat.INDEXED);
+		File encryptedFile = temporaryFolder.newFile();
+		encrypter.encrypt(writeFile(data), encryptedFile, KEY, RANDOM_KEY);
+
+		// Read plaintext at random positions
+		try (SeekableByteChannel channel = encrypter.openDecryptingChannel(encryptedFile, KEY))
+		{
+			Assert.assertEquals(data.length, channel.size());
+
+			Random prng = new Random(RANDOM_ACCESS_FILE_LENGTH);
+			for (int i = 0; i < NUM_RANDOM_READS; i++)
+			{
+				int position = prng.nextInt(data.length);
+				ByteBuffer buffer = ByteBuffer.allocate(1 + prng.nextInt(MAX_READ_LENGTH));
+				channel.position(position);
+				while (buffer.hasRemaining() && (channel.read(buffer) > 0))
+				{
+					// do nothing
+				}
+				buffer.flip();
+				Assert.assertEquals(Math.min(buffer.capacity(), data.length - position), buffer.remaining());
+				Assert.assertEquals(ByteBuffer.wrap(data, position, buffer.remaining()), buffer);
+				Assert.assertEquals(position + buffer.remaining(), channel.position());
+			}
+
+			// Read at end of plaintext
+			channel.position(data.length);
+			Assert.assertEquals(-1, channel.read(ByteBuffer.allocate(1)));
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void processFilesWithSymbolicLinkLoop()
+		throws AppException, IOException
+	{
+		// Create directory tree with a link to its root
+		File inDirectory = temporaryFolder.newFolder();
+		File subdirectory = new File(inDirectory, "sub");
+		Assume.assumeTrue(subdirectory.mkdir());
+		Files.write(new File(inDirectory, "a.txt").toPath(), CryptoTestUtils.textToBytes("a"));
+		Files.write(new File(subdirectory, "b.txt").toPath(), CryptoTestUtils.textToBytes("b"));
+		try
+		{
+			Files.createSymbolicLink(new File(subdirectory, "loop").toPath(), inDirectory.toPath());
+		}
+		catch (UnsupportedOperationException | IOException e)
+		{
+			Assume.assumeNoException(e);
+		}
+
+		// Encrypt files
+		FileEncrypter encrypter = createEncrypter(StreamEncrypter.StreamFormat.SEGMENTED);
+		List<FileEncrypter.BatchResult> results =
+				encrypter.processFiles(FileEncrypter.BatchOperation.ENCRYPT, inDirectory, temporaryFolder.newFolder(),
+									   null, KEY, RANDOM_KEY, 2, null);
+		Assert.assertEquals(2, results.size());
+		for (FileEncrypter.BatchResult result : results)
+			Assert.assertTrue(result.isSuccessful());
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void processFilesWithSymbolicLinksOutOfTree()
+		throws AppException, IOException
+	{
+		// Create directory tree with links to a directory and a file outside it
+		File outsideDirectory = temporaryFolder.newFolder();
+		File outsideFile = new File(outsideDirectory, "outside.txt");
+		Files.write(outsideFile.toPath(), CryptoTestUtils.textToBytes("outside"));
+		File inDirectory = temporaryFolder.newFolder();
+		Files.write(new File(inDirectory, "a.txt").toPath(), CryptoTestUtils.textToBytes("a"));
+		try
+		{
+			Files.createSymbolicLink(new File(inDirectory, "dirLink").toPath(), outsideDirectory.toPath());
+			Files.createSymbolicLink(new File(inDirectory, "fileLink.txt").toPath(), outsideFile.toPath());
+		}
+		catch (UnsupportedOperationException | IOException e)
+		{
+			Assume.assumeNoException(e);
+		}
+
+		// Validate files; only the file in the tree is found
+		FileEncrypter encrypter = createEncrypter(StreamEncrypter.StreamFormat.SEGMENTED);
+		List<FileEncrypter.BatchResult> results =
+				encrypter.processFiles(FileEncrypter.BatchOperation.VALIDATE, inDirectory, null, null, KEY, null, 1,
+									   null);
+		Assert.assertEquals(1, results.size());
+		Assert.assertEquals("a.txt", results.get(0).getInFile().getName());
+	}
+
+	@Test
+	public void processFilesWithMixedRoundCounts()
+		throws AppException, IOException
+	{
+		// Encrypt files whose keys are derived alternately with 8 and 20 rounds of the Salsa20 core
+		FileEncrypter[] encrypters =
+		{
+			createKdfEncrypter(Scrypt.Salsa20NumRounds._8),
+			createKdfEncrypter(Scrypt.Salsa20NumRounds._20)
+		};
+		File inDirectory = temporaryFolder.newFolder();
+		File encryptedDirectory = temporaryFolder.newFolder();
+		for (int i = 0; i < NUM_MIXED_ROUNDS_FILES; i++)
+		{
+			String filename = i + ".txt";
+			File inFile = new File(inDirectory, filename);
+			Files.write(inFile.toPath(), CryptoTestUtils.textLikeBytes(1000 + i, i));
+			encrypters[i % 2].encrypt(inFile, new File(encryptedDirectory, filename), KEY, RANDOM_KEY);
+		}
+
+		// Decrypt files concurrently
+		List<FileEncrypter.BatchResult> results =
+				encrypters[0].processFiles(FileEncrypter.BatchOperation.DECRYPT, encryptedDirectory,
+										   temporaryFolder.newFolder(), null, KEY, null, NUM_BATCH_WORKERS, null);
+		Assert.assertEquals(NUM_MIXED_ROUNDS_FILES, results.size());
+		for (FileEncrypter.BatchResult result : results)
+		{
+			Assert.assertTrue(result.isSuccessful());
+			Assert.assertArrayEquals(Files.readAllBytes(new File(inDirectory, result.getInFile().getName()).toPath()),
+									 Files.readAllBytes(result.getOutFile().toPath()));
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Creates and returns a file encrypter with a header and a specified format.
+	 *
+	 * @param  format  the format of the encrypted files.
+	 * @return a file encrypter whose encrypted files have the format {@code format}.
+	 */
+
+	private FileEncrypter createEncrypter(StreamEncrypter.StreamFormat format)
+	{
+		FileEncrypter encrypter = new FileEncrypter(FortunaCipher.AES256, new StreamEncrypter.Header(HEADER_ID, 0));
+		encrypter.setStreamFormat(format);
+		return encrypter;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Creates and returns a file encrypter with a header whose content-encryption keys are derived by a
+	 * low-cost KDF with a specified number of rounds of the Salsa20 core.
+	 *
+	 * @param  numRounds  the number of rounds of the Salsa20 core.
+	 * @return a file encrypter whose KDF has {@code numRounds} rounds of the Salsa20 core.
+	 */
+
+	private FileEncrypter createKdfEncrypter(Scrypt.Salsa20NumRounds numRounds)
+	{
+		return new FileEncrypter(FortunaCipher.AES256, new StreamEncrypter.KdfParams(numRounds, 8, 2, 1, 1),
+								 new StreamEncrypter.Header(HEADER_ID, 0));
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Writes some specified data to a new file in the temporary folder, and returns the file.
+	 *
+	 * @param  data  the data that will be written to the file.
+	 * @return the file to which {@code data} was written.
+	 * @throws IOException
+	 *           if an error occurred when creating or writing the file.
+	 */
+
+	private File writeFile(byte[] data)
+		throws IOException
+	{
+		File file = temporaryFolder.newFile();
+		Files.write(file.toPath(), data);
+		return file;
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance fields
+////////////////////////////////////////////////////////////////////////
+
+	@Rule
+	public	TemporaryFolder	temporaryFolder	= new TemporaryFolder();
+
+}
+
+//----------------------------------------------------------------------
@@ -0,0 +1,136 @@
+/*====================================================================*\
+
+FortunaAes256Test.java
+
+Fortuna/AES-256 pseudo-random number generator test class.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package common.crypto;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+//----------------------------------------------------------------------
+
+
+// FORTUNA/AES-256 PSEUDO-RANDOM NUMBER GENERATOR TEST CLASS
+
+
+/**
+ * This class contains the unit tests of {@link FortunaAes256}, which test that the JCE backend generates the same
+ * random data as the pure-Java backend.  The tests of the JCE backend are skipped if the backend is not available.
+ */
+
+public class FortunaAes256Test
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	private static final	String	SEED	= "FortunaAes256Test";
+
+	// Request lengths that are and are not multiples of the block size; the generator is rekeyed after each request
+	private static final	int[]	REQUEST_LENGTHS	=
+	{
+		1, 15, 16, 17, 1000, (1 << 16) + 3, Fortuna.MAX_BLOCK_SIZE
+	};
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	@Before
+	public void setUp()
+	{
+		defaultBackend = FortunaAes256.getDefaultBackend();
+	}
+
+	//------------------------------------------------------------------
+
+	@After
+	public void tearDown()
+	{
+		FortunaAes256.setDefaultBackend(defaultBackend);
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void javaBackend()
+	{
+		FortunaAes256 prng = createPrng(FortunaAes256.Backend.JAVA);
+		Assert.assertEquals(FortunaAes256.Backend.JAVA, prng.getBackend());
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void jceBackendMatchesJavaBackend()
+	{
+		Assume.assumeTrue(FortunaAes256.isJceAvailable());
+
+		FortunaAes256 javaPrng = createPrng(FortunaAes256.Backend.JAVA);
+		FortunaAes256 jcePrng = createPrng(FortunaAes256.Backend.JCE);
+		Assert.assertEquals(FortunaAes256.Backend.JCE, jcePrng.getBackend());
+		for (int length : REQUEST_LENGTHS)
+			Assert.assertArrayEquals(javaPrng.getRandomBytes(length), jcePrng.getRandomBytes(length));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void jceBackendCloneMatchesJavaBackend()
+	{
+		Assume.assumeTrue(FortunaAes256.isJceAvailable());
+
+		FortunaAes256 javaPrng = createPrng(FortunaAes256.Backend.JAVA);
+		FortunaAes256 jcePrng = createPrng(FortunaAes256.Backend.JCE);
+		Assert.assertArrayEquals(javaPrng.getRandomBytes(REQUEST_LENGTHS[1]),
+								 jcePrng.getRandomBytes(REQUEST_LENGTHS[1]));
+		FortunaAes256 jceCopy = jcePrng.clone();
+		Assert.assertArrayEquals(javaPrng.getRandomBytes(REQUEST_LENGTHS[4]),
+								 jceCopy.getRandomBytes(REQUEST_LENGTHS[4]));
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Creates and returns a PRNG with a fixed seed and a specified backend.  The default backend is set to the
+	 * specified backend before the PRNG is created; it is restored after each test.
+	 *
+	 * @param  backend  the backend of the PRNG.
+	 * @return a PRNG with a fixed seed whose backend is {@code backend}, if it is available.
+	 */
+
+	private FortunaAes256 createPrng(FortunaAes256.Backend backend)
+	{
+		FortunaAes256.setDefaultBackend(backend);
+		return new FortunaAes256(SEED);
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance fields
+////////////////////////////////////////////////////////////////////////
+
+	private	FortunaAes256.Backend	defaultBackend;
+
+}
+
+//----------------------------------------------------------------------
@@ -0,0 +1,257 @@
+/*====================================================================*\
+
+FortunaEntropyPoolTest.java
+
+Fortuna entropy pool test class.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package common.crypto;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+//----------------------------------------------------------------------
+
+
+// FORTUNA ENTROPY POOL TEST CLASS
+
+
+/**
+ * This class contains the unit tests of {@link Fortuna.EntropyPool}, which test that the value of a pool whose
+ * entropy is stored in the state of its hash function is the SHAd-256 hash of all the entropy that was added to it,
+ * however the entropy was divided between additions, and that the value of a pool whose entropy is extracted from
+ * its hash function after each addition is the result of chaining the hash of each addition with the hash of the
+ * preceding additions.  A clone of a pool is tested in the same way.
+ */
+
+public class FortunaEntropyPoolTest
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	private static final	long	SEED	= 0x504F4F4C;
+
+	private static final	int		NUM_ADDITIONS		= 300;
+	private static final	int		MAX_BLOCK_LENGTH	= 150;
+
+	// The clone of a pool is made after this number of additions
+	private static final	int		CLONE_INDEX	= 100;
+
+////////////////////////////////////////////////////////////////////////
+//  Member classes : non-inner classes
+////////////////////////////////////////////////////////////////////////
+
+
+	// EXPECTATION CLASS
+
+
+	/**
+	 * This class computes the expected value of an entropy pool from the additions to the pool.
+	 */
+
+	private static class Expectation
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Creates the expectation of an empty entropy pool.
+		 *
+		 * @param cloneHash  if {@code true}, the entropy of the pool is stored in the state of its hash function;
+		 *                   otherwise, it is extracted from the hash function after each addition.
+		 */
+
+		private Expectation(boolean cloneHash)
+		{
+			this.cloneHash = cloneHash;
+			hash = new ShaD256();
+			value = hash.digest();
+			data = new byte[0];
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Returns a copy of this expectation.
+		 *
+		 * @return a copy of this expectation.
+		 */
+
+		private Expectation copy()
+		{
+			Expectation copy = new Expectation(cloneHash);
+			copy.value = value.clone();
+			copy.data = data.clone();
+			return copy;
+		}
+
+		//--------------------------------------------------------------
+
+		/**
+		 * Updates this expectation with an addition to the entropy pool.
+		 *
+		 * @param addition  the data that was added to the pool.
+		 */
+
+		private void add(byte[] addition)
+		{
+			if (cloneHash)
+			{
+				byte[] buffer = new byte[data.length + addition.length];
+				System.arraycopy(data, 0, buffer, 0, data.length);
+				System.arraycopy(addition, 0, buffer, data.length, addition.length);
+				data = buffer;
+			}
+			else
+			{
+				hash.update(value);
+				hash.update(addition);
+				value = hash.digest();
+			}
+		}
+
+		//--------------------------------------------------------------
+
+		/**
+		 * Returns the expected value of the entropy pool.
+		 *
+		 * @return the expected value of the entropy pool.
+		 */
+
+		private byte[] getValue()
+		{
+			return cloneHash ? hash.digest(data) : value;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance fields
+	////////////////////////////////////////////////////////////////////
+
+		private	boolean	cloneHash;
+		private	ShaD256	hash;
+		private	byte[]	value;
+		private	byte[]	data;
+
+	}
+
+	//==================================================================
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	@Test
+	public void clonedHashStoresConcatenation()
+	{
+		Assume.assumeTrue(new ShaD256().canClone());
+		testPool(true);
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void extractedHashChainsAdditions()
+	{
+		testPool(false);
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void valueIsIndependentOfDivisionWhenHashIsCloned()
+	{
+		Assume.assumeTrue(new ShaD256().canClone());
+
+		byte[] data = CryptoTestUtils.randomBytes(1000, 5);
+		Fortuna.EntropyPool bytePool = new Fortuna.EntropyPool(true);
+		for (byte b : data)
+			bytePool.add(b);
+		Fortuna.EntropyPool blockPool = new Fortuna.EntropyPool(true);
+		blockPool.add(data, 0, data.length);
+		Assert.assertArrayEquals(blockPool.remove(), bytePool.remove());
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Adds single bytes and blocks of various lengths to an entropy pool, and tests that the value of the pool and
+	 * of a clone of the pool that is made part of the way through are equal to the expected values.
+	 *
+	 * @param cloneHash  if {@code true}, the entropy of the pool will be stored in the state of its hash function;
+	 *                   otherwise, it will be extracted from the hash function after each addition.
+	 */
+
+	private void testPool(boolean cloneHash)
+	{
+		Fortuna.EntropyPool pool = new Fortuna.EntropyPool(cloneHash);
+		Fortuna.EntropyPool copy = null;
+		Expectation expectation = new Expectation(cloneHash);
+		Expectation copyExpectation = null;
+		Random prng = new Random(SEED);
+		for (int i = 0; i < NUM_ADDITIONS; i++)
+		{
+			// Clone pool
+			if (i == CLONE_INDEX)
+			{
+				copy = pool.clone();
+				copyExpectation = expectation.copy();
+			}
+
+			// Add a single byte or a block to pool and its clone
+			if (prng.nextBoolean())
+			{
+				byte b = (byte)prng.nextInt();
+				pool.add(b);
+				expectation.add(new byte[] { b });
+				if (copy != null)
+				{
+					copy.add(b);
+					copyExpectation.add(new byte[] { b });
+				}
+			}
+			else
+			{
+				byte[] data = new byte[1 + prng.nextInt(MAX_BLOCK_LENGTH)];
+				prng.nextBytes(data);
+				pool.add(data, 0, data.length);
+				expectation.add(data);
+				if (copy != null)
+				{
+					copy.add(data, 0, data.length);
+					copyExpectation.add(data);
+				}
+			}
+		}
+		Assert.assertArrayEquals(expectation.getValue(), pool.remove());
+		Assert.assertArrayEquals(copyExpectation.getValue(), copy.remove());
+	}
+
+	//------------------------------------------------------------------
+
+}
+
+//----------------------------------------------------------------------
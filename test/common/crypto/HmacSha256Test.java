@@ -0,0 +1,226 @@
+/*====================================================================*\
+
+HmacSha256Test.java
+
+HMAC-SHA256 test class.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package common.crypto;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+//----------------------------------------------------------------------
+
+
+// HMAC-SHA256 TEST CLASS
+
+
+/**
+ * This class contains the unit tests of {@link HmacSha256}.  The HMAC values are tested with test cases 1 to 4, 6
+ * and 7 of RFC 4231; the other methods are tested against {@link HmacSha256#getValue(byte[])}.
+ */
+
+public class HmacSha256Test
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	private static final	byte[]	LONG_KEY	= CryptoTestUtils.filledBytes(131, 0xAA);
+
+	private static final	byte[]	KEY		=
+			CryptoTestUtils.hexToBytes("0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b");
+	private static final	byte[]	DATA	= CryptoTestUtils.randomBytes(1000, 4231);
+
+	private static final	int		SPLIT_OFFSET	= 300;
+	private static final	int		VALUE_OFFSET	= 3;
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	@Test
+	public void rfc4231TestCase1()
+	{
+		testValue(KEY, CryptoTestUtils.textToBytes("Hi There"),
+				  "b0344c61d8db38535ca8afceaf0bf12b881dc200c9833da726e9376c2e32cff7");
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void rfc4231TestCase2()
+	{
+		testValue(CryptoTestUtils.textToBytes("Jefe"), CryptoTestUtils.textToBytes("what do ya want for nothing?"),
+				  "5bdcc146bf60754e6a042426089575c75a003f089d2739839dec58b964ec3843");
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void rfc4231TestCase3()
+	{
+		testValue(CryptoTestUtils.hexToBytes("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa"),
+				  CryptoTestUtils.filledBytes(50, 0xDD),
+				  "773ea91e36800e46854db8ebd09181a72959098b3ef8c122d9635514ced565fe");
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void rfc4231TestCase4()
+	{
+		testValue(CryptoTestUtils.hexToBytes("0102030405060708090a0b0c0d0e0f10111213141516171819"),
+				  CryptoTestUtils.filledBytes(50, 0xCD),
+				  "82558a389a443c0ea4cc819899f2083a85f0faa3e578f8077a2e3ff46729665b");
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void rfc4231TestCase6()
+	{
+		testValue(LONG_KEY, CryptoTestUtils.textToBytes("Test Using Larger Than Block-Size Key - Hash Key First"),
+				  "60e431591ee0b67f0d8a26aacbf5b77f8e0bc6213728c5140546040f0ee37f54");
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void rfc4231TestCase7()
+	{
+		testValue(LONG_KEY, CryptoTestUtils.textToBytes("This is a test using a larger than block-size key and a "
+															+ "larger than block-size data. The key needs to be "
+															+ "hashed before being used by the HMAC algorithm."),
+				  "9b09ffa71b942fcb27635fbcd5b0e944bfdc63644f0713938a7f51535c3a35e2");
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void getValueInto()
+	{
+		HmacSha256 hmac = new HmacSha256(KEY);
+		byte[] expectedValue = hmac.getValue(DATA);
+
+		// Get value twice to test that the HMAC is reusable after a reset
+		for (int i = 0; i < 2; i++)
+		{
+			hmac.reset();
+			hmac.update(DATA);
+			byte[] buffer = new byte[VALUE_OFFSET + HmacSha256.HASH_VALUE_SIZE + 1];
+			hmac.getValueInto(buffer, VALUE_OFFSET);
+
+			byte[] expectedBuffer = new byte[buffer.length];
+			System.arraycopy(expectedValue, 0, expectedBuffer, VALUE_OFFSET, expectedValue.length);
+			Assert.assertArrayEquals(expectedBuffer, buffer);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	@Test(expected = IllegalArgumentException.class)
+	public void getValueIntoShortBuffer()
+	{
+		new HmacSha256(KEY).getValueInto(new byte[HmacSha256.HASH_VALUE_SIZE], 1);
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void cloneIsIndependent()
+		throws CloneNotSupportedException
+	{
+		HmacSha256 hmac = new HmacSha256(KEY);
+		hmac.update(DATA, 0, SPLIT_OFFSET);
+		HmacSha256 copy = hmac.clone();
+
+		// Complete the copy with different data from the original
+		hmac.update(DATA, SPLIT_OFFSET, DATA.length - SPLIT_OFFSET);
+		copy.update(DATA, 0, SPLIT_OFFSET);
+		Assert.assertArrayEquals(new HmacSha256(KEY).getValue(DATA), hmac.getValue());
+
+		byte[] prefix = new byte[2 * SPLIT_OFFSET];
+		System.arraycopy(DATA, 0, prefix, 0, SPLIT_OFFSET);
+		System.arraycopy(DATA, 0, prefix, SPLIT_OFFSET, SPLIT_OFFSET);
+		Assert.assertArrayEquals(new HmacSha256(KEY).getValue(prefix), copy.getValue());
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void updateWithHeapBuffer()
+	{
+		testUpdateWithBuffer(false);
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void updateWithDirectBuffer()
+	{
+		testUpdateWithBuffer(true);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Computes the HMAC of some specified data with a specified key and compares it with an expected value.
+	 *
+	 * @param key     the key of the HMAC.
+	 * @param data    the data whose HMAC will be computed.
+	 * @param outHex  the expected HMAC value, as a string of hexadecimal digits.
+	 */
+
+	private void testValue(byte[] key,
+						   byte[] data,
+						   String outHex)
+	{
+		Assert.assertArrayEquals(CryptoTestUtils.hexToBytes(outHex), new HmacSha256(key).getValue(data));
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Updates an HMAC with the test data in two parts from a byte buffer, and compares the value of the HMAC with
+	 * that of the same data in an array.  The position of the buffer is tested after each update.
+	 *
+	 * @param direct  if {@code true}, the buffer will be a direct buffer; otherwise, it will be backed by an
+	 *                array.
+	 */
+
+	private void testUpdateWithBuffer(boolean direct)
+	{
+		ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(DATA.length) : ByteBuffer.allocate(DATA.length);
+		buffer.put(DATA).flip();
+
+		HmacSha256 hmac = new HmacSha256(KEY);
+		buffer.limit(SPLIT_OFFSET);
+		hmac.update(buffer);
+		Assert.assertEquals(SPLIT_OFFSET, buffer.position());
+		buffer.limit(DATA.length);
+		hmac.update(buffer);
+		Assert.assertEquals(DATA.length, buffer.position());
+		Assert.assertArrayEquals(new HmacSha256(KEY).getValue(DATA), hmac.getValue());
+	}
+
+	//------------------------------------------------------------------
+
+}
+
+//----------------------------------------------------------------------
@@ -0,0 +1,247 @@
+/*====================================================================*\
+
+Salsa20Test.java
+
+Salsa20 stream cipher test class.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package common.crypto;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+//----------------------------------------------------------------------
+
+
+// SALSA20 STREAM CIPHER TEST CLASS
+
+
+/**
+ * This class contains the unit tests of {@link Salsa20}.  The core and the expansion of the cipher are tested with
+ * the vectors of the Salsa20 specification (sections 8 and 10), the Salsa20/8 core vector of RFC 7914 (section 8)
+ * and eSTREAM set 1, vector 0, for a 256-bit key.  The bulk methods that generate several blocks are tested
+ * against successive calls to {@link Salsa20#getBlock(long, byte[], int)}.
+ */
+
+public class Salsa20Test
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	private static final	byte[]	KEY		=
+			CryptoTestUtils.hexToBytes("0102030405060708090a0b0c0d0e0f10c9cacbcccdcecfd0d1d2d3d4d5d6d7d8");
+	private static final	byte[]	NONCE	= CryptoTestUtils.hexToBytes("65666768696a6b6c");
+
+	// A block counter whose low-order word overflows after a few blocks
+	private static final	long	BOUNDARY_BLOCK_COUNTER	= (1L << 32) - 3;
+
+	private static final	int		NUM_BULK_BLOCKS		= 7;
+	private static final	int		BULK_BUFFER_OFFSET	= 5;
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	@Test
+	public void salsa20_20Core()
+	{
+		testCore(20,
+				 "d39f0d734c3752b70375de25bfbbea8831edb330016ab2dbafc7a6305610b3cf"
+					+ "1ff0203f0f535da174933071ee37cc244fc9eb4f03519c2fcb1af4f358766836",
+				 "6d2ab2a89cf0f8eea8c4becb1a6eaa9a1d1d961a961eebf9bea3fb3045903339"
+					+ "7628989db4391b5e6b2aec231b6f7272dbece8876f9b6e1218e85f9eb31330ca");
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void salsa20_8Core()
+	{
+		testCore(8,
+				 "7e879a214f3ec9867ca940e641718f26baee555b8c61c1b50df846116dcd3b1d"
+					+ "ee24f319df9b3d8514121e4b5ac5aa3276021d2909c74829edebc68db8b8c25e",
+				 "a41f859c6608cc993b81cacb020cef05044b2181a2fd337dfd7b1c6396682f29"
+					+ "b4393168e3c9e6bcfe6bc5b7a06d96bae424cc102c91745c24ad673dc7618f81");
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void expansion()
+	{
+		testBlock("0102030405060708090a0b0c0d0e0f10c9cacbcccdcecfd0d1d2d3d4d5d6d7d8", "65666768696a6b6c",
+				  0x74737271706F6E6DL,
+				  "45254427290f6bc1ff8b7a06aae9d9625990b66a1533c841ef31de22d772287e"
+					+ "68c507e1c5991f02664e4cb054f5f6b8b1a0858206489577c0c384ecea67f64a");
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void keystream()
+	{
+		testBlock("8000000000000000000000000000000000000000000000000000000000000000", "0000000000000000", 0,
+				  "e3be8fdd8beca2e3ea8ef9475b29a6e7003951e1097a5c38d23b7a5fad9f6844"
+					+ "b22c97559e2723c7cbbd3fe4fc8d9a0744652a83e72a9c461876af4d7ef1a117");
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void getBlocksIntoArray()
+	{
+		Salsa20 cipher = new Salsa20(20, KEY, NONCE);
+		byte[] buffer = new byte[BULK_BUFFER_OFFSET + NUM_BULK_BLOCKS * Salsa20.BLOCK_SIZE + 1];
+		cipher.getBlocks(BOUNDARY_BLOCK_COUNTER, NUM_BULK_BLOCKS, buffer, BULK_BUFFER_OFFSET);
+		Assert.assertArrayEquals(getSuccessiveBlocks(cipher, BOUNDARY_BLOCK_COUNTER, NUM_BULK_BLOCKS,
+													 BULK_BUFFER_OFFSET, buffer.length),
+								 buffer);
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void getBlocksIntoHeapBuffer()
+	{
+		testGetBlocksIntoBuffer(false);
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void getBlocksIntoDirectBuffer()
+	{
+		testGetBlocksIntoBuffer(true);
+	}
+
+	//------------------------------------------------------------------
+
+	@Test(expected = BufferOverflowException.class)
+	public void getBlocksIntoShortBuffer()
+	{
+		new Salsa20(20, KEY, NONCE).getBlocks(0, 2, ByteBuffer.allocate(2 * Salsa20.BLOCK_SIZE - 1));
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Applies the Salsa20 core with a specified number of rounds to a specified block and compares the output
+	 * with an expected value.
+	 *
+	 * @param numRounds  the number of rounds of the core.
+	 * @param inHex      the input block, as a string of hexadecimal digits.
+	 * @param outHex     the expected output block, as a string of hexadecimal digits.
+	 */
+
+	private void testCore(int    numRounds,
+						  String inHex,
+						  String outHex)
+	{
+		byte[] inData = CryptoTestUtils.hexToBytes(inHex);
+		int[] words = new int[Salsa20.BLOCK_SIZE_WORDS];
+		for (int i = 0; i < words.length; i++)
+			words[i] = Salsa20.bytesToWord(inData, i * Salsa20.BYTES_PER_WORD);
+		Salsa20.hash(words, words, numRounds);
+		byte[] outData = new byte[Salsa20.BLOCK_SIZE];
+		for (int i = 0; i < words.length; i++)
+			Salsa20.wordToBytes(words[i], outData, i * Salsa20.BYTES_PER_WORD);
+		Assert.assertArrayEquals(CryptoTestUtils.hexToBytes(outHex), outData);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Generates a block of Salsa20/20 keystream with a specified key, nonce and block counter, and compares it
+	 * with an expected value.
+	 *
+	 * @param keyHex        the key, as a string of hexadecimal digits.
+	 * @param nonceHex      the nonce, as a string of hexadecimal digits.
+	 * @param blockCounter  the block counter.
+	 * @param outHex        the expected block, as a string of hexadecimal digits.
+	 */
+
+	private void testBlock(String keyHex,
+						   String nonceHex,
+						   long   blockCounter,
+						   String outHex)
+	{
+		byte[] outData = new byte[Salsa20.BLOCK_SIZE];
+		new Salsa20(20, CryptoTestUtils.hexToBytes(keyHex), CryptoTestUtils.hexToBytes(nonceHex))
+				.getBlock(blockCounter, outData, 0);
+		Assert.assertArrayEquals(CryptoTestUtils.hexToBytes(outHex), outData);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Generates blocks into a byte buffer at a nonzero position and compares the content of the buffer and its
+	 * final position with the expected values.
+	 *
+	 * @param direct  if {@code true}, the buffer will be a direct buffer; otherwise, it will be backed by an
+	 *                array.
+	 */
+
+	private void testGetBlocksIntoBuffer(boolean direct)
+	{
+		Salsa20 cipher = new Salsa20(20, KEY, NONCE);
+		int length = BULK_BUFFER_OFFSET + NUM_BULK_BLOCKS * Salsa20.BLOCK_SIZE + 1;
+		ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(length) : ByteBuffer.allocate(length);
+		buffer.position(BULK_BUFFER_OFFSET);
+		cipher.getBlocks(BOUNDARY_BLOCK_COUNTER, NUM_BULK_BLOCKS, buffer);
+		Assert.assertEquals(length - 1, buffer.position());
+
+		byte[] data = new byte[length];
+		buffer.clear();
+		buffer.get(data);
+		Assert.assertArrayEquals(getSuccessiveBlocks(cipher, BOUNDARY_BLOCK_COUNTER, NUM_BULK_BLOCKS,
+													 BULK_BUFFER_OFFSET, length),
+								 data);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Generates a specified number of consecutive blocks with successive calls to {@link
+	 * Salsa20#getBlock(long, byte[], int)}, and returns them at a specified offset in a new array.
+	 *
+	 * @param  cipher        the cipher that will generate the blocks.
+	 * @param  blockCounter  the block counter of the first block.
+	 * @param  numBlocks     the number of blocks.
+	 * @param  offset        the offset of the first block in the array.
+	 * @param  length        the length of the array.
+	 * @return an array of length {@code length} that contains the blocks at {@code offset}.
+	 */
+
+	private byte[] getSuccessiveBlocks(Salsa20 cipher,
+									   long    blockCounter,
+									   int     numBlocks,
+									   int     offset,
+									   int     length)
+	{
+		byte[] buffer = new byte[length];
+		for (int i = 0; i < numBlocks; i++)
+			cipher.getBlock(blockCounter + i, buffer, offset + i * Salsa20.BLOCK_SIZE);
+		return buffer;
+	}
+
+	//------------------------------------------------------------------
+
+}
+
+//----------------------------------------------------------------------
@@ -0,0 +1,170 @@
+/*====================================================================*\
+
+ScryptTest.java
+
+Scrypt key derivation function test class.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package common.crypto;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+//----------------------------------------------------------------------
+
+
+// SCRYPT KEY DERIVATION FUNCTION TEST CLASS
+
+
+/**
+ * This class contains the unit tests of {@link Scrypt}, which use the PBKDF2-HMAC-SHA256 test vectors of RFC
+ * 7914, section 11, and the first three scrypt test vectors of section 12.  The tests are performed with eight
+ * rounds of the Salsa20 core, as in the specification.
+ */
+
+public class ScryptTest
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	@Before
+	public void setUp()
+	{
+		numRounds = Scrypt.getSalsa20CoreNumRounds();
+		Scrypt.setSalsa20CoreNumRounds(Scrypt.Salsa20NumRounds._8);
+	}
+
+	//------------------------------------------------------------------
+
+	@After
+	public void tearDown()
+	{
+		Scrypt.setSalsa20CoreNumRounds(numRounds);
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void rfc7914Vector1()
+	{
+		testDeriveKey("", "", 4, 1, 1,
+					  "77d6576238657b203b19ca42c18a0497f16b4844e3074ae8dfdffa3fede21442"
+						+ "fcd0069ded0948f8326a753a0fc81f17e8d3e0fb2e0d3628cf35e20c38d18906");
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void rfc7914Vector2()
+	{
+		testDeriveKey("password", "NaCl", 10, 8, 16,
+					  "fdbabe1c9d3472007856e7190d01e9fe7c6ad7cbc8237830e77376634b373162"
+						+ "2eaf30d92e22a3886ff109279d9830dac727afb94a83ee6d8360cbdfa2cc0640");
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void rfc7914Vector3()
+	{
+		testDeriveKey("pleaseletmein", "SodiumChloride", 14, 8, 1,
+					  "7023bdcb3afd7348461c06cd81fd38ebfda8fbba904f8e3ea9b543f6545da1f2"
+						+ "d5432955613f0fcf62d49705242a9af9e61e85dc0d651e40dfcf017b45575887");
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void rfc7914Pbkdf2Vector1()
+	{
+		testPbkdf2("passwd", "salt", 1,
+				   "55ac046e56e3089fec1691c22544b605f94185216dde0465e68b9d57c20dacbc"
+					+ "49ca9cccf179b645991664b39d77ef317c71b845b1e30bd509112041d3a19783");
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void rfc7914Pbkdf2Vector2()
+	{
+		testPbkdf2("Password", "NaCl", 80000,
+				   "4ddcd8f60b98be21830cee5ef22701f9641a4418d04c0414aeff08876b34ab56"
+					+ "a1d425a1225833549adb841b51c9b3176a272bdebba1d078478f62b397f33c8d");
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Derives a key from a specified password and salt with specified parameters, and compares it with an expected
+	 * value.  The blocks are mixed by as many threads as there are parallel blocks.
+	 *
+	 * @param password           the password from which the key will be derived.
+	 * @param salt               the salt.
+	 * @param cost               the binary logarithm of the CPU/memory cost parameter, <i>N</i>.
+	 * @param numBlocks          the block size parameter, <i>r</i>.
+	 * @param numParallelBlocks  the parallelisation parameter, <i>p</i>.
+	 * @param outHex             the expected key, as a string of hexadecimal digits.
+	 */
+
+	private void testDeriveKey(String password,
+							   String salt,
+							   int    cost,
+							   int    numBlocks,
+							   int    numParallelBlocks,
+							   String outHex)
+	{
+		byte[] expectedKey = CryptoTestUtils.hexToBytes(outHex);
+		byte[] key = Scrypt.deriveKey(CryptoTestUtils.textToBytes(password), CryptoTestUtils.textToBytes(salt),
+									  cost, numBlocks, numParallelBlocks, numParallelBlocks, expectedKey.length);
+		Assert.assertArrayEquals(expectedKey, key);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Derives a key from a specified password and salt with PBKDF2-HMAC-SHA256, and compares it with an expected
+	 * value.
+	 *
+	 * @param password       the password from which the key will be derived.
+	 * @param salt           the salt.
+	 * @param numIterations  the number of iterations.
+	 * @param outHex         the expected key, as a string of hexadecimal digits.
+	 */
+
+	private void testPbkdf2(String password,
+							String salt,
+							int    numIterations,
+							String outHex)
+	{
+		byte[] expectedKey = CryptoTestUtils.hexToBytes(outHex);
+		byte[] key = Scrypt.pbkdf2HmacSha256(CryptoTestUtils.textToBytes(password),
+											 CryptoTestUtils.textToBytes(salt), numIterations, expectedKey.length);
+		Assert.assertArrayEquals(expectedKey, key);
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance fields
+////////////////////////////////////////////////////////////////////////
+
+	private	Scrypt.Salsa20NumRounds	numRounds;
+
+}
+
+//----------------------------------------------------------------------
@@ -0,0 +1,79 @@
+/*====================================================================*\
+
+ShaD256Test.java
+
+SHAd-256 hash function test class.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package common.crypto;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+//----------------------------------------------------------------------
+
+
+// SHAD-256 HASH FUNCTION TEST CLASS
+
+
+/**
+ * This class contains the unit tests of {@link ShaD256}, whose value is tested against the definition of SHAd-256
+ * as SHA-256 applied twice.
+ */
+
+public class ShaD256Test
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	private static final	byte[]	DATA		= CryptoTestUtils.textToBytes("abc");
+	private static final	byte[]	HASH_VALUE	=
+			CryptoTestUtils.hexToBytes("4f8b42c22dd3729b519ba6f68d2da7cc5b2d606d05daed5ad5128cc03e6c6358");
+
+	private static final	int		VALUE_OFFSET	= 3;
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	@Test
+	public void digest()
+	{
+		Assert.assertArrayEquals(HASH_VALUE, new ShaD256().digest(DATA));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void digestIntoAfterBufferUpdate()
+	{
+		ShaD256 hash = new ShaD256();
+		hash.update(ByteBuffer.wrap(DATA));
+		byte[] buffer = new byte[VALUE_OFFSET + ShaD256.HASH_VALUE_SIZE];
+		hash.digestInto(buffer, VALUE_OFFSET);
+
+		byte[] expectedBuffer = new byte[buffer.length];
+		System.arraycopy(HASH_VALUE, 0, expectedBuffer, VALUE_OFFSET, HASH_VALUE.length);
+		Assert.assertArrayEquals(expectedBuffer, buffer);
+	}
+
+	//------------------------------------------------------------------
+
+}
+
+//----------------------------------------------------------------------
@@ -0,0 +1,319 @@
+/*====================================================================*\
+
+StreamConcealerTest.java
+
+Stream concealer test class.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package common.crypto;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.awt.image.BufferedImage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import common.exception.AppException;
+
+import common.misc.PngStreamWriter;
+
+//----------------------------------------------------------------------
+
+
+// STREAM CONCEALER TEST CLASS
+
+
+/**
+ * This class contains the unit tests of {@link StreamConcealer}, which test that a payload that is concealed in
+ * an image at each replacement depth, with and without random data, is recovered from the image, that a payload
+ * that is concealed in rows that are written as a PNG image by a {@link PngStreamWriter} is recovered from the
+ * image that is read back, and that a payload that is too long for its carrier is rejected.
+ */
+
+public class StreamConcealerTest
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	// The carrier spans several bands of rows, and its width is not a multiple of the number of bits of the length
+	private static final	int		IMAGE_WIDTH		= 157;
+	private static final	int		IMAGE_HEIGHT	= 211;
+
+	private static final	int		LENGTH_FIELD_NUM_BITS	= StreamConcealer.MAX_NUM_LENGTH_BITS;
+
+	private static final	int		PNG_COMPRESSION_LEVEL	= 6;
+
+	private static final	long	IMAGE_SEED	= 0x494D47;
+	private static final	long	RANDOM_SEED	= 0x524E44;
+
+////////////////////////////////////////////////////////////////////////
+//  Member classes : non-inner classes
+////////////////////////////////////////////////////////////////////////
+
+
+	// LENGTH CODEC CLASS
+
+
+	/**
+	 * This class encodes and decodes the length of a payload as a big-endian integer that occupies the maximum
+	 * number of bits of a length field.
+	 */
+
+	private static class LengthCodec
+		implements StreamConcealer.ILengthEncoder, StreamConcealer.ILengthDecoder
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : StreamConcealer.ILengthEncoder and StreamConcealer.ILengthDecoder interfaces
+	////////////////////////////////////////////////////////////////////
+
+		@Override
+		public int getLengthFieldNumBits(int numPixels)
+		{
+			return LENGTH_FIELD_NUM_BITS;
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public byte[] encodeLength(int length,
+								   int numPixels)
+		{
+			byte[] data = new byte[LENGTH_FIELD_NUM_BITS / 8];
+			for (int i = data.length - 1; i >= 0; i--)
+			{
+				data[i] = (byte)length;
+				length >>>= 8;
+			}
+			return data;
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public int decodeLength(byte[] data,
+								int    numPixels)
+		{
+			int length = 0;
+			for (int i = 0; i < LENGTH_FIELD_NUM_BITS / 8; i++)
+				length = length << 8 | data[i] & 0xFF;
+			return length;
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	@Test
+	public void roundTripEmpty()
+		throws AppException
+	{
+		testRoundTrip(new byte[0], StreamConcealer.MIN_MAX_REPLACEMENT_DEPTH, false);
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void roundTripAtEachDepth()
+		throws AppException
+	{
+		for (int depth = StreamConcealer.MIN_MAX_REPLACEMENT_DEPTH;
+			 depth <= StreamConcealer.MAX_MAX_REPLACEMENT_DEPTH; depth++)
+		{
+			// Conceal a payload that fills the carrier and one that leaves some of its bits unused
+			int length = getCapacity(depth);
+			testRoundTrip(CryptoTestUtils.randomBytes(length, depth), depth, false);
+			testRoundTrip(CryptoTestUtils.randomBytes(length / 3 + 1, depth), depth, false);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void roundTripWithRandomData()
+		throws AppException
+	{
+		for (int depth = StreamConcealer.MIN_MAX_REPLACEMENT_DEPTH;
+			 depth <= StreamConcealer.MAX_MAX_REPLACEMENT_DEPTH; depth++)
+			testRoundTrip(CryptoTestUtils.textLikeBytes(getCapacity(depth) / 2 + 1, depth), depth, true);
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void roundTripThroughPngStream()
+		throws AppException, IOException
+	{
+		byte[] data = CryptoTestUtils.randomBytes(getCapacity(2) - 5, 3);
+
+		// Conceal payload, writing rows of image to PNG stream
+		ByteArrayOutputStream pngStream = new ByteArrayOutputStream();
+		PngStreamWriter pngWriter = new PngStreamWriter(pngStream, IMAGE_WIDTH, IMAGE_HEIGHT,
+														PNG_COMPRESSION_LEVEL);
+		new StreamConcealer().conceal(new ByteArrayInputStream(data)::read, createImage(), data.length,
+									  new LengthCodec(), 2, createRandomSource(), pngWriter::writeRows);
+		pngWriter.finish();
+
+		// Read image and recover payload
+		BufferedImage image = ImageIO.read(new ByteArrayInputStream(pngStream.toByteArray()));
+		Assert.assertNotNull(image);
+		Assert.assertArrayEquals(data, recover(image));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test(expected = StreamConcealer.InputException.class)
+	public void rejectsPayloadTooLongForCarrier()
+		throws AppException
+	{
+		int depth = StreamConcealer.MIN_MAX_REPLACEMENT_DEPTH;
+		byte[] data = CryptoTestUtils.randomBytes(getCapacity(depth) + 1, 4);
+		new StreamConcealer().conceal(new ByteArrayInputStream(data), createImage(), data.length, new LengthCodec(),
+									  depth, null);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns the maximum length of a payload that can be concealed in the test image at a specified
+	 * replacement depth.
+	 *
+	 * @param  depth  the maximum replacement depth.
+	 * @return the maximum length (in bytes) of a payload that can be concealed at a replacement depth of {@code
+	 *         depth}.
+	 */
+
+	private int getCapacity(int depth)
+	{
+		return (IMAGE_WIDTH * IMAGE_HEIGHT * 3 - LENGTH_FIELD_NUM_BITS) * depth / 8;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Conceals some specified data in the test image, recovers it from the resulting image and tests that the
+	 * recovered data is equal to the original data.  The bits of the carrier above the replacement depth are
+	 * tested to be unchanged.
+	 *
+	 * @param  data        the payload.
+	 * @param  depth       the maximum replacement depth.
+	 * @param  randomData  if {@code true}, the bits of the carrier that are not replaced by the payload will be
+	 *                     replaced by random data.
+	 * @throws AppException
+	 *           if an error occurred when concealing or recovering the payload.
+	 */
+
+	private void testRoundTrip(byte[]  data,
+							   int     depth,
+							   boolean randomData)
+		throws AppException
+	{
+		// Conceal payload
+		BufferedImage carrier = createImage();
+		BufferedImage image = new StreamConcealer().conceal(new ByteArrayInputStream(data), carrier, data.length,
+															new LengthCodec(), depth,
+															randomData ? createRandomSource() : null);
+		Assert.assertEquals(IMAGE_WIDTH, image.getWidth());
+		Assert.assertEquals(IMAGE_HEIGHT, image.getHeight());
+
+		// Test that only the replaceable bits of the carrier have changed
+		int mask = 0xFFFFFF & ~((0xFF >> (8 - depth)) * 0x010101);
+		for (int y = 0; y < IMAGE_HEIGHT; y++)
+		{
+			for (int x = 0; x < IMAGE_WIDTH; x++)
+				Assert.assertEquals(carrier.getRGB(x, y) & mask, image.getRGB(x, y) & mask);
+		}
+
+		// Recover payload
+		Assert.assertArrayEquals(data, recover(image));
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Recovers a payload from a specified image, and returns it.
+	 *
+	 * @param  image  the image in which the payload is concealed.
+	 * @return the payload that was recovered from {@code image}.
+	 * @throws AppException
+	 *           if an error occurred when recovering the payload.
+	 */
+
+	private byte[] recover(BufferedImage image)
+		throws AppException
+	{
+		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		new StreamConcealer().recover(image, outStream, new LengthCodec());
+		return outStream.toByteArray();
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Creates and returns an RGB image of the test size whose pixels are reproducible pseudo-random values.
+	 *
+	 * @return an RGB image of the test size.
+	 */
+
+	private BufferedImage createImage()
+	{
+		BufferedImage image = new BufferedImage(IMAGE_WIDTH, IMAGE_HEIGHT, BufferedImage.TYPE_INT_RGB);
+		Random prng = new Random(IMAGE_SEED);
+		for (int y = 0; y < IMAGE_HEIGHT; y++)
+		{
+			for (int x = 0; x < IMAGE_WIDTH; x++)
+				image.setRGB(x, y, prng.nextInt());
+		}
+		return image;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Creates and returns a source of reproducible pseudo-random data.
+	 *
+	 * @return a source of reproducible pseudo-random data.
+	 */
+
+	private StreamConcealer.IRandomSource createRandomSource()
+	{
+		Random prng = new Random(RANDOM_SEED);
+		return (buffer, offset, length) ->
+		{
+			for (int i = 0; i < length; i++)
+				buffer[offset + i] = (byte)prng.nextInt();
+			return length;
+		};
+	}
+
+	//------------------------------------------------------------------
+
+}
+
+//----------------------------------------------------------------------
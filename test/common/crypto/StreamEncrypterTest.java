@@ -0,0 +1,305 @@
+/*====================================================================*\
+
+StreamEncrypterTest.java
+
+Stream encrypter test class.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package common.crypto;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.channels.FileChannel;
+
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+import org.junit.rules.TemporaryFolder;
+
+import common.exception.AppException;
+
+//----------------------------------------------------------------------
+
+
+// STREAM ENCRYPTER TEST CLASS
+
+
+/**
+ * This class contains the unit tests of {@link StreamEncrypter}, which test that a stream that is encrypted in
+ * each format and with each compression algorithm is decrypted to the original data, and that the plaintext of
+ * a stream in the {@linkplain StreamEncrypter.StreamFormat#INDEXED indexed format} can be read at arbitrary
+ * positions with a {@link StreamEncrypter.RandomAccessDecrypter}.
+ */
+
+public class StreamEncrypterTest
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	private static final	int		HEADER_ID	= 0x54455354;  // "TEST"
+
+	private static final	long	TIMESTAMP	= 1234567890123L;
+
+	// The data spans several segments of the minimum size, and its last segment is incomplete
+	private static final	int		SEGMENT_SIZE	= StreamEncrypter.MIN_SEGMENT_SIZE;
+	private static final	int		DATA_LENGTH		= 12 * SEGMENT_SIZE + 1234;
+
+	private static final	int		NUM_THREADS	= 3;
+
+	private static final	int		NUM_RANDOM_READS	= 200;
+
+	private static final	byte[]	KEY			= CryptoTestUtils.randomBytes(32, 1);
+	private static final	byte[]	RANDOM_KEY	= CryptoTestUtils.randomBytes(32, 2);
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	@Test
+	public void roundTripBasic()
+		throws AppException
+	{
+		testRoundTrip(StreamEncrypter.StreamFormat.BASIC);
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void roundTripSegmented()
+		throws AppException
+	{
+		testRoundTrip(StreamEncrypter.StreamFormat.SEGMENTED);
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void roundTripIndexed()
+		throws AppException
+	{
+		testRoundTrip(StreamEncrypter.StreamFormat.INDEXED);
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void roundTripEmpty()
+		throws AppException
+	{
+		for (StreamEncrypter.StreamFormat format : StreamEncrypter.StreamFormat.values())
+		{
+			StreamEncrypter encrypter = createEncrypter(FortunaCipher.AES256, format,
+														StreamEncrypter.Compression.FAST);
+			Assert.assertArrayEquals(new byte[0], decrypt(encrypter, encrypt(encrypter, new byte[0])));
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void fastCompressionCompresses()
+		throws AppException
+	{
+		byte[] data = CryptoTestUtils.textLikeBytes(DATA_LENGTH, 3);
+		StreamEncrypter encrypter = createEncrypter(FortunaCipher.AES256, StreamEncrypter.StreamFormat.SEGMENTED,
+													StreamEncrypter.Compression.STORE);
+		int storedLength = encrypt(encrypter, data).length;
+		encrypter.setCompression(StreamEncrypter.Compression.FAST);
+		byte[] encryptedData = encrypt(encrypter, data);
+		Assert.assertTrue(encryptedData.length < storedLength / 2);
+		Assert.assertArrayEquals(data, decrypt(encrypter, encryptedData));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void randomAccessDecrypter()
+		throws AppException, IOException
+	{
+		byte[] data = CryptoTestUtils.textLikeBytes(DATA_LENGTH, 4);
+		for (StreamEncrypter.Compression compression : StreamEncrypter.Compression.values())
+		{
+			// Write encrypted stream to file
+			StreamEncrypter encrypter = createEncrypter(FortunaCipher.SALSA20, StreamEncrypter.StreamFormat.INDEXED,
+														compression);
+			File file = temporaryFolder.newFile();
+			Files.write(file.toPath(), encrypt(encrypter, data));
+
+			// Read plaintext at random positions
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+			{
+				StreamEncrypter.RandomAccessDecrypter decrypter = encrypter.createRandomAccessDecrypter(channel, KEY);
+				Assert.assertEquals(DATA_LENGTH, decrypter.getLength());
+				Assert.assertEquals(TIMESTAMP, decrypter.getTimestamp());
+				Assert.assertEquals(SEGMENT_SIZE, decrypter.getSegmentSize());
+
+				Random prng = new Random(compression.ordinal());
+				byte[] buffer = new byte[3 * SEGMENT_SIZE];
+				for (int i = 0; i < NUM_RANDOM_READS; i++)
+				{
+					int position = prng.nextInt(DATA_LENGTH);
+					int length = prng.nextInt(buffer.length + 1);
+					int readLength = decrypter.read(position, buffer, 0, length);
+					Assert.assertEquals(Math.min(length, DATA_LENGTH - position), readLength);
+					Assert.assertArrayEquals(Arrays.copyOfRange(data, position, position + readLength),
+											 Arrays.copyOf(buffer, readLength));
+				}
+				Assert.assertEquals(-1, decrypter.read(DATA_LENGTH, buffer, 0, buffer.length));
+			}
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	@Test(expected = StreamEncrypter.InputException.class)
+	public void randomAccessDecrypterRequiresIndex()
+		throws AppException, IOException
+	{
+		StreamEncrypter encrypter = createEncrypter(FortunaCipher.AES256, StreamEncrypter.StreamFormat.SEGMENTED,
+													StreamEncrypter.Compression.STORE);
+		File file = temporaryFolder.newFile();
+		Files.write(file.toPath(), encrypt(encrypter, CryptoTestUtils.randomBytes(DATA_LENGTH, 5)));
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+		{
+			encrypter.createRandomAccessDecrypter(channel, KEY);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Encrypts compressible and incompressible data in a specified format with each cipher and each compression
+	 * algorithm, and tests that the decrypted and validated data is equal to the original data.
+	 *
+	 * @param  format  the format of the encrypted streams.
+	 * @throws AppException
+	 *           if an error occurred when encrypting, decrypting or validating a stream.
+	 */
+
+	private void testRoundTrip(StreamEncrypter.StreamFormat format)
+		throws AppException
+	{
+		byte[][] inputs =
+		{
+			CryptoTestUtils.textLikeBytes(DATA_LENGTH, 6),
+			CryptoTestUtils.randomBytes(DATA_LENGTH, 7)
+		};
+		for (FortunaCipher cipher : FortunaCipher.values())
+		{
+			for (StreamEncrypter.Compression compression : StreamEncrypter.Compression.values())
+			{
+				StreamEncrypter encrypter = createEncrypter(cipher, format, compression);
+				for (byte[] data : inputs)
+				{
+					byte[] encryptedData = encrypt(encrypter, data);
+					Assert.assertArrayEquals(data, decrypt(encrypter, encryptedData));
+					Assert.assertEquals(TIMESTAMP, encrypter.validate(new ByteArrayInputStream(encryptedData),
+																	  encryptedData.length, KEY));
+				}
+			}
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Creates and returns an encrypter with a header and the specified cipher, format and compression algorithm.
+	 * The segments of the stream are of the minimum size, and are processed by several threads.
+	 *
+	 * @param  cipher       the cipher of the encrypter.
+	 * @param  format       the format of the encrypted stream.
+	 * @param  compression  the compression algorithm.
+	 * @return an encrypter with the specified cipher, format and compression algorithm.
+	 */
+
+	private StreamEncrypter createEncrypter(FortunaCipher                cipher,
+											StreamEncrypter.StreamFormat format,
+											StreamEncrypter.Compression  compression)
+	{
+		StreamEncrypter encrypter = new StreamEncrypter(cipher, new StreamEncrypter.Header(HEADER_ID, 0));
+		encrypter.setStreamFormat(format);
+		encrypter.setCompression(compression);
+		encrypter.setSegmentSize(SEGMENT_SIZE);
+		encrypter.setNumThreads(NUM_THREADS);
+		return encrypter;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Encrypts some specified data with a specified encrypter, and returns the encrypted stream.
+	 *
+	 * @param  encrypter  the encrypter.
+	 * @param  data       the data that will be encrypted.
+	 * @return the encrypted stream.
+	 * @throws AppException
+	 *           if an error occurred when encrypting the data.
+	 */
+
+	private byte[] encrypt(StreamEncrypter encrypter,
+						   byte[]          data)
+		throws AppException
+	{
+		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		encrypter.encrypt(new ByteArrayInputStream(data), outStream, data.length, TIMESTAMP, KEY, RANDOM_KEY);
+		return outStream.toByteArray();
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Decrypts a specified stream with a specified encrypter, tests its timestamp, and returns the plaintext.
+	 *
+	 * @param  encrypter      the encrypter.
+	 * @param  encryptedData  the encrypted stream.
+	 * @return the plaintext of the stream.
+	 * @throws AppException
+	 *           if an error occurred when decrypting the stream.
+	 */
+
+	private byte[] decrypt(StreamEncrypter encrypter,
+						   byte[]          encryptedData)
+		throws AppException
+	{
+		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		long timestamp = encrypter.decrypt(new ByteArrayInputStream(encryptedData), outStream,
+										   encryptedData.length, KEY);
+		Assert.assertEquals(TIMESTAMP, timestamp);
+		return outStream.toByteArray();
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance fields
+////////////////////////////////////////////////////////////////////////
+
+	@Rule
+	public	TemporaryFolder	temporaryFolder	= new TemporaryFolder();
+
+}
+
+//----------------------------------------------------------------------
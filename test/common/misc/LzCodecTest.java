@@ -0,0 +1,203 @@
+/*====================================================================*\
+
+LzCodecTest.java
+
+LZ codec test class.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package common.misc;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+//----------------------------------------------------------------------
+
+
+// LZ CODEC TEST CLASS
+
+
+/**
+ * This class contains the unit tests of {@link LzCodec}, which test that compressed data decompresses to the
+ * original data, that compressible data is compressed, and that malformed or oversized data is rejected.
+ */
+
+public class LzCodecTest
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	private static final	long	SEED	= 0x4C5A;
+
+	private static final	int		BUFFER_OFFSET	= 7;
+
+	// Lengths around the minimum length for which matches are sought, and lengths of several blocks
+	private static final	int[]	LENGTHS	= { 0, 1, 5, 12, 13, 16, 100, 4096, 65537, 1 << 20 };
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	@Test
+	public void roundTripRandomData()
+	{
+		for (int length : LENGTHS)
+			testRoundTrip(randomBytes(length));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void roundTripRepetitiveData()
+	{
+		for (int length : LENGTHS)
+		{
+			byte[] data = randomBytes(length);
+			for (int i = 0; i < length; i++)
+				data[i] = (byte)('a' + (data[i] & 0x03));
+			testRoundTrip(data);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void roundTripRuns()
+	{
+		// Long runs exercise overlapping matches and long length fields
+		for (int length : LENGTHS)
+		{
+			byte[] data = new byte[length];
+			for (int i = 0; i < length; i++)
+				data[i] = (byte)(i / 1000);
+			testRoundTrip(data);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void compressesRepetitiveData()
+	{
+		byte[] data = new byte[1 << 16];
+		for (int i = 0; i < data.length; i++)
+			data[i] = (byte)"the quick brown fox ".charAt(i % 20);
+		byte[] outBuffer = new byte[LzCodec.getMaxCompressedLength(data.length)];
+		int length = LzCodec.compress(data, 0, data.length, outBuffer, 0, outBuffer.length);
+		Assert.assertTrue(length > 0);
+		Assert.assertTrue(length < data.length / 10);
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void abandonsCompressionAtMaxLength()
+	{
+		byte[] data = randomBytes(4096);
+		byte[] outBuffer = new byte[LzCodec.getMaxCompressedLength(data.length)];
+		Assert.assertEquals(-1, LzCodec.compress(data, 0, data.length, outBuffer, 0, data.length / 2));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void rejectsOversizedData()
+	{
+		byte[] data = new byte[4096];
+		byte[] compressedData = compress(data);
+		byte[] outBuffer = new byte[data.length];
+		Assert.assertEquals(-1, LzCodec.decompress(compressedData, 0, compressedData.length, outBuffer, 0,
+												   data.length - 1));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void rejectsTruncatedData()
+	{
+		byte[] data = randomBytes(4096);
+		byte[] compressedData = compress(data);
+		byte[] outBuffer = new byte[data.length];
+		for (int length = 0; length < compressedData.length; length += 97)
+			Assert.assertEquals(-1, LzCodec.decompress(compressedData, 0, length, outBuffer, 0, outBuffer.length));
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Compresses some specified data at a nonzero offset, decompresses the result at a nonzero offset and tests
+	 * that the decompressed data is equal to the original data.
+	 *
+	 * @param data  the data that will be compressed.
+	 */
+
+	private void testRoundTrip(byte[] data)
+	{
+		int maxLength = LzCodec.getMaxCompressedLength(data.length);
+		byte[] inBuffer = new byte[BUFFER_OFFSET + data.length];
+		System.arraycopy(data, 0, inBuffer, BUFFER_OFFSET, data.length);
+		byte[] compressedBuffer = new byte[BUFFER_OFFSET + maxLength];
+		int compressedLength = LzCodec.compress(inBuffer, BUFFER_OFFSET, data.length, compressedBuffer,
+												BUFFER_OFFSET, maxLength);
+		Assert.assertTrue(compressedLength >= 0);
+
+		byte[] outBuffer = new byte[BUFFER_OFFSET + data.length];
+		int length = LzCodec.decompress(compressedBuffer, BUFFER_OFFSET, compressedLength, outBuffer,
+										BUFFER_OFFSET, data.length);
+		Assert.assertEquals(data.length, length);
+		Assert.assertArrayEquals(data, Arrays.copyOfRange(outBuffer, BUFFER_OFFSET, outBuffer.length));
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Compresses some specified data, and returns the compressed data.
+	 *
+	 * @param  data  the data that will be compressed.
+	 * @return the compressed data.
+	 */
+
+	private byte[] compress(byte[] data)
+	{
+		byte[] outBuffer = new byte[LzCodec.getMaxCompressedLength(data.length)];
+		int length = LzCodec.compress(data, 0, data.length, outBuffer, 0, outBuffer.length);
+		Assert.assertTrue(length >= 0);
+		return Arrays.copyOf(outBuffer, length);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Creates and returns an array of a specified length that is filled with reproducible pseudo-random data.
+	 *
+	 * @param  length  the length of the array.
+	 * @return an array of {@code length} pseudo-random bytes.
+	 */
+
+	private byte[] randomBytes(int length)
+	{
+		byte[] data = new byte[length];
+		new Random(SEED + length).nextBytes(data);
+		return data;
+	}
+
+	//------------------------------------------------------------------
+
+}
+
+//----------------------------------------------------------------------
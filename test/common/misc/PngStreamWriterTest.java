@@ -0,0 +1,240 @@
+/*====================================================================*\
+
+PngStreamWriterTest.java
+
+Streaming PNG writer test class.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package common.misc;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.awt.image.BufferedImage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import java.util.Random;
+
+import java.util.zip.Deflater;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+//----------------------------------------------------------------------
+
+
+// STREAMING PNG WRITER TEST CLASS
+
+
+/**
+ * This class contains the unit tests of {@link PngStreamWriter}, which test that an image that is written at
+ * each level of compression is read back by {@link ImageIO} with the original pixels, that an image that has
+ * fewer rows than a block or only one row is written correctly, that compression reduces the size of a smooth
+ * image, and that a writer can be aborted before the image is complete.
+ */
+
+public class PngStreamWriterTest
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	private static final	long	SEED	= 0x504E47;
+
+	// The image spans several blocks of rows
+	private static final	int		WIDTH	= 301;
+	private static final	int		HEIGHT	= 517;
+
+	// Rows are supplied in groups of various sizes
+	private static final	int[]	NUM_ROWS_PER_WRITE	= { 1, 7, 64, 150 };
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	@Test
+	public void roundTripAtEachLevel()
+		throws IOException
+	{
+		int[] pixels = createPixels(WIDTH, HEIGHT);
+		for (int level = Deflater.DEFAULT_COMPRESSION; level <= Deflater.BEST_COMPRESSION; level++)
+			Assert.assertArrayEquals(pixels, readImage(writeImage(pixels, WIDTH, HEIGHT, level), WIDTH, HEIGHT));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void roundTripSmallImages()
+		throws IOException
+	{
+		int[][] sizes = { { 1, 1 }, { 5, 3 }, { WIDTH, 1 }, { 1, HEIGHT } };
+		for (int[] size : sizes)
+		{
+			int[] pixels = createPixels(size[0], size[1]);
+			for (int level : new int[] { Deflater.NO_COMPRESSION, Deflater.DEFAULT_COMPRESSION })
+			{
+				byte[] data = writeImage(pixels, size[0], size[1], level);
+				Assert.assertArrayEquals(pixels, readImage(data, size[0], size[1]));
+			}
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void compressesSmoothImage()
+		throws IOException
+	{
+		int[] pixels = new int[WIDTH * HEIGHT];
+		for (int y = 0; y < HEIGHT; y++)
+		{
+			for (int x = 0; x < WIDTH; x++)
+				pixels[y * WIDTH + x] = (x & 0xFF) << 16 | (y & 0xFF) << 8 | (x + y & 0xFF);
+		}
+		int storedLength = writeImage(pixels, WIDTH, HEIGHT, Deflater.NO_COMPRESSION).length;
+		byte[] data = writeImage(pixels, WIDTH, HEIGHT, Deflater.DEFAULT_COMPRESSION);
+		Assert.assertTrue(data.length < storedLength / 10);
+		Assert.assertArrayEquals(pixels, readImage(data, WIDTH, HEIGHT));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	public void abortBeforeFinish()
+		throws IOException
+	{
+		// Supply half the rows of the image, then abort the writer
+		int[] pixels = createPixels(WIDTH, HEIGHT);
+		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		PngStreamWriter writer = new PngStreamWriter(outStream, WIDTH, HEIGHT, Deflater.BEST_COMPRESSION);
+		writer.writeRows(pixels, 0, HEIGHT / 2);
+		writer.abort();
+
+		// Test that nothing more is written
+		int length = outStream.size();
+		writer.abort();
+		Assert.assertEquals(length, outStream.size());
+		Assert.assertEquals(HEIGHT / 2, writer.getNumRows());
+	}
+
+	//------------------------------------------------------------------
+
+	@Test(expected = IllegalStateException.class)
+	public void finishRequiresAllRows()
+		throws IOException
+	{
+		PngStreamWriter writer = new PngStreamWriter(new ByteArrayOutputStream(), WIDTH, HEIGHT,
+													 Deflater.DEFAULT_COMPRESSION);
+		writer.writeRows(createPixels(WIDTH, HEIGHT), 0, HEIGHT - 1);
+		writer.finish();
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Creates and returns the RGB values of the pixels of an image of a specified size.  The left half of each
+	 * row is reproducible pseudo-random data, and the right half is a gradient, so that the rows are filtered
+	 * with different filter types.
+	 *
+	 * @param  width   the width of the image.
+	 * @param  height  the height of the image.
+	 * @return the RGB values of the pixels of an image of size {@code width} &times; {@code height}.
+	 */
+
+	private int[] createPixels(int width,
+							   int height)
+	{
+		Random prng = new Random(SEED + width * height);
+		int[] pixels = new int[width * height];
+		for (int y = 0; y < height; y++)
+		{
+			for (int x = 0; x < width; x++)
+				pixels[y * width + x] = (x < width / 2) ? prng.nextInt() & 0xFFFFFF
+														: (x * 3 & 0xFF) << 16 | (y & 0xFF) << 8 | 0x80;
+		}
+		return pixels;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Writes an image in PNG format, supplying its rows to the writer in groups of various sizes, and returns
+	 * the PNG data.
+	 *
+	 * @param  pixels            the RGB values of the pixels of the image.
+	 * @param  width             the width of the image.
+	 * @param  height            the height of the image.
+	 * @param  compressionLevel  the level of compression.
+	 * @return the image in PNG format.
+	 * @throws IOException
+	 *           if an error occurred when writing the image.
+	 */
+
+	private byte[] writeImage(int[] pixels,
+							  int   width,
+							  int   height,
+							  int   compressionLevel)
+		throws IOException
+	{
+		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		PngStreamWriter writer = new PngStreamWriter(outStream, width, height, compressionLevel);
+		int y = 0;
+		for (int i = 0; y < height; i++)
+		{
+			int numRows = Math.min(NUM_ROWS_PER_WRITE[i % NUM_ROWS_PER_WRITE.length], height - y);
+			writer.writeRows(pixels, y * width, numRows);
+			y += numRows;
+		}
+		Assert.assertEquals(height, writer.getNumRows());
+		writer.finish();
+		return outStream.toByteArray();
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Reads an image in PNG format with {@link ImageIO}, tests its size, and returns the RGB values of its
+	 * pixels.
+	 *
+	 * @param  data    the image in PNG format.
+	 * @param  width   the expected width of the image.
+	 * @param  height  the expected height of the image.
+	 * @return the RGB values of the pixels of the image.
+	 * @throws IOException
+	 *           if an error occurred when reading the image.
+	 */
+
+	private int[] readImage(byte[] data,
+							int    width,
+							int    height)
+		throws IOException
+	{
+		BufferedImage image = ImageIO.read(new ByteArrayInputStream(data));
+		Assert.assertNotNull(image);
+		Assert.assertEquals(width, image.getWidth());
+		Assert.assertEquals(height, image.getHeight());
+		int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+		for (int i = 0; i < pixels.length; i++)
+			pixels[i] &= 0xFFFFFF;
+		return pixels;
+	}
+
+	//------------------------------------------------------------------
+
+}
+
+//----------------------------------------------------------------------